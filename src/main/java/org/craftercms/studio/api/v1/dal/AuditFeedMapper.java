@@ -15,6 +15,8 @@ public interface AuditFeedMapper {
 
     long insertActivityFeed(AuditFeed feed);
 
+    void insertActivityFeeds(Map params);
+
     void updateActivityFeed(AuditFeed feed);
 
     void renameContent(Map params);
@@ -28,6 +28,7 @@ public class DeploymentSyncHistory implements Serializable {
     protected String site;
     protected String environment;
     protected String path;
+    protected String commitId;
     protected String target;
     protected String username;
     protected String contentTypeClass;
@@ -47,6 +48,9 @@ public class DeploymentSyncHistory implements Serializable {
     public String getPath() { return path; }
     public void setPath(String path) { this.path = path; }
 
+    public String getCommitId() { return commitId; }
+    public void setCommitId(String commitId) { this.commitId = commitId; }
+
     public String getTarget() { return target; }
     public void setTarget(String target) { this.target = target; }
 
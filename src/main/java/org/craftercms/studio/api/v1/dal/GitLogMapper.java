@@ -26,5 +26,7 @@ public interface GitLogMapper {
 
     void insertGitLog(Map params);
 
+    void insertGitLogIfAbsent(Map params);
+
     void markGitLogProcessed(Map params);
 }
@@ -25,6 +25,8 @@ public interface ItemMetadataMapper {
 
     ItemMetadata getProperties(Map params);
 
+    List<ItemMetadata> getPropertiesForPaths(Map params);
+
     void setProperties(Map params);
 
     void insertEntry(Map params);
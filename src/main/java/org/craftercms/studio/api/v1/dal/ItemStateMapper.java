@@ -54,6 +54,8 @@ public interface ItemStateMapper {
 
     int isFolderLive(Map<String, Object> params);
 
+    List<String> getLiveFolders(Map<String, Object> params);
+
     void setStateForSiteContent(Map params);
 
     List<ItemState> getChangeSetForSubtree(Map params);
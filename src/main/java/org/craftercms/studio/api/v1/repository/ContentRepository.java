@@ -56,6 +56,16 @@ public interface ContentRepository {
      */
     InputStream getContent(String site, String path) throws ContentNotFoundException;
 
+    /**
+     * get the id of the repository object (file or folder) of the content as of the latest commit, the id changes
+     * every time the content changes
+     *
+     * @param site site id where the operation will be executed
+     * @param path path to content
+     * @return object id or null if the content does not exist
+     */
+    String getContentObjectId(String site, String path);
+
     /**
      * write content
      *
@@ -260,6 +270,16 @@ public interface ContentRepository {
      */
     List<RepoOperationTO> getOperations(String site, String commitIdFrom, String commitIdTo);
 
+    /**
+     * Iterate the operations since the commit ID provided without loading them all in memory
+     *
+     * @param site site to use
+     * @param commitIdFrom commit ID to start at, empty to start at the beginning of the history
+     * @param commitIdTo commit ID to end at
+     * @return iterator of operations in chronological order, must be closed
+     */
+    RepoOperationIterator iterateOperations(String site, String commitIdFrom, String commitIdTo);
+
     /**
      * Get last commit id from repository for given site.
      *
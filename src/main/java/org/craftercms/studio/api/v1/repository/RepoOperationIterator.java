@@ -0,0 +1,33 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.repository;
+
+import java.util.Iterator;
+
+import org.craftercms.studio.api.v1.to.RepoOperationTO;
+
+/**
+ * Iterator over the operations of a range of commits in chronological order. Operations are computed lazily, one
+ * commit at a time, so the iterator must be closed to release the repository resources it holds.
+ */
+public interface RepoOperationIterator extends Iterator<RepoOperationTO>, AutoCloseable {
+
+    @Override
+    void close();
+}
@@ -17,6 +17,8 @@
  */
 package org.craftercms.studio.api.v1.service;
 
+import java.util.Collection;
+
 public interface GeneralLockService {
 
     public final static String MASTER_LOCK = "MASTER LOCK";
@@ -26,4 +28,18 @@ public interface GeneralLockService {
     public void unlock(String objectId);
 
     public boolean tryLock(String objectId);
+
+    /**
+     * Lock several ids in a canonical order, so callers locking overlapping sets can't deadlock
+     *
+     * @param objectIds ids to lock, duplicates are locked once
+     */
+    public void lockAll(Collection<String> objectIds);
+
+    /**
+     * Unlock ids locked with lockAll
+     *
+     * @param objectIds ids to unlock
+     */
+    public void unlockAll(Collection<String> objectIds);
 }
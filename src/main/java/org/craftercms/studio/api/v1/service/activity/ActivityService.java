@@ -61,6 +61,18 @@ public interface ActivityService {
 	 */
 	void postActivity(String site, String user, String key, ActivityType activity, ActivitySource source, Map<String, String> extraInfo);
 
+	/**
+	 * build an activity without posting it, for callers that insert activities in bulk
+	 *
+	 * @param site
+	 * @param user
+	 * @param key
+	 * 			identifies the content that this activity is related to
+	 * @param activity
+	 * @return activity feed entry or null if the activity is not valid
+	 */
+	AuditFeed createActivity(String site, String user, String key, ActivityType activity, ActivitySource source, Map<String, String> extraInfo);
+
 	void renameContentId(String site, String oldUrl, String newUrl);
 
 	/**
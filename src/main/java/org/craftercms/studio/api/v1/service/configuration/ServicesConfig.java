@@ -22,6 +22,7 @@ import org.craftercms.studio.api.v1.to.ContentTypeConfigTO;
 import org.craftercms.studio.api.v1.to.CopyDependencyConfigTO;
 import org.craftercms.studio.api.v1.to.DeleteDependencyConfigTO;
 import org.craftercms.studio.api.v1.to.DmFolderConfigTO;
+import org.craftercms.studio.api.v1.to.PathClassificationTO;
 
 import java.util.List;
 
@@ -159,6 +160,15 @@ public interface ServicesConfig {
 	 * @return default timezone
 	 */
 	String getDefaultTimezone(String site);
+
+	/**
+	 * classify a path against all pattern groups of the site configuration at once
+	 *
+	 * @param site
+	 * @param path
+	 * @return pattern groups the path matches
+	 */
+	PathClassificationTO classifyPath(String site, String path);
     
     List<String> getPreviewableMimetypesPaterns(String site);
 
@@ -31,6 +31,15 @@ public interface ObjectMetadataManager {
 
     ItemMetadata getProperties(String site, String path);
 
+    /**
+     * Get metadata for multiple paths with as few queries as the bulk operations batch size allows
+     *
+     * @param site site
+     * @param paths paths
+     * @return metadata found, paths without metadata are not included
+     */
+    List<ItemMetadata> getPropertiesForPaths(String site, List<String> paths);
+
     boolean metadataExist(String site, String path);
 
     boolean isRenamed(String site, String path);
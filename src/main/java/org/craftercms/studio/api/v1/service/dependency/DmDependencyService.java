@@ -101,6 +101,17 @@ public interface DmDependencyService {
 
     void extractDependenciesJavascript(String site, String path, StringBuffer javascriptContent, Map<String, Set<String>> globalDeps) throws ServiceException;
 
+    /**
+     * Extract and store the dependencies of multiple items, and of the items they depend on. Items are read and
+     * resolved in parallel, dependencies are stored from the calling thread in the order they are resolved. Only
+     * content, styles, scripts and rendering templates are read, other items have no dependencies.
+     *
+     * @param site
+     * @param paths
+     * @return true if the dependencies of all items were stored
+     */
+    boolean extractDependenciesForItems(String site, List<String> paths);
+
     List<String> getDependencyPaths(String site, String path);
 
     List<String> getDependantPaths(String site, String path);
@@ -23,6 +23,7 @@ import org.craftercms.studio.api.v1.util.filter.DmFilterWrapper;
 
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
 
 public interface DeploymentHistoryProvider {
 
@@ -47,6 +48,15 @@ public interface DeploymentHistoryProvider {
      */
     ZonedDateTime getLastDeploymentDate(String site, String path);
 
+    /**
+     * Get last deployment date time for given site and paths
+     *
+     * @param site site id
+     * @param paths paths
+     * @return last deployment date by path, paths never deployed are not included
+     */
+    Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths);
+
     /**
      * Get last commit id that was published for given site and path on given environment
      *
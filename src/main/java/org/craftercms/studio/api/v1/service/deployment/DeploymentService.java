@@ -17,6 +17,7 @@
  ******************************************************************************/
 package org.craftercms.studio.api.v1.service.deployment;
 
+import org.craftercms.studio.api.v1.dal.DeploymentSyncHistory;
 import org.craftercms.studio.api.v1.dal.PublishRequest;
 import org.craftercms.studio.api.v1.exception.CommitNotFoundException;
 import org.craftercms.studio.api.v1.exception.EnvironmentNotFoundException;
@@ -64,6 +65,20 @@ public interface DeploymentService {
             String site, int days, int number, String sort, boolean ascending,
             String filterType);
 
+    /**
+     * Get a page of the deployment history of a site, most recent first
+     *
+     * @param site site id
+     * @param environment publishing environment, null for all of them
+     * @param fromDate date from
+     * @param toDate date to
+     * @param contentTypeClass content type class of the items, null for all of them
+     * @param offset number of entries to skip
+     * @param limit maximum number of entries
+     * @return deployment history entries
+     */
+    List<DeploymentSyncHistory> getDeploymentHistoryEntries(String site, String environment, ZonedDateTime fromDate, ZonedDateTime toDate, String contentTypeClass, int offset, int limit);
+
     List<ContentItemTO> getScheduledItems(String site, String sort, boolean ascending, String subSort, boolean subAscending, String filterType) throws ServiceException;
 
     Map<String, List<PublishingChannelTO>> getAvailablePublishingChannelGroups(String site, String path);
@@ -87,6 +102,15 @@ public interface DeploymentService {
      */
     ZonedDateTime getLastDeploymentDate(String site, String path);
 
+    /**
+     * Get last deployment date time for given site and paths
+     *
+     * @param site site id
+     * @param paths paths
+     * @return last deployment date by path, paths never deployed are not included
+     */
+    Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths);
+
     /**
      * Get publish status for given site
      * @param site site id
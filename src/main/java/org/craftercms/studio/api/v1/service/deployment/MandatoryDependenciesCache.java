@@ -0,0 +1,94 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.api.v1.service.deployment;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.craftercms.studio.api.v1.dal.ItemMetadata;
+
+/**
+ * What the mandatory dependencies check learned about paths during one publish run, so shared dependencies are
+ * resolved and looked up once. Only valid while the states of the items don't change, state transitions of the run are
+ * applied after all its items are processed. Not thread safe.
+ */
+public class MandatoryDependenciesCache {
+
+    protected final Map<String, Set<String>> dependencies = new HashMap<String, Set<String>>();
+    protected final Map<String, Boolean> newPaths = new HashMap<String, Boolean>();
+    protected final Map<String, ItemMetadata> metadata = new HashMap<String, ItemMetadata>();
+    protected long hits;
+    protected long misses;
+
+    /**
+     * @return mandatory dependencies of the path, null if they are not resolved yet
+     */
+    public Set<String> getDependencies(String path) {
+        Set<String> pathDependencies = dependencies.get(path);
+        if (pathDependencies != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return pathDependencies;
+    }
+
+    public void putDependencies(String path, Set<String> pathDependencies) {
+        dependencies.put(path, pathDependencies);
+    }
+
+    /**
+     * @return true if the state and metadata of the path are loaded
+     */
+    public boolean isLoaded(String path) {
+        return newPaths.containsKey(path);
+    }
+
+    /**
+     * Set what is known about a path
+     *
+     * @param path path of the item
+     * @param isNew true if the item is new
+     * @param pathMetadata metadata of the item, null if it has none
+     */
+    public void put(String path, boolean isNew, ItemMetadata pathMetadata) {
+        newPaths.put(path, isNew);
+        metadata.put(path, pathMetadata);
+    }
+
+    public boolean isNew(String path) {
+        return Boolean.TRUE.equals(newPaths.get(path));
+    }
+
+    public boolean isRenamed(String path) {
+        ItemMetadata pathMetadata = metadata.get(path);
+        return pathMetadata != null && pathMetadata.getRenamed() > 0;
+    }
+
+    /**
+     * @return metadata of the path, null if it has none or it is not loaded
+     */
+    public ItemMetadata getMetadata(String path) {
+        return metadata.get(path);
+    }
+
+    public long getHits() { return hits; }
+    public long getMisses() { return misses; }
+}
@@ -18,9 +18,11 @@
 package org.craftercms.studio.api.v1.service.deployment;
 
 import org.craftercms.studio.api.v1.dal.PublishRequest;
+import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
 import org.craftercms.studio.api.v1.to.DeploymentItemTO;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -30,7 +32,15 @@ public interface PublishingManager {
 
     List<PublishRequest> getItemsReadyForDeployment(String site, String environment);
 
-    DeploymentItemTO processItem(PublishRequest item) throws DeploymentException;
+    /**
+     * Process an item for deployment
+     *
+     * @param item publish request
+     * @param transitions state transitions by path, the transition of the item is added to it to be applied in bulk
+     * @return deployment item
+     * @throws DeploymentException if the item can not be processed
+     */
+    DeploymentItemTO processItem(PublishRequest item, Map<String, TransitionEvent> transitions) throws DeploymentException;
 
     void markItemsCompleted(String site, String environment, List<PublishRequest> processedItems) throws DeploymentException;
 
@@ -40,7 +50,29 @@ public interface PublishingManager {
 
     void markItemsBlocked(String site, String environment, List<PublishRequest> copyToEnvironmentItems) throws DeploymentException;
 
-    List<DeploymentItemTO> processMandatoryDependencies(PublishRequest item, Set<String> pathsToDeploy, Set<String> missingDependenciesPaths) throws DeploymentException;
+    /**
+     * Process the mandatory dependencies of an item that are not being published yet
+     *
+     * @param item publish request
+     * @param pathsToDeploy paths already processed in the publish run
+     * @param missingDependenciesPaths paths processed as missing dependencies of the item
+     * @param transitions state transitions by path, the transitions of the dependencies are added to it
+     * @param cache dependencies, states and metadata already looked up in the publish run
+     * @return deployment items of the missing dependencies
+     * @throws DeploymentException if a dependency can not be processed
+     */
+    List<DeploymentItemTO> processMandatoryDependencies(PublishRequest item, Set<String> pathsToDeploy, Set<String> missingDependenciesPaths, Map<String, TransitionEvent> transitions, MandatoryDependenciesCache cache) throws DeploymentException;
+
+    /**
+     * Find the missing mandatory dependencies that processing a batch of items would add to it, so they can be locked
+     * together with the items
+     *
+     * @param site site id
+     * @param items publish requests of the batch
+     * @param cache dependencies, states and metadata already looked up in the publish run, filled with the ones found
+     * @return paths of the missing dependencies
+     */
+    Set<String> getMandatoryDependencyPaths(String site, List<PublishRequest> items, MandatoryDependenciesCache cache);
 
     boolean isPublishingBlocked(String site);
 
@@ -24,6 +24,7 @@ import org.craftercms.commons.monitoring.VersionMonitor;
 
 import java.io.IOException;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.Manifest;
 
 public interface MonitorService {
@@ -49,4 +50,11 @@ public interface MonitorService {
      * @return Memory status
      */
     List<MemoryMonitor> getMemory();
+
+    /**
+     * Get Studio runtime metrics (caches, locks, queues)
+     *
+     * @return Metrics by source name
+     */
+    Map<String, Map<String, Object>> getMetrics();
 }
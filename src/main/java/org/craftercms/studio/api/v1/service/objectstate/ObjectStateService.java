@@ -22,6 +22,7 @@ import org.craftercms.studio.api.v1.dal.ItemState;
 import org.craftercms.studio.api.v1.to.ContentItemTO;
 
 import java.util.List;
+import java.util.Map;
 
 public interface ObjectStateService {
 
@@ -31,6 +32,15 @@ public interface ObjectStateService {
 
     void transition(String site, String path, org.craftercms.studio.api.v1.service.objectstate.TransitionEvent event);
 
+    /**
+     * Resolve the state an object moves to on an event without changing it
+     *
+     * @param currentState current state, null if the object has no state yet
+     * @param event transition event
+     * @return next state, {@link State#NOOP} if the transition is not defined
+     */
+    State getNextState(State currentState, TransitionEvent event);
+
     void insertNewEntry(String site, ContentItemTO item);
 
     void insertNewEntry(String site, String path);
@@ -63,6 +73,25 @@ public interface ObjectStateService {
 
     void transitionBulk(String site, List<String> paths, org.craftercms.studio.api.v1.service.objectstate.TransitionEvent event, org.craftercms.studio.api.v1.service.objectstate.State defaultTargetState);
 
+    /**
+     * Apply a transition event to each of a set of items. States are read and written in batches, items without a
+     * state are inserted with the state the event gives to new items.
+     *
+     * @param site site id
+     * @param transitions transition event by item path
+     */
+    void transitionBulk(String site, Map<String, org.craftercms.studio.api.v1.service.objectstate.TransitionEvent> transitions);
+
+    /**
+     * Same as {@link #transitionBulk(String, Map)} for callers that already hold the locks of the items, taken with
+     * GeneralLockService.lockAll on "site:path" ids of the normalized paths. The items are not locked again, locking
+     * them batch by batch on top of a larger set could deadlock.
+     *
+     * @param site site id
+     * @param transitions transition event by item path
+     */
+    void transitionBulkLocked(String site, Map<String, org.craftercms.studio.api.v1.service.objectstate.TransitionEvent> transitions);
+
     /**
      * get the object for a given set of states
      */
@@ -76,6 +105,24 @@ public interface ObjectStateService {
 
     boolean isFolderLive(String site, String uri);
 
+    /**
+     * Get object states for multiple paths with as few queries as the bulk operations batch size allows
+     *
+     * @param site site
+     * @param paths paths
+     * @return object states found, paths without state are not included
+     */
+    List<ItemState> getObjectStateForPaths(String site, List<String> paths);
+
+    /**
+     * Get the folders that contain at least one live item
+     *
+     * @param site site
+     * @param folderPaths folder paths
+     * @return live folder paths
+     */
+    List<String> getLiveFolders(String site, List<String> folderPaths);
+
     boolean isSubmitted(String site, String dep);
 
     void setStateForSiteContent(String site, State state);
@@ -64,6 +64,13 @@ public interface SecurityService {
 
     void reloadGlobalConfiguration();
 
+    /**
+     * Forget the compiled permissions and cached decisions of a deleted site
+     *
+     * @param site site id
+     */
+    void evictConfiguration(String site);
+
     boolean logout();
 
     /**
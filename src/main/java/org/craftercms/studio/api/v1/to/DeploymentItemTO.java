@@ -26,6 +26,7 @@ public class DeploymentItemTO implements Serializable {
     protected String site;
     protected String path;
     protected String commitId;
+    protected String contentTypeClass;
 
     public String getSite() { return site; }
     public void setSite(String site) { this.site = site; }
@@ -35,4 +36,7 @@ public class DeploymentItemTO implements Serializable {
 
     public String getCommitId() { return commitId; }
     public void setCommitId(String commitId) { this.commitId = commitId; }
+
+    public String getContentTypeClass() { return contentTypeClass; }
+    public void setContentTypeClass(String contentTypeClass) { this.contentTypeClass = contentTypeClass; }
 }
@@ -0,0 +1,93 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.craftercms.studio.api.v1.to;
+
+import java.io.Serializable;
+
+/**
+ * Pattern groups of the site configuration a path matches. Immutable.
+ */
+public class PathClassificationTO implements Serializable {
+
+    private static final long serialVersionUID = -2873610437659470826L;
+
+    public static final PathClassificationTO NONE = new PathClassificationTO(false, false, false, false, false, false,
+            false, false);
+
+    protected final boolean page;
+    protected final boolean component;
+    protected final boolean asset;
+    protected final boolean document;
+    protected final boolean renderingTemplate;
+    protected final boolean script;
+    protected final boolean levelDescriptor;
+    protected final boolean displayInWidget;
+
+    public PathClassificationTO(boolean page, boolean component, boolean asset, boolean document,
+                                boolean renderingTemplate, boolean script, boolean levelDescriptor,
+                                boolean displayInWidget) {
+        this.page = page;
+        this.component = component;
+        this.asset = asset;
+        this.document = document;
+        this.renderingTemplate = renderingTemplate;
+        this.script = script;
+        this.levelDescriptor = levelDescriptor;
+        this.displayInWidget = displayInWidget;
+    }
+
+    /**
+     * @return true if the path matches a page pattern
+     */
+    public boolean isPage() { return page; }
+
+    /**
+     * @return true if the path matches a component pattern
+     */
+    public boolean isComponent() { return component; }
+
+    /**
+     * @return true if the path matches an asset pattern
+     */
+    public boolean isAsset() { return asset; }
+
+    /**
+     * @return true if the path matches a document pattern
+     */
+    public boolean isDocument() { return document; }
+
+    /**
+     * @return true if the path matches a rendering template pattern
+     */
+    public boolean isRenderingTemplate() { return renderingTemplate; }
+
+    /**
+     * @return true if the path matches a scripts pattern
+     */
+    public boolean isScript() { return script; }
+
+    /**
+     * @return true if the file name is the level descriptor name of the site
+     */
+    public boolean isLevelDescriptor() { return levelDescriptor; }
+
+    /**
+     * @return true if the path matches a display in widget pattern
+     */
+    public boolean isDisplayInWidget() { return displayInWidget; }
+}
@@ -34,10 +34,18 @@ public interface StudioConfiguration {
     String BOOTSTRAP_REPO = "studio.repo.bootstrapRepo";
     String REPO_PREVIEW_ROOT_PATH = "studio.repo.previewRootPath";
     String REPO_REBUILD_METADATA_BATCH_SIZE = "studio.repo.rebuildMetadata.batchSize";
+    String REPO_SYNC_DB_BATCH_ENABLED = "studio.repo.syncDB.batch.enabled";
+    String REPO_SYNC_DB_BATCH_SIZE = "studio.repo.syncDB.batch.size";
+    String REPO_GROUP_COMMIT_ENABLED = "studio.repo.groupCommit.enabled";
+    String REPO_GROUP_COMMIT_WINDOW = "studio.repo.groupCommit.window";
+    String REPO_GROUP_COMMIT_MAX_ITEMS = "studio.repo.groupCommit.maxItems";
     String REPO_PUBLISHED_CHERRY_PICK_MESSAGE = "studio.repo.published.cherryPickMessage";
     String REPO_PUBLISHED_CHERRY_PICK_MESSAGE_REPLACE = "studio.repo.published.cherryPickMessage.replace";
     String REPO_PUBLISHED_CHERRY_PICK_MESSAGE_COMMIT_ID_REGEX = "studio.repo.published.cherryPickMessage.commitId.regex";
     String REPO_PUBLISHED_COMMIT_MESSAGE = "studio.repo.published.commitMessage";
+    String REPO_CACHE_MAX_TREES = "studio.repo.cache.maxTrees";
+    String REPO_CACHE_BLOB_MAX_SIZE = "studio.repo.cache.blobMaxSize";
+    String REPO_CACHE_BLOBS_MAX_TOTAL_SIZE = "studio.repo.cache.blobsMaxTotalSize";
 
     /** Database */
     String DB_DRIVER = "studio.db.driver";
@@ -90,6 +98,11 @@ public interface StudioConfiguration {
     String CONFIGURATION_SITE_PREVIEW_DESTROY_CONTEXT_URL = "studio.configuration.site.preview.destroy.sontext.url";
     String CONFIGURATION_SITE_DEPENDENCY_RESOLVER_CONFIG_FILE_NAME = "studio.configuration.site.dependencyResolver.configFileName";
     String CONFIGURATION_SITE_DEPENDENCY_RESOLVER_CONFIG_BASE_PATH = "studio.configuration.site.dependencyResolver.configBasePath";
+    String CONFIGURATION_SITE_PATH_CLASSIFICATION_CACHE_SIZE = "studio.configuration.site.pathClassificationCacheSize";
+
+    /** Content Service */
+    String CONTENT_ITEM_TREE_PARALLEL_THRESHOLD = "studio.contentService.itemTree.parallelThreshold";
+    String CONTENT_ITEM_CACHE_MAX_ITEMS_PER_SITE = "studio.contentService.itemCache.maxItemsPerSite";
 
     /** Import Service */
     String IMPORT_ASSIGNEE = "studio.import.assignee";
@@ -105,10 +118,15 @@ public interface StudioConfiguration {
 
     /** Activity Service */
     String ACTIVITY_USERNAME_CASE_SENSITIVE = "studio.activity.user.name.caseSensitive";
+    String ACTIVITY_WRITER_QUEUE_CAPACITY = "studio.activity.writer.queueCapacity";
+    String ACTIVITY_WRITER_BATCH_SIZE = "studio.activity.writer.batchSize";
+    String ACTIVITY_WRITER_FLUSH_INTERVAL = "studio.activity.writer.flushInterval";
+    String ACTIVITY_WRITER_FALLBACK_FILE = "studio.activity.writer.fallbackFile";
 
     /** Dependencies Service */
     String DEPENDENCIES_IGNORE_DEPENDENCIES_RULES = "studio.dependencies.ignoreDependenciesRules";
     String DEPENDENCIES_MANUAL_DEPENDENCY_APPROVING_ENABLED = "studio.dependencies.manualDependencyApproving.enabled";
+    String DEPENDENCIES_RESOLVER_THREADS = "studio.dependencies.resolverThreads";
 
     /** Object State Service */
     String OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE = "studio.objectState.bulkOperationsBatchSize";
@@ -129,6 +147,9 @@ public interface StudioConfiguration {
     String SECURITY_FORGOT_PASSWORD_TOKEN_TIMEOUT = "studio.security.forgotPassword.token.timeout";
     String SECURITY_RESET_PASSWORD_SERVICE_URL = "studio.security.resetPassword.serviceUrl";
     String SECURITY_GLOBAL_ADMIN_GROUP = "studio.security.global.adminGroup";
+    String SECURITY_PERMISSIONS_DECISION_CACHE_SIZE = "studio.security.permissions.decisionCacheSize";
+    String SECURITY_USER_GROUPS_CACHE_TTL = "studio.security.userGroupsCache.ttl";
+    String SECURITY_USER_GROUPS_CACHE_MAX_USERS = "studio.security.userGroupsCache.maxUsers";
 
     /** LDAP */
     String SECURITY_LDAP_SERVER_URL = "studio.security.ldap.serverUrl";
@@ -148,6 +169,8 @@ public interface StudioConfiguration {
     /** Content Processors */
     String CONTENT_PROCESSOR_CONTENT_LIFE_CYCLE_SCRIPT_LOCATION = "studio.contentProcessor.contentLifeCycle.scriptLocation";
     String CONTENT_PROCESSOR_ASSETS_SYSTEM_PATH = "studio.contentProcessor.assetsSystemPath";
+    String CONTENT_PROCESSOR_SPOOL_MEMORY_THRESHOLD = "studio.contentProcessor.spool.memoryThreshold";
+    String CONTENT_PROCESSOR_SPOOL_DIRECTORY = "studio.contentProcessor.spool.directory";
 
     /** Email Service */
     String MAIL_FROM_DEFAULT = "studio.mail.from.default";
@@ -163,12 +186,14 @@ public interface StudioConfiguration {
     /** Jobs */
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_PROCESSING_CHUNK_SIZE = "studio.job.deployContentToEnvironment.processingChunkSize";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_MANDATORY_DEPENDENCIES_CHECK_ENABLED = "studio.job.deployContentToEnvironment.mandatoryDependenciesCheckEnabled";
+    String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS = "studio.job.deployContentToEnvironment.workers";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_DEFAULT = "studio.job.deployContentToEnvironment.status.message.default";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_IDLE = "studio.job.deployContentToEnvironment.status.message.idle";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_BUSY = "studio.job.deployContentToEnvironment.status.message.busy";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR = "studio.job.deployContentToEnvironment.status.message.stopped.error";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_USER = "studio.job.deployContentToEnvironment.status.message.stopped.user";
     String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STARTED_USER = "studio.job.deployContentToEnvironment.status.message.started.user";
+    String JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_UPDATE_INTERVAL = "studio.job.deployContentToEnvironment.status.updateInterval";
     String JOB_DEPLOYMENT_MASTER_PUBLISHING_NODE = "studio.job.deployment.masterPublishingNode";
     String JOB_SYNC_TARGETS_MAX_TOLERABLE_RETRIES = "studio.job.syncTargets.maxTolerableRetries";
 
@@ -186,6 +211,8 @@ public interface StudioConfiguration {
     String PREVIEW_TEMPLATE_NAME = "studio.preview.templateName";
     String PREVIEW_REPO_URL = "studio.preview.repoUrl";
     String PREVIEW_ENGINE_URL = "studio.preview.engineUrl";
+    String PREVIEW_SYNC_COALESCE_WINDOW = "studio.preview.sync.coalesceWindow";
+    String PREVIEW_SYNC_THREADS = "studio.preview.sync.threads";
 
     /** Preview Search **/
     String PREVIEW_SEARCH_CREATE_URL = "studio.preview.search.createUrl";
@@ -195,6 +222,7 @@ public interface StudioConfiguration {
     String PUBLISHING_MANAGER_INDEX_FILE = "studio.publishingManager.indexFile";
     String PUBLISHING_MANAGER_IMPORT_MODE_ENABLED  = "studio.publishingManager.importModeEnabled";
     String PUBLISHING_MANAGER_PUBLISHING_WITHOUT_DEPENDENCIES_ENABLED = "studio.publishingManager.publishingWithoutDependencies.enabled";
+    String PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE = "studio.publishingManager.bulkOperationsBatchSize";
 
     /** Studio Groovy Scripts **/
     String SCRIPTS_GROOVY_CLASSPATH = "studio.scripts.groovy.classpath";
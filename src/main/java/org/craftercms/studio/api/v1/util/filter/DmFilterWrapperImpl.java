@@ -22,6 +22,7 @@ import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
 import org.craftercms.studio.api.v1.to.ContentItemTO;
 import org.craftercms.studio.impl.v1.util.ContentUtils;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -82,10 +83,14 @@ public class DmFilterWrapperImpl implements DmFilterWrapper {
 
     protected List<String> getFilterPatterns(String site, String filterType) {
         if (CONTENT_TYPE_COMPONENT.equalsIgnoreCase(filterType)) {
-            List<String> toRet = servicesConfig.getComponentPatterns(site);
+            List<String> componentPatterns = servicesConfig.getComponentPatterns(site);
             List<String> levelConfig = servicesConfig.getLevelDescriptorPatterns(site);
-            if(levelConfig!=null)
-            	toRet.addAll(levelConfig);
+            if (componentPatterns == null || levelConfig == null) {
+                return componentPatterns;
+            }
+            // Patterns are shared by all callers, never add to them
+            List<String> toRet = new ArrayList<String>(componentPatterns);
+            toRet.addAll(levelConfig);
             return toRet;
         } else if (CONTENT_TYPE_ASSET.equalsIgnoreCase(filterType)) {
             return servicesConfig.getAssetPatterns(site);
@@ -18,6 +18,7 @@
 package org.craftercms.studio.impl.v1.content.pipeline;
 
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.studio.api.v1.constant.DmConstants;
 import org.craftercms.studio.api.v1.content.pipeline.PipelineContent;
@@ -166,9 +167,11 @@ public class AssetDmContentProcessor extends FormDmContentProcessor {
                 long sizeInBytes = 0;
                 double convertedSize = 0;
                 try {
-                    sizeInBytes = IOUtils.toByteArray(is).length;
+                    sizeInBytes = IOUtils.copyLarge(is, NullOutputStream.NULL_OUTPUT_STREAM);
                 } catch (Exception e) {
                     logger.error("Unable to determine size for content at site: " + site + " path " + contentPath);
+                } finally {
+                    ContentUtils.release(is);
                 }
                 if (sizeInBytes > 0) {
                     convertedSize = sizeInBytes / 1024d;
@@ -29,12 +29,11 @@ import org.craftercms.studio.api.v1.to.ContentAssetInfoTO;
 import org.craftercms.studio.api.v1.to.ResultTO;
 import org.craftercms.studio.impl.v1.util.ContentFormatUtils;
 import org.craftercms.studio.impl.v1.util.ContentUtils;
+import org.craftercms.studio.impl.v1.util.ImageUtils;
 
 import javax.activation.MimetypesFileTypeMap;
-import javax.swing.*;
-import java.awt.*;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.awt.Dimension;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -85,7 +84,8 @@ public class CheckImageSizeProcessor extends PathMatchProcessor {
     }
 
     /**
-     * check the width and the height of the given image as an inputstream match the width and the height specified
+     * check the width and the height of the given image as an inputstream match the width and the height specified.
+     * Only the header of the image is read, the stream is rewound and passed on unchanged.
      *
      * @param in
      * @param allowedWidth
@@ -95,31 +95,29 @@ public class CheckImageSizeProcessor extends PathMatchProcessor {
      * @return image as input stream
      */
     protected InputStream checkForImageSize(InputStream in, int allowedWidth, int allowedHeight, boolean lessSize, ContentAssetInfoTO assetInfo) throws ContentProcessException {
-        ByteArrayOutputStream byteOutput = null;
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        boolean passed = false;
         try {
-            byteOutput = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];//PORT CStudioWebScriptConstants.READ_BUFFER_LENGTH];
-            int read = 0;
-            while ((read = in.read(buffer)) > 0) {
-                byteOutput.write(buffer, 0, read);
-            }
-            byte [] imageData = byteOutput.toByteArray();
-            Image image = Toolkit.getDefaultToolkit().createImage(imageData);
-            ImageIcon icon = new ImageIcon(image);
-            int height = icon.getIconHeight();
-            int width = icon.getIconWidth();
+            in.mark(Integer.MAX_VALUE);
+            Dimension dimension = ImageUtils.getDimension(in);
+            in.reset();
+            int height = (dimension != null) ? dimension.height : -1;
+            int width = (dimension != null) ? dimension.width : -1;
             if (allowedHeight > 0 && allowedWidth > 0) {
                 validateImageSize(allowedWidth, allowedHeight, height, width, lessSize);
             }
             assetInfo.setHeight(height);
             assetInfo.setWidth(width);
-            return new ByteArrayInputStream(imageData);
+            passed = true;
+            return in;
         } catch (IOException e) {
             throw new ContentProcessException(e);
         } finally {
-            // close the original inputstream
-            ContentUtils.release(in);
-            ContentUtils.release(byteOutput);
+            if (!passed) {
+                ContentUtils.release(in);
+            }
         }
     }
 
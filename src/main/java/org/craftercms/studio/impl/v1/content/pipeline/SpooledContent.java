@@ -0,0 +1,228 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.content.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+
+/**
+ * Content of a pipeline run, kept in memory up to a threshold and in a temporary file above it. Streams opened on it
+ * support mark and reset, so processors can read the content again without copying it.
+ */
+public class SpooledContent implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(SpooledContent.class);
+
+    private static final int BUFFER_SIZE = 8192;
+
+    protected byte[] bytes;
+    protected int count;
+    protected Path file;
+    protected long size;
+
+    /**
+     * Read a stream fully, the stream is not closed
+     *
+     * @param in content
+     * @param memoryThreshold maximum number of bytes kept in memory
+     * @param directory directory of the temporary file, null for the default temporary directory
+     * @return spooled content
+     * @throws IOException if the content can't be read or written to the temporary file
+     */
+    public static SpooledContent spool(InputStream in, int memoryThreshold, File directory) throws IOException {
+        SpooledContent content = new SpooledContent();
+        try {
+            content.read(in, memoryThreshold, directory);
+        } catch (IOException | RuntimeException e) {
+            content.close();
+            throw e;
+        }
+        return content;
+    }
+
+    protected void read(InputStream in, int memoryThreshold, File directory) throws IOException {
+        bytes = new byte[Math.min(BUFFER_SIZE, Math.max(memoryThreshold, 1))];
+        int read;
+        while ((read = in.read(bytes, count, Math.min(bytes.length - count, BUFFER_SIZE))) != -1) {
+            count += read;
+            if (count == bytes.length) {
+                if (count >= memoryThreshold) {
+                    break;
+                }
+                bytes = Arrays.copyOf(bytes, Math.min(Math.max(count * 2, BUFFER_SIZE), memoryThreshold));
+            }
+        }
+        size = count;
+        if (read == -1) {
+            return;
+        }
+
+        // above the threshold, what is in memory goes first to the file, followed by the rest of the stream
+        file = directory != null ? Files.createTempFile(directory.toPath(), "studio-content-", ".tmp") :
+                Files.createTempFile("studio-content-", ".tmp");
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(bytes, 0, count);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                size += read;
+            }
+        }
+        bytes = null;
+        count = 0;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return true if the content was spooled to a temporary file
+     */
+    public boolean isSpooled() {
+        return file != null;
+    }
+
+    /**
+     * Open a stream on the content, supporting mark and reset
+     *
+     * @return content stream
+     * @throws IOException if the temporary file can't be opened
+     */
+    public InputStream openStream() throws IOException {
+        if (file == null) {
+            return new ByteArrayInputStream(bytes, 0, count);
+        }
+        return new FileContentInputStream(FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    @Override
+    public void close() {
+        bytes = null;
+        if (file != null) {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                logger.error("Failed to delete temporary content file " + file, e);
+            }
+            file = null;
+        }
+    }
+
+    /**
+     * Stream over a file channel, marks are positions of the channel so reset is a seek
+     */
+    protected static class FileContentInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private long position;
+        private long mark;
+
+        protected FileContentInputStream(FileChannel channel) {
+            this.channel = channel;
+            this.buffer.flip();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            position++;
+            return buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            position += read;
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = Math.max(0, Math.min(n, channel.size() - position));
+            seek(position + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(Integer.MAX_VALUE, channel.size() - position);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = position;
+        }
+
+        @Override
+        public synchronized void reset() throws IOException {
+            seek(mark);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+
+        private void seek(long newPosition) throws IOException {
+            channel.position(newPosition);
+            position = newPosition;
+            buffer.clear();
+            buffer.flip();
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            buffer.clear();
+            int read = channel.read(buffer);
+            buffer.flip();
+            return read > 0;
+        }
+    }
+}
@@ -36,6 +36,7 @@ import org.craftercms.studio.api.v1.ebus.PreviewEventContext;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.service.event.EventService;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.springframework.http.HttpStatus;
 
@@ -43,17 +44,36 @@ import java.io.IOException;
 import java.lang.reflect.Method;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.craftercms.studio.api.v1.ebus.EBusConstants.EVENT_PREVIEW_SYNC;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.*;
 
-public class PreviewDeployerImpl implements PreviewDeployer {
+public class PreviewDeployerImpl implements PreviewDeployer, MetricsSource {
 
     private final static Logger logger = LoggerFactory.getLogger(PreviewDeployerImpl.class);
 
     private final static String METHOD_PREVIEW_SYNC_LISTENER = "onPreviewSync";
 
     protected CloseableHttpClient httpClient;
+    protected ScheduledThreadPoolExecutor syncExecutor;
+    protected final Set<String> pendingSites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    protected final AtomicLong requests = new AtomicLong();
+    protected final AtomicLong sent = new AtomicLong();
+    protected final AtomicLong failures = new AtomicLong();
+    protected final AtomicLong totalLatency = new AtomicLong();
+    protected volatile long lastLatency;
+    protected volatile long maxLatency;
 
     public PreviewDeployerImpl() {
         RequestConfig requestConfig = RequestConfig.custom().setExpectContinueEnabled(true).build();
@@ -64,6 +84,16 @@ public class PreviewDeployerImpl implements PreviewDeployer {
     }
 
     public void subscribeToPreviewSyncEvents() {
+        syncExecutor = new ScheduledThreadPoolExecutor(getSyncThreads(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "studio-preview-sync-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
         try {
             Method subscribeMethod = PreviewDeployerImpl.class.getMethod(METHOD_PREVIEW_SYNC_LISTENER, PreviewEventContext.class);
             this.eventService.subscribe(EBusConstants.EVENT_PREVIEW_SYNC, beanName, subscribeMethod);
@@ -72,33 +102,95 @@ public class PreviewDeployerImpl implements PreviewDeployer {
         }
     }
 
+    public void shutdown() {
+        if (syncExecutor != null) {
+            syncExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Sync requests that don't wait for the deployment are coalesced per site: the first one schedules a sync request
+     * to the deployer after the coalesce window, the ones received until it is sent are covered by it. Requests that
+     * wait for the deployment are sent on the caller's thread and cover the pending sync of the site.
+     */
     @EventListener(EVENT_PREVIEW_SYNC)
     public void onPreviewSync(PreviewEventContext context) {
-        String site = context.getSite();
+        final String site = context.getSite();
+        requests.incrementAndGet();
+        long coalesceWindow = getSyncCoalesceWindow();
+        if (context.isWaitTillDeploymentIsDone() || coalesceWindow <= 0 || syncExecutor == null) {
+            // the deployer pulls all the changes of the site, the pending sync is not needed anymore
+            pendingSites.remove(site);
+            sendPreviewSync(site, context.isWaitTillDeploymentIsDone());
+        } else if (pendingSites.add(site)) {
+            try {
+                syncExecutor.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        // removed before sending, so changes made while it is sent get their own sync
+                        if (pendingSites.remove(site)) {
+                            sendPreviewSync(site, false);
+                        }
+                    }
+                }, coalesceWindow, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                pendingSites.remove(site);
+                sendPreviewSync(site, false);
+            }
+        }
+    }
+
+    protected void sendPreviewSync(String site, boolean waitTillDone) {
         String requestUrl = getDeployTargetUrl(site);
         HttpPost postRequest = new HttpPost(requestUrl);
 
-        if (context.isWaitTillDeploymentIsDone()) {
+        if (waitTillDone) {
             String requestBody = getDeployTargetRequestBody(true);
             HttpEntity requestEntity = new StringEntity(requestBody, ContentType.APPLICATION_JSON);
             postRequest.setEntity(requestEntity);
         }
 
         // TODO: DB: add all required params to post method
+        long start = System.currentTimeMillis();
         try {
             CloseableHttpResponse response = httpClient.execute(postRequest);
             HttpStatus httpStatus = HttpStatus.valueOf(response.getStatusLine().getStatusCode());
             if (!httpStatus.is2xxSuccessful()) {
+                failures.incrementAndGet();
                 logger.error("Preview sync request for site " + site + " returned status " + httpStatus + " (" +
                              httpStatus.getReasonPhrase() + ")");
             }
         } catch (IOException e) {
+            failures.incrementAndGet();
             logger.error("Error while sending preview sync request for site " + site, e);
         } finally {
             postRequest.releaseConnection();
+            long latency = System.currentTimeMillis() - start;
+            sent.incrementAndGet();
+            totalLatency.addAndGet(latency);
+            lastLatency = latency;
+            if (latency > maxLatency) {
+                maxLatency = latency;
+            }
         }
     }
 
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        long requestCount = requests.get();
+        long sentCount = sent.get();
+        metrics.put("requests", requestCount);
+        metrics.put("sent", sentCount);
+        metrics.put("coalescingRatio", sentCount > 0 ? (double) requestCount / sentCount : 0);
+        metrics.put("pendingSites", pendingSites.size());
+        metrics.put("failures", failures.get());
+        metrics.put("lastLatencyMs", lastLatency);
+        metrics.put("avgLatencyMs", sentCount > 0 ? totalLatency.get() / sentCount : 0);
+        metrics.put("maxLatencyMs", maxLatency);
+        return metrics;
+    }
+
     private String getDeployTargetUrl(String site) {
         // TODO: DB: implement deployer agent configuration for preview
         // TODO: SJ: Pseudo code: check if site configuration has a Preview Deployer URL, if so, return it, if not
@@ -194,6 +286,14 @@ public class PreviewDeployerImpl implements PreviewDeployer {
         return url;
     }
 
+    public long getSyncCoalesceWindow() {
+        return Long.parseLong(studioConfiguration.getProperty(PREVIEW_SYNC_COALESCE_WINDOW));
+    }
+
+    public int getSyncThreads() {
+        return Integer.parseInt(studioConfiguration.getProperty(PREVIEW_SYNC_THREADS));
+    }
+
     public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 
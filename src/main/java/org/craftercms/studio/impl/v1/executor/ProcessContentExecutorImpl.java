@@ -18,7 +18,6 @@
 
 package org.craftercms.studio.impl.v1.executor;
 
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
 import org.craftercms.studio.api.v1.constant.DmConstants;
@@ -31,14 +30,19 @@ import org.craftercms.studio.api.v1.content.pipeline.ContentProcessorPipeline;
 import org.craftercms.studio.api.v1.content.pipeline.PipelineContent;
 import org.craftercms.studio.api.v1.to.ResultTO;
 import org.craftercms.studio.impl.v1.content.pipeline.PipelineContentImpl;
+import org.craftercms.studio.impl.v1.content.pipeline.SpooledContent;
 import org.craftercms.studio.impl.v1.util.ContentUtils;
 import org.craftercms.studio.api.v1.service.security.SecurityService;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
 
-import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Map;
 
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONTENT_PROCESSOR_SPOOL_DIRECTORY;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONTENT_PROCESSOR_SPOOL_MEMORY_THRESHOLD;
+
 /**
  * @author Dejan Brkic
  */
@@ -56,26 +60,27 @@ public class ProcessContentExecutorImpl implements ProcessContentExecutor {
                     params.put(DmConstants.KEY_USER, user);
                 }
 
-                byte[] inputBytes= null;
+                SpooledContent spooledContent = null;
                 try {
                     if (input != null) {
-                        inputBytes = IOUtils.toByteArray(input);
+                        spooledContent = SpooledContent.spool(input, getSpoolMemoryThreshold(), getSpoolDirectory());
                     }
                 } catch (IOException e) {
-                    throw new ServiceException("Error while creating byte array",e);
+                    throw new ServiceException("Error while reading content", e);
                 }finally{
                     ContentUtils.release(input);
                 }
 
                 final ResultTO result = new ResultTO();
-                final byte[] inputBytesFinal = inputBytes;
 
-                InputStream newByteArrayStream=null;
+                InputStream contentStream=null;
                 try {
-                    newByteArrayStream = (inputBytesFinal != null) ? new ByteArrayInputStream(inputBytesFinal) : null;
-                    final PipelineContent content = new PipelineContentImpl(id, newByteArrayStream, isXml, null, StudioConstants.CONTENT_ENCODING, params);
+                    contentStream = (spooledContent != null) ? spooledContent.openStream() : null;
+                    final PipelineContent content = new PipelineContentImpl(id, contentStream, isXml, null, StudioConstants.CONTENT_ENCODING, params);
                     chain.processContent(content, result);
 
+                } catch (IOException e) {
+                    throw new ServiceException("Error while reading content", e);
                 } catch (ContentProcessException e) {
                     logger.error("Error in chain for write content", e);
                     throw e;
@@ -83,7 +88,10 @@ public class ProcessContentExecutorImpl implements ProcessContentExecutor {
                     logger.error("Error in chain for write content", e);
                     throw e;
                 }finally{
-                    ContentUtils.release(newByteArrayStream);
+                    ContentUtils.release(contentStream);
+                    if (spooledContent != null) {
+                        spooledContent.close();
+                    }
                 }
                 return result;
 
@@ -97,11 +105,24 @@ public class ProcessContentExecutorImpl implements ProcessContentExecutor {
         }
     }
 
+    public int getSpoolMemoryThreshold() {
+        return Integer.parseInt(studioConfiguration.getProperty(CONTENT_PROCESSOR_SPOOL_MEMORY_THRESHOLD));
+    }
+
+    public File getSpoolDirectory() {
+        String directory = studioConfiguration.getProperty(CONTENT_PROCESSOR_SPOOL_DIRECTORY);
+        return StringUtils.isEmpty(directory) ? null : new File(directory);
+    }
+
     protected Map<String, ContentProcessorPipeline> processorChains;
     protected SecurityService securityService;
+    protected StudioConfiguration studioConfiguration;
     public SecurityService getSecurityService() {return securityService; }
     public void setSecurityService(SecurityService securityService) { this.securityService = securityService; }
 
     public Map<String, ContentProcessorPipeline> getProcessorChains() { return processorChains; }
     public void setProcessorChains(Map<String, ContentProcessorPipeline> processorChains) { this.processorChains = processorChains; }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 }
@@ -34,12 +34,10 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import javax.servlet.ServletContext;
 
-import org.apache.commons.collections4.iterators.ReverseListIterator;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -52,6 +50,7 @@ import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
 import org.craftercms.studio.api.v1.repository.RepositoryItem;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentException;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
@@ -65,6 +64,7 @@ import org.eclipse.jgit.api.*;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.RefNotFoundException;
 import org.eclipse.jgit.diff.DiffEntry;
+import org.eclipse.jgit.diff.DiffFormatter;
 import org.eclipse.jgit.internal.storage.file.LockFile;
 import org.eclipse.jgit.lib.*;
 import org.eclipse.jgit.merge.MergeStrategy;
@@ -78,6 +78,8 @@ import org.eclipse.jgit.transport.FetchResult;
 import org.eclipse.jgit.treewalk.CanonicalTreeParser;
 import org.eclipse.jgit.treewalk.TreeWalk;
 import org.eclipse.jgit.treewalk.filter.PathFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.io.DisabledOutputStream;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.context.ServletContextAware;
 
@@ -96,8 +98,8 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     private static final Logger logger = LoggerFactory.getLogger(GitContentRepository.class);
     private GitContentRepositoryHelper helper = null;
-
-    private final static Map<String, ReentrantLock> repositoryLocks = new HashMap<String, ReentrantLock>();
+    private GitContentRepositoryCache cache = null;
+    private final GitContentRepositoryGroupCommit groupCommit = new GitContentRepositoryGroupCommit();
 
     private final static String IN_PROGRESS_BRANCH_NAME_SUFIX = "_in_progress";
 
@@ -108,24 +110,28 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                 .SANDBOX);
 
         try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
-                // Check if the array of items is not null, and since we have an absolute path to the item,
-                // pick the first item in the list
-                if (tw != null && tw.getObjectId(0) != null) {
-                    toReturn = true;
-                    tw.close();
-                } else if (tw == null) {
-                    String gitPath = helper.getGitPath(path);
-                    if (StringUtils.isEmpty(gitPath) || gitPath.equals(".")) {
-                        toReturn = true;
-                    }
-                }
-            } catch (IOException e) {
-                logger.info("Content not found for site: " + site + " path: " + path, e);
+            // The root folder always exists, any other path is looked up in the HEAD snapshot
+            toReturn = cache.lookup(repo, helper.getGitPath(path)) != null;
+        } catch (IOException e) {
+            logger.info("Content not found for site: " + site + " path: " + path, e);
+        }
+
+        return toReturn;
+    }
+
+    @Override
+    public String getContentObjectId(String site, String path) {
+        String toReturn = null;
+        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : GitRepositories
+                .SANDBOX);
+
+        try {
+            GitContentRepositoryCache.TreeEntry entry = cache.lookup(repo, helper.getGitPath(path));
+            if (entry != null) {
+                toReturn = entry.getObjectId().getName();
             }
         } catch (IOException e) {
-            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+            logger.info("Content not found for site: " + site + " path: " + path, e);
         }
 
         return toReturn;
@@ -138,21 +144,12 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                 .GLOBAL : GitRepositories.SANDBOX);
 
         try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
-                // Check if the array of items is not null, and since we have an absolute path to the item,
-                // pick the first item in the list
-                if (tw != null && tw.getObjectId(0) != null) {
-                    ObjectId id = tw.getObjectId(0);
-                    ObjectLoader objectLoader = repo.open(id);
-                    toReturn = objectLoader.openStream();
-                    tw.close();
-                }
-            } catch (IOException e) {
-                logger.error("Error while getting content for file at site: " + site + " path: " + path, e);
+            GitContentRepositoryCache.TreeEntry entry = cache.lookup(repo, helper.getGitPath(path));
+            if (entry != null && !entry.isFolder()) {
+                toReturn = cache.openBlob(repo, entry.getObjectId());
             }
         } catch (IOException e) {
-            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+            logger.error("Error while getting content for file at site: " + site + " path: " + path, e);
         }
 
         return toReturn;
@@ -163,19 +160,89 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         // Write content to git and commit it
         String commitId = null;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
-            Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                    GitRepositories.SANDBOX);
+        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
+                GitRepositories.SANDBOX);
+        boolean groupCommitEnabled = isGroupCommitEnabled();
+        boolean reserved = false;
+        if (groupCommitEnabled) {
+            // A previous write of the path still waiting in a group is committed before the file is overwritten
+            groupCommit.reservePath(site, path);
+            reserved = true;
+        }
 
-            if (repo != null) {
-                if (helper.writeFile(repo, site, path, content))
-                    commitId = helper.commitFile(repo, site, path, "Wrote content " + path, helper.getCurrentUserIdent());
-                else
-                    logger.error("Failed to write content site: " + site + " path: " + path);
-            } else {
-                logger.error("Missing repository during write for site: " + site + " path: " + path);
+        try {
+            boolean grouped = false;
+            // Writes of different paths are staged in parallel, only adding and committing is serialized
+            try (GitContentRepositoryLocks.HeldLock pathLock = locks.lockPath(site, helper.getGitPath(path))) {
+                if (repo != null) {
+                    if (!helper.writeFileContent(repo, site, path, content)) {
+                        logger.error("Failed to write content site: " + site + " path: " + path);
+                    } else if (groupCommitEnabled) {
+                        grouped = true;
+                    } else {
+                        try (GitContentRepositoryLocks.HeldLock commitLock = locks.lockCommit(site)) {
+                            if (helper.addFile(repo, site, path)) {
+                                commitId = helper.commitFile(repo, site, path, "Wrote content " + path,
+                                        helper.getCurrentUserIdent());
+                                cache.headUpdated(repo, commitId);
+                            } else {
+                                logger.error("Failed to write content site: " + site + " path: " + path);
+                            }
+                        }
+                    }
+                } else {
+                    logger.error("Missing repository during write for site: " + site + " path: " + path);
+                }
+            }
+
+            if (grouped) {
+                // Join the group without the path lock, waiting out the window must not hold up the writers of the
+                // same stripe or the operations that lock the whole repository
+                PersonIdent author = helper.getCurrentUserIdent();
+                long window = getGroupCommitWindow();
+                int maxItems = getGroupCommitMaxItems();
+                // the group releases the path once it is committed
+                reserved = false;
+                commitId = groupCommit.commit(site, path, author, window, maxItems,
+                        writes -> commitGroupedWrites(site, repo, writes));
+            }
+        } finally {
+            if (reserved) {
+                groupCommit.releasePath(site, path);
+            }
+        }
+
+        return commitId;
+    }
+
+    /**
+     * Add and commit the files of a group of writes in a single commit
+     */
+    private String commitGroupedWrites(String site, Repository repo,
+                                       List<GitContentRepositoryGroupCommit.GroupedWrite> writes) {
+        String commitId = null;
+
+        try (GitContentRepositoryLocks.HeldLock repositoryLock = locks.lockRepositoryShared(site);
+             GitContentRepositoryLocks.HeldLock commitLock = locks.lockCommit(site)) {
+            List<String> paths = new ArrayList<String>();
+            List<GitContentRepositoryGroupCommit.GroupedWrite> addedWrites =
+                    new ArrayList<GitContentRepositoryGroupCommit.GroupedWrite>();
+            for (GitContentRepositoryGroupCommit.GroupedWrite write : writes) {
+                if (helper.addFile(repo, site, write.getPath())) {
+                    write.setAdded();
+                    paths.add(write.getPath());
+                    addedWrites.add(write);
+                } else {
+                    logger.error("Failed to write content site: " + site + " path: " + write.getPath());
+                }
+            }
+            if (!paths.isEmpty()) {
+                commitId = helper.commitFiles(repo, site, paths,
+                        GitContentRepositoryGroupCommit.buildMessage(addedWrites), addedWrites.get(0).getAuthor());
+                cache.headUpdated(repo, commitId);
             }
         }
+        logger.debug("Committed a group of " + writes.size() + " writes for site: " + site + " commit ID: " + commitId);
 
         return commitId;
     }
@@ -186,7 +253,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         String commitId = null;
         boolean result;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock repositoryLock = locks.lockRepository(site)) {
             Path emptyFilePath = Paths.get(path, name, EMPTY_FILE);
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : GitRepositories.SANDBOX);
 
@@ -227,6 +294,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
             if (result) {
                 commitId = helper.commitFile(repo, site, emptyFilePath.toString(), "Created folder site: " + site +
                         " " + "path: " + path + FILE_SEPARATOR + name, helper.getCurrentUserIdent());
+                cache.headUpdated(repo, commitId);
             }
         }
 
@@ -237,7 +305,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public String deleteContent(String site, String path, String approver) {
         String commitId = null;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock repositoryLock = locks.lockRepository(site)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -254,6 +322,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
                 // TODO: SJ: we need to define messages in a string table of sorts
                 commitId = helper.commitFile(repo, site, pathToCommit, "Delete file " + path, StringUtils.isEmpty(approver) ? helper.getCurrentUserIdent() : helper.getAuthorIdent(approver));
+                cache.headUpdated(repo, commitId);
 
                 git.close();
             } catch (GitAPIException e) {
@@ -291,7 +360,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public Map<String, String> moveContent(String site, String fromPath, String toPath, String newName) {
         Map<String, String> toRet = new TreeMap<String, String>();
         String commitId;
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock repositoryLock = locks.lockRepository(site)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -353,6 +422,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                     commitId = commit.getName();
                     toRet.put(pathToCommit, commitId);
                 }
+                cache.invalidate(repo);
                 git.close();
             } catch (IOException | GitAPIException e) {
                 logger.error("Error while moving content for site: " + site + " fromPath: " + fromPath + " toPath: " + toPath + " newName: " + newName);
@@ -366,7 +436,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public String copyContent(String site, String fromPath, String toPath) {
         String commitId = null;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock repositoryLock = locks.lockRepository(site)) {
             Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                     GitRepositories.SANDBOX);
 
@@ -392,6 +462,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                         .setMessage("Copying " + fromPath + " to " + toPath)
                         .call();
                 commitId = commit.getName();
+                cache.headUpdated(repo, commitId);
 
                 git.close();
             } catch (IOException | GitAPIException e) {
@@ -411,78 +482,29 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
                 .GLOBAL : GitRepositories.SANDBOX);
 
         try {
-            RevTree tree = helper.getTreeForLastCommit(repo);
-            try (TreeWalk tw = TreeWalk.forPath(repo, helper.getGitPath(path), tree)) {
-
-                if (tw != null) {
-                    // Loop for all children and gather path of item excluding the item, file/folder name, and
-                    // whether or not it's a folder
-                    ObjectLoader loader = repo.open(tw.getObjectId(0));
-                    if (loader.getType() == Constants.OBJ_TREE) {
-                        int depth = tw.getDepth();
-                        tw.enterSubtree();
-                        while (tw.next()) {
-                            if (tw.getDepth() == depth + 1) {
-
-                                RepositoryItem item = new RepositoryItem();
-                                item.name = tw.getNameString();
-
-                                String visitFolderPath = FILE_SEPARATOR + tw.getPathString();
-                                loader = repo.open(tw.getObjectId(0));
-                                item.isFolder = loader.getType() == Constants.OBJ_TREE;
-                                int lastIdx = visitFolderPath.lastIndexOf(FILE_SEPARATOR + item.name);
-                                if (lastIdx > 0) {
-                                    item.path = visitFolderPath.substring(0, lastIdx);
-                                }
-
-                                if (!ArrayUtils.contains(IGNORE_FILES, item.name)) {
-                                    retItems.add(item);
-                                }
-                            }
+            String gitPath = helper.getGitPath(path);
+            GitContentRepositoryCache.TreeEntry folder = cache.lookup(repo, gitPath);
+
+            if (folder != null) {
+                if (folder.isFolder()) {
+                    // Gather path of item excluding the item, file/folder name, and whether or not it's a folder
+                    String parentPath = StringUtils.isEmpty(gitPath) || gitPath.equals(".") ? StringUtils.EMPTY :
+                            FILE_SEPARATOR + gitPath;
+                    for (GitContentRepositoryCache.TreeEntry child : cache.getChildren(repo, folder)) {
+                        if (!ArrayUtils.contains(IGNORE_FILES, child.getName())) {
+                            RepositoryItem item = new RepositoryItem();
+                            item.name = child.getName();
+                            item.isFolder = child.isFolder();
+                            item.path = parentPath;
+                            retItems.add(item);
                         }
-                        tw.close();
-                    } else {
-                        logger.error("Error getChildren invoked for a file for site: " + site + " path: " + path);
                     }
                 } else {
-                    String gitPath = helper.getGitPath(path);
-                    if (StringUtils.isEmpty(gitPath) || gitPath.equals(".")) {
-                        try (TreeWalk treeWalk = new TreeWalk(repo)) {
-                            treeWalk.addTree(tree);
-
-                            while (treeWalk.next()) {
-
-                                ObjectLoader loader = repo.open(treeWalk.getObjectId(0));
-
-                                RepositoryItem item = new RepositoryItem();
-                                item.name = treeWalk.getNameString();
-
-                                String visitFolderPath = FILE_SEPARATOR + treeWalk.getPathString();
-                                loader = repo.open(treeWalk.getObjectId(0));
-                                item.isFolder = loader.getType() == Constants.OBJ_TREE;
-                                int lastIdx = visitFolderPath.lastIndexOf(FILE_SEPARATOR + item.name);
-                                if (lastIdx > 0) {
-                                    item.path = visitFolderPath.substring(0, lastIdx);
-                                } else {
-                                    item.path = StringUtils.EMPTY;
-                                }
-
-                                if (!ArrayUtils.contains(IGNORE_FILES, item.name)) {
-                                    retItems.add(item);
-                                }
-                            }
-
-                        } catch (IOException e) {
-                            logger.error("Error while getting children for site: " + site + " path: " + path, e);
-                        }
-
-                    }
+                    logger.error("Error getChildren invoked for a file for site: " + site + " path: " + path);
                 }
-            } catch (IOException e) {
-                logger.error("Error while getting children for site: " + site + " path: " + path, e);
             }
         } catch (IOException e) {
-            logger.error("Failed to create RevTree for site: " + site + " path: " + path, e);
+            logger.error("Error while getting children for site: " + site + " path: " + path, e);
         }
 
         RepositoryItem[] items = new RepositoryItem[retItems.size()];
@@ -494,33 +516,31 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public VersionTO[] getContentVersionHistory(String site, String path) {
         List<VersionTO> versionHistory = new ArrayList<VersionTO>();
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
-            Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                    GitRepositories.SANDBOX);
-
-            try {
-                ObjectId head = repo.resolve(Constants.HEAD);
-                String gitPath = helper.getGitPath(path);
-                try (Git git = new Git(repo)) {
-                    Iterable<RevCommit> commits = git.log().add(head).addPath(gitPath).call();
-                    Iterator<RevCommit> iterator = commits.iterator();
-                    while (iterator.hasNext()) {
-                        RevCommit revCommit = iterator.next();
-                        VersionTO versionTO = new VersionTO();
-                        versionTO.setVersionNumber(revCommit.getName());
-                        versionTO.setLastModifier(revCommit.getAuthorIdent().getName());
-                        versionTO.setLastModifiedDate(Instant.ofEpochSecond(revCommit.getCommitTime()).atZone(ZoneOffset.UTC));
-                        versionTO.setComment(revCommit.getFullMessage());
-                        versionHistory.add(versionTO);
-                    }
+        Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
+                GitRepositories.SANDBOX);
 
-                    git.close();
-                } catch (IOException e) {
-                    logger.error("error while getting history for content item " + path);
+        try {
+            ObjectId head = repo.resolve(Constants.HEAD);
+            String gitPath = helper.getGitPath(path);
+            try (Git git = new Git(repo)) {
+                Iterable<RevCommit> commits = git.log().add(head).addPath(gitPath).call();
+                Iterator<RevCommit> iterator = commits.iterator();
+                while (iterator.hasNext()) {
+                    RevCommit revCommit = iterator.next();
+                    VersionTO versionTO = new VersionTO();
+                    versionTO.setVersionNumber(revCommit.getName());
+                    versionTO.setLastModifier(revCommit.getAuthorIdent().getName());
+                    versionTO.setLastModifiedDate(Instant.ofEpochSecond(revCommit.getCommitTime()).atZone(ZoneOffset.UTC));
+                    versionTO.setComment(revCommit.getFullMessage());
+                    versionHistory.add(versionTO);
                 }
-            } catch (IOException | GitAPIException e) {
-                logger.error("Failed to create Git repo for site: " + site + " path: " + path, e);
+
+                git.close();
+            } catch (IOException e) {
+                logger.error("error while getting history for content item " + path);
             }
+        } catch (IOException | GitAPIException e) {
+            logger.error("Failed to create Git repo for site: " + site + " path: " + path, e);
         }
 
         VersionTO[] toRet = new VersionTO[versionHistory.size()];
@@ -539,35 +559,50 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         // TODO: SJ: Redesign/refactor the whole approach in 3.1+
         String toReturn = StringUtils.EMPTY;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : PUBLISHED)) {
-            if (majorVersion) {
-                Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
-                        GitRepositories.PUBLISHED);
-                // Tag the repository with a date-time based version label
-                String gitPath = helper.getGitPath(path);
+        if (majorVersion) {
+            if (StringUtils.isEmpty(site)) {
+                // The global repository has no published repository, tag it under the same locks as its writes
+                try (GitContentRepositoryLocks.HeldLock pathLock = locks.lockPath(site, helper.getGitPath(path));
+                     GitContentRepositoryLocks.HeldLock commitLock = locks.lockCommit(site)) {
+                    toReturn = tagVersion(helper.getRepository(site, GitRepositories.GLOBAL), site, path, comment);
+                }
+            } else {
+                Repository repo = helper.getRepository(site, GitRepositories.PUBLISHED);
+                synchronized (repo) {
+                    toReturn = tagVersion(repo, site, path, comment);
+                }
+            }
+        } else {
+            logger.info("request to create minor revision ignored for site: " + site + " path: " + path);
+        }
+
+        return toReturn;
+    }
 
-                try (Git git = new Git(repo)) {
-                    PersonIdent currentUserIdent = helper.getCurrentUserIdent();
-                    DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HHmmssX");
-                    Calendar cal = Calendar.getInstance();
-                    String versionLabel = dateFormat.format(cal.getTime());
+    /**
+     * Tag the repository with a date-time based version label
+     */
+    private String tagVersion(Repository repo, String site, String path, String comment) {
+        String toReturn = StringUtils.EMPTY;
 
-                    TagCommand tagCommand = git.tag()
-                            .setName(versionLabel)
-                            .setMessage(comment)
-                            .setTagger(currentUserIdent);
+        try (Git git = new Git(repo)) {
+            PersonIdent currentUserIdent = helper.getCurrentUserIdent();
+            DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HHmmssX");
+            Calendar cal = Calendar.getInstance();
+            String versionLabel = dateFormat.format(cal.getTime());
 
-                    tagCommand.call();
+            TagCommand tagCommand = git.tag()
+                    .setName(versionLabel)
+                    .setMessage(comment)
+                    .setTagger(currentUserIdent);
 
-                    toReturn = versionLabel;
+            tagCommand.call();
 
-                    git.close();
-                } catch (GitAPIException err) {
-                    logger.error("error creating new version for site:  " + site + " path: " + path, err);
-                }
-            } else {
-                logger.info("request to create minor revision ignored for site: " + site + " path: " + path);
-            }
+            toReturn = versionLabel;
+
+            git.close();
+        } catch (GitAPIException err) {
+            logger.error("error creating new version for site:  " + site + " path: " + path, err);
         }
 
         return toReturn;
@@ -621,7 +656,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                 SANDBOX);
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock pathLock = locks.lockPath(site, helper.getGitPath(path))) {
             try (TreeWalk tw = new TreeWalk(repo)) {
                 RevTree tree = helper.getTreeForLastCommit(repo);
                 tw.addTree(tree); // tree ‘0’
@@ -680,7 +715,7 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         Repository repo = helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL :
                 SANDBOX);
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock pathLock = locks.lockPath(site, helper.getGitPath(path))) {
             try (TreeWalk tw = new TreeWalk(repo)) {
                 RevTree tree = helper.getTreeForLastCommit(repo);
                 tw.addTree(tree); // tree ‘0’
@@ -740,6 +775,10 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public void bootstrap() throws Exception {
         // Initialize the helper
         helper = new GitContentRepositoryHelper(studioConfiguration, securityProvider);
+        cache = new GitContentRepositoryCache(
+                Integer.parseInt(studioConfiguration.getProperty(REPO_CACHE_MAX_TREES)),
+                Integer.parseInt(studioConfiguration.getProperty(REPO_CACHE_BLOB_MAX_SIZE)),
+                Long.parseLong(studioConfiguration.getProperty(REPO_CACHE_BLOBS_MAX_TOTAL_SIZE)));
 
         if (Boolean.parseBoolean(studioConfiguration.getProperty(BOOTSTRAP_REPO))) {
             if (helper.createGlobalRepo()) {
@@ -811,9 +850,11 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public boolean deleteSite(String site) {
         boolean toReturn;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
+        try (GitContentRepositoryLocks.HeldLock repositoryLock = locks.lockRepository(site)) {
             synchronized (helper.getRepository(site, GitRepositories.PUBLISHED)) {
+                cache.invalidate(helper.getRepository(site, SANDBOX));
                 toReturn = helper.deleteSiteGitRepo(site);
+                locks.remove(site);
             }
         }
 
@@ -870,132 +911,112 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     @Override
     public void publish(String site, List<DeploymentItemTO> deploymentItems, String environment, String author, String comment) throws DeploymentException {
+        // The environment commit is built straight in the object database: only the trees on the path of the
+        // deployed items are rewritten and the working tree of the published repository is never touched
         Repository repo = helper.getRepository(site, GitRepositories.PUBLISHED);
         String commitId = StringUtils.EMPTY;
-        String path = StringUtils.EMPTY;
         synchronized (helper.getRepository(site, GitRepositories.PUBLISHED)) {
-            try (Git git = new Git(repo)) {
-
-                String inProgressBranchName = environment + IN_PROGRESS_BRANCH_NAME_SUFIX;
+            try (Git git = new Git(repo);
+                 ObjectReader reader = repo.newObjectReader();
+                 ObjectInserter inserter = repo.newObjectInserter();
+                 RevWalk rw = new RevWalk(reader)) {
 
                 // fetch "origin/master"
                 logger.debug("Fetch from sandbox for site " + site);
-                FetchResult fetchResult = git.fetch().call();
+                git.fetch().call();
 
-                // checkout master and pull from sandbox
-                logger.debug("Checkout published/master branch for site " + site);
-                try {
-                    // First delete it in case it already exists (ignored if does not exist)
-                    String currentBranch = repo.getBranch();
-                    if (currentBranch.endsWith(IN_PROGRESS_BRANCH_NAME_SUFIX)) {
-                        git.reset().setMode(ResetCommand.ResetType.HARD).call();
-                    }
+                detachPublishedHead(git);
+                deleteInProgressBranch(git, site, environment);
 
-                    Ref checkoutMasterResult = git.checkout().setName(Constants.MASTER).call();
-
-                    logger.debug("Delete in-progress branch, in case it was not cleaned up for site " + site);
-                    git.branchDelete().setBranchNames(inProgressBranchName).setForce(true).call();
-
-                    PullResult pullResult = git.pull().setRemote(Constants.DEFAULT_REMOTE_NAME).setRemoteBranchName(Constants.MASTER).setStrategy(MergeStrategy.THEIRS).call();
-                } catch (RefNotFoundException e) {
-                    logger.error("Failed to checkout published master and to pull content from sandbox for site " + site, e);
+                // update master from sandbox
+                logger.debug("Update published/master branch from sandbox for site " + site);
+                Ref originMaster = repo.exactRef(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + FILE_SEPARATOR +
+                        Constants.MASTER);
+                if (originMaster == null) {
+                    logger.error("Failed to find sandbox master in published repository for site " + site);
                     throw new DeploymentException("Failed to checkout published master and to pull content from sandbox for site " + site);
                 }
+                ObjectId masterId = updatePublishedMaster(repo, inserter, rw, originMaster.getObjectId());
 
-                // checkout environment branch
-                logger.debug("Checkout environment branch " + environment + " for site " + site);
-                boolean newBranch = false;
-                try {
-                    Ref checkoutResult = git.checkout()
-                            .setName(environment)
-                            .call();
-                } catch (RefNotFoundException e) {
+                // environment branch
+                Ref environmentRef = repo.exactRef(Constants.R_HEADS + environment);
+                if (environmentRef == null) {
+                    // new branch, nothing else to do, it gets everything from master
                     logger.info("Not able to find branch " + environment + " for site " + site + ". Creating new branch");
-                    // checkout environment branch
-                    newBranch = true;
-                    Ref checkoutResult = git.checkout().setCreateBranch(true).setForce(true).setStartPoint("master")
-                            .setUpstreamMode(CreateBranchCommand.SetupUpstreamMode.TRACK)
-                            .setName(environment)
-                            .call();
+                    updatePublishedRef(repo, Constants.R_HEADS + environment, ObjectId.zeroId(), masterId,
+                            "branch: Created from " + Constants.MASTER);
+                    trackPublishedMaster(repo, environment);
+                    checkoutPublishedBranch(git, site, environment);
+                    return;
                 }
 
-                // check if it is new branch
-                // if true nothing to do, already pulled everything
-                // otherwise do cherry-picking
-                if (!newBranch) {
-                    // cherry pick all commit ids
-
-                    // Create in progress branch
-                    try {
-
-                        // Create in progress branch
-                        logger.debug("Create in-progress branch for site " + site);
-                        Ref checkoutResult = git.checkout()
-                                .setCreateBranch(true)
-                                .setForce(true)
-                                .setStartPoint(environment)
-                                .setUpstreamMode(CreateBranchCommand.SetupUpstreamMode.TRACK)
-                                .setName(inProgressBranchName)
-                                .call();
-                    } catch (GitAPIException e) {
-                        // TODO: DB: Error ?
-                        logger.error("Failed to create in-progress published branch for site " + site);
-                    }
-
-                    Set<String> deployedCommits = new HashSet<String>();
-                    for (DeploymentItemTO deploymentItem : deploymentItems) {
-                        commitId = deploymentItem.getCommitId();
-                        path = helper.getGitPath(deploymentItem.getPath());
-                        logger.debug("Checking out file " + path + " from commit id " + commitId + " for site " + site);
-
-                        ObjectId objCommitId = repo.resolve(commitId);
-                        RevWalk rw = new RevWalk(repo);
-                        RevCommit rc = rw.parseCommit(objCommitId);
-
-                        Ref result = git.checkout().setStartPoint(commitId).addPath(path).call();
-                        deployedCommits.add(commitId);
+                // Apply the deployed items over the environment tree
+                Map<String, PublishedEntry> publishedEntries = new LinkedHashMap<String, PublishedEntry>();
+                Set<String> deployedCommits = new LinkedHashSet<String>();
+                for (DeploymentItemTO deploymentItem : deploymentItems) {
+                    commitId = deploymentItem.getCommitId();
+                    String path = helper.getGitPath(deploymentItem.getPath());
+                    logger.debug("Publishing file " + path + " from commit id " + commitId + " for site " + site);
+
+                    RevCommit sourceCommit = rw.parseCommit(repo.resolve(commitId));
+                    try (TreeWalk tw = TreeWalk.forPath(reader, path, sourceCommit.getTree())) {
+                        // Items missing in their commit were deleted, they are removed from the environment
+                        publishedEntries.put(path, tw == null ? null : new PublishedEntry(tw.getFileMode(0),
+                                tw.getObjectId(0)));
                     }
+                    deployedCommits.add(commitId);
+                }
 
-                    // commit all deployed files
-                    String commitMessage = studioConfiguration.getProperty(REPO_PUBLISHED_COMMIT_MESSAGE);
-                    PersonIdent authorIdent = helper.getAuthorIdent(author);
-                    git.add().addFilepattern(GIT_COMMIT_ALL_ITEMS).call();
-
-                    commitMessage = commitMessage.replace("{username}", author);
-                    commitMessage = commitMessage.replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")));
-                    commitMessage = commitMessage.replace("{source}", "UI");
-                    commitMessage = commitMessage.replace("{message}", comment);
-                    StringBuilder sb = new StringBuilder();
-                    for (String c : deployedCommits) {
-                        sb.append(c).append(" ");
-                    }
-                    commitMessage = commitMessage.replace("{commit_id}", sb.toString().trim());
-                    RevCommit revCommit = git.commit().setMessage(commitMessage).setAuthor(authorIdent).call();
-                    int commitTime = revCommit.getCommitTime();
-
-                    // tag
-                    ZonedDateTime tagDate2 = Instant.ofEpochSecond(commitTime).atZone(ZoneOffset.UTC);
-                    ZonedDateTime publishDate = ZonedDateTime.now(ZoneOffset.UTC);
-                    String tagName2 = tagDate2.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")) + "_published_on_" + publishDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX"));
-                    PersonIdent authorIdent2 = helper.getAuthorIdent(author);
-                    Ref tagResult2 = git.tag().setTagger(authorIdent2).setName(tagName2).setMessage(commitMessage).call();
-
-                    // checkout environment
-                    logger.debug("Checkout environment " + environment + " branch for site " + site);
-                    Ref checkoutResult = git.checkout()
-                            .setName(environment)
-                            .call();
+                RevCommit environmentCommit = rw.parseCommit(environmentRef.getObjectId());
+                ObjectId treeId = updatePublishedTree(reader, inserter, environmentCommit.getTree(), publishedEntries);
+                if (treeId == null) {
+                    treeId = inserter.insert(new TreeFormatter());
+                }
 
-                    Ref branchRef = repo.findRef(inProgressBranchName);
+                // commit all deployed files
+                String commitMessage = studioConfiguration.getProperty(REPO_PUBLISHED_COMMIT_MESSAGE);
+                PersonIdent authorIdent = helper.getAuthorIdent(author);
+                PersonIdent committerIdent = new PersonIdent(repo);
+
+                commitMessage = commitMessage.replace("{username}", author);
+                commitMessage = commitMessage.replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")));
+                commitMessage = commitMessage.replace("{source}", "UI");
+                commitMessage = commitMessage.replace("{message}", comment);
+                StringBuilder sb = new StringBuilder();
+                for (String c : deployedCommits) {
+                    sb.append(c).append(" ");
+                }
+                commitMessage = commitMessage.replace("{commit_id}", sb.toString().trim());
 
-                    // merge in-progress branch
-                    logger.debug("Merge in-progress branch into environment " + environment + " for site " + site);
-                    git.merge().setCommit(true).include(branchRef).call();
+                CommitBuilder commitBuilder = new CommitBuilder();
+                commitBuilder.setTreeId(treeId);
+                commitBuilder.setParentId(environmentCommit);
+                commitBuilder.setAuthor(authorIdent);
+                commitBuilder.setCommitter(committerIdent);
+                commitBuilder.setMessage(commitMessage);
+                ObjectId newCommitId = inserter.insert(commitBuilder);
 
-                    // clean up
-                    logger.debug("Delete in-progress branch (clean up) for site " + site);
-                    git.branchDelete().setBranchNames(inProgressBranchName).setForce(true).call();
-                }
+                // tag
+                ZonedDateTime tagDate2 = committerIdent.getWhen().toInstant().atZone(ZoneOffset.UTC);
+                ZonedDateTime publishDate = ZonedDateTime.now(ZoneOffset.UTC);
+                String tagName2 = tagDate2.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX")) + "_published_on_" + publishDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HHmmssSSSX"));
+                TagBuilder tagBuilder = new TagBuilder();
+                tagBuilder.setObjectId(newCommitId, Constants.OBJ_COMMIT);
+                tagBuilder.setTag(tagName2);
+                tagBuilder.setTagger(helper.getAuthorIdent(author));
+                tagBuilder.setMessage(commitMessage);
+                ObjectId tagId = inserter.insert(tagBuilder);
+                inserter.flush();
+
+                // move the environment branch, it fails if the branch moved since it was read
+                logger.debug("Update environment " + environment + " branch for site " + site);
+                updatePublishedRef(repo, Constants.R_HEADS + environment, environmentCommit, newCommitId,
+                        "commit: " + commitBuilder.getMessage());
+                updatePublishedRef(repo, Constants.R_TAGS + tagName2, ObjectId.zeroId(), tagId, "tag: " + tagName2);
+
+                checkoutPublishedBranch(git, site, environment);
+            } catch (DeploymentException e) {
+                throw e;
             } catch (Exception e) {
                 logger.error("Error when publishing site " + site + " to environment " + environment, e);
                 throw new DeploymentException("Error when publishing site " + site + " to environment " + environment + " [commit ID = " + commitId + "]");
@@ -1004,125 +1025,325 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
 
     }
 
-    @Override
-    public List<RepoOperationTO> getOperations(String site, String commitIdFrom, String commitIdTo) {
-        List<RepoOperationTO> operations = new ArrayList<>();
+    /**
+     * Entry of a tree of the published repository
+     */
+    private static final class PublishedEntry {
+        private final FileMode mode;
+        private final ObjectId objectId;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
-            try {
-                // Get the sandbox repo, and then get a reference to the commitId we received and another for head
-                boolean fromEmptyRepo = StringUtils.isEmpty(commitIdFrom);
-                String firstCommitId = getRepoFirstCommitId(site);
-                if (fromEmptyRepo) {
-                    commitIdFrom = firstCommitId;
-                }
-                Repository repo = helper.getRepository(site, SANDBOX);
-                ObjectId objCommitIdFrom = repo.resolve(commitIdFrom);
-                ObjectId objCommitIdTo = repo.resolve(commitIdTo);
-
-                ObjectId objFirstCommitId = repo.resolve(firstCommitId);
-                boolean initialEqToCommit = StringUtils.equals(firstCommitId, commitIdTo);
-                boolean initialEqFromCommit = StringUtils.equals(firstCommitId, commitIdFrom);
-
-                try (Git git = new Git(repo)) {
-
-                    if (fromEmptyRepo) {
-                        try (RevWalk walk = new RevWalk(repo)) {
-                            RevCommit firstCommit = walk.parseCommit(objFirstCommitId);
-                            RevTree firstCommitTree = helper.getTreeForCommit(repo, firstCommit.getName());
-                            try (ObjectReader reader = repo.newObjectReader()) {
-                                CanonicalTreeParser firstCommitTreeParser = new CanonicalTreeParser();
-                                firstCommitTreeParser.reset();//reset(reader, firstCommitTree.getId());
-                                // Diff the two commit Ids
-                                List<DiffEntry> diffEntries = git.diff().setOldTree(firstCommitTreeParser).setNewTree(null).call();
-
-
-                                // Now that we have a diff, let's itemize the file changes, pack them into a TO
-                                // and add them to the list of RepoOperations to return to the caller
-                                // also include date/time of commit by taking number of seconds and multiply by 1000 and
-                                // convert to java date before sending over
-                                operations.addAll(processDiffEntry(diffEntries, firstCommit.getId(), firstCommit.getCommitterIdent().getName(), Instant.ofEpochSecond(firstCommit.getCommitTime()).atZone(ZoneOffset.UTC)));
-                            }
-                        }
-                    }
+        PublishedEntry(FileMode mode, ObjectId objectId) {
+            this.mode = mode;
+            this.objectId = objectId.copy();
+        }
+    }
 
-                    // If the commitIdFrom is the same as commitIdTo, there is nothing to calculate, otherwise, let's do it
-                    if (!objCommitIdFrom.equals(objCommitIdTo)) {
-                        // Compare HEAD with commitId we're given
-                        // Get list of commits between commitId and HEAD in chronological order
+    /**
+     * Make sure no branch is checked out in the published repository while branches are moved without touching the
+     * working tree, HEAD is detached at the commit the working tree matches to keep both consistent.
+     */
+    private void detachPublishedHead(Git git) throws IOException, GitAPIException {
+        Repository repo = git.getRepository();
+        Ref head = repo.exactRef(Constants.HEAD);
+        if (head == null || !head.isSymbolic() || head.getObjectId() == null) {
+            return;
+        }
+        if (head.getTarget().getName().endsWith(IN_PROGRESS_BRANCH_NAME_SUFIX)) {
+            // left over by a previous publishing that failed half way
+            git.reset().setMode(ResetCommand.ResetType.HARD).call();
+        }
+        RefUpdate detach = repo.updateRef(Constants.HEAD, true);
+        detach.setNewObjectId(head.getObjectId());
+        detach.forceUpdate();
+    }
 
-                        // Get the log of all the commits between commitId and head
-                        Iterable<RevCommit> commits = git.log().addRange(objCommitIdFrom, objCommitIdTo).call();
+    /**
+     * Check the environment branch out once it was moved, only the files that changed since the commit HEAD was
+     * detached at are written to the working tree
+     */
+    private void checkoutPublishedBranch(Git git, String site, String environment) throws GitAPIException {
+        logger.debug("Checkout environment " + environment + " branch for site " + site);
+        git.checkout().setName(environment).call();
+    }
 
-                        // Loop through through the commits and diff one from the next util head
-                        ObjectId prevCommitId = objCommitIdFrom;
-                        ObjectId nextCommitId = objCommitIdFrom;
-                        String author = StringUtils.EMPTY;
+    /**
+     * Set up a new environment branch to track master, same as creating it in TRACK mode from master
+     */
+    private void trackPublishedMaster(Repository repo, String environment) throws IOException {
+        StoredConfig config = repo.getConfig();
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, environment, ConfigConstants.CONFIG_KEY_REMOTE, ".");
+        config.setString(ConfigConstants.CONFIG_BRANCH_SECTION, environment, ConfigConstants.CONFIG_KEY_MERGE,
+                Constants.R_HEADS + Constants.MASTER);
+        config.save();
+    }
 
-                        // Reverse orders of commits
-                        // TODO: DB: try to find better algorithm
-                        Iterator<RevCommit> iterator = commits.iterator();
-                        List<RevCommit> revCommits = new ArrayList<RevCommit>();
-                        while (iterator.hasNext()) {
+    private void deleteInProgressBranch(Git git, String site, String environment) throws GitAPIException {
+        logger.debug("Delete in-progress branch, in case it was not cleaned up for site " + site);
+        git.branchDelete().setBranchNames(environment + IN_PROGRESS_BRANCH_NAME_SUFIX).setForce(true).call();
+    }
 
-                            RevCommit commit = iterator.next();
-                            revCommits.add(commit);
-                        }
+    /**
+     * Bring published master up to date with sandbox master, sandbox wins on conflicts
+     *
+     * @return id of the master commit
+     */
+    private ObjectId updatePublishedMaster(Repository repo, ObjectInserter inserter, RevWalk rw, ObjectId originId)
+            throws IOException {
+        Ref master = repo.exactRef(Constants.R_HEADS + Constants.MASTER);
+        if (master == null) {
+            updatePublishedRef(repo, Constants.R_HEADS + Constants.MASTER, ObjectId.zeroId(), originId,
+                    "branch: Created from " + Constants.DEFAULT_REMOTE_NAME);
+            return originId;
+        }
 
-                        ReverseListIterator<RevCommit> reverseIterator = new ReverseListIterator<RevCommit>(revCommits);
-                        while (reverseIterator.hasNext()) {
+        RevCommit masterCommit = rw.parseCommit(master.getObjectId());
+        RevCommit originCommit = rw.parseCommit(originId);
+        if (rw.isMergedInto(originCommit, masterCommit)) {
+            return masterCommit;
+        }
+        ObjectId newMasterId = originCommit;
+        if (!rw.isMergedInto(masterCommit, originCommit)) {
+            // Diverged, same result as merging with the "theirs" strategy
+            CommitBuilder commitBuilder = new CommitBuilder();
+            commitBuilder.setTreeId(originCommit.getTree());
+            commitBuilder.setParentIds(masterCommit, originCommit);
+            PersonIdent committerIdent = new PersonIdent(repo);
+            commitBuilder.setAuthor(committerIdent);
+            commitBuilder.setCommitter(committerIdent);
+            commitBuilder.setMessage("Merge remote-tracking branch '" + Constants.DEFAULT_REMOTE_NAME + FILE_SEPARATOR +
+                    Constants.MASTER + "'");
+            newMasterId = inserter.insert(commitBuilder);
+            inserter.flush();
+        }
+        updatePublishedRef(repo, Constants.R_HEADS + Constants.MASTER, masterCommit, newMasterId,
+                "pull: Merge made by theirs");
+        return newMasterId;
+    }
 
-                            RevCommit commit = reverseIterator.next();
-                            nextCommitId = commit.getId();
-                            author = commit.getCommitterIdent().getName();
+    private void updatePublishedRef(Repository repo, String refName, ObjectId expectedId, ObjectId newId,
+                                    String message) throws IOException {
+        RefUpdate refUpdate = repo.updateRef(refName);
+        refUpdate.setExpectedOldObjectId(expectedId);
+        refUpdate.setNewObjectId(newId);
+        refUpdate.setForceUpdate(true);
+        refUpdate.setRefLogMessage(message, false);
+        RefUpdate.Result result = refUpdate.update();
+        switch (result) {
+            case NEW:
+            case FAST_FORWARD:
+            case FORCED:
+            case NO_CHANGE:
+                break;
+            default:
+                throw new IOException("Failed to update " + refName + " to " + newId.name() + ": " + result);
+        }
+    }
 
-                            RevTree prevTree = helper.getTreeForCommit(repo, prevCommitId.getName());
-                            RevTree nextTree = helper.getTreeForCommit(repo, nextCommitId.getName());
+    /**
+     * Write a new version of a tree with the given entries replaced, only the subtrees holding those entries are
+     * read and written again
+     *
+     * @param treeId tree to update, null if it doesn't exist yet
+     * @param entries entries by path relative to the tree, null to remove the entry
+     * @return id of the new tree, null if it ended up empty
+     */
+    private ObjectId updatePublishedTree(ObjectReader reader, ObjectInserter inserter, ObjectId treeId,
+                                         Map<String, PublishedEntry> entries) throws IOException {
+        Map<String, PublishedEntry> children = new HashMap<String, PublishedEntry>();
+        if (treeId != null) {
+            for (CanonicalTreeParser parser = new CanonicalTreeParser(null, reader, treeId); !parser.eof();
+                 parser.next(1)) {
+                children.put(parser.getEntryPathString(), new PublishedEntry(parser.getEntryFileMode(),
+                        parser.getEntryObjectId()));
+            }
+        }
 
-                            try (ObjectReader reader = repo.newObjectReader()) {
-                                CanonicalTreeParser prevCommitTreeParser = new CanonicalTreeParser();
-                                CanonicalTreeParser nextCommitTreeParser = new CanonicalTreeParser();
-                                prevCommitTreeParser.reset(reader, prevTree.getId());
-                                nextCommitTreeParser.reset(reader, nextTree.getId());
+        // Whole entries first, then the changes inside of subtrees on top of them
+        Map<String, Map<String, PublishedEntry>> subtreeEntries = new HashMap<String, Map<String, PublishedEntry>>();
+        for (Map.Entry<String, PublishedEntry> entry : entries.entrySet()) {
+            String path = entry.getKey();
+            int separator = path.indexOf(FILE_SEPARATOR);
+            if (separator < 0) {
+                if (entry.getValue() == null) {
+                    children.remove(path);
+                } else {
+                    children.put(path, entry.getValue());
+                }
+                subtreeEntries.remove(path);
+            } else {
+                String name = path.substring(0, separator);
+                Map<String, PublishedEntry> nested = subtreeEntries.get(name);
+                if (nested == null) {
+                    nested = new LinkedHashMap<String, PublishedEntry>();
+                    subtreeEntries.put(name, nested);
+                }
+                nested.put(path.substring(separator + 1), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, PublishedEntry>> entry : subtreeEntries.entrySet()) {
+            PublishedEntry subtree = children.get(entry.getKey());
+            ObjectId subtreeId = updatePublishedTree(reader, inserter,
+                    subtree != null && FileMode.TREE.equals(subtree.mode) ? subtree.objectId : null,
+                    entry.getValue());
+            if (subtreeId == null) {
+                children.remove(entry.getKey());
+            } else {
+                children.put(entry.getKey(), new PublishedEntry(FileMode.TREE, subtreeId));
+            }
+        }
 
-                                // Diff the two commit Ids
-                                List<DiffEntry> diffEntries = git.diff().setOldTree(prevCommitTreeParser).setNewTree(nextCommitTreeParser).call();
+        if (children.isEmpty()) {
+            return null;
+        }
+        List<String> names = new ArrayList<String>(children.keySet());
+        Collections.sort(names, (name1, name2) -> compareTreeEntries(name1, children.get(name1), name2,
+                children.get(name2)));
+        TreeFormatter formatter = new TreeFormatter();
+        for (String name : names) {
+            PublishedEntry child = children.get(name);
+            formatter.append(name, child.mode, child.objectId);
+        }
+        return inserter.insert(formatter);
+    }
 
+    /**
+     * Git sorts the entries of a tree by name, names of subtrees are compared as if they ended with a slash
+     */
+    private static int compareTreeEntries(String name1, PublishedEntry entry1, String name2, PublishedEntry entry2) {
+        byte[] bytes1 = Constants.encode(FileMode.TREE.equals(entry1.mode) ? name1 + FILE_SEPARATOR : name1);
+        byte[] bytes2 = Constants.encode(FileMode.TREE.equals(entry2.mode) ? name2 + FILE_SEPARATOR : name2);
+        for (int i = 0; i < bytes1.length && i < bytes2.length; i++) {
+            int diff = (bytes1[i] & 0xff) - (bytes2[i] & 0xff);
+            if (diff != 0) {
+                return diff;
+            }
+        }
+        return bytes1.length - bytes2.length;
+    }
 
-                                // Now that we have a diff, let's itemize the file changes, pack them into a TO
-                                // and add them to the list of RepoOperations to return to the caller
-                                // also include date/time of commit by taking number of seconds and multiply by 1000 and
-                                // convert to java date before sending over
-                                operations.addAll(processDiffEntry(diffEntries, nextCommitId, author, Instant.ofEpochSecond(commit.getCommitTime()).atZone(ZoneOffset.UTC)));
-                                prevCommitId = nextCommitId;
-                            }
-                        }
+    @Override
+    public List<RepoOperationTO> getOperations(String site, String commitIdFrom, String commitIdTo) {
+        List<RepoOperationTO> operations = new ArrayList<>();
+
+        try (RepoOperationIterator iterator = iterateOperations(site, commitIdFrom, commitIdTo)) {
+            while (iterator.hasNext()) {
+                operations.add(iterator.next());
+            }
+        }
+
+        return operations;
+    }
+
+    @Override
+    public RepoOperationIterator iterateOperations(String site, String commitIdFrom, String commitIdTo) {
+        // Git objects are immutable, the walk is read only and doesn't need to hold the repository lock
+        Repository repo = helper.getRepository(site, SANDBOX);
+        GitRepoOperationIterator iterator = new GitRepoOperationIterator(repo);
+        try {
+            ObjectId objCommitIdTo = repo.resolve(commitIdTo);
+            if (StringUtils.isEmpty(commitIdFrom)) {
+                // From the empty repo, the first commit is diffed against the empty tree
+                iterator.init(null, objCommitIdTo);
+            } else {
+                iterator.init(repo.resolve(commitIdFrom), objCommitIdTo);
+            }
+        } catch (IOException e) {
+            logger.error("Error getting operations for site " + site + " from commit ID: " + commitIdFrom
+                    + " to commit ID: " + commitIdTo, e);
+            iterator.close();
+            iterator = new GitRepoOperationIterator(repo);
+        }
+        return iterator;
+    }
+
+    /**
+     * Walks a range of commits in chronological order with a single RevWalk and ObjectReader and diffs the tree of
+     * every commit against the tree of the previous one. Renames are detected and unchanged subtrees are skipped.
+     */
+    private class GitRepoOperationIterator implements RepoOperationIterator {
+
+        private final ObjectReader reader;
+        private final DiffFormatter diffFormatter;
+        private RevWalk revWalk;
+        private ObjectId prevTreeId;
+        private final Deque<RepoOperationTO> pending = new ArrayDeque<RepoOperationTO>();
+
+        GitRepoOperationIterator(Repository repo) {
+            this.reader = repo.newObjectReader();
+            this.diffFormatter = new DiffFormatter(DisabledOutputStream.INSTANCE);
+            this.diffFormatter.setReader(reader, repo.getConfig());
+            this.diffFormatter.setDetectRenames(true);
+            this.diffFormatter.setPathFilter(IGNORE_FILES_FILTER);
+        }
+
+        void init(ObjectId from, ObjectId to) throws IOException {
+            if (to == null || to.equals(from)) {
+                return;
+            }
+            revWalk = new RevWalk(reader);
+            revWalk.sort(RevSort.TOPO);
+            revWalk.sort(RevSort.REVERSE, true);
+            revWalk.markStart(revWalk.parseCommit(to));
+            if (from != null) {
+                RevCommit fromCommit = revWalk.parseCommit(from);
+                revWalk.markUninteresting(fromCommit);
+                prevTreeId = fromCommit.getTree().getId();
+            }
+        }
 
+        @Override
+        public boolean hasNext() {
+            while (pending.isEmpty() && revWalk != null) {
+                try {
+                    RevCommit commit = revWalk.next();
+                    if (commit == null) {
+                        close();
+                    } else {
+                        ObjectId nextTreeId = commit.getTree().getId();
+                        List<DiffEntry> diffEntries = diffFormatter.scan(prevTreeId, nextTreeId);
+                        // Pack the file changes of the commit into TOs, commit time is converted from seconds
+                        pending.addAll(processDiffEntry(diffEntries, commit.getId(),
+                                commit.getCommitterIdent().getName(),
+                                Instant.ofEpochSecond(commit.getCommitTime()).atZone(ZoneOffset.UTC)));
+                        prevTreeId = nextTreeId;
                     }
-                } catch (GitAPIException e) {
-                    logger.error("Error getting operations for site " + site + " from commit ID: " + commitIdFrom
-                            + " to commit ID: " + commitIdTo, e);
+                } catch (IOException e) {
+                    logger.error("Error getting operations, stopping at tree " + prevTreeId, e);
+                    close();
                 }
-            } catch (IOException e) {
-                logger.error("Error getting operations for site " + site + " from commit ID: " + commitIdFrom + " to commit ID: " + commitIdTo, e);
             }
+            return !pending.isEmpty();
         }
 
-        return operations;
+        @Override
+        public RepoOperationTO next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return pending.poll();
+        }
+
+        @Override
+        public void close() {
+            if (revWalk != null) {
+                revWalk.close();
+                revWalk = null;
+            }
+            diffFormatter.close();
+            reader.close();
+        }
     }
 
     @Override
     public String getRepoLastCommitId(final String site) {
         String toReturn = StringUtils.EMPTY;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
-            Repository repo = helper.getRepository(site, SANDBOX);
-            try {
-                ObjectId commitId = repo.resolve(Constants.HEAD);
-                toReturn = commitId.getName();
-            } catch (IOException e) {
-                logger.error("Error getting last commit ID for site " + site, e);
-            }
+        Repository repo = helper.getRepository(site, SANDBOX);
+        try {
+            ObjectId commitId = repo.resolve(Constants.HEAD);
+            toReturn = commitId.getName();
+        } catch (IOException e) {
+            logger.error("Error getting last commit ID for site " + site, e);
         }
 
         return toReturn;
@@ -1132,24 +1353,42 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public String getRepoFirstCommitId(final String site) {
         String toReturn = StringUtils.EMPTY;
 
-        synchronized (helper.getRepository(site, StringUtils.isEmpty(site) ? GitRepositories.GLOBAL : SANDBOX)) {
-            Repository repo = helper.getRepository(site, SANDBOX);
-            try (RevWalk rw = new RevWalk(repo)) {
-                ObjectId head = repo.resolve(Constants.HEAD);
-                RevCommit root = rw.parseCommit(head);
-                rw.sort(RevSort.REVERSE);
-                rw.markStart(root);
-                ObjectId first = rw.next();
-                toReturn = first.getName();
-                logger.debug("getRepoFirstCommitId for site: " + site + " First commit ID: " + toReturn);
-            } catch (IOException e) {
-                logger.error("Error getting first commit ID for site " + site, e);
-            }
+        Repository repo = helper.getRepository(site, SANDBOX);
+        try (RevWalk rw = new RevWalk(repo)) {
+            ObjectId head = repo.resolve(Constants.HEAD);
+            RevCommit root = rw.parseCommit(head);
+            rw.sort(RevSort.REVERSE);
+            rw.markStart(root);
+            ObjectId first = rw.next();
+            toReturn = first.getName();
+            logger.debug("getRepoFirstCommitId for site: " + site + " First commit ID: " + toReturn);
+        } catch (IOException e) {
+            logger.error("Error getting first commit ID for site " + site, e);
         }
 
         return toReturn;
     }
 
+    /**
+     * Skips the files ignored by Studio, folders are always walked
+     */
+    private static final TreeFilter IGNORE_FILES_FILTER = new TreeFilter() {
+        @Override
+        public boolean include(TreeWalk walker) {
+            return walker.isSubtree() || !ArrayUtils.contains(IGNORE_FILES, walker.getNameString());
+        }
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+    };
+
     private List<RepoOperationTO> processDiffEntry(List<DiffEntry> diffEntries, ObjectId commitId, String author, ZonedDateTime commitTime) {
         List<RepoOperationTO> toReturn = new ArrayList<RepoOperationTO>();
 
@@ -1261,6 +1500,18 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         return toRet;
     }
 
+    @Override
+    public Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths) {
+        Map<String, ZonedDateTime> toRet = new HashMap<String, ZonedDateTime>();
+        for (String path : paths) {
+            ZonedDateTime lastDeploymentDate = getLastDeploymentDate(site, path);
+            if (lastDeploymentDate != null) {
+                toRet.put(path, lastDeploymentDate);
+            }
+        }
+        return toRet;
+    }
+
     @Override
     public String getLastPublishedCommitId(String site, String environment, String path) {
         String toRet = null;
@@ -1292,47 +1543,45 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
     public List<String> getEditCommitIds(String site, String path, String commitIdFrom, String commitIdTo) {
         List<String> commitIds = new ArrayList<String>();
 
-        synchronized (helper.getRepository(site, SANDBOX)) {
-            try {
-                // Get the sandbox repo, and then get a reference to the commitId we received and another for head
-                Repository repo = helper.getRepository(site, SANDBOX);
-                if (StringUtils.isEmpty(commitIdFrom)) {
-                    commitIdFrom = getRepoFirstCommitId(site);
-                }
-                if (StringUtils.isEmpty(commitIdTo)) {
-                    commitIdTo = getRepoLastCommitId(site);
-                }
-                ObjectId objCommitIdFrom = repo.resolve(commitIdFrom);
-                ObjectId objCommitIdTo = repo.resolve(commitIdTo);
+        try {
+            // Get the sandbox repo, and then get a reference to the commitId we received and another for head
+            Repository repo = helper.getRepository(site, SANDBOX);
+            if (StringUtils.isEmpty(commitIdFrom)) {
+                commitIdFrom = getRepoFirstCommitId(site);
+            }
+            if (StringUtils.isEmpty(commitIdTo)) {
+                commitIdTo = getRepoLastCommitId(site);
+            }
+            ObjectId objCommitIdFrom = repo.resolve(commitIdFrom);
+            ObjectId objCommitIdTo = repo.resolve(commitIdTo);
 
-                try (Git git = new Git(repo)) {
+            try (Git git = new Git(repo)) {
 
-                    // If the commitIdFrom is the same as commitIdTo, there is nothing to calculate, otherwise, let's do it
-                    if (!objCommitIdFrom.equals(objCommitIdTo)) {
-                        // Compare HEAD with commitId we're given
-                        // Get list of commits between commitId and HEAD in chronological order
+                // If the commitIdFrom is the same as commitIdTo, there is nothing to calculate, otherwise, let's do it
+                if (!objCommitIdFrom.equals(objCommitIdTo)) {
+                    // Compare HEAD with commitId we're given
+                    // Get list of commits between commitId and HEAD in chronological order
 
-                        // Get the log of all the commits between commitId and head
-                        Iterable<RevCommit> commits = git.log()
-                                .addPath(helper.getGitPath(path))
-                                .addRange(objCommitIdFrom, objCommitIdTo)
-                                .call();
+                    // Get the log of all the commits between commitId and head
+                    Iterable<RevCommit> commits = git.log()
+                            .addPath(helper.getGitPath(path))
+                            .addRange(objCommitIdFrom, objCommitIdTo)
+                            .call();
 
-                        // Reverse orders of commits
-                        Iterator<RevCommit> iterator = commits.iterator();
-                        while (iterator.hasNext()) {
+                    // Reverse orders of commits
+                    Iterator<RevCommit> iterator = commits.iterator();
+                    while (iterator.hasNext()) {
 
-                            RevCommit commit = iterator.next();
-                            commitIds.add(0, commit.getId().getName());
-                        }
+                        RevCommit commit = iterator.next();
+                        commitIds.add(0, commit.getId().getName());
                     }
-                } catch (GitAPIException e) {
-                    logger.error("Error getting commit ids for site " + site + " and path " + path + " from commit ID: " + commitIdFrom
-                            + " to commit ID: " + commitIdTo, e);
                 }
-            } catch (IOException e) {
-                logger.error("Error getting operations for site " + site + " and path " + path + " from commit ID: " + commitIdFrom + " to commit ID: " + commitIdTo, e);
+            } catch (GitAPIException e) {
+                logger.error("Error getting commit ids for site " + site + " and path " + path + " from commit ID: " + commitIdFrom
+                        + " to commit ID: " + commitIdTo, e);
             }
+        } catch (IOException e) {
+            logger.error("Error getting operations for site " + site + " and path " + path + " from commit ID: " + commitIdFrom + " to commit ID: " + commitIdTo, e);
         }
 
         return commitIds;
@@ -1369,7 +1618,12 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         params.put("siteId", siteId);
         params.put("commitId", commitId);
         params.put("processed", processed);
-        gitLogMapper.insertGitLog(params);
+        if (isGroupCommitEnabled()) {
+            // Every write of a group records the shared commit, the first one wins
+            gitLogMapper.insertGitLogIfAbsent(params);
+        } else {
+            gitLogMapper.insertGitLog(params);
+        }
     }
 
     @Override
@@ -1397,9 +1651,30 @@ public class GitContentRepository implements ContentRepository, ServletContextAw
         this.studioConfiguration = studioConfiguration;
     }
 
+    public boolean isGroupCommitEnabled() {
+        return Boolean.parseBoolean(studioConfiguration.getProperty(REPO_GROUP_COMMIT_ENABLED));
+    }
+
+    public long getGroupCommitWindow() {
+        return Long.parseLong(studioConfiguration.getProperty(REPO_GROUP_COMMIT_WINDOW));
+    }
+
+    public int getGroupCommitMaxItems() {
+        return Integer.parseInt(studioConfiguration.getProperty(REPO_GROUP_COMMIT_MAX_ITEMS));
+    }
+
+    public GitContentRepositoryLocks getLocks() {
+        return locks;
+    }
+
+    public void setLocks(final GitContentRepositoryLocks locks) {
+        this.locks = locks;
+    }
+
     ServletContext ctx;
     SecurityProvider securityProvider;
     StudioConfiguration studioConfiguration;
+    GitContentRepositoryLocks locks;
 
     @Autowired
     GitLogMapper gitLogMapper;
@@ -0,0 +1,279 @@
+/*
+ * Crafter Studio
+ *
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.TreeWalk;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+
+/**
+ * In-memory index of the trees and small blobs of the repositories, keyed by the HEAD commit of every repository.
+ *
+ * Tree listings are cached by tree id and blobs by blob id. Git objects are immutable and content addressed, so a
+ * cached entry never goes stale; a new commit only swaps the HEAD snapshot of the repository, and every subtree that
+ * did not change between commits is still served from the cache.
+ */
+public class GitContentRepositoryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitContentRepositoryCache.class);
+
+    /**
+     * Entry of a tree listing, a file or a folder
+     */
+    public static final class TreeEntry {
+        private final String name;
+        private final ObjectId objectId;
+        private final boolean folder;
+
+        TreeEntry(String name, ObjectId objectId, boolean folder) {
+            this.name = name;
+            this.objectId = objectId;
+            this.folder = folder;
+        }
+
+        public String getName() { return name; }
+        public ObjectId getObjectId() { return objectId; }
+        public boolean isFolder() { return folder; }
+    }
+
+    /**
+     * Snapshot of the HEAD of a repository
+     */
+    private static final class Head {
+        private final ObjectId commitId;
+        private final TreeEntry root;
+
+        Head(ObjectId commitId, ObjectId treeId) {
+            this.commitId = commitId;
+            this.root = new TreeEntry(StringUtils.EMPTY, treeId, true);
+        }
+    }
+
+    /**
+     * Listing of a tree, in tree order and indexed by name
+     */
+    private static final class Tree {
+        private final List<TreeEntry> entries;
+        private final Map<String, TreeEntry> entriesByName;
+
+        Tree(List<TreeEntry> entries) {
+            Map<String, TreeEntry> entriesByName = new HashMap<String, TreeEntry>(entries.size() * 4 / 3 + 1);
+            for (TreeEntry entry : entries) {
+                entriesByName.put(entry.getName(), entry);
+            }
+            this.entries = Collections.unmodifiableList(entries);
+            this.entriesByName = entriesByName;
+        }
+    }
+
+    private final Map<Repository, Head> heads = new ConcurrentHashMap<Repository, Head>();
+    private final Map<ObjectId, Tree> trees;
+    private final Map<ObjectId, byte[]> blobs;
+    private final int blobMaxSize;
+    private final long blobsMaxTotalSize;
+    private long blobsTotalSize = 0;
+
+    GitContentRepositoryCache(final int maxTrees, int blobMaxSize, long blobsMaxTotalSize) {
+        this.blobMaxSize = blobMaxSize;
+        this.blobsMaxTotalSize = blobsMaxTotalSize;
+        this.trees = Collections.synchronizedMap(new LinkedHashMap<ObjectId, Tree>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, Tree> eldest) {
+                return size() > maxTrees;
+            }
+        });
+        this.blobs = new LinkedHashMap<ObjectId, byte[]>(16, 0.75f, true);
+    }
+
+    /**
+     * Get the root folder of the repository as of its current HEAD commit
+     *
+     * @param repo repository
+     * @return root folder entry or null if the repository has no commits
+     * @throws IOException
+     */
+    public TreeEntry getRoot(Repository repo) throws IOException {
+        Ref headRef = repo.exactRef(Constants.HEAD);
+        ObjectId headId = headRef == null ? null : headRef.getObjectId();
+        if (headId == null) {
+            return null;
+        }
+
+        Head head = heads.get(repo);
+        if (head == null || !head.commitId.equals(headId)) {
+            // HEAD moved outside of Studio (e.g. git push), swap the snapshot
+            head = buildHead(repo, headId);
+            heads.put(repo, head);
+        }
+        return head.root;
+    }
+
+    /**
+     * Swap the HEAD snapshot of the repository after a new commit was written
+     *
+     * @param repo repository
+     * @param commitId id of the new HEAD commit
+     */
+    public void headUpdated(Repository repo, String commitId) {
+        if (StringUtils.isEmpty(commitId)) {
+            return;
+        }
+        try {
+            heads.put(repo, buildHead(repo, ObjectId.fromString(commitId)));
+        } catch (IOException | IllegalArgumentException e) {
+            logger.debug("Unable to update HEAD snapshot to commit " + commitId + ", it will be resolved lazily");
+            heads.remove(repo);
+        }
+    }
+
+    /**
+     * Forget the HEAD snapshot of the repository
+     *
+     * @param repo repository
+     */
+    public void invalidate(Repository repo) {
+        heads.remove(repo);
+    }
+
+    /**
+     * Find an entry by path as of the current HEAD commit
+     *
+     * @param repo repository
+     * @param gitPath git path of the entry (as returned by {@link GitContentRepositoryHelper#getGitPath(String)})
+     * @return entry or null if not found
+     * @throws IOException
+     */
+    public TreeEntry lookup(Repository repo, String gitPath) throws IOException {
+        TreeEntry entry = getRoot(repo);
+        if (entry == null || StringUtils.isEmpty(gitPath) || gitPath.equals(".")) {
+            return entry;
+        }
+
+        for (String name : StringUtils.split(gitPath, FILE_SEPARATOR)) {
+            if (!entry.isFolder()) {
+                return null;
+            }
+            TreeEntry child = getTree(repo, entry).entriesByName.get(name);
+            if (child == null) {
+                return null;
+            }
+            entry = child;
+        }
+        return entry;
+    }
+
+    /**
+     * Get the immediate children of a folder
+     *
+     * @param repo repository
+     * @param folder folder entry
+     * @return immutable list of children
+     * @throws IOException
+     */
+    public List<TreeEntry> getChildren(Repository repo, TreeEntry folder) throws IOException {
+        return getTree(repo, folder).entries;
+    }
+
+    /**
+     * Open a blob, serving small blobs from memory
+     *
+     * @param repo repository
+     * @param blobId blob id
+     * @return content stream
+     * @throws IOException
+     */
+    public InputStream openBlob(Repository repo, ObjectId blobId) throws IOException {
+        byte[] bytes;
+        synchronized (blobs) {
+            bytes = blobs.get(blobId);
+        }
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+
+        ObjectLoader loader = repo.open(blobId, Constants.OBJ_BLOB);
+        if (loader.getSize() > blobMaxSize) {
+            return loader.openStream();
+        }
+
+        bytes = loader.getBytes();
+        synchronized (blobs) {
+            if (blobs.put(blobId, bytes) == null) {
+                blobsTotalSize += bytes.length;
+            }
+            Iterator<byte[]> iterator = blobs.values().iterator();
+            while (blobsTotalSize > blobsMaxTotalSize && iterator.hasNext()) {
+                blobsTotalSize -= iterator.next().length;
+                iterator.remove();
+            }
+        }
+        return new ByteArrayInputStream(bytes);
+    }
+
+    private Tree getTree(Repository repo, TreeEntry folder) throws IOException {
+        Tree tree = trees.get(folder.getObjectId());
+        if (tree == null) {
+            List<TreeEntry> children = new ArrayList<TreeEntry>();
+            try (TreeWalk tw = new TreeWalk(repo)) {
+                tw.addTree(folder.getObjectId());
+                tw.setRecursive(false);
+                while (tw.next()) {
+                    children.add(new TreeEntry(tw.getNameString(), tw.getObjectId(0),
+                            FileMode.TREE.equals(tw.getFileMode(0))));
+                }
+            }
+            tree = new Tree(children);
+            trees.put(folder.getObjectId(), tree);
+        }
+        return tree;
+    }
+
+    private Head buildHead(Repository repo, ObjectId commitId) throws IOException {
+        try (ObjectReader reader = repo.newObjectReader(); RevWalk revWalk = new RevWalk(reader)) {
+            RevCommit commit = revWalk.parseCommit(commitId);
+            return new Head(commit.getId().copy(), commit.getTree().getId().copy());
+        }
+    }
+}
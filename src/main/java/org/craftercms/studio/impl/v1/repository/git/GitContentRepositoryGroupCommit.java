@@ -0,0 +1,309 @@
+/*
+ * Crafter Studio
+ *
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.eclipse.jgit.lib.PersonIdent;
+
+/**
+ * Folds the writes of a site that arrive within a short window into a single commit.
+ *
+ * The first write of a window leads the group: it waits for the window to elapse (or the group to fill up), then
+ * commits the files of every write of the group at once. The other writes only wait for the leader, and every write
+ * of the group whose file the committer added gets the id of the shared commit. Writes join a group without holding
+ * any repository lock, the committer takes the locks it needs to add and commit the files.
+ *
+ * A group never holds two writes of the same path, the committer adds the file as it is in the working tree so the
+ * first version would be lost. Writers reserve the path before writing the file: a writer of a path that is still
+ * waiting to be committed closes the group of that path and waits for its commit. A write of a path the open group
+ * already holds that was not reserved starts a new group.
+ */
+public class GitContentRepositoryGroupCommit {
+
+    private static final Logger logger = LoggerFactory.getLogger(GitContentRepositoryGroupCommit.class);
+
+    public static final String CONTENT_AUTHOR_TRAILER = "Content-Author: ";
+
+    /**
+     * Write waiting to be committed
+     */
+    public static final class GroupedWrite {
+        private final String path;
+        private final PersonIdent author;
+        private boolean added = false;
+
+        GroupedWrite(String path, PersonIdent author) {
+            this.path = path;
+            this.author = author;
+        }
+
+        public String getPath() { return path; }
+        public PersonIdent getAuthor() { return author; }
+
+        /**
+         * Mark the file of the write as added to the commit of the group
+         */
+        public void setAdded() { added = true; }
+    }
+
+    private static final class Group {
+        private final List<GroupedWrite> writes = new ArrayList<GroupedWrite>();
+        private boolean full = false;
+        private boolean done = false;
+        private String commitId;
+        // group closed because it held the path of the first write, committed first
+        private Group previous;
+    }
+
+    private final Map<String, Group> openGroups = new HashMap<String, Group>();
+    private final Map<String, Set<String>> pendingPaths = new HashMap<String, Set<String>>();
+
+    /**
+     * Reserve a path before writing its file, waits until the previous write of the path is committed
+     *
+     * @param site site id, empty for the global repository
+     * @param path path of the file
+     */
+    public void reservePath(String site, String path) {
+        String key = StringUtils.defaultString(site);
+        boolean interrupted = false;
+        synchronized (openGroups) {
+            while (pendingPaths.containsKey(key) && pendingPaths.get(key).contains(path)) {
+                Group group = openGroups.get(key);
+                if (group != null && containsPath(group, path)) {
+                    // Commit it right away instead of waiting out the window
+                    closeGroup(key, group);
+                }
+                try {
+                    openGroups.wait();
+                } catch (InterruptedException e) {
+                    // The previous write is committed anyway, wait for it
+                    interrupted = true;
+                }
+            }
+            Set<String> paths = pendingPaths.get(key);
+            if (paths == null) {
+                paths = new HashSet<String>();
+                pendingPaths.put(key, paths);
+            }
+            paths.add(path);
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Release a reserved path whose write is not going to be committed in a group
+     *
+     * @param site site id, empty for the global repository
+     * @param path path of the file
+     */
+    public void releasePath(String site, String path) {
+        releasePaths(StringUtils.defaultString(site), Collections.singletonList(path));
+    }
+
+    private void releasePaths(String key, List<String> paths) {
+        synchronized (openGroups) {
+            Set<String> reserved = pendingPaths.get(key);
+            if (reserved != null) {
+                reserved.removeAll(paths);
+                if (reserved.isEmpty()) {
+                    pendingPaths.remove(key);
+                }
+            }
+            openGroups.notifyAll();
+        }
+    }
+
+    /**
+     * Must be called holding the lock of the open groups
+     */
+    private void closeGroup(String key, Group group) {
+        openGroups.remove(key);
+        synchronized (group) {
+            group.full = true;
+            group.notifyAll();
+        }
+    }
+
+    private static boolean containsPath(Group group, String path) {
+        synchronized (group) {
+            for (GroupedWrite write : group.writes) {
+                if (write.getPath().equals(path)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Commit a file that was already written to the working tree together with the other writes of the window, the
+     * path reserved for the write is released once it is committed
+     *
+     * @param site site id, empty for the global repository
+     * @param path path of the file
+     * @param author author of the write
+     * @param window time in milliseconds the group stays open
+     * @param maxItems maximum number of writes of a group
+     * @param committer commits the files of the writes of a group, marks the writes it added and returns the commit id
+     *                  or null if it failed
+     * @return id of the shared commit or null if it failed or the file of the write was not added
+     */
+    public String commit(String site, String path, PersonIdent author, long window, int maxItems,
+                         Function<List<GroupedWrite>, String> committer) {
+        String key = StringUtils.defaultString(site);
+        GroupedWrite write = new GroupedWrite(path, author);
+        Group group;
+        boolean leader;
+        synchronized (openGroups) {
+            group = openGroups.get(key);
+            Group previous = null;
+            if (group != null && containsPath(group, path)) {
+                // The file would be committed once with the content of the last write, start a new group instead
+                closeGroup(key, group);
+                previous = group;
+                group = null;
+            }
+            leader = group == null;
+            if (leader) {
+                group = new Group();
+                group.previous = previous;
+                openGroups.put(key, group);
+            }
+            synchronized (group) {
+                group.writes.add(write);
+                if (group.writes.size() >= maxItems) {
+                    // Full, next write starts a new group
+                    openGroups.remove(key);
+                    group.full = true;
+                    group.notifyAll();
+                }
+            }
+            // A writer waiting for the path can close the group now
+            openGroups.notifyAll();
+        }
+
+        boolean interrupted = false;
+        if (leader) {
+            long deadline = System.currentTimeMillis() + window;
+            synchronized (group) {
+                long remaining = window;
+                while (!group.full && remaining > 0) {
+                    try {
+                        group.wait(remaining);
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                        break;
+                    }
+                    remaining = deadline - System.currentTimeMillis();
+                }
+            }
+            if (group.previous != null) {
+                synchronized (group.previous) {
+                    while (!group.previous.done) {
+                        try {
+                            group.previous.wait();
+                        } catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                }
+                group.previous = null;
+            }
+            List<GroupedWrite> writes;
+            synchronized (openGroups) {
+                if (openGroups.get(key) == group) {
+                    openGroups.remove(key);
+                }
+                synchronized (group) {
+                    writes = Collections.unmodifiableList(new ArrayList<GroupedWrite>(group.writes));
+                }
+            }
+
+            String commitId = null;
+            try {
+                commitId = committer.apply(writes);
+            } catch (RuntimeException e) {
+                logger.error("Error committing a group of " + writes.size() + " writes for site: " + site, e);
+            } finally {
+                synchronized (group) {
+                    group.commitId = commitId;
+                    group.done = true;
+                    group.notifyAll();
+                }
+                List<String> paths = new ArrayList<String>();
+                for (GroupedWrite groupedWrite : writes) {
+                    paths.add(groupedWrite.getPath());
+                }
+                releasePaths(key, paths);
+            }
+        } else {
+            synchronized (group) {
+                while (!group.done) {
+                    try {
+                        group.wait();
+                    } catch (InterruptedException e) {
+                        // The file is committed by the leader anyway, wait for the result
+                        interrupted = true;
+                    }
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (group) {
+            // A write whose file could not be added is not part of the shared commit
+            return write.added ? group.commitId : null;
+        }
+    }
+
+    /**
+     * Build the message of a group commit, one trailer per write
+     *
+     * @param writes writes of the group
+     * @return commit message
+     */
+    public static String buildMessage(List<GroupedWrite> writes) {
+        if (writes.size() == 1) {
+            return "Wrote content " + writes.get(0).getPath();
+        }
+        StringBuilder sb = new StringBuilder("Wrote content of ").append(writes.size()).append(" items\n\n");
+        for (GroupedWrite write : writes) {
+            sb.append(CONTENT_AUTHOR_TRAILER).append(write.getAuthor().getName()).append(" <")
+                    .append(write.getAuthor().getEmailAddress()).append("> ").append(write.getPath()).append("\n");
+        }
+        return sb.toString();
+    }
+}
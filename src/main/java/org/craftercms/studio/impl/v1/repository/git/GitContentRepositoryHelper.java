@@ -45,8 +45,10 @@ import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.service.security.SecurityProvider;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.eclipse.jgit.api.CommitCommand;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.api.StatusCommand;
 import org.eclipse.jgit.api.errors.*;
 import org.eclipse.jgit.diff.DiffEntry;
 import org.eclipse.jgit.dircache.DirCache;
@@ -496,6 +498,13 @@ public class GitContentRepositoryHelper {
     }
 
     public boolean writeFile(Repository repo, String site, String path, InputStream content) {
+        return writeFileContent(repo, site, path, content) && addFile(repo, site, path);
+    }
+
+    /**
+     * Write the content of a file to the working tree without adding it to git
+     */
+    public boolean writeFileContent(Repository repo, String site, String path, InputStream content) {
         boolean result = true;
 
         try {
@@ -537,17 +546,6 @@ public class GitContentRepositoryHelper {
                         offset += count;
                     }
                 }
-
-                // Add the file to git
-                try (Git git = new Git(repo)) {
-                    git.add().addFilepattern(getGitPath(path)).call();
-
-                    git.close();
-                    result = true;
-                } catch (GitAPIException e) {
-                    logger.error("error adding file to git: site: " + site + " path: " + path, e);
-                    result = false;
-                }
             }
         } catch (IOException e) {
             logger.error("error writing file: site: " + site + " path: " + path, e);
@@ -557,6 +555,25 @@ public class GitContentRepositoryHelper {
         return result;
     }
 
+    /**
+     * Add a file of the working tree to git
+     */
+    public boolean addFile(Repository repo, String site, String path) {
+        boolean result;
+
+        try (Git git = new Git(repo)) {
+            git.add().addFilepattern(getGitPath(path)).call();
+
+            git.close();
+            result = true;
+        } catch (GitAPIException e) {
+            logger.error("error adding file to git: site: " + site + " path: " + path, e);
+            result = false;
+        }
+
+        return result;
+    }
+
     public String commitFile(Repository repo, String site, String path, String comment, PersonIdent user) {
         String commitId = null;
         String gitPath = getGitPath(path);
@@ -580,6 +597,36 @@ public class GitContentRepositoryHelper {
         return commitId;
     }
 
+    /**
+     * Commit multiple files at once, the files must have been added to git already
+     */
+    public String commitFiles(Repository repo, String site, List<String> paths, String comment, PersonIdent user) {
+        String commitId = null;
+
+        try (Git git = new Git(repo)) {
+            StatusCommand statusCommand = git.status();
+            for (String path : paths) {
+                statusCommand.addPath(getGitPath(path));
+            }
+            Status status = statusCommand.call();
+
+            if (status.hasUncommittedChanges() || !status.isClean()) {
+                CommitCommand commitCommand = git.commit();
+                for (String path : paths) {
+                    commitCommand.setOnly(getGitPath(path));
+                }
+                RevCommit commit = commitCommand.setAuthor(user).setCommitter(user).setMessage(comment).call();
+                commitId = commit.getName();
+            }
+
+            git.close();
+        } catch (GitAPIException e) {
+            logger.error("error committing files to git: site: " + site + " paths: " + paths, e);
+        }
+
+        return commitId;
+    }
+
     /**
      * Return the current user identity as a jgit PersonIdent
      *
@@ -0,0 +1,209 @@
+/*
+ * Crafter Studio
+ *
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
+
+/**
+ * Locks of the sandbox repositories (and the global repository), one set per site.
+ *
+ * Writers of single files stage their path in parallel: they share the repository and only exclude the writers of
+ * the same path. Updating the index and committing happens in a short, fair commit section. Operations that change
+ * whole subtrees (folders, moves, copies, deletes) hold the repository exclusively. Reads never lock, git objects are
+ * immutable and refs are updated atomically.
+ *
+ * Lock acquire order is always repository, path, commit.
+ */
+public class GitContentRepositoryLocks implements MetricsSource {
+
+    /**
+     * Key of the global repository, site ids name folders of the repositories so they can't contain a slash
+     */
+    public static final String GLOBAL_SITE = "/global";
+
+    private static final int PATH_LOCK_STRIPES = 64;
+
+    /**
+     * Held locks, released on close
+     */
+    public interface HeldLock extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final class WaitStats {
+        private final AtomicLong acquisitions = new AtomicLong();
+        private final AtomicLong contended = new AtomicLong();
+        private final AtomicLong waitTimeTotal = new AtomicLong();
+        private final AtomicLong waitTimeMax = new AtomicLong();
+
+        void lock(Lock lock) {
+            acquisitions.incrementAndGet();
+            if (lock.tryLock()) {
+                return;
+            }
+            long start = System.nanoTime();
+            lock.lock();
+            long wait = System.nanoTime() - start;
+            contended.incrementAndGet();
+            waitTimeTotal.addAndGet(wait);
+            long max = waitTimeMax.get();
+            while (wait > max && !waitTimeMax.compareAndSet(max, wait)) {
+                max = waitTimeMax.get();
+            }
+        }
+
+        Map<String, Object> getMetrics() {
+            Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+            metrics.put("acquisitions", acquisitions.get());
+            metrics.put("contended", contended.get());
+            metrics.put("waitTimeTotalMs", TimeUnit.NANOSECONDS.toMillis(waitTimeTotal.get()));
+            metrics.put("waitTimeMaxMs", TimeUnit.NANOSECONDS.toMillis(waitTimeMax.get()));
+            return metrics;
+        }
+    }
+
+    private static final class SiteLocks {
+        private final ReentrantReadWriteLock repositoryLock = new ReentrantReadWriteLock(true);
+        private final ReentrantLock commitLock = new ReentrantLock(true);
+        private final ReentrantLock[] pathLocks = new ReentrantLock[PATH_LOCK_STRIPES];
+        private final WaitStats repositoryStats = new WaitStats();
+        private final WaitStats pathStats = new WaitStats();
+        private final WaitStats commitStats = new WaitStats();
+
+        SiteLocks() {
+            for (int i = 0; i < pathLocks.length; i++) {
+                pathLocks[i] = new ReentrantLock();
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, SiteLocks> sites = new ConcurrentHashMap<String, SiteLocks>();
+
+    /**
+     * Lock a path to write it, other paths of the repository can be written at the same time
+     *
+     * @param site site id, empty for the global repository
+     * @param gitPath git path of the item
+     * @return held locks
+     */
+    public HeldLock lockPath(String site, String gitPath) {
+        SiteLocks siteLocks = getSiteLocks(site);
+        final Lock repositoryLock = siteLocks.repositoryLock.readLock();
+        final Lock pathLock = siteLocks.pathLocks[(gitPath.hashCode() & 0x7fffffff) % PATH_LOCK_STRIPES];
+        siteLocks.repositoryStats.lock(repositoryLock);
+        siteLocks.pathStats.lock(pathLock);
+        return () -> {
+            pathLock.unlock();
+            repositoryLock.unlock();
+        };
+    }
+
+    /**
+     * Share the repository without locking a path, for committing files that were written under their path locks
+     *
+     * @param site site id, empty for the global repository
+     * @return held lock
+     */
+    public HeldLock lockRepositoryShared(String site) {
+        SiteLocks siteLocks = getSiteLocks(site);
+        final Lock repositoryLock = siteLocks.repositoryLock.readLock();
+        siteLocks.repositoryStats.lock(repositoryLock);
+        return repositoryLock::unlock;
+    }
+
+    /**
+     * Lock the whole repository, for operations on folders
+     *
+     * @param site site id, empty for the global repository
+     * @return held lock
+     */
+    public HeldLock lockRepository(String site) {
+        SiteLocks siteLocks = getSiteLocks(site);
+        final Lock repositoryLock = siteLocks.repositoryLock.writeLock();
+        siteLocks.repositoryStats.lock(repositoryLock);
+        return repositoryLock::unlock;
+    }
+
+    /**
+     * Enter the commit section, to update the index and commit. The caller must hold a path, the shared repository
+     * or the repository lock.
+     *
+     * @param site site id, empty for the global repository
+     * @return held lock
+     */
+    public HeldLock lockCommit(String site) {
+        SiteLocks siteLocks = getSiteLocks(site);
+        final Lock commitLock = siteLocks.commitLock;
+        siteLocks.commitStats.lock(commitLock);
+        return commitLock::unlock;
+    }
+
+    /**
+     * Forget the locks of a deleted site
+     *
+     * @param site site id
+     */
+    public void remove(String site) {
+        sites.remove(getKey(site));
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, SiteLocks> entry : sites.entrySet()) {
+            SiteLocks siteLocks = entry.getValue();
+            Map<String, Object> siteMetrics = new LinkedHashMap<String, Object>();
+            siteMetrics.put("repository", siteLocks.repositoryStats.getMetrics());
+            siteMetrics.put("path", siteLocks.pathStats.getMetrics());
+            siteMetrics.put("commit", siteLocks.commitStats.getMetrics());
+            metrics.put(entry.getKey(), siteMetrics);
+        }
+        return metrics;
+    }
+
+    private SiteLocks getSiteLocks(String site) {
+        String key = getKey(site);
+        SiteLocks siteLocks = sites.get(key);
+        if (siteLocks == null) {
+            siteLocks = new SiteLocks();
+            SiteLocks existing = sites.putIfAbsent(key, siteLocks);
+            if (existing != null) {
+                siteLocks = existing;
+            }
+        }
+        return siteLocks;
+    }
+
+    private String getKey(String site) {
+        return StringUtils.isEmpty(site) ? GLOBAL_SITE : site;
+    }
+}
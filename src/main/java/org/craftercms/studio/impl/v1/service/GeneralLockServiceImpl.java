@@ -21,18 +21,57 @@ import org.craftercms.commons.validation.annotations.param.ValidateParams;
 import org.craftercms.commons.validation.annotations.param.ValidateStringParam;
 import org.craftercms.studio.api.v1.service.AbstractRegistrableService;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
 
-public class GeneralLockServiceImpl extends AbstractRegistrableService implements GeneralLockService {
+/**
+ * Locks by object id. A lock only exists while some thread holds or waits for it, so memory is bounded by the number
+ * of ids in use, and ids are resolved without any global monitor.
+ */
+public class GeneralLockServiceImpl extends AbstractRegistrableService implements GeneralLockService, MetricsSource {
 
     private static final Logger logger = LoggerFactory.getLogger(GeneralLockServiceImpl.class);
 
-    protected Map<String, ReentrantLock> nodeLocks = new HashMap<String, ReentrantLock>();
+    private static final int MAX_CONTENDED_KEYS = 256;
+
+    /**
+     * Lock of an id, with the number of threads that hold (once per hold) or wait for it
+     */
+    private static final class NodeLock {
+        private final ReentrantLock lock = new ReentrantLock();
+        // Only updated inside compute of the map, which serializes updates of a key
+        private int references = 0;
+    }
+
+    private static final class KeyStats {
+        private long contended = 0;
+        private long waitTimeTotal = 0;
+        private long waitTimeMax = 0;
+    }
+
+    protected final ConcurrentHashMap<String, NodeLock> nodeLocks = new ConcurrentHashMap<String, NodeLock>();
+    protected final AtomicLong acquisitions = new AtomicLong();
+    protected final AtomicLong contended = new AtomicLong();
+    protected final AtomicLong waitTimeTotal = new AtomicLong();
+    protected final AtomicLong waitTimeMax = new AtomicLong();
+    protected final Map<String, KeyStats> contendedKeys = new LinkedHashMap<String, KeyStats>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, KeyStats> eldest) {
+            return size() > MAX_CONTENDED_KEYS;
+        }
+    };
 
     @Override
     public void register() {
@@ -42,57 +81,33 @@ public class GeneralLockServiceImpl extends AbstractRegistrableService implement
     @Override
     @ValidateParams
     public void lock(@ValidateStringParam(name = "objectId") String objectId) {
-        ReentrantLock nodeLock;
         if (logger.isDebugEnabled()) {
             logger.debug("[" + Thread.currentThread().getName() + "]" + " Obtaining lock for id " + objectId);
         }
-        synchronized (this) {
-            if (nodeLocks.containsKey(objectId)) {
-                nodeLock = nodeLocks.get(objectId);
-            } else {
-                nodeLock = new ReentrantLock();
-                nodeLocks.put(objectId, nodeLock);
-            }
-        }
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.getHoldCount() + " for id " + objectId + " (before lock)");
-        }
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock: " + nodeLock.toString());
-        }
-        nodeLock.lock();
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.getHoldCount() + " for id " + objectId + " (after lock)");
+        NodeLock nodeLock = reference(objectId);
+        acquisitions.incrementAndGet();
+        if (!nodeLock.lock.tryLock()) {
+            long start = System.nanoTime();
+            nodeLock.lock.lock();
+            recordWait(objectId, System.nanoTime() - start);
         }
         if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Locked all threads for id " + objectId);
+            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.lock.getHoldCount() + " for id " + objectId + " (after lock)");
         }
     }
 
     @Override
     @ValidateParams
     public boolean tryLock(@ValidateStringParam(name = "objectId") String objectId) {
-        ReentrantLock nodeLock;
         if (logger.isDebugEnabled()) {
             logger.debug("[" + Thread.currentThread().getName() + "]" + " Trying to get lock for id " + objectId);
         }
-        synchronized (this) {
-            if (nodeLocks.containsKey(objectId)) {
-                nodeLock = nodeLocks.get(objectId);
-            } else {
-                nodeLock = new ReentrantLock();
-                nodeLocks.put(objectId, nodeLock);
-            }
-        }
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.getHoldCount() + " for id " + objectId + " (before tryLock)");
-        }
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock: " + nodeLock.toString());
-        }
-        boolean toRet = nodeLock.tryLock();
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.getHoldCount() + " for id " + objectId + " (after tryLock)");
+        NodeLock nodeLock = reference(objectId);
+        boolean toRet = nodeLock.lock.tryLock();
+        if (toRet) {
+            acquisitions.incrementAndGet();
+        } else {
+            release(objectId);
         }
         if (logger.isDebugEnabled()) {
             logger.debug("[" + Thread.currentThread().getName() + "]" + " Result for tryLock on id " + objectId + " : " + toRet);
@@ -103,27 +118,99 @@ public class GeneralLockServiceImpl extends AbstractRegistrableService implement
     @Override
     @ValidateParams
     public void unlock(@ValidateStringParam(name = "objectId") String objectId) {
-        ReentrantLock nodeLock = null;
         if (logger.isDebugEnabled()) {
             logger.debug("[" + Thread.currentThread().getName() + "]" + " Unlocking id " + objectId);
         }
-        synchronized (this) {
-            nodeLock = nodeLocks.get(objectId);
-        }
+        NodeLock nodeLock = nodeLocks.get(objectId);
         if (nodeLock != null) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.getHoldCount() + " for id " + objectId + " (before unlock)");
+            // Fails if the current thread doesn't hold the lock, before the reference is released
+            nodeLock.lock.unlock();
+            release(objectId);
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("[" + Thread.currentThread().getName() + "]" + " Finished unlocking id " + objectId);
+        }
+    }
+
+    @Override
+    public void lockAll(Collection<String> objectIds) {
+        List<String> locked = new ArrayList<String>(objectIds.size());
+        try {
+            for (String objectId : new TreeSet<String>(objectIds)) {
+                lock(objectId);
+                locked.add(objectId);
             }
-            if (logger.isDebugEnabled()) {
-                logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock: " + nodeLock.toString());
+        } catch (RuntimeException e) {
+            for (int i = locked.size() - 1; i >= 0; i--) {
+                unlock(locked.get(i));
             }
-            nodeLock.unlock();
-            if (logger.isDebugEnabled()) {
-                logger.debug("[" + Thread.currentThread().getName() + "]" + " Lock hold count " + nodeLock.getHoldCount() + " for id " + objectId + " (after unlock)");
+            throw e;
+        }
+    }
+
+    @Override
+    public void unlockAll(Collection<String> objectIds) {
+        for (String objectId : new TreeSet<String>(objectIds).descendingSet()) {
+            try {
+                unlock(objectId);
+            } catch (RuntimeException e) {
+                logger.error("Unable to unlock id " + objectId, e);
             }
         }
-        if (logger.isDebugEnabled()) {
-            logger.debug("[" + Thread.currentThread().getName() + "]" + " Finished unlocking id " + objectId);
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("locksInUse", nodeLocks.size());
+        metrics.put("acquisitions", acquisitions.get());
+        metrics.put("contended", contended.get());
+        metrics.put("waitTimeTotalMs", TimeUnit.NANOSECONDS.toMillis(waitTimeTotal.get()));
+        metrics.put("waitTimeMaxMs", TimeUnit.NANOSECONDS.toMillis(waitTimeMax.get()));
+        Map<String, Object> keys = new LinkedHashMap<String, Object>();
+        synchronized (contendedKeys) {
+            for (Map.Entry<String, KeyStats> entry : contendedKeys.entrySet()) {
+                Map<String, Object> keyMetrics = new LinkedHashMap<String, Object>();
+                keyMetrics.put("contended", entry.getValue().contended);
+                keyMetrics.put("waitTimeTotalMs", TimeUnit.NANOSECONDS.toMillis(entry.getValue().waitTimeTotal));
+                keyMetrics.put("waitTimeMaxMs", TimeUnit.NANOSECONDS.toMillis(entry.getValue().waitTimeMax));
+                keys.put(entry.getKey(), keyMetrics);
+            }
+        }
+        metrics.put("contendedKeys", keys);
+        return metrics;
+    }
+
+    private NodeLock reference(String objectId) {
+        return nodeLocks.compute(objectId, (key, nodeLock) -> {
+            if (nodeLock == null) {
+                nodeLock = new NodeLock();
+            }
+            nodeLock.references++;
+            return nodeLock;
+        });
+    }
+
+    private void release(String objectId) {
+        nodeLocks.computeIfPresent(objectId, (key, nodeLock) -> --nodeLock.references == 0 ? null : nodeLock);
+    }
+
+    private void recordWait(String objectId, long wait) {
+        contended.incrementAndGet();
+        waitTimeTotal.addAndGet(wait);
+        long max = waitTimeMax.get();
+        while (wait > max && !waitTimeMax.compareAndSet(max, wait)) {
+            max = waitTimeMax.get();
+        }
+        synchronized (contendedKeys) {
+            KeyStats stats = contendedKeys.get(objectId);
+            if (stats == null) {
+                stats = new KeyStats();
+                contendedKeys.put(objectId, stats);
+            }
+            stats.contended++;
+            stats.waitTimeTotal += wait;
+            stats.waitTimeMax = Math.max(stats.waitTimeMax, wait);
         }
     }
 }
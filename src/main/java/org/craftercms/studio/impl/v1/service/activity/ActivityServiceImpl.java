@@ -89,6 +89,7 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
     protected SecurityService securityService;
     protected StudioConfiguration studioConfiguration;
     protected DeploymentService deploymentService;
+    protected AuditFeedWriter auditFeedWriter;
 
     @Override
     public void register() {
@@ -98,6 +99,21 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
     @Override
     @ValidateParams
 	public void postActivity(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "user") String user, @ValidateSecurePathParam(name = "contentId") String contentId, ActivityType activity, ActivitySource source, Map<String,String> extraInfo) {
+		AuditFeed activityPost = createActivity(site, user, contentId, activity, source, extraInfo);
+		if (activityPost != null) {
+			try {
+				auditFeedWriter.post(activityPost);
+				logger.debug("Posted: " + activityPost);
+			} catch (Exception e) {
+				// log error, subsume exception (for post activity)
+				logger.error("Error in posting feed", e);
+			}
+		}
+	}
+
+	@Override
+	@ValidateParams
+	public AuditFeed createActivity(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "user") String user, @ValidateSecurePathParam(name = "contentId") String contentId, ActivityType activity, ActivitySource source, Map<String,String> extraInfo) {
 
 		JSONObject activityPost = new JSONObject();
 		activityPost.put(ACTIVITY_PROP_USER, user);
@@ -109,11 +125,11 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 		if (extraInfo != null) {
             contentType = extraInfo.get(DmConstants.KEY_CONTENT_TYPE);
         }
-		postActivity(activity.toString(), source.toString(), site, null, activityPost.toString(),contentId,contentType, user);
+		return createActivity(activity.toString(), source.toString(), site, null, activityPost.toString(), contentId, contentType, user);
 
 	}
 
-	private void postActivity(String activityType, String activitySource, String siteNetwork, String appTool, String activityData,
+	private AuditFeed createActivity(String activityType, String activitySource, String siteNetwork, String appTool, String activityData,
 							 String contentId, String contentType, String approver) {
 		String currentUser = (StringUtils.isEmpty(approver)) ? securityService.getCurrentUser() : approver;
 		try {
@@ -165,45 +181,22 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 		} catch (ServiceException e) {
 			// log error and throw exception
 			logger.error("Error in getting feeds", e);
+			return null;
 		}
 
-		try {
-			ZonedDateTime postDate = ZonedDateTime.now(ZoneOffset.UTC);
-			AuditFeed activityPost = new AuditFeed();
-			activityPost.setUserId(currentUser);
-			activityPost.setSiteNetwork(siteNetwork);
-			activityPost.setSummary(activityData);
-			activityPost.setType(activityType);
-			activityPost.setCreationDate(postDate);
-			activityPost.setModifiedDate(postDate);
-			activityPost.setSummaryFormat("json");
-			activityPost.setContentId(contentId);
-			activityPost.setContentType(contentType);
-			activityPost.setSource(activitySource);
-			try {
-                activityPost.setCreationDate(ZonedDateTime.now(ZoneOffset.UTC));
-				long postId = insertFeedEntry(activityPost);
-				activityPost.setId(postId);
-				logger.debug("Posted: " + activityPost);
-
-			} catch (Exception e) {
-				throw new ServiceException("Failed to post activity: " + e, e);
-			}
-		}
-
-		catch (ServiceException e) {
-			// log error, subsume exception (for post activity)
-			logger.error("Error in posting feed", e);
-		}
-
-	}
-
-
-	private long insertFeedEntry(AuditFeed activityFeed) {
-		DebugUtils.addDebugStack(logger);
-		logger.debug("Insert activity " + activityFeed.getContentId());
-		Long id = auditFeedMapper.insertActivityFeed(activityFeed);
-		return (id != null ? id : -1);
+		ZonedDateTime postDate = ZonedDateTime.now(ZoneOffset.UTC);
+		AuditFeed activityPost = new AuditFeed();
+		activityPost.setUserId(currentUser);
+		activityPost.setSiteNetwork(siteNetwork);
+		activityPost.setSummary(activityData);
+		activityPost.setType(activityType);
+		activityPost.setCreationDate(postDate);
+		activityPost.setModifiedDate(postDate);
+		activityPost.setSummaryFormat("json");
+		activityPost.setContentId(contentId);
+		activityPost.setContentType(contentType);
+		activityPost.setSource(activitySource);
+		return activityPost;
 	}
 
 	@Override
@@ -215,12 +208,16 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 		params.put("newPath", newUrl);
 		params.put("site", site);
 		params.put("oldPath", oldUrl);
+        // queued activities of the old path must be renamed too
+        auditFeedWriter.flush();
         auditFeedMapper.renameContent(params);
 	}
 
 	@Override
     @ValidateParams
 	public List<ContentItemTO> getActivities(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "user") String user, @ValidateIntegerParam(name = "num") int num, @ValidateStringParam(name = "sort") String sort, boolean ascending, boolean excludeLive, @ValidateStringParam(name = "filterType") String filterType) throws ServiceException {
+		// the user's own activities may still be queued
+		auditFeedWriter.flush();
 		int startPos = 0;
 		List<ContentItemTO> contentItems = new ArrayList<ContentItemTO>();
 		boolean hasMoreItems = true;
@@ -262,17 +259,26 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 		}
 
 		if (activityFeedEntries != null && activityFeedEntries.size() > 0) {
+			List<String> ids = new ArrayList<String>();
+			List<ContentItemTO> feedItems = new ArrayList<ContentItemTO>();
 			for (int index = 0; index < activityFeedEntries.size() && remainingItem!=0; index++) {
 				JSONObject feedObject = JSONObject.fromObject(activityFeedEntries.get(index));
 				String id = (feedObject.containsKey(ACTIVITY_PROP_CONTENTID)) ? feedObject.getString(ACTIVITY_PROP_CONTENTID) : "";
 				ContentItemTO item = createActivityItem(site, feedObject, id);
 				item.published = true;
 				item.setPublished(true);
-				ZonedDateTime pubDate = deploymentService.getLastDeploymentDate(site, id);
+				ids.add(id);
+				feedItems.add(item);
+				remainingItem--;
+			}
+			// last deployment dates of the page are read at once
+			Map<String, ZonedDateTime> pubDates = deploymentService.getLastDeploymentDates(site, ids);
+			for (int index = 0; index < feedItems.size(); index++) {
+				ContentItemTO item = feedItems.get(index);
+				ZonedDateTime pubDate = pubDates.get(ids.get(index));
 				item.publishedDate = pubDate;
 				item.setPublishedDate(pubDate);
 				contentItems.add(item);
-				remainingItem--;
 			}
 		}
 		logger.debug("Total Item post live filter : " + contentItems.size() + " hasMoreItems : "+hasMoreItems);
@@ -367,6 +373,8 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 		params.put("siteNetwork", site);
 		String activityType = ActivityType.DELETED.toString();
 		params.put("activityType", activityType);
+		// the deletion may still be queued
+		auditFeedWriter.flush();
 		return auditFeedMapper.getDeletedActivity(params);
 	}
 
@@ -375,6 +383,7 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 	public void deleteActivitiesForSite(@ValidateStringParam(name = "site") String site) {
 		Map<String, String> params = new HashMap<String, String>();
 		params.put("site", site);
+		auditFeedWriter.flush();
 		auditFeedMapper.deleteActivitiesForSite(params);
 	}
 
@@ -395,6 +404,7 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 			if (CollectionUtils.isNotEmpty(actions)) {
 				params.put("actions", actions);
 			}
+			auditFeedWriter.flush();
 			return auditFeedMapper.getAuditLogForSite(params);
 		}
     }
@@ -414,6 +424,7 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
             if (CollectionUtils.isNotEmpty(actions)) {
                 params.put("actions", actions);
             }
+            auditFeedWriter.flush();
             return auditFeedMapper.getAuditLogForSiteTotal(params);
         }
     }
@@ -445,4 +456,7 @@ public class ActivityServiceImpl extends AbstractRegistrableService implements A
 
     public DeploymentService getDeploymentService() { return deploymentService; }
     public void setDeploymentService(DeploymentService deploymentService) { this.deploymentService = deploymentService; }
+
+    public AuditFeedWriter getAuditFeedWriter() { return auditFeedWriter; }
+    public void setAuditFeedWriter(AuditFeedWriter auditFeedWriter) { this.auditFeedWriter = auditFeedWriter; }
 }
@@ -0,0 +1,412 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.activity;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import net.sf.json.JSONObject;
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.dal.AuditFeed;
+import org.craftercms.studio.api.v1.dal.AuditFeedMapper;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_BATCH_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_FALLBACK_FILE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_FLUSH_INTERVAL;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_QUEUE_CAPACITY;
+
+/**
+ * Writes activities to the audit table in batches, from a bounded queue drained by a background thread. When the
+ * queue is full activities are written on the caller's thread. Activities that can't be written, and the ones left in
+ * the queue if the database fails on shutdown, are appended to a fallback file that is written to the database on the
+ * next start. Reads of the audit table and updates of existing activities must {@link #flush()} the queue first.
+ */
+public class AuditFeedWriter implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(AuditFeedWriter.class);
+
+    // queued to make the background thread write its current batch without waiting for the flush interval
+    protected static final AuditFeed FLUSH_REQUEST = new AuditFeed();
+
+    protected BlockingQueue<AuditFeed> queue;
+    protected Thread writerThread;
+    protected volatile boolean running;
+    // posts hold the read lock from the running check to the offer, stopping takes the write lock
+    protected final ReadWriteLock runningLock = new ReentrantReadWriteLock();
+    protected final Object completedMonitor = new Object();
+
+    protected final AtomicLong queued = new AtomicLong();
+    protected long completed;
+    protected final AtomicLong written = new AtomicLong();
+    protected final AtomicLong batches = new AtomicLong();
+    protected final AtomicLong callerWrites = new AtomicLong();
+    protected final AtomicLong spilled = new AtomicLong();
+    protected volatile long lastFlushDuration;
+    protected volatile int maxQueueDepth;
+
+    protected StudioConfiguration studioConfiguration;
+    protected PlatformTransactionManager transactionManager;
+
+    @Autowired
+    protected AuditFeedMapper auditFeedMapper;
+
+    public void init() {
+        queue = new LinkedBlockingQueue<AuditFeed>(getQueueCapacity());
+        replayFallbackFile();
+        running = true;
+        writerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        }, "studio-audit-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    public void destroy() {
+        runningLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            runningLock.writeLock().unlock();
+        }
+        queue.offer(FLUSH_REQUEST);
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // entries posted while the writer was stopping
+        List<AuditFeed> rest = new ArrayList<AuditFeed>();
+        drainTo(rest, Integer.MAX_VALUE);
+        writeQueued(rest);
+    }
+
+    /**
+     * Queue an activity to be written
+     *
+     * @param activity activity
+     */
+    public void post(AuditFeed activity) {
+        boolean offered;
+        runningLock.readLock().lock();
+        try {
+            offered = running && queue.offer(activity);
+            if (offered) {
+                queued.incrementAndGet();
+            }
+        } finally {
+            runningLock.readLock().unlock();
+        }
+        if (offered) {
+            int depth = queue.size();
+            if (depth > maxQueueDepth) {
+                maxQueueDepth = depth;
+            }
+        } else {
+            // back pressure, the caller pays for the write
+            callerWrites.incrementAndGet();
+            write(Collections.singletonList(activity));
+        }
+    }
+
+    /**
+     * Write the activities posted so far, on the caller's thread for the ones still in the queue. The background
+     * thread is woken to write the batch it is collecting, and this returns once that batch is written too.
+     */
+    public void flush() {
+        long target = queued.get();
+        synchronized (completedMonitor) {
+            if (completed >= target) {
+                // nothing pending, reads don't wake the background thread
+                return;
+            }
+        }
+        List<AuditFeed> pending = new ArrayList<AuditFeed>();
+        drainTo(pending, Integer.MAX_VALUE);
+        writeQueued(pending);
+
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+        try {
+            queue.offer(FLUSH_REQUEST, TimeUnit.SECONDS.toMillis(30), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        synchronized (completedMonitor) {
+            long wait;
+            while (completed < target && (wait = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    completedMonitor.wait(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            if (completed < target) {
+                logger.error("Timed out waiting for " + (target - completed) + " activities to be written");
+            }
+        }
+    }
+
+    protected void drain() {
+        int batchSize = getBatchSize();
+        long flushInterval = getFlushInterval();
+        List<AuditFeed> batch = new ArrayList<AuditFeed>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                AuditFeed first = queue.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (first != null && first != FLUSH_REQUEST) {
+                    batch.add(first);
+                    // collect what is posted during the flush interval, up to a batch or until a flush is requested
+                    long deadline = System.currentTimeMillis() + flushInterval;
+                    boolean flushRequested = false;
+                    while (running && !flushRequested && batch.size() < batchSize) {
+                        flushRequested = drainTo(batch, batchSize - batch.size());
+                        long wait = deadline - System.currentTimeMillis();
+                        if (flushRequested || batch.size() >= batchSize || wait <= 0) {
+                            break;
+                        }
+                        AuditFeed next = queue.poll(wait, TimeUnit.MILLISECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        if (next == FLUSH_REQUEST) {
+                            flushRequested = true;
+                        } else {
+                            batch.add(next);
+                        }
+                    }
+                    drainTo(batch, batchSize - batch.size());
+                    writeQueued(batch);
+                }
+            } catch (InterruptedException e) {
+                writeQueued(batch);
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Move up to the given number of queued elements to the list, leaving out the flush requests
+     *
+     * @return true if a flush request was taken
+     */
+    protected boolean drainTo(List<AuditFeed> activities, int maxElements) {
+        int from = activities.size();
+        queue.drainTo(activities, maxElements);
+        boolean flushRequested = false;
+        for (Iterator<AuditFeed> iterator = activities.listIterator(from); iterator.hasNext(); ) {
+            if (iterator.next() == FLUSH_REQUEST) {
+                iterator.remove();
+                flushRequested = true;
+            }
+        }
+        return flushRequested;
+    }
+
+    /**
+     * Write activities taken from the queue and count them as completed, written or saved to the fallback file
+     */
+    protected void writeQueued(List<AuditFeed> activities) {
+        try {
+            write(activities);
+        } finally {
+            synchronized (completedMonitor) {
+                completed += activities.size();
+                completedMonitor.notifyAll();
+            }
+        }
+    }
+
+    protected void write(List<AuditFeed> activities) {
+        if (activities.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            insert(activities);
+            written.addAndGet(activities.size());
+            batches.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.error("Error while writing " + activities.size() + " activities, saving them to "
+                    + getFallbackFile(), e);
+            spill(activities);
+        }
+        lastFlushDuration = System.currentTimeMillis() - start;
+    }
+
+    protected void insert(List<AuditFeed> activities) {
+        int batchSize = getBatchSize();
+        for (int i = 0; i < activities.size(); i = i + batchSize) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("feeds", activities.subList(i, Math.min(i + batchSize, activities.size())));
+            auditFeedMapper.insertActivityFeeds(params);
+        }
+    }
+
+    protected synchronized void spill(List<AuditFeed> activities) {
+        Path file = Paths.get(getFallbackFile());
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (AuditFeed activity : activities) {
+                    writer.write(toJson(activity).toString());
+                    writer.newLine();
+                }
+            }
+            spilled.addAndGet(activities.size());
+        } catch (IOException e) {
+            logger.error("Error while saving " + activities.size() + " activities to " + file + ", they are lost", e);
+        }
+    }
+
+    protected void replayFallbackFile() {
+        Path file = Paths.get(getFallbackFile());
+        if (!Files.exists(file)) {
+            return;
+        }
+        List<AuditFeed> activities = new ArrayList<AuditFeed>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (StringUtils.isNotBlank(line)) {
+                    activities.add(fromJson(JSONObject.fromObject(line)));
+                }
+            }
+            final List<AuditFeed> saved = activities;
+            // all or nothing, the file is deleted only if every activity was written
+            new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(TransactionStatus status) {
+                    insert(saved);
+                }
+            });
+            Files.delete(file);
+            logger.info("Wrote " + activities.size() + " activities saved in " + file);
+        } catch (IOException | RuntimeException e) {
+            logger.error("Error while writing activities saved in " + file + ", they will be retried on next start", e);
+        }
+    }
+
+    protected JSONObject toJson(AuditFeed activity) {
+        JSONObject json = new JSONObject();
+        json.put("type", activity.getType());
+        json.put("summary", activity.getSummary());
+        json.put("summaryFormat", activity.getSummaryFormat());
+        json.put("userId", activity.getUserId());
+        json.put("creationDate", activity.getCreationDate() != null ? activity.getCreationDate().toString() : "");
+        json.put("modifiedDate", activity.getModifiedDate() != null ? activity.getModifiedDate().toString() : "");
+        json.put("siteNetwork", activity.getSiteNetwork());
+        json.put("contentId", activity.getContentId());
+        json.put("contentType", activity.getContentType());
+        json.put("source", activity.getSource());
+        return json;
+    }
+
+    protected AuditFeed fromJson(JSONObject json) {
+        AuditFeed activity = new AuditFeed();
+        activity.setType(json.optString("type", null));
+        activity.setSummary(json.optString("summary", null));
+        activity.setSummaryFormat(json.optString("summaryFormat", null));
+        activity.setUserId(json.optString("userId", null));
+        String creationDate = json.optString("creationDate");
+        activity.setCreationDate(StringUtils.isEmpty(creationDate) ? null : ZonedDateTime.parse(creationDate));
+        String modifiedDate = json.optString("modifiedDate");
+        activity.setModifiedDate(StringUtils.isEmpty(modifiedDate) ? null : ZonedDateTime.parse(modifiedDate));
+        activity.setSiteNetwork(json.optString("siteNetwork", null));
+        activity.setContentId(json.optString("contentId", null));
+        activity.setContentType(json.optString("contentType", null));
+        activity.setSource(json.optString("source", null));
+        return activity;
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("queueDepth", queue.size());
+        metrics.put("maxQueueDepth", maxQueueDepth);
+        metrics.put("queueCapacity", getQueueCapacity());
+        metrics.put("queued", queued.get());
+        metrics.put("written", written.get());
+        metrics.put("batches", batches.get());
+        metrics.put("callerWrites", callerWrites.get());
+        metrics.put("savedToFallbackFile", spilled.get());
+        metrics.put("lastFlushDurationMs", lastFlushDuration);
+        return metrics;
+    }
+
+    public int getQueueCapacity() {
+        return Integer.parseInt(studioConfiguration.getProperty(ACTIVITY_WRITER_QUEUE_CAPACITY));
+    }
+
+    public int getBatchSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(ACTIVITY_WRITER_BATCH_SIZE));
+    }
+
+    public long getFlushInterval() {
+        return Long.parseLong(studioConfiguration.getProperty(ACTIVITY_WRITER_FLUSH_INTERVAL));
+    }
+
+    public String getFallbackFile() {
+        return studioConfiguration.getProperty(ACTIVITY_WRITER_FALLBACK_FILE);
+    }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+
+    public PlatformTransactionManager getTransactionManager() { return transactionManager; }
+    public void setTransactionManager(PlatformTransactionManager transactionManager) { this.transactionManager = transactionManager; }
+}
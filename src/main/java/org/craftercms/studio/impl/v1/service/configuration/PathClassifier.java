@@ -0,0 +1,139 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.configuration;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.to.PathClassificationTO;
+import org.craftercms.studio.api.v1.to.RepositoryConfigTO;
+import org.craftercms.studio.api.v1.to.SiteConfigTO;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+
+/**
+ * Classifies paths against the pattern groups of a site configuration. Patterns are compiled once, when the
+ * configuration is loaded, and the classification of recently used paths is cached.
+ */
+public class PathClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(PathClassifier.class);
+
+    protected final Pattern[] pagePatterns;
+    protected final Pattern[] componentPatterns;
+    protected final Pattern[] assetPatterns;
+    protected final Pattern[] documentPatterns;
+    protected final Pattern[] renderingTemplatePatterns;
+    protected final Pattern[] scriptsPatterns;
+    protected final Pattern[] displayPatterns;
+    protected final String levelDescriptorSuffix;
+    protected final Map<String, PathClassificationTO> cache;
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param config site configuration, null if the site has none
+     * @param cacheSize maximum number of cached classifications
+     */
+    public PathClassifier(SiteConfigTO config, final int cacheSize) {
+        RepositoryConfigTO repo = config != null ? config.getRepositoryConfig() : null;
+        if (repo != null) {
+            pagePatterns = compile(repo.getPagePatterns());
+            componentPatterns = compile(repo.getComponentPatterns());
+            assetPatterns = compile(repo.getAssetPatterns());
+            documentPatterns = compile(repo.getDocumentPatterns());
+            renderingTemplatePatterns = compile(repo.getRenderingTemplatePatterns());
+            scriptsPatterns = compile(repo.getScriptsPatterns());
+            displayPatterns = compile(repo.getDisplayPatterns());
+            levelDescriptorSuffix = StringUtils.isEmpty(repo.getLevelDescriptorName()) ? null :
+                    FILE_SEPARATOR + repo.getLevelDescriptorName();
+        } else {
+            pagePatterns = componentPatterns = assetPatterns = documentPatterns = renderingTemplatePatterns =
+                    scriptsPatterns = displayPatterns = new Pattern[0];
+            levelDescriptorSuffix = null;
+        }
+        cache = new LinkedHashMap<String, PathClassificationTO>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PathClassificationTO> eldest) {
+                return size() > cacheSize;
+            }
+        };
+    }
+
+    /**
+     * Classify a path
+     *
+     * @param path path of the item
+     * @return pattern groups the path matches
+     */
+    public PathClassificationTO classify(String path) {
+        PathClassificationTO classification;
+        synchronized (cache) {
+            classification = cache.get(path);
+        }
+        if (classification != null) {
+            hits.incrementAndGet();
+            return classification;
+        }
+        misses.incrementAndGet();
+        classification = new PathClassificationTO(matches(path, pagePatterns), matches(path, componentPatterns),
+                matches(path, assetPatterns), matches(path, documentPatterns),
+                matches(path, renderingTemplatePatterns), matches(path, scriptsPatterns),
+                levelDescriptorSuffix != null && path.endsWith(levelDescriptorSuffix), matches(path, displayPatterns));
+        synchronized (cache) {
+            cache.put(path, classification);
+        }
+        return classification;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    protected boolean matches(String path, Pattern[] patterns) {
+        for (Pattern pattern : patterns) {
+            if (pattern.matcher(path).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected Pattern[] compile(List<String> patterns) {
+        if (patterns == null) {
+            return new Pattern[0];
+        }
+        List<Pattern> compiled = new ArrayList<Pattern>(patterns.size());
+        for (String pattern : patterns) {
+            try {
+                compiled.add(Pattern.compile(pattern));
+            } catch (PatternSyntaxException e) {
+                logger.error("Invalid pattern " + pattern + " in site configuration, ignoring it", e);
+            }
+        }
+        return compiled.toArray(new Pattern[compiled.size()]);
+    }
+}
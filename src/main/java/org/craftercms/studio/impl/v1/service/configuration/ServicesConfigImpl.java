@@ -26,6 +26,7 @@ import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.configuration.ContentTypesConfig;
 import org.craftercms.studio.api.v1.service.content.ContentService;
 import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
 import org.craftercms.studio.api.v1.to.*;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.impl.v1.util.ContentFormatUtils;
@@ -39,18 +40,23 @@ import org.slf4j.LoggerFactory;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_CONFIG_BASE_PATH;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_GENERAL_CONFIG_FILE_NAME;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONFIGURATION_SITE_PATH_CLASSIFICATION_CACHE_SIZE;
 
 /**
  * Implementation of ServicesConfigImpl. This class requires a configuration
  * file in the repository
  *
+ * The configuration of a site is parsed once into an immutable snapshot, valid as long as the repository object id
+ * of the configuration file doesn't change. A changed file or reloadConfiguration swap in a new snapshot.
  *
  */
-public class ServicesConfigImpl implements ServicesConfig {
+public class ServicesConfigImpl implements ServicesConfig, MetricsSource {
 
 	private static final Logger LOGGER = LoggerFactory.getLogger(ServicesConfigImpl.class);
 
@@ -86,8 +92,135 @@ public class ServicesConfigImpl implements ServicesConfig {
 
 	protected ContentRepository contentRepository;
 
+    /**
+     * Site configuration parsed from a version of the configuration file
+     */
+    protected static final class SiteConfigSnapshot {
+        private final String objectId;
+        private final SiteConfigTO config;
+        private final PathClassifier classifier;
+        private final long loadedAt;
+        private final AtomicLong hits = new AtomicLong();
+
+        SiteConfigSnapshot(String objectId, SiteConfigTO config, PathClassifier classifier) {
+            this.objectId = objectId;
+            this.config = config;
+            this.classifier = classifier;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
+    protected final ConcurrentHashMap<String, SiteConfigSnapshot> snapshots = new ConcurrentHashMap<String, SiteConfigSnapshot>();
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong loads = new AtomicLong();
+    protected final AtomicLong staleLoads = new AtomicLong();
+    protected final AtomicLong reloads = new AtomicLong();
+
     protected SiteConfigTO getSiteConfig(final String site) {
-        return loadConfiguration(site);
+        SiteConfigSnapshot snapshot = getSnapshot(site);
+        return snapshot != null ? snapshot.config : null;
+    }
+
+    protected SiteConfigSnapshot getSnapshot(final String site) {
+        String objectId = contentRepository.getContentObjectId(site, getSiteConfigFilePath(site));
+        SiteConfigSnapshot snapshot = snapshots.get(site);
+        if (snapshot != null && objectId != null && objectId.equals(snapshot.objectId)) {
+            hits.incrementAndGet();
+            snapshot.hits.incrementAndGet();
+            return snapshot;
+        }
+        return loadSnapshot(site, false);
+    }
+
+    /**
+     * Parse the current version of the configuration of a site and swap it in, unless other thread did it already
+     *
+     * @param site site id
+     * @param force load even if the current snapshot is up to date
+     * @return snapshot of the site configuration, null if the site has no configuration
+     */
+    protected SiteConfigSnapshot loadSnapshot(String site, boolean force) {
+        String lockKey = site + ":" + getSiteConfigFilePath(site);
+        generalLockService.lock(lockKey);
+        try {
+            // Read the id before the content, a change in between only causes one more load
+            String objectId = contentRepository.getContentObjectId(site, getSiteConfigFilePath(site));
+            SiteConfigSnapshot current = snapshots.get(site);
+            if (!force && current != null && objectId != null && objectId.equals(current.objectId)) {
+                hits.incrementAndGet();
+                current.hits.incrementAndGet();
+                return current;
+            }
+            SiteConfigTO config = loadConfiguration(site);
+            loads.incrementAndGet();
+            if (force) {
+                reloads.incrementAndGet();
+            } else if (current != null) {
+                staleLoads.incrementAndGet();
+            }
+            if (config == null) {
+                snapshots.remove(site);
+                return null;
+            }
+            freeze(config);
+            SiteConfigSnapshot snapshot = new SiteConfigSnapshot(objectId, config,
+                    new PathClassifier(config, getPathClassificationCacheSize()));
+            if (objectId == null) {
+                snapshots.remove(site);
+            } else {
+                snapshots.put(site, snapshot);
+                LOGGER.debug("Loaded configuration of site " + site + " from object " + objectId);
+            }
+            return snapshot;
+        } finally {
+            generalLockService.unlock(lockKey);
+        }
+    }
+
+    /**
+     * Make the lists of a configuration shared by all callers unmodifiable
+     */
+    protected void freeze(SiteConfigTO config) {
+        RepositoryConfigTO repo = config.getRepositoryConfig();
+        if (repo != null) {
+            repo.setFolders(freeze(repo.getFolders()));
+            repo.setPagePatterns(freeze(repo.getPagePatterns()));
+            repo.setComponentPatterns(freeze(repo.getComponentPatterns()));
+            repo.setAssetPatterns(freeze(repo.getAssetPatterns()));
+            repo.setDocumentPatterns(freeze(repo.getDocumentPatterns()));
+            repo.setRenderingTemplatePatterns(freeze(repo.getRenderingTemplatePatterns()));
+            repo.setScriptsPatterns(freeze(repo.getScriptsPatterns()));
+            repo.setLevelDescriptorPatterns(freeze(repo.getLevelDescriptorPatterns()));
+            repo.setDisplayPatterns(freeze(repo.getDisplayPatterns()));
+            repo.setPreviewableMimetypesPaterns(freeze(repo.getPreviewableMimetypesPaterns()));
+        }
+    }
+
+    private <T> List<T> freeze(List<T> list) {
+        return list != null ? Collections.unmodifiableList(list) : null;
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long now = System.currentTimeMillis();
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("hits", hits.get());
+        metrics.put("loads", loads.get());
+        metrics.put("staleLoads", staleLoads.get());
+        metrics.put("reloads", reloads.get());
+        Map<String, Object> sites = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, SiteConfigSnapshot> entry : snapshots.entrySet()) {
+            SiteConfigSnapshot snapshot = entry.getValue();
+            Map<String, Object> siteMetrics = new LinkedHashMap<String, Object>();
+            siteMetrics.put("objectId", snapshot.objectId);
+            siteMetrics.put("ageMs", now - snapshot.loadedAt);
+            siteMetrics.put("hits", snapshot.hits.get());
+            siteMetrics.put("pathClassificationHits", snapshot.classifier.getHits());
+            siteMetrics.put("pathClassificationMisses", snapshot.classifier.getMisses());
+            sites.put(entry.getKey(), siteMetrics);
+        }
+        metrics.put("sites", sites);
+        return metrics;
     }
 
     @Override
@@ -242,6 +375,16 @@ public class ServicesConfigImpl implements ServicesConfig {
 		return null;
 	}
 
+    @Override
+    @ValidateParams
+    public PathClassificationTO classifyPath(@ValidateStringParam(name = "site") String site, String path) {
+        SiteConfigSnapshot snapshot = getSnapshot(site);
+        if (snapshot == null || path == null) {
+            return PathClassificationTO.NONE;
+        }
+        return snapshot.classifier.classify(path);
+    }
+
 	@Override
     @ValidateParams
 	public String getDefaultTimezone(@ValidateStringParam(name = "site") String site) {
@@ -265,7 +408,7 @@ public class ServicesConfigImpl implements ServicesConfig {
          Document document = null;
          SiteConfigTO siteConfig = null;
          try {
-             document = contentService.getContentAsDocument(site, siteConfigPath + FILE_SEPARATOR +  getConfigFileName());
+             document = contentService.getContentAsDocument(site, getSiteConfigFilePath(site));
          } catch (DocumentException e) {
              LOGGER.error("Error while loading configuration for " + site + " at " + siteConfigPath, e);
          }
@@ -417,10 +560,18 @@ public class ServicesConfigImpl implements ServicesConfig {
         return studioConfiguration.getProperty(CONFIGURATION_SITE_GENERAL_CONFIG_FILE_NAME);
     }
 
+    public int getPathClassificationCacheSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(CONFIGURATION_SITE_PATH_CLASSIFICATION_CACHE_SIZE));
+    }
+
+    protected String getSiteConfigFilePath(String site) {
+        return getConfigPath().replaceFirst(StudioConstants.PATTERN_SITE, site) + FILE_SEPARATOR + getConfigFileName();
+    }
+
     @Override
     @ValidateParams
     public void reloadConfiguration(@ValidateStringParam(name = "site") String site) {
-        SiteConfigTO config = loadConfiguration(site);
+        loadSnapshot(site, true);
     }
 
     public void setContentService(ContentService contentService) {
@@ -0,0 +1,199 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.content;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
+import org.craftercms.studio.api.v1.to.ContentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+
+import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONTENT_ITEM_CACHE_MAX_ITEMS_PER_SITE;
+
+/**
+ * Per site cache of the repository driven part of content items (the properties read from the content XML and the
+ * site configuration), without metadata, workflow state or children.
+ *
+ * Entries are keyed by path and validated against the id of the repository object of the content, so a changed
+ * content is never served from the cache. Snapshots are immutable, every hit returns a copy the caller can modify.
+ */
+public class ContentItemCache implements MetricsSource {
+
+    private static final class Entry {
+        private final String objectId;
+        private final ContentItemTO item;
+
+        Entry(String objectId, ContentItemTO item) {
+            this.objectId = objectId;
+            this.item = item;
+        }
+    }
+
+    protected final ConcurrentHashMap<String, Map<String, Entry>> sites = new ConcurrentHashMap<String, Map<String, Entry>>();
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+    protected final AtomicLong invalidations = new AtomicLong();
+
+    protected StudioConfiguration studioConfiguration;
+
+    /**
+     * Get a copy of the cached item
+     *
+     * @param site site id
+     * @param path path of the item
+     * @param objectId id of the repository object of the item as of now
+     * @return copy of the item or null if it is not cached or the content changed since it was cached
+     */
+    public ContentItemTO get(String site, String path, String objectId) {
+        Map<String, Entry> items = sites.get(site);
+        Entry entry = null;
+        if (items != null) {
+            synchronized (items) {
+                entry = items.get(path);
+            }
+        }
+        if (entry == null || !entry.objectId.equals(objectId)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(entry.item);
+    }
+
+    /**
+     * Cache a snapshot of an item
+     *
+     * @param site site id
+     * @param path path of the item
+     * @param objectId id of the repository object the item was built from
+     * @param item item
+     */
+    public void put(String site, String path, String objectId, ContentItemTO item) {
+        Map<String, Entry> items = sites.get(site);
+        if (items == null) {
+            final int maxItems = getMaxItemsPerSite();
+            items = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ContentItemCache.Entry> eldest) {
+                    if (size() > maxItems) {
+                        evictions.incrementAndGet();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+            Map<String, Entry> existing = sites.putIfAbsent(site, items);
+            if (existing != null) {
+                items = existing;
+            }
+        }
+        Entry entry = new Entry(objectId, copy(item));
+        synchronized (items) {
+            items.put(path, entry);
+        }
+    }
+
+    /**
+     * Forget an item and, if it is a folder, everything under it
+     *
+     * @param site site id
+     * @param path path of the item or folder
+     */
+    public void invalidate(String site, String path) {
+        Map<String, Entry> items = sites.get(site);
+        if (items == null) {
+            return;
+        }
+        String folderPrefix = path.endsWith(FILE_SEPARATOR) ? path : path + FILE_SEPARATOR;
+        synchronized (items) {
+            Iterator<String> iterator = items.keySet().iterator();
+            while (iterator.hasNext()) {
+                String cachedPath = iterator.next();
+                if (cachedPath.equals(path) || cachedPath.startsWith(folderPrefix)) {
+                    iterator.remove();
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget all items of a site
+     *
+     * @param site site id
+     */
+    public void invalidateSite(String site) {
+        Map<String, Entry> items = sites.remove(site);
+        if (items != null) {
+            synchronized (items) {
+                invalidations.addAndGet(items.size());
+            }
+        }
+    }
+
+    /**
+     * Forget all items of all sites
+     */
+    public void invalidateAll() {
+        for (String site : sites.keySet()) {
+            invalidateSite(site);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        long size = 0;
+        for (Map<String, Entry> items : sites.values()) {
+            synchronized (items) {
+                size += items.size();
+            }
+        }
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("sites", sites.size());
+        metrics.put("size", size);
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("evictions", evictions.get());
+        metrics.put("invalidations", invalidations.get());
+        return metrics;
+    }
+
+    protected ContentItemTO copy(ContentItemTO item) {
+        ContentItemTO copy = new ContentItemTO(item);
+        copy.renderingTemplates = new ArrayList<>(item.renderingTemplates);
+        if (item.getOrders() != null) {
+            copy.setOrders(new ArrayList<>(item.getOrders()));
+        }
+        return copy;
+    }
+
+    public int getMaxItemsPerSite() {
+        return Integer.parseInt(studioConfiguration.getProperty(CONTENT_ITEM_CACHE_MAX_ITEMS_PER_SITE));
+    }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+}
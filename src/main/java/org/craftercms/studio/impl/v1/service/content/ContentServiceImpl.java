@@ -20,12 +20,17 @@ package org.craftercms.studio.impl.v1.service.content;
 import java.io.*;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringEscapeUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.craftercms.commons.http.RequestContext;
 import org.craftercms.commons.validation.annotations.param.ValidateIntegerParam;
 import org.craftercms.commons.validation.annotations.param.ValidateParams;
 import org.craftercms.commons.validation.annotations.param.ValidateSecurePathParam;
@@ -35,9 +40,11 @@ import org.craftercms.studio.api.v1.constant.DmXmlConstants;
 import org.craftercms.studio.api.v1.dal.ItemMetadata;
 import org.craftercms.studio.api.v1.dal.ItemState;
 import org.craftercms.studio.api.v1.ebus.PreviewEventContext;
+import org.craftercms.studio.api.v1.ebus.RepositoryEventContext;
 import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
 import org.craftercms.studio.api.v1.exception.ServiceException;
 import org.craftercms.studio.api.v1.executor.ProcessContentExecutor;
+import org.craftercms.studio.api.v1.job.CronJobContext;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
@@ -74,6 +81,7 @@ import javax.activation.MimetypesFileTypeMap;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.*;
 import static org.craftercms.studio.api.v1.ebus.EBusConstants.EVENT_PREVIEW_SYNC;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONTENT_ITEM_TREE_PARALLEL_THRESHOLD;
 
 /**
  * Content Services that other services may use
@@ -91,6 +99,11 @@ public class ContentServiceImpl implements ContentService {
     public final static Pattern COPY_FILE_PATTERN = Pattern.compile("(.+)-([0-9]+)\\.(.+)");
     public final static Pattern COPY_FOLDER_PATTERN = Pattern.compile("(.+)-([0-9]+)");
 
+    /**
+     * mime types map, loading it reads the mime.types files so it is shared (lookups are thread safe)
+     */
+    protected final static MimetypesFileTypeMap MIME_TYPES_MAP = new MimetypesFileTypeMap();
+
     @Override
     @ValidateParams
     public boolean contentExists(@ValidateStringParam(name = "site") String site, @ValidateSecurePathParam(name = "path") String path) {
@@ -426,6 +439,7 @@ public class ContentServiceImpl implements ContentService {
         boolean result;
 
         String commitId = _contentRepository.writeContent(site, path, content);
+        invalidateContentItems(site, path);
 
         result = StringUtils.isNotEmpty(commitId);
 
@@ -477,6 +491,7 @@ public class ContentServiceImpl implements ContentService {
         }
 
         commitId = _contentRepository.deleteContent(site, path, approver);
+        invalidateContentItems(site, path);
 
         objectStateService.deleteObjectStateForPath(site, path);
         objectMetadataManager.deleteObjectMetadata(site, path);
@@ -500,6 +515,20 @@ public class ContentServiceImpl implements ContentService {
         return toReturn;
     }
 
+    /**
+     * Drop the cached items of a path (and everything under it). Items depend on the site configuration too, so a
+     * configuration change drops the whole site.
+     */
+    protected void invalidateContentItems(String site, String path) {
+        if (contentItemCache != null) {
+            if (path.startsWith("/config/")) {
+                contentItemCache.invalidateSite(site);
+            } else {
+                contentItemCache.invalidate(site, path);
+            }
+        }
+    }
+
     protected void generateDeleteActivity(String site, String path, String approver) {
         // This method creates a database record to show the activity of deleting a file
         // TODO: SJ: This type of thing needs to move to the audit service which handles all records related to
@@ -708,6 +737,7 @@ public class ContentServiceImpl implements ContentService {
 
             // NOTE: IN WRITE SCENARIOS the repository OP IS PART of this PIPELINE, for some reason, historically with MOVE it is not
             Map<String, String> commitIds = _contentRepository.moveContent(site, sourcePath, targetPath);
+            invalidateContentItems(site, sourcePath);
 
             if (commitIds != null) {
                 // Update the database with the commitId for the target item
@@ -1198,16 +1228,17 @@ public class ContentServiceImpl implements ContentService {
         String contentPath = item.uri;
 
         logger.debug("Populating page props '{}'", contentPath);
-        item.setLevelDescriptor(item.name.equals(servicesConfig.getLevelDescriptorName(site)));
-        item.page = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getPagePatterns(site));
+        PathClassificationTO classification = servicesConfig.classifyPath(site, item.getUri());
+        item.setLevelDescriptor(classification.isLevelDescriptor());
+        item.page = classification.isPage();
         item.isPage = item.page;
         item.previewable = item.page;               // TODO: SJ: This and item below are duplicated due to UI issues
         item.isPreviewable = item.previewable;      // TODO: SJ: Fix this in 3.1+
-        item.component = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getComponentPatterns(site)) || item.isLevelDescriptor();
+        item.component = classification.isComponent() || item.isLevelDescriptor();
         item.isComponent = item.component;
-        item.asset = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getAssetPatterns(site));
+        item.asset = classification.isAsset();
         item.isAsset = item.asset;
-        item.document = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getDocumentPatterns(site));
+        item.document = classification.isDocument();
         item.isDocument = item.document;
 
         item.uri = contentPath;
@@ -1308,7 +1339,8 @@ public class ContentServiceImpl implements ContentService {
         }
     }
 
-    protected ContentItemTO populateItemChildren(ContentItemTO item, int depth) {
+    protected ContentItemTO populateItemChildren(ContentItemTO item, int depth, List<List<ContentItemTO>> levels,
+                                                 int level) {
         // TODO: SJ: Refactor  in 3.1+
         String contentPath = item.uri;
 
@@ -1333,7 +1365,7 @@ public class ContentServiceImpl implements ContentService {
                     item.container = true;
                 }
 
-                List<ContentItemTO> children = new ArrayList<>();
+                List<String> childPaths = new ArrayList<String>();
                 logger.debug("Checking if {0} has index", contentPath);
                 for (int j = 0; j < childRepoItems.length; j++) {
                     if ("index.xml".equals(childRepoItems[j].name)) {
@@ -1348,13 +1380,13 @@ public class ContentServiceImpl implements ContentService {
                         if (depth > 1) {
                             String childPath = childRepoItems[j].path + FILE_SEPARATOR + childRepoItems[j].name;
                             if (childPath.startsWith(FILE_SEPARATOR + "site" + FILE_SEPARATOR + "website" + FILE_SEPARATOR) && childRepoItems[j].isFolder && contentExists(item.site, childPath + FILE_SEPARATOR + DmConstants.INDEX_FILE )) {
-                                children.add(getContentItem(item.site, childPath + FILE_SEPARATOR + DmConstants.INDEX_FILE, depth - 1));
-                            } else {
-                                children.add(getContentItem(item.site, childPath, depth - 1));
+                                childPath = childPath + FILE_SEPARATOR + DmConstants.INDEX_FILE;
                             }
+                            childPaths.add(childPath);
                         }
                     }
                 }
+                List<ContentItemTO> children = loadContentItemTrees(item.site, childPaths, depth - 1, levels, level + 1);
 
                 if(!indexFound) {
                     // ITEM IS A FOLDER
@@ -1414,26 +1446,12 @@ public class ContentServiceImpl implements ContentService {
         long startTime = System.currentTimeMillis();
 
         try {
-            if (contentExists(site, path)) {
-                // get item from cache
-                item = loadContentItem(site, path);
-
-                if (depth != 0) {
-                    item = populateItemChildren(item, depth);
-                }
-
-                // POPULATE LOCK STATUS
-                populateMetadata(site, item);
-
-                // POPULATE WORKFLOW STATUS
-                if (!item.isFolder() || item.isContainer()) {
-                    populateWorkflowProperties(site, item);
-                } else {
-                    item.setNew(!objectStateService.isFolderLive(site, item.getUri()));
-                    item.isNew = item.isNew();
-                }
-            } else {
-                item = createDummyDmContentItemForDeletedNode(site, path);
+            // Build the whole tree from the repository first, then load metadata and workflow state with one
+            // query per level of the tree instead of one per item
+            List<List<ContentItemTO>> levels = new ArrayList<List<ContentItemTO>>();
+            item = loadContentItemTree(site, path, depth, levels, 0);
+            for (List<ContentItemTO> levelItems : levels) {
+                populateMetadataAndWorkflowProperties(site, levelItems);
             }
         }
         catch(Exception err) {
@@ -1445,7 +1463,191 @@ public class ContentServiceImpl implements ContentService {
         return item;
     }
 
+    /**
+     * Load an item and its children from the repository without metadata and workflow state. Items that exist in
+     * the repository are registered in the list of their level of the tree to be populated in bulk later.
+     */
+    protected ContentItemTO loadContentItemTree(String site, String path, int depth, List<List<ContentItemTO>> levels,
+                                                int level) {
+        ContentItemTO item;
+        if (contentExists(site, path)) {
+            item = loadContentItem(site, path);
+
+            if (depth != 0) {
+                item = populateItemChildren(item, depth, levels, level);
+            }
+
+            while (levels.size() <= level) {
+                levels.add(new ArrayList<ContentItemTO>());
+            }
+            levels.get(level).add(item);
+        } else {
+            item = createDummyDmContentItemForDeletedNode(site, path);
+        }
+        return item;
+    }
+
+    /**
+     * Load sibling items and their subtrees. Big folders are loaded in parallel in the content item tree pool, the
+     * order of the result is the order of the paths regardless of the order in which the subtrees complete.
+     */
+    protected List<ContentItemTO> loadContentItemTrees(String site, List<String> paths, int depth,
+                                                       List<List<ContentItemTO>> levels, int level) {
+        List<ContentItemTO> toReturn = new ArrayList<ContentItemTO>(paths.size());
+        if (contentItemTreePool == null || paths.size() < getContentItemTreeParallelThreshold()) {
+            for (String path : paths) {
+                try {
+                    toReturn.add(loadContentItemTree(site, path, depth, levels, level));
+                } catch (Exception err) {
+                    logger.debug("error constructing item for object at site '{}' path '{}'", err, site, path);
+                }
+            }
+        } else {
+            final List<ContentItemTreeTask> tasks = new ArrayList<ContentItemTreeTask>(paths.size());
+            for (String path : paths) {
+                tasks.add(new ContentItemTreeTask(site, path, depth));
+            }
+            if (ForkJoinTask.getPool() == contentItemTreePool) {
+                // Already inside the pool (nested subtree), fork and help joining instead of blocking a worker
+                ForkJoinTask.invokeAll(tasks);
+            } else {
+                contentItemTreePool.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            for (ContentItemTreeTask task : tasks) {
+                ContentItemTO child = task.join();
+                if (child != null) {
+                    toReturn.add(child);
+                }
+                // Merge the levels of the subtree into the levels of the whole tree
+                for (int i = 0; i < task.levels.size(); i++) {
+                    while (levels.size() <= level + i) {
+                        levels.add(new ArrayList<ContentItemTO>());
+                    }
+                    levels.get(level + i).addAll(task.levels.get(i));
+                }
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Loads a subtree in the content item tree pool on behalf of the calling thread, carrying over its request and
+     * security context.
+     */
+    protected class ContentItemTreeTask extends RecursiveTask<ContentItemTO> {
+
+        private final String site;
+        private final String path;
+        private final int depth;
+        private final RequestContext requestContext = RequestContext.getCurrent();
+        private final CronJobContext cronJobContext = CronJobContext.getCurrent();
+        private final RepositoryEventContext repositoryEventContext = RepositoryEventContext.getCurrent();
+        private final List<List<ContentItemTO>> levels = new ArrayList<List<ContentItemTO>>();
+
+        public ContentItemTreeTask(String site, String path, int depth) {
+            this.site = site;
+            this.path = path;
+            this.depth = depth;
+        }
+
+        @Override
+        protected ContentItemTO compute() {
+            // The task may run on the calling thread itself when joining, so restore what was there before
+            RequestContext previousRequestContext = RequestContext.getCurrent();
+            CronJobContext previousCronJobContext = CronJobContext.getCurrent();
+            RepositoryEventContext previousRepositoryEventContext = RepositoryEventContext.getCurrent();
+            RequestContext.setCurrent(requestContext);
+            CronJobContext.setCurrent(cronJobContext);
+            RepositoryEventContext.setCurrent(repositoryEventContext);
+            try {
+                return loadContentItemTree(site, path, depth, levels, 0);
+            } catch (Exception err) {
+                logger.debug("error constructing item for object at site '{}' path '{}'", err, site, path);
+                return null;
+            } finally {
+                RequestContext.setCurrent(previousRequestContext);
+                CronJobContext.setCurrent(previousCronJobContext);
+                RepositoryEventContext.setCurrent(previousRepositoryEventContext);
+            }
+        }
+    }
+
+    public int getContentItemTreeParallelThreshold() {
+        return Integer.parseInt(studioConfiguration.getProperty(CONTENT_ITEM_TREE_PARALLEL_THRESHOLD));
+    }
+
+    /**
+     * Populate metadata (lock status) and workflow status of multiple items using bulk queries
+     */
+    protected void populateMetadataAndWorkflowProperties(String site, List<ContentItemTO> items) {
+        List<String> paths = new ArrayList<String>(items.size());
+        List<String> statePaths = new ArrayList<String>(items.size());
+        List<String> folderPaths = new ArrayList<String>();
+        for (ContentItemTO item : items) {
+            paths.add(item.getUri());
+            if (!item.isFolder() || item.isContainer()) {
+                statePaths.add(item.getUri());
+            }
+            if (item.isFolder()) {
+                folderPaths.add(item.getUri());
+            }
+        }
+
+        Map<String, ItemMetadata> metadataMap = new HashMap<String, ItemMetadata>();
+        for (ItemMetadata metadata : objectMetadataManager.getPropertiesForPaths(site, paths)) {
+            metadataMap.put(metadata.getPath(), metadata);
+        }
+        Map<String, ItemState> stateMap = new HashMap<String, ItemState>();
+        for (ItemState state : objectStateService.getObjectStateForPaths(site, statePaths)) {
+            stateMap.put(state.getPath(), state);
+        }
+        Set<String> liveFolders = new HashSet<String>(objectStateService.getLiveFolders(site, folderPaths));
+
+        for (ContentItemTO item : items) {
+            String cleanPath = FilenameUtils.normalize(item.getUri(), true);
+
+            // POPULATE LOCK STATUS
+            populateMetadata(item, metadataMap.get(cleanPath));
+
+            // POPULATE WORKFLOW STATUS
+            boolean liveFolder = liveFolders.contains(cleanPath);
+            if (!item.isFolder() || item.isContainer()) {
+                populateWorkflowProperties(item, stateMap.get(cleanPath), liveFolder);
+            } else {
+                item.setNew(!liveFolder);
+                item.isNew = item.isNew();
+            }
+        }
+    }
+
     protected ContentItemTO loadContentItem(String site, String path) {
+        String objectId = null;
+        if (contentItemCache != null) {
+            objectId = _contentRepository.getContentObjectId(site, path);
+            if (objectId != null) {
+                ContentItemTO cached = contentItemCache.get(site, path, objectId);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+        }
+
+        ContentItemTO item = buildContentItem(site, path);
+        if (objectId != null) {
+            contentItemCache.put(site, path, objectId, item);
+        }
+        return item;
+    }
+
+    /**
+     * Build the repository driven properties of an item from its content and the site configuration
+     */
+    protected ContentItemTO buildContentItem(String site, String path) {
         // TODO: SJ: Refactor such that the populate of non-XML is also a method in 3.1+
         ContentItemTO item = createNewContentItemTO(site, path);
 
@@ -1457,16 +1659,17 @@ public class ContentServiceImpl implements ContentService {
                 logger.debug("error constructing item for object at site '{}' path '{}'", err, site, path);
             }
         } else {
-            item.setLevelDescriptor(item.name.equals(servicesConfig.getLevelDescriptorName(site)));
-            item.page = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getPagePatterns(site));
+            PathClassificationTO classification = servicesConfig.classifyPath(site, item.getUri());
+            item.setLevelDescriptor(classification.isLevelDescriptor());
+            item.page = classification.isPage();
             item.isPage = item.page;
             item.previewable = item.page;
             item.isPreviewable = item.previewable;
-            item.asset = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getAssetPatterns(site)) || ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getRenderingTemplatePatterns(site)) || ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getScriptsPatterns(site));;
+            item.asset = classification.isAsset() || classification.isRenderingTemplate() || classification.isScript();
             item.isAsset = item.asset;
-            item.component = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getComponentPatterns(site)) || item.isLevelDescriptor() || item.asset;
+            item.component = classification.isComponent() || item.isLevelDescriptor() || item.asset;
             item.isComponent = item.component;
-            item.document = ContentUtils.matchesPatterns(item.getUri(), servicesConfig.getDocumentPatterns(site));
+            item.document = classification.isDocument();
             item.isDocument = item.document;
             item.browserUri =item.getUri();
             item.setContentType(getContentTypeClass(site, path));
@@ -1474,8 +1677,7 @@ public class ContentServiceImpl implements ContentService {
 
         loadContentTypeProperties(site, item, item.contentType);
 
-        MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
-        String mimeType = mimeTypesMap.getContentType(item.getName());
+        String mimeType = MIME_TYPES_MAP.getContentType(item.getName());
         if (StringUtils.isNotEmpty(mimeType)) {
             item.setMimeType(mimeType);
         }
@@ -1493,8 +1695,7 @@ public class ContentServiceImpl implements ContentService {
                 item.isPreviewable = item.previewable;
             }
         } else {
-            MimetypesFileTypeMap mimeTypesMap = new MimetypesFileTypeMap();
-            String mimeType = mimeTypesMap.getContentType(item.getName());
+            String mimeType = MIME_TYPES_MAP.getContentType(item.getName());
             if (mimeType != null && !StringUtils.isEmpty(mimeType)) {
                 item.setPreviewable(ContentUtils.matchesPatterns(mimeType, servicesConfig
                         .getPreviewableMimetypesPaterns(site)));
@@ -1506,9 +1707,13 @@ public class ContentServiceImpl implements ContentService {
 
     protected void populateWorkflowProperties(String site, ContentItemTO item) {
         ItemState state = objectStateService.getObjectState(site, item.getUri(), false);
+        boolean liveFolder = item.isFolder() && objectStateService.isFolderLive(site, item.getUri());
+        populateWorkflowProperties(item, state, liveFolder);
+    }
+
+    protected void populateWorkflowProperties(ContentItemTO item, ItemState state, boolean liveFolder) {
         if (state != null) {
             if (item.isFolder()) {
-                boolean liveFolder = objectStateService.isFolderLive(site, item.getUri());
                 item.setNew(!liveFolder);
                 item.setLive(liveFolder);
             } else {
@@ -1527,7 +1732,6 @@ public class ContentServiceImpl implements ContentService {
             item.isInFlight = item.isInFlight();
         } else {
             if (item.isFolder()) {
-                boolean liveFolder = objectStateService.isFolderLive(site, item.getUri());
                 item.setNew(!liveFolder);
                 item.setLive(liveFolder);
                 item.isNew = item.isNew();
@@ -1545,7 +1749,10 @@ public class ContentServiceImpl implements ContentService {
 
         // TODO: SJ: Create a method String getValueIfNotNull(String) to use to return not null/empty string if null
         // TODO: SJ: Use that method to reduce redundant code here. 3.1+
-        ItemMetadata metadata = objectMetadataManager.getProperties(site, item.getUri());
+        populateMetadata(item, objectMetadataManager.getProperties(site, item.getUri()));
+    }
+
+    protected void populateMetadata(ContentItemTO item, ItemMetadata metadata) {
         if (metadata != null) {
             // Set the lock owner to empty string if we get a null to not confuse the UI, or set it to what's in the
             // database if it's not null
@@ -1643,6 +1850,7 @@ public class ContentServiceImpl implements ContentService {
     public boolean revertContentItem(@ValidateStringParam(name = "site") String site, @ValidateSecurePathParam(name = "path") String path, @ValidateStringParam(name = "version") String version, boolean major, @ValidateStringParam(name = "comment") String comment) {
         boolean toReturn = false;
         String commitId = _contentRepository.revertContent(site, path, version, major, comment);
+        invalidateContentItems(site, path);
 
         if (commitId != null) {
             // Update the database with the commitId for the target item
@@ -1766,29 +1974,23 @@ public class ContentServiceImpl implements ContentService {
     @ValidateParams
     public String getContentTypeClass(@ValidateStringParam(name = "site") String site, String uri) {
         // TODO: SJ: This reads: if can't guess what it is, it's a page. This is to be replaced in 3.1+
-        if (matchesPatterns(uri, servicesConfig.getPagePatterns(site))) {
+        PathClassificationTO classification = servicesConfig.classifyPath(site, uri);
+        if (classification.isPage()) {
             return CONTENT_TYPE_PAGE;
-        } else if (matchesPatterns(uri, servicesConfig.getComponentPatterns(site)) || uri.endsWith(FILE_SEPARATOR + servicesConfig.getLevelDescriptorName(site))) {
+        } else if (classification.isComponent() || classification.isLevelDescriptor()) {
             return CONTENT_TYPE_COMPONENT;
-        } else if (matchesPatterns(uri, servicesConfig.getDocumentPatterns(site))) {
+        } else if (classification.isDocument()) {
             return CONTENT_TYPE_DOCUMENT;
-        } else if (matchesPatterns(uri, servicesConfig.getAssetPatterns(site))) {
+        } else if (classification.isAsset()) {
             return CONTENT_TYPE_ASSET;
-        } else if (matchesPatterns(uri, servicesConfig.getRenderingTemplatePatterns(site))) {
+        } else if (classification.isRenderingTemplate()) {
             return CONTENT_TYPE_RENDERING_TEMPLATE;
         }
         return CONTENT_TYPE_UNKNOWN;
     }
 
     protected boolean matchesPatterns(String uri, List<String> patterns) {
-        if (patterns != null) {
-            for (String pattern : patterns) {
-                if (uri.matches(pattern)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return ContentUtils.matchesPatterns(uri, patterns);
     }
 
     @Override
@@ -2101,6 +2303,7 @@ public class ContentServiceImpl implements ContentService {
 
         // NOTE: IN WRITE SCENARIOS the repository OP IS PART of this PIPELINE, for some reason, historically with MOVE it is not
         Map<String, String> commitIds = _contentRepository.moveContent(site, path, targetPath);
+        invalidateContentItems(site, path);
 
         if (commitIds != null) {
             // Update the database with the commitId for the target item
@@ -2140,6 +2343,8 @@ public class ContentServiceImpl implements ContentService {
     protected SiteService siteService;
     protected ContentItemIdGenerator contentItemIdGenerator;
     protected StudioConfiguration studioConfiguration;
+    protected ForkJoinPool contentItemTreePool;
+    protected ContentItemCache contentItemCache;
 
     public ContentRepository getContentRepository() { return _contentRepository; }
     public void setContentRepository(ContentRepository contentRepository) { this._contentRepository = contentRepository; }
@@ -2188,4 +2393,10 @@ public class ContentServiceImpl implements ContentService {
 
     public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
-}
\ No newline at end of file
+
+    public ForkJoinPool getContentItemTreePool() { return contentItemTreePool; }
+    public void setContentItemTreePool(ForkJoinPool contentItemTreePool) { this.contentItemTreePool = contentItemTreePool; }
+
+    public ContentItemCache getContentItemCache() { return contentItemCache; }
+    public void setContentItemCache(ContentItemCache contentItemCache) { this.contentItemCache = contentItemCache; }
+}
@@ -27,12 +27,16 @@ import org.craftercms.studio.api.v1.dal.ItemMetadataMapper;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.service.content.ObjectMetadataManager;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE;
+
 public class ObjectMetadataManagerImpl implements ObjectMetadataManager {
 
     private final static Logger logger = LoggerFactory.getLogger(ObjectMetadataManagerImpl.class);
@@ -40,6 +44,8 @@ public class ObjectMetadataManagerImpl implements ObjectMetadataManager {
     @Autowired
     protected ItemMetadataMapper itemMetadataMapper;
 
+    protected StudioConfiguration studioConfiguration;
+
     @Override
     @ValidateParams
     public void insertNewObjectMetadata(@ValidateStringParam(name = "site") String site, @ValidateSecurePathParam(name = "path") String path) {
@@ -86,6 +92,26 @@ public class ObjectMetadataManagerImpl implements ObjectMetadataManager {
         return itemMetadataMapper.getProperties(params);
     }
 
+    @Override
+    @ValidateParams
+    public List<ItemMetadata> getPropertiesForPaths(@ValidateStringParam(name = "site") String site, List<String> paths) {
+        List<ItemMetadata> toReturn = new ArrayList<ItemMetadata>();
+        if (paths != null && !paths.isEmpty()) {
+            List<String> cleanPaths = new ArrayList<String>(paths.size());
+            for (String path : paths) {
+                cleanPaths.add(FilenameUtils.normalize(path, true));
+            }
+            int batchSize = getBulkOperationBatchSize();
+            for (int i = 0; i < cleanPaths.size(); i = i + batchSize) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("site", site);
+                params.put("paths", cleanPaths.subList(i, Math.min(i + batchSize, cleanPaths.size())));
+                toReturn.addAll(itemMetadataMapper.getPropertiesForPaths(params));
+            }
+        }
+        return toReturn;
+    }
+
     @Override
     @ValidateParams
     public boolean metadataExist(@ValidateStringParam(name = "site") String site, @ValidateSecurePathParam(name = "path") String path) {
@@ -233,4 +259,11 @@ public class ObjectMetadataManagerImpl implements ObjectMetadataManager {
         params.put("path", path);
         return itemMetadataMapper.getSameCommitItems(params);
     }
+
+    public int getBulkOperationBatchSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE));
+    }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 }
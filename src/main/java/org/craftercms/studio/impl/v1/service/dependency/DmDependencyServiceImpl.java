@@ -22,6 +22,7 @@ import net.sf.json.JSONObject;
 import net.sf.json.JSONSerializer;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.craftercms.commons.http.RequestContext;
 import org.craftercms.commons.validation.annotations.param.ValidateParams;
 import org.craftercms.commons.validation.annotations.param.ValidateSecurePathParam;
 import org.craftercms.commons.validation.annotations.param.ValidateStringParam;
@@ -30,8 +31,10 @@ import org.craftercms.studio.api.v1.constant.DmConstants;
 import org.craftercms.studio.api.v1.constant.DmXmlConstants;
 import org.craftercms.studio.api.v1.dal.DependencyEntity;
 import org.craftercms.studio.api.v1.dal.DependencyMapper;
+import org.craftercms.studio.api.v1.ebus.RepositoryEventContext;
 import org.craftercms.studio.api.v1.exception.ContentNotFoundException;
 import org.craftercms.studio.api.v1.exception.ServiceException;
+import org.craftercms.studio.api.v1.job.CronJobContext;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.service.AbstractRegistrableService;
@@ -45,6 +48,7 @@ import org.craftercms.studio.api.v1.to.ContentItemTO;
 import org.craftercms.studio.api.v1.to.CopyDependencyConfigTO;
 import org.craftercms.studio.api.v1.to.DeleteDependencyConfigTO;
 import org.craftercms.studio.api.v1.to.DmDependencyTO;
+import org.craftercms.studio.api.v1.to.PathClassificationTO;
 import org.craftercms.studio.api.v1.util.DmContentItemComparator;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.impl.v1.util.ContentFormatUtils;
@@ -54,11 +58,15 @@ import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.Element;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.AsyncTaskExecutor;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -82,6 +90,7 @@ public class DmDependencyServiceImpl extends AbstractRegistrableService implemen
     protected ObjectMetadataManager objectMetadataManager;
     protected DependencyResolver dependencyResolver;
     protected DependencyDiffService dependencyDiffService;
+    protected AsyncTaskExecutor dependencyResolverPool;
 
     @Autowired
     protected DependencyMapper dependencyMapper;
@@ -327,9 +336,8 @@ public class DmDependencyServiceImpl extends AbstractRegistrableService implemen
             processedDependencies.add(path);
             DmDependencyTO item = new DmDependencyTO();
             item.setUri(path);
-            if (recursive
-                    && (ContentUtils.matchesPatterns(path, servicesConfig.getPagePatterns(site))
-                    || ContentUtils.matchesPatterns(path, servicesConfig.getComponentPatterns(site)))) {
+            PathClassificationTO classification = recursive ? servicesConfig.classifyPath(site, path) : null;
+            if (classification != null && (classification.isPage() || classification.isComponent())) {
                 try {
                 	Document document = this.loadDocument(site, path);
                     if (document == null) {
@@ -805,6 +813,93 @@ public class DmDependencyServiceImpl extends AbstractRegistrableService implemen
         extractDirectDependenciesRecursively(site, path, new HashSet<>());
     }
 
+    @Override
+    @ValidateParams
+    public boolean extractDependenciesForItems(@ValidateStringParam(name = "site") String site, List<String> paths) {
+        boolean toReturn = true;
+        // Resolving reads and matches the content, it runs on the pool; storing stays on this thread, one path at a
+        // time in the order the paths were submitted, and the paths found along the way are submitted as they come
+        Set<String> submittedPaths = new HashSet<String>();
+        Deque<String> pendingPaths = new ArrayDeque<String>();
+        Deque<Future<Map<String, Set<String>>>> pendingResults = new ArrayDeque<Future<Map<String, Set<String>>>>();
+        for (String path : paths) {
+            if (hasDependencies(site, path) && submittedPaths.add(path)) {
+                pendingPaths.add(path);
+                pendingResults.add(dependencyResolverPool.submit(new ResolveDependenciesTask(site, path)));
+            }
+        }
+
+        while (!pendingResults.isEmpty()) {
+            String path = pendingPaths.poll();
+            try {
+                Map<String, Set<String>> dependencies = pendingResults.poll().get();
+                setDependencies(site, path, dependencies);
+                for (Set<String> values : dependencies.values()) {
+                    for (String value : values) {
+                        // assets have no dependencies of their own, they are not read
+                        if (hasDependencies(site, value) && submittedPaths.add(value)) {
+                            pendingPaths.add(value);
+                            pendingResults.add(dependencyResolverPool.submit(new ResolveDependenciesTask(site, value)));
+                        }
+                    }
+                }
+            } catch (ExecutionException | ServiceException e) {
+                logger.error("Error extracting dependencies for site " + site + " file: " + path, e);
+                toReturn = false;
+            } catch (InterruptedException e) {
+                logger.error("Interrupted while extracting dependencies for site " + site, e);
+                for (Future<Map<String, Set<String>>> result : pendingResults) {
+                    result.cancel(false);
+                }
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return toReturn;
+    }
+
+    /**
+     * Only content, styles, scripts and rendering templates can depend on other items
+     */
+    protected boolean hasDependencies(String site, String path) {
+        return path.endsWith(DmConstants.XML_PATTERN) || path.endsWith(DmConstants.CSS_PATTERN) ||
+                path.endsWith(DmConstants.JS_PATTERN) || servicesConfig.classifyPath(site, path).isRenderingTemplate();
+    }
+
+    /**
+     * Resolves the dependencies of an item on the resolver pool, carrying over the thread-bound contexts of the caller
+     */
+    protected class ResolveDependenciesTask implements Callable<Map<String, Set<String>>> {
+
+        private final String site;
+        private final String path;
+        private final RequestContext requestContext = RequestContext.getCurrent();
+        private final CronJobContext cronJobContext = CronJobContext.getCurrent();
+        private final RepositoryEventContext repositoryEventContext = RepositoryEventContext.getCurrent();
+
+        public ResolveDependenciesTask(String site, String path) {
+            this.site = site;
+            this.path = path;
+        }
+
+        @Override
+        public Map<String, Set<String>> call() {
+            RequestContext previousRequestContext = RequestContext.getCurrent();
+            CronJobContext previousCronJobContext = CronJobContext.getCurrent();
+            RepositoryEventContext previousRepositoryEventContext = RepositoryEventContext.getCurrent();
+            RequestContext.setCurrent(requestContext);
+            CronJobContext.setCurrent(cronJobContext);
+            RepositoryEventContext.setCurrent(repositoryEventContext);
+            try {
+                return dependencyResolver.resolve(site, path);
+            } finally {
+                RequestContext.setCurrent(previousRequestContext);
+                CronJobContext.setCurrent(previousCronJobContext);
+                RepositoryEventContext.setCurrent(previousRepositoryEventContext);
+            }
+        }
+    }
+
     protected List<String> getDependentLevelDescriptors(String site, String path, boolean b, String levelDescriptorName) {
         List<String> levelDescriptors = new ArrayList<>();
         // TODO: implement search for level descriptors
@@ -1103,4 +1198,7 @@ public class DmDependencyServiceImpl extends AbstractRegistrableService implemen
 
     public DependencyDiffService getDependencyDiffService() { return dependencyDiffService; }
     public void setDependencyDiffService(DependencyDiffService dependencyDiffService) { this.dependencyDiffService = dependencyDiffService; }
+
+    public AsyncTaskExecutor getDependencyResolverPool() { return dependencyResolverPool; }
+    public void setDependencyResolverPool(AsyncTaskExecutor dependencyResolverPool) { this.dependencyResolverPool = dependencyResolverPool; }
 }
@@ -0,0 +1,185 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.craftercms.studio.api.v1.dal.DeploymentHistoryMapper;
+import org.craftercms.studio.api.v1.dal.DeploymentSyncHistory;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.api.v1.util.filter.DmFilterWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE;
+
+/**
+ * Deployment history written by the publishing job, one entry per published item. History older than the first entry
+ * of a site is read from the repository.
+ */
+public class DeploymentHistoryStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeploymentHistoryStore.class);
+
+    protected DeploymentHistoryProvider repositoryHistoryProvider;
+    protected StudioConfiguration studioConfiguration;
+
+    @Autowired
+    protected DeploymentHistoryMapper deploymentHistoryMapper;
+
+    /**
+     * Append the publishing of items to an environment to the history. If that fails the history is deleted up to the
+     * date of the publishing, as far as possible, so that range is read from the repository instead of missing the
+     * publishing.
+     *
+     * @param site site id
+     * @param environment publishing environment
+     * @param items published items
+     * @param user user that published the items
+     * @param deploymentDate date of the publishing
+     */
+    public void record(String site, String environment, List<DeploymentItemTO> items, String user,
+                       ZonedDateTime deploymentDate) {
+        int batchSize = getBatchSize();
+        try {
+            for (int i = 0; i < items.size(); i = i + batchSize) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("site", site);
+                params.put("environment", environment);
+                params.put("user", user);
+                params.put("deploymentDate", deploymentDate);
+                params.put("items", items.subList(i, Math.min(i + batchSize, items.size())));
+                deploymentHistoryMapper.insertDeploymentHistory(params);
+            }
+        } catch (RuntimeException e) {
+            // Only the history before the first recorded deployment is read from the repository
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("site", site);
+            params.put("toDate", deploymentDate);
+            try {
+                deploymentHistoryMapper.deleteDeploymentHistoryUntil(params);
+            } catch (RuntimeException deleteError) {
+                logger.error("Error while deleting deployment history of site " + site + " up to a publishing that "
+                        + "could not be recorded, the publishing is missing from the history", deleteError);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get a page of the deployment history of a site, most recent first
+     *
+     * @param site site id
+     * @param environment publishing environment, null for all of them
+     * @param fromDate date from
+     * @param toDate date to
+     * @param contentTypeClass content type class of the items, null for all of them
+     * @param offset number of entries to skip
+     * @param limit maximum number of entries
+     * @return deployment history entries
+     */
+    public List<DeploymentSyncHistory> getDeploymentHistory(String site, String environment, ZonedDateTime fromDate,
+                                                            ZonedDateTime toDate, String contentTypeClass, int offset,
+                                                            int limit) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("environment", environment);
+        params.put("fromDate", fromDate);
+        params.put("toDate", toDate);
+        params.put("contentTypeClass", contentTypeClass);
+        params.put("offset", offset);
+        params.put("limit", limit);
+        return deploymentHistoryMapper.getDeploymentHistory(params);
+    }
+
+    /**
+     * Get the deployment history of a site, most recent first
+     *
+     * @param site site id
+     * @param fromDate date from
+     * @param toDate date to
+     * @param dmFilterWrapper filter of the items
+     * @param filterType filter items by type
+     * @param numberOfItems number of entries in result set
+     * @return deployment history entries
+     */
+    public List<DeploymentSyncHistory> getDeploymentHistory(String site, ZonedDateTime fromDate, ZonedDateTime toDate,
+                                                            DmFilterWrapper dmFilterWrapper, String filterType,
+                                                            int numberOfItems) {
+        List<DeploymentSyncHistory> toRet = new ArrayList<DeploymentSyncHistory>();
+        if (numberOfItems <= 0) {
+            return toRet;
+        }
+        int offset = 0;
+        List<DeploymentSyncHistory> page;
+        do {
+            page = getDeploymentHistory(site, null, fromDate, toDate, null, offset, numberOfItems);
+            for (int i = 0; i < page.size() && toRet.size() < numberOfItems; i++) {
+                DeploymentSyncHistory entry = page.get(i);
+                if (dmFilterWrapper.accept(site, entry.getPath(), filterType)) {
+                    toRet.add(entry);
+                }
+            }
+            offset += page.size();
+        } while (page.size() == numberOfItems && toRet.size() < numberOfItems);
+
+        if (toRet.size() < numberOfItems) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("site", site);
+            ZonedDateTime firstDeploymentDate = deploymentHistoryMapper.getFirstDeploymentDate(params);
+            if (firstDeploymentDate == null || fromDate.isBefore(firstDeploymentDate)) {
+                // older history was never recorded, it is read from the repository up to the first recorded
+                // deployment, excluded since it is already in the recorded history
+                ZonedDateTime repositoryToDate = firstDeploymentDate == null || firstDeploymentDate.isAfter(toDate) ?
+                        toDate : firstDeploymentDate.minusNanos(1);
+                toRet.addAll(repositoryHistoryProvider.getDeploymentHistory(site, fromDate, repositoryToDate,
+                        dmFilterWrapper, filterType, numberOfItems - toRet.size()));
+            }
+        }
+        return toRet;
+    }
+
+    /**
+     * Forget the deployment history of a site
+     *
+     * @param site site id
+     */
+    public void deleteDeploymentHistoryForSite(String site) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        deploymentHistoryMapper.deleteDeploymentHistoryForSite(params);
+    }
+
+    public int getBatchSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE));
+    }
+
+    public DeploymentHistoryProvider getRepositoryHistoryProvider() { return repositoryHistoryProvider; }
+    public void setRepositoryHistoryProvider(DeploymentHistoryProvider repositoryHistoryProvider) { this.repositoryHistoryProvider = repositoryHistoryProvider; }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+}
@@ -91,6 +91,8 @@ public class DeploymentServiceImpl implements DeploymentService {
     protected DeployContentToEnvironmentStore deployContentToEnvironmentStoreJob;
     protected NotificationService notificationService;
     protected DeploymentHistoryProvider deploymentHistoryProvider;
+    protected DeploymentHistoryStore deploymentHistoryStore;
+    protected PublishedItemIndex publishedItemIndex;
     protected StudioConfiguration studioConfiguration;
 
     @Autowired
@@ -348,6 +350,8 @@ public class DeploymentServiceImpl implements DeploymentService {
         Map<String, String> params = new HashMap<String, String>();
         params.put("site", site);
         publishRequestMapper.deleteDeploymentDataForSite(params);
+        publishedItemIndex.deletePublishedItemsForSite(site);
+        deploymentHistoryStore.deleteDeploymentHistoryForSite(site);
         signalWorkersToContinue();
     }
 
@@ -395,7 +399,7 @@ public class DeploymentServiceImpl implements DeploymentService {
         // get the filtered list of attempts in a specific date range
         ZonedDateTime toDate = ZonedDateTime.now(ZoneOffset.UTC);
         ZonedDateTime fromDate = toDate.minusDays(daysFromToday);
-        List<DeploymentSyncHistory> deployReports = deploymentHistoryProvider.getDeploymentHistory(site, fromDate, toDate, dmFilterWrapper, filterType, numberOfItems);
+        List<DeploymentSyncHistory> deployReports = deploymentHistoryStore.getDeploymentHistory(site, fromDate, toDate, dmFilterWrapper, filterType, numberOfItems);
         List<DmDeploymentTaskTO> tasks = new ArrayList<DmDeploymentTaskTO>();
 
         if (deployReports != null) {
@@ -433,6 +437,12 @@ public class DeploymentServiceImpl implements DeploymentService {
         return tasks;
     }
 
+    @Override
+    @ValidateParams
+    public List<DeploymentSyncHistory> getDeploymentHistoryEntries(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "environment") String environment, ZonedDateTime fromDate, ZonedDateTime toDate, @ValidateStringParam(name = "contentTypeClass") String contentTypeClass, @ValidateIntegerParam(name = "offset") int offset, @ValidateIntegerParam(name = "limit") int limit) {
+        return deploymentHistoryStore.getDeploymentHistory(site, environment, fromDate, toDate, contentTypeClass, offset, limit);
+    }
+
     /**
      * create WcmDeploymentTask
      *
@@ -789,6 +799,12 @@ public class DeploymentServiceImpl implements DeploymentService {
         return deploymentHistoryProvider.getLastDeploymentDate(site, path);
     }
 
+    @Override
+    @ValidateParams
+    public Map<String, ZonedDateTime> getLastDeploymentDates(@ValidateStringParam(name = "site") String site, List<String> paths) {
+        return deploymentHistoryProvider.getLastDeploymentDates(site, paths);
+    }
+
     @Override
     @ValidateParams
     public boolean enablePublishing(@ValidateStringParam(name = "site") String site, boolean enabled) throws SiteNotFoundException, AuthenticationException {
@@ -908,6 +924,12 @@ public class DeploymentServiceImpl implements DeploymentService {
     public DeploymentHistoryProvider getDeploymentHistoryProvider() { return deploymentHistoryProvider; }
     public void setDeploymentHistoryProvider(DeploymentHistoryProvider deploymentHistoryProvider) { this.deploymentHistoryProvider = deploymentHistoryProvider; }
 
+    public DeploymentHistoryStore getDeploymentHistoryStore() { return deploymentHistoryStore; }
+    public void setDeploymentHistoryStore(DeploymentHistoryStore deploymentHistoryStore) { this.deploymentHistoryStore = deploymentHistoryStore; }
+
+    public PublishedItemIndex getPublishedItemIndex() { return publishedItemIndex; }
+    public void setPublishedItemIndex(PublishedItemIndex publishedItemIndex) { this.publishedItemIndex = publishedItemIndex; }
+
     public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 
@@ -0,0 +1,243 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.craftercms.studio.api.v1.dal.DeploymentSyncHistory;
+import org.craftercms.studio.api.v1.dal.PublishedItem;
+import org.craftercms.studio.api.v1.dal.PublishedItemMapper;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.api.v1.util.filter.DmFilterWrapper;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE;
+
+/**
+ * Last publishing of each path to each environment, written by the publishing job. Paths published before the index
+ * existed are looked up in the repository history once and the result is stored, including the paths that were never
+ * published, so the history of a path is walked at most once.
+ */
+public class PublishedItemIndex implements DeploymentHistoryProvider, MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishedItemIndex.class);
+
+    /**
+     * Environment of the rows backfilled from the repository history by the last deployment date lookups
+     */
+    protected static final String BACKFILL_ENVIRONMENT = "";
+
+    protected final AtomicLong indexed = new AtomicLong();
+    protected final AtomicLong backfilled = new AtomicLong();
+    protected final AtomicLong recorded = new AtomicLong();
+
+    protected DeploymentHistoryProvider repositoryHistoryProvider;
+    protected StudioConfiguration studioConfiguration;
+
+    @Autowired
+    protected PublishedItemMapper publishedItemMapper;
+
+    /**
+     * Record the publishing of items to an environment. If that fails the rows of the items are deleted, as far as
+     * possible, so they are looked up in the repository history again instead of keeping an older publishing.
+     *
+     * @param site site id
+     * @param environment publishing environment
+     * @param items published items
+     * @param publishDate date of the publishing
+     */
+    public void recordPublished(String site, String environment, List<DeploymentItemTO> items,
+                                ZonedDateTime publishDate) {
+        Map<String, PublishedItem> publishedItems = new LinkedHashMap<String, PublishedItem>();
+        for (DeploymentItemTO item : items) {
+            PublishedItem publishedItem = new PublishedItem();
+            publishedItem.setPath(item.getPath());
+            publishedItem.setCommitId(item.getCommitId());
+            publishedItem.setPublishDate(publishDate);
+            publishedItems.put(item.getPath(), publishedItem);
+        }
+        List<PublishedItem> toRecord = new ArrayList<PublishedItem>(publishedItems.values());
+        int batchSize = getBatchSize();
+        try {
+            for (int i = 0; i < toRecord.size(); i = i + batchSize) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("site", site);
+                params.put("environment", environment);
+                params.put("items", toRecord.subList(i, Math.min(i + batchSize, toRecord.size())));
+                publishedItemMapper.upsertPublishedItems(params);
+            }
+        } catch (RuntimeException e) {
+            deletePublishedItems(site, new ArrayList<String>(publishedItems.keySet()));
+            throw e;
+        }
+        recorded.addAndGet(toRecord.size());
+    }
+
+    protected void deletePublishedItems(String site, List<String> paths) {
+        int batchSize = getBatchSize();
+        for (int i = 0; i < paths.size(); i = i + batchSize) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("site", site);
+            params.put("paths", paths.subList(i, Math.min(i + batchSize, paths.size())));
+            try {
+                publishedItemMapper.deletePublishedItems(params);
+            } catch (RuntimeException e) {
+                logger.error("Error while deleting published items of site " + site + " that could not be recorded, "
+                        + "they are behind until published again", e);
+            }
+        }
+    }
+
+    /**
+     * Forget the published items of a site
+     *
+     * @param site site id
+     */
+    public void deletePublishedItemsForSite(String site) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        publishedItemMapper.deletePublishedItemsForSite(params);
+    }
+
+    @Override
+    public List<DeploymentSyncHistory> getDeploymentHistory(String site, ZonedDateTime fromDate, ZonedDateTime toDate,
+                                                            DmFilterWrapper dmFilterWrapper, String filterType,
+                                                            int numberOfItems) {
+        return repositoryHistoryProvider.getDeploymentHistory(site, fromDate, toDate, dmFilterWrapper, filterType,
+                numberOfItems);
+    }
+
+    @Override
+    public ZonedDateTime getLastDeploymentDate(String site, String path) {
+        List<String> paths = new ArrayList<String>(1);
+        paths.add(path);
+        return getLastDeploymentDates(site, paths).get(path);
+    }
+
+    @Override
+    public Map<String, ZonedDateTime> getLastDeploymentDates(String site, List<String> paths) {
+        Map<String, ZonedDateTime> toRet = new HashMap<String, ZonedDateTime>();
+        List<String> uniquePaths = new ArrayList<String>(new LinkedHashSet<String>(paths));
+        int batchSize = getBatchSize();
+        for (int i = 0; i < uniquePaths.size(); i = i + batchSize) {
+            List<String> part = uniquePaths.subList(i, Math.min(i + batchSize, uniquePaths.size()));
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("site", site);
+            params.put("paths", part);
+            Set<String> known = new HashSet<String>();
+            for (PublishedItem publishedItem : publishedItemMapper.getPublishedItemsForPaths(params)) {
+                ZonedDateTime publishDate = publishedItem.getPublishDate();
+                if (publishDate != null) {
+                    ZonedDateTime current = toRet.get(publishedItem.getPath());
+                    if (current == null || publishDate.isAfter(current)) {
+                        toRet.put(publishedItem.getPath(), publishDate);
+                    }
+                    known.add(publishedItem.getPath());
+                } else if (BACKFILL_ENVIRONMENT.equals(publishedItem.getEnvironment())) {
+                    known.add(publishedItem.getPath());
+                }
+            }
+            indexed.addAndGet(known.size());
+
+            List<PublishedItem> backfill = new ArrayList<PublishedItem>();
+            for (String path : part) {
+                if (!known.contains(path)) {
+                    PublishedItem publishedItem = new PublishedItem();
+                    publishedItem.setPath(path);
+                    publishedItem.setPublishDate(repositoryHistoryProvider.getLastDeploymentDate(site, path));
+                    if (publishedItem.getPublishDate() != null) {
+                        toRet.put(path, publishedItem.getPublishDate());
+                    }
+                    backfill.add(publishedItem);
+                }
+            }
+            if (!backfill.isEmpty()) {
+                insertIfAbsent(site, BACKFILL_ENVIRONMENT, backfill);
+            }
+        }
+        return toRet;
+    }
+
+    @Override
+    public String getLastPublishedCommitId(String site, String environment, String path) {
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("environment", environment);
+        params.put("path", path);
+        PublishedItem publishedItem = publishedItemMapper.getPublishedItem(params);
+        if (publishedItem != null) {
+            indexed.incrementAndGet();
+            return publishedItem.getCommitId();
+        }
+        publishedItem = new PublishedItem();
+        publishedItem.setPath(path);
+        publishedItem.setCommitId(repositoryHistoryProvider.getLastPublishedCommitId(site, environment, path));
+        List<PublishedItem> backfill = new ArrayList<PublishedItem>(1);
+        backfill.add(publishedItem);
+        insertIfAbsent(site, environment, backfill);
+        return publishedItem.getCommitId();
+    }
+
+    protected void insertIfAbsent(String site, String environment, List<PublishedItem> publishedItems) {
+        // Rows written by the publishing job in the meantime are newer than the repository history that was read
+        Map<String, Object> params = new HashMap<String, Object>();
+        params.put("site", site);
+        params.put("environment", environment);
+        params.put("items", publishedItems);
+        try {
+            publishedItemMapper.insertPublishedItemsIfAbsent(params);
+            backfilled.addAndGet(publishedItems.size());
+        } catch (RuntimeException e) {
+            logger.error("Error while backfilling published items index for site " + site, e);
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("indexedLookups", indexed.get());
+        metrics.put("backfilledFromRepository", backfilled.get());
+        metrics.put("recordedPublishes", recorded.get());
+        return metrics;
+    }
+
+    public int getBatchSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE));
+    }
+
+    public DeploymentHistoryProvider getRepositoryHistoryProvider() { return repositoryHistoryProvider; }
+    public void setRepositoryHistoryProvider(DeploymentHistoryProvider repositoryHistoryProvider) { this.repositoryHistoryProvider = repositoryHistoryProvider; }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+}
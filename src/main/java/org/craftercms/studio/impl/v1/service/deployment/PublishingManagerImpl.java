@@ -21,11 +21,15 @@ package org.craftercms.studio.impl.v1.service.deployment;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.commons.validation.annotations.param.ValidateParams;
 import org.craftercms.commons.validation.annotations.param.ValidateStringParam;
@@ -33,6 +37,7 @@ import org.craftercms.studio.api.v1.constant.DmConstants;
 import org.craftercms.studio.api.v1.dal.PublishRequest;
 import org.craftercms.studio.api.v1.dal.PublishRequestMapper;
 import org.craftercms.studio.api.v1.dal.ItemMetadata;
+import org.craftercms.studio.api.v1.dal.ItemState;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
@@ -44,18 +49,20 @@ import org.craftercms.studio.api.v1.service.dependency.DependencyRule;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentException;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentService;
+import org.craftercms.studio.api.v1.service.deployment.MandatoryDependenciesCache;
 import org.craftercms.studio.api.v1.service.deployment.PublishingManager;
 import org.craftercms.studio.api.v1.service.objectstate.ObjectStateService;
+import org.craftercms.studio.api.v1.service.objectstate.State;
 import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
 import org.craftercms.studio.api.v1.service.security.SecurityProvider;
 import org.craftercms.studio.api.v1.service.site.SiteService;
-import org.craftercms.studio.api.v1.to.ContentItemTO;
 import org.craftercms.studio.api.v1.to.DeploymentItemTO;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.impl.v1.util.ContentUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_INDEX_FILE;
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_PUBLISHING_WITHOUT_DEPENDENCIES_ENABLED;
 
@@ -93,7 +100,7 @@ public class PublishingManagerImpl implements PublishingManager {
     }
 
     @Override
-    public DeploymentItemTO processItem(PublishRequest item) throws DeploymentException {
+    public DeploymentItemTO processItem(PublishRequest item, Map<String, TransitionEvent> transitions) throws DeploymentException {
 
         if (item == null) {
             throw new DeploymentException("Cannot process item, item is null.");
@@ -103,6 +110,7 @@ public class PublishingManagerImpl implements PublishingManager {
         deploymentItem.setSite(item.getSite());
         deploymentItem.setPath(item.getPath());
         deploymentItem.setCommitId(item.getCommitId());
+        deploymentItem.setContentTypeClass(item.getContentTypeClass());
 
         String site = item.getSite();
         String path = item.getPath();
@@ -186,9 +194,8 @@ public class PublishingManagerImpl implements PublishingManager {
                 LOGGER.debug("Environment is live, transition item to LIVE state {0}:{1}", site, path);
 
                 // check if commit id from workflow and from object state match
-                ContentItemTO contentItem = contentService.getContentItem(site, path);
                 if (itemMetadata.getCommitId().equals(item.getCommitId())) {
-                    objectStateService.transition(site, contentItem, TransitionEvent.DEPLOYMENT);
+                    transitions.put(FilenameUtils.normalize(path, true), TransitionEvent.DEPLOYMENT);
                 }
                 Map<String, Object> props = new HashMap<String, Object>();
                 props.put(ItemMetadata.PROP_SUBMITTED_BY, StringUtils.EMPTY);
@@ -224,74 +231,90 @@ public class PublishingManagerImpl implements PublishingManager {
     @Override
     @ValidateParams
     public void markItemsCompleted(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "environment") String environment, List<PublishRequest> processedItems) throws DeploymentException {
-        for (PublishRequest item : processedItems) {
-            item.setState(PublishRequest.State.COMPLETED);
-            publishRequestMapper.updateItemDeploymentState(item);
-        }
+        updateItemsDeploymentState(processedItems, PublishRequest.State.COMPLETED);
     }
 
     @Override
     @ValidateParams
     public void markItemsProcessing(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "environment") String environment, List<PublishRequest> itemsToDeploy) throws DeploymentException {
-        for (PublishRequest item : itemsToDeploy) {
-            item.setState(PublishRequest.State.PROCESSING);
-            publishRequestMapper.updateItemDeploymentState(item);
-        }
+        updateItemsDeploymentState(itemsToDeploy, PublishRequest.State.PROCESSING);
     }
 
     @Override
     @ValidateParams
     public void markItemsReady(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "environment") String environment, List<PublishRequest> copyToEnvironmentItems) throws DeploymentException {
-        for (PublishRequest item : copyToEnvironmentItems) {
-            item.setState(PublishRequest.State.READY_FOR_LIVE);
-            publishRequestMapper.updateItemDeploymentState(item);
-        }
+        updateItemsDeploymentState(copyToEnvironmentItems, PublishRequest.State.READY_FOR_LIVE);
     }
 
     @Override
     @ValidateParams
     public void markItemsBlocked(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "environment") String environment, List<PublishRequest> copyToEnvironmentItems) throws DeploymentException {
-        for (PublishRequest item : copyToEnvironmentItems) {
-            item.setState(PublishRequest.State.BLOCKED);
-            publishRequestMapper.updateItemDeploymentState(item);
+        updateItemsDeploymentState(copyToEnvironmentItems, PublishRequest.State.BLOCKED);
+    }
+
+    /**
+     * Set the state of publish requests with one update per batch of requests
+     */
+    protected void updateItemsDeploymentState(List<PublishRequest> items, String state) {
+        if (items == null || items.isEmpty()) {
+            return;
+        }
+        List<Long> ids = new ArrayList<Long>(items.size());
+        for (PublishRequest item : items) {
+            item.setState(state);
+            ids.add(item.getId());
+        }
+        int batchSize = getBulkOperationsBatchSize();
+        for (int i = 0; i < ids.size(); i = i + batchSize) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("ids", ids.subList(i, Math.min(i + batchSize, ids.size())));
+            params.put("state", state);
+            publishRequestMapper.updateItemsDeploymentState(params);
         }
     }
 
     @Override
-    public List<DeploymentItemTO> processMandatoryDependencies(PublishRequest item, Set<String> pathsToDeploy, Set<String> missingDependenciesPaths) throws DeploymentException {
+    public List<DeploymentItemTO> processMandatoryDependencies(PublishRequest item, Set<String> pathsToDeploy, Set<String> missingDependenciesPaths, Map<String, TransitionEvent> transitions, MandatoryDependenciesCache cache) throws DeploymentException {
         List<DeploymentItemTO> mandatoryDependencies = new ArrayList<DeploymentItemTO>();
         String site = item.getSite();
         String path = item.getPath();
 
         if (StringUtils.equals(item.getAction(), PublishRequest.Action.NEW) || StringUtils.equals(item.getAction(), PublishRequest.Action.MOVE)) {
-            if (ContentUtils.matchesPatterns(path, servicesConfig.getPagePatterns(site))) {
-                String helpPath = path.replace(FILE_SEPARATOR + getIndexFile(), "");
-                int idx = helpPath.lastIndexOf(FILE_SEPARATOR);
-                String parentPath = helpPath.substring(0, idx) + FILE_SEPARATOR + getIndexFile();
-                if (objectStateService.isNew(site, parentPath) || objectMetadataManager.isRenamed(site, parentPath)) {
-                    if (!missingDependenciesPaths.contains(parentPath) && !pathsToDeploy.contains(parentPath)) {
+            if (servicesConfig.classifyPath(site, path).isPage()) {
+                String parentPath = getParentPagePath(path);
+                if (!missingDependenciesPaths.contains(parentPath) && !pathsToDeploy.contains(parentPath)) {
+                    loadDependencies(site, Collections.singletonList(parentPath), cache);
+                    if (cache.isNew(parentPath) || cache.isRenamed(parentPath)) {
                         deploymentService.cancelWorkflow(site, parentPath);
                         missingDependenciesPaths.add(parentPath);
-                        PublishRequest parentItem = createMissingItem(site, parentPath, item);
-                        DeploymentItemTO parentDeploymentItem = processItem(parentItem);
+                        PublishRequest parentItem = createMissingItem(site, parentPath, item, cache);
+                        DeploymentItemTO parentDeploymentItem = processItem(parentItem, transitions);
                         mandatoryDependencies.add(parentDeploymentItem);
-                        mandatoryDependencies.addAll(processMandatoryDependencies(parentItem, pathsToDeploy, missingDependenciesPaths));
+                        mandatoryDependencies.addAll(processMandatoryDependencies(parentItem, pathsToDeploy, missingDependenciesPaths, transitions, cache));
                     }
                 }
             }
 
             if (!isEnablePublishingWithoutDependencies()) {
-                Set<String> dependentPaths = deploymentDependencyRule.applyRule(site, path);
+                Set<String> dependentPaths = getDependentPaths(site, path, cache);
+                List<String> candidatePaths = new ArrayList<String>(dependentPaths.size());
                 for (String dependentPath : dependentPaths) {
+                    if (!missingDependenciesPaths.contains(dependentPath) && !pathsToDeploy.contains(dependentPath)) {
+                        candidatePaths.add(dependentPath);
+                    }
+                }
+                loadDependencies(site, candidatePaths, cache);
+                for (String dependentPath : candidatePaths) {
                     // TODO: SJ: This bypasses the Content Service, fix
-                    if (objectStateService.isNew(site, dependentPath) || objectMetadataManager.isRenamed(site, dependentPath)) {
+                    if (cache.isNew(dependentPath) || cache.isRenamed(dependentPath)) {
+                        // may have been processed as a dependency of a previous candidate
                         if (!missingDependenciesPaths.contains(dependentPath) && !pathsToDeploy.contains(dependentPath)) {
                             deploymentService.cancelWorkflow(site, dependentPath);
                             missingDependenciesPaths.add(dependentPath);
-                            PublishRequest dependentItem = createMissingItem(site, dependentPath, item);
-                            DeploymentItemTO dependentDeploymentItem = processItem(dependentItem);
+                            PublishRequest dependentItem = createMissingItem(site, dependentPath, item, cache);
+                            DeploymentItemTO dependentDeploymentItem = processItem(dependentItem, transitions);
                             mandatoryDependencies.add(dependentDeploymentItem);
-                            mandatoryDependencies.addAll(processMandatoryDependencies(dependentItem, pathsToDeploy, missingDependenciesPaths));
+                            mandatoryDependencies.addAll(processMandatoryDependencies(dependentItem, pathsToDeploy, missingDependenciesPaths, transitions, cache));
                         }
                     }
                 }
@@ -301,17 +324,104 @@ public class PublishingManagerImpl implements PublishingManager {
         return mandatoryDependencies;
     }
 
-    private PublishRequest createMissingItem(String site, String itemPath, PublishRequest item) {
+    @Override
+    @ValidateParams
+    public Set<String> getMandatoryDependencyPaths(@ValidateStringParam(name = "site") String site, List<PublishRequest> items, MandatoryDependenciesCache cache) {
+        Set<String> itemPaths = new HashSet<String>();
+        for (PublishRequest item : items) {
+            itemPaths.add(item.getPath());
+        }
+        Set<String> dependencyPaths = new LinkedHashSet<String>();
+        for (PublishRequest item : items) {
+            if (StringUtils.equals(item.getAction(), PublishRequest.Action.NEW) || StringUtils.equals(item.getAction(), PublishRequest.Action.MOVE)) {
+                collectMandatoryDependencyPaths(site, item.getPath(), itemPaths, dependencyPaths, cache);
+            }
+        }
+        return dependencyPaths;
+    }
+
+    /**
+     * Same walk as {@link #processMandatoryDependencies}, without processing anything. Missing dependencies are new or
+     * renamed, so their own dependencies are always followed.
+     */
+    private void collectMandatoryDependencyPaths(String site, String path, Set<String> itemPaths, Set<String> dependencyPaths, MandatoryDependenciesCache cache) {
+        Set<String> candidatePaths = new LinkedHashSet<String>();
+        if (servicesConfig.classifyPath(site, path).isPage()) {
+            candidatePaths.add(getParentPagePath(path));
+        }
+        if (!isEnablePublishingWithoutDependencies()) {
+            candidatePaths.addAll(getDependentPaths(site, path, cache));
+        }
+        candidatePaths.removeAll(itemPaths);
+        candidatePaths.removeAll(dependencyPaths);
+        loadDependencies(site, new ArrayList<String>(candidatePaths), cache);
+        for (String candidatePath : candidatePaths) {
+            if ((cache.isNew(candidatePath) || cache.isRenamed(candidatePath)) && dependencyPaths.add(candidatePath)) {
+                collectMandatoryDependencyPaths(site, candidatePath, itemPaths, dependencyPaths, cache);
+            }
+        }
+    }
+
+    private String getParentPagePath(String path) {
+        String helpPath = path.replace(FILE_SEPARATOR + getIndexFile(), "");
+        int idx = helpPath.lastIndexOf(FILE_SEPARATOR);
+        return helpPath.substring(0, idx) + FILE_SEPARATOR + getIndexFile();
+    }
+
+    private Set<String> getDependentPaths(String site, String path, MandatoryDependenciesCache cache) {
+        Set<String> dependentPaths = cache.getDependencies(path);
+        if (dependentPaths == null) {
+            dependentPaths = deploymentDependencyRule.applyRule(site, path);
+            cache.putDependencies(path, dependentPaths);
+        }
+        return dependentPaths;
+    }
+
+    /**
+     * Load the state and metadata of the paths that are not in the cache yet, with one query for each
+     */
+    protected void loadDependencies(String site, List<String> paths, MandatoryDependenciesCache cache) {
+        List<String> pathsToLoad = new ArrayList<String>(paths.size());
+        for (String path : paths) {
+            if (!cache.isLoaded(path)) {
+                pathsToLoad.add(path);
+            }
+        }
+        if (pathsToLoad.isEmpty()) {
+            return;
+        }
+        Map<String, ItemState> states = new HashMap<String, ItemState>();
+        for (ItemState state : objectStateService.getObjectStateForPaths(site, pathsToLoad)) {
+            states.put(state.getPath(), state);
+        }
+        Map<String, ItemMetadata> metadata = new HashMap<String, ItemMetadata>();
+        for (ItemMetadata itemMetadata : objectMetadataManager.getPropertiesForPaths(site, pathsToLoad)) {
+            metadata.put(itemMetadata.getPath(), itemMetadata);
+        }
+        for (String path : pathsToLoad) {
+            ItemState state = states.get(path);
+            boolean isNew;
+            if (state != null) {
+                isNew = State.isNew(State.valueOf(state.getState()));
+            } else {
+                // creates the missing state if the content exists
+                isNew = objectStateService.isNew(site, path);
+            }
+            cache.put(path, isNew, metadata.get(path));
+        }
+    }
+
+    private PublishRequest createMissingItem(String site, String itemPath, PublishRequest item, MandatoryDependenciesCache cache) {
         PublishRequest missingItem = new PublishRequest();
         missingItem.setSite(site);
         missingItem.setEnvironment(item.getEnvironment());
         missingItem.setPath(itemPath);
         missingItem.setScheduledDate(item.getScheduledDate());
         missingItem.setState(item.getState());
-        if (objectStateService.isNew(site, itemPath)) {
+        if (cache.isNew(itemPath)) {
             missingItem.setAction(PublishRequest.Action.NEW);
         }
-        ItemMetadata metadata = objectMetadataManager.getProperties(site, itemPath);
+        ItemMetadata metadata = cache.getMetadata(itemPath);
         if (metadata != null) {
             if (metadata.getRenamed() != 0) {
                 String oldPath = metadata.getOldUrl();
@@ -352,6 +462,10 @@ public class PublishingManagerImpl implements PublishingManager {
         return studioConfiguration.getProperty(PUBLISHING_MANAGER_INDEX_FILE);
     }
 
+    public int getBulkOperationsBatchSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE));
+    }
+
     public boolean isEnablePublishingWithoutDependencies() {
         boolean toReturn = Boolean.parseBoolean(studioConfiguration.getProperty(PUBLISHING_MANAGER_PUBLISHING_WITHOUT_DEPENDENCIES_ENABLED));
         return toReturn;
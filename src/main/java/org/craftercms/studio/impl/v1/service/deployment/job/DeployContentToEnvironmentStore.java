@@ -23,8 +23,10 @@ import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
 import org.craftercms.studio.api.v1.dal.GitLog;
@@ -36,14 +38,19 @@ import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.deployment.DeploymentException;
+import org.craftercms.studio.api.v1.service.deployment.MandatoryDependenciesCache;
 import org.craftercms.studio.api.v1.service.deployment.PublishingManager;
 import org.craftercms.studio.api.v1.service.event.EventService;
+import org.craftercms.studio.api.v1.service.objectstate.ObjectStateService;
+import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
 import org.craftercms.studio.api.v1.service.site.SiteService;
 import org.craftercms.studio.api.v1.to.DeploymentItemTO;
 import org.craftercms.studio.api.v1.to.PublishingTargetTO;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.api.v2.service.notification.NotificationService;
 import org.craftercms.studio.impl.v1.job.RepositoryJob;
+import org.craftercms.studio.impl.v1.service.deployment.DeploymentHistoryStore;
+import org.craftercms.studio.impl.v1.service.deployment.PublishedItemIndex;
 
 import static org.craftercms.studio.api.v1.util.StudioConfiguration.*;
 
@@ -55,13 +62,18 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
 
     private static boolean stopSignaled = false;
     private static boolean running = false;
+    private static final AtomicInteger activeSiteWorkers = new AtomicInteger();
 
     public static synchronized void signalToStop(boolean toStop) {
         stopSignaled = toStop;
     }
 
+    public static synchronized boolean isStopSignaled() {
+        return stopSignaled;
+    }
+
     public synchronized static boolean isRunning() {
-        return running;
+        return running || activeSiteWorkers.get() > 0;
     }
 
     public synchronized static void setRunning(boolean isRunning) {
@@ -89,161 +101,199 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
         try {
             Set<String> siteNames = siteService.getAllAvailableSites();
             if (siteNames != null && siteNames.size() > 0) {
-                for (String site : siteNames) {
-                    try {
-                        syncRepository(site);
-                    } catch (Exception e) {
-                        logger.error("Failed to sync database from repository for site " + site);
-                        siteService.enablePublishing(site, false);
+                for (final String site : siteNames) {
+                    boolean scheduled = publishingScheduler.schedule(site, new Runnable() {
+                        @Override
+                        public void run() {
+                            processSite(site);
+                        }
+                    });
+                    if (!scheduled) {
+                        logger.debug("Publishing of site {0} is still queued or running", site);
                     }
-                    if (siteService.isPublishingEnabled(site)) {
-                        if (!publishingManager.isPublishingBlocked(site)) {
-                            String statusMessage = StringUtils.EMPTY;
-                            try {
-                                Set<String> environments = getAllPublishingEnvironments(site);
-                                for (String environment : environments) {
-                                    logger.debug("Processing content ready for deployment for site \"{0}\"", site);
-                                    List<PublishRequest> itemsToDeploy = publishingManager.getItemsReadyForDeployment(site, environment);
-
-                                    if (itemsToDeploy != null && itemsToDeploy.size() > 0) {
-                                        logger.info("Starting publishing on environment " + environment + " for site " + site);
-                                        logger.debug("Site \"{0}\" has {1} items ready for deployment", site, itemsToDeploy.size());
+                }
+            }
+        } catch (Exception err) {
+            logger.error("Error while executing deployment to environment store", err);
+            notificationService.notifyDeploymentError("UNKNOWN", err);
+        }
+    }
 
+    /**
+     * Sync the database of a site and publish its items ready for deployment, runs on a publishing worker
+     */
+    protected void processSite(String site) {
+        activeSiteWorkers.incrementAndGet();
+        try {
+            if (isStopSignaled()) {
+                return;
+            }
+            try {
+                syncRepository(site);
+            } catch (Exception e) {
+                logger.error("Failed to sync database from repository for site " + site);
+                siteService.enablePublishing(site, false);
+            }
+            if (siteService.isPublishingEnabled(site)) {
+                if (!publishingManager.isPublishingBlocked(site)) {
+                    try {
+                        Set<String> environments = getAllPublishingEnvironments(site);
+                        for (String environment : environments) {
+                            logger.debug("Processing content ready for deployment for site \"{0}\"", site);
+                            List<PublishRequest> itemsToDeploy = publishingManager.getItemsReadyForDeployment(site, environment);
+
+                            if (itemsToDeploy != null && itemsToDeploy.size() > 0) {
+                                logger.info("Starting publishing on environment " + environment + " for site " + site);
+                                logger.debug("Site \"{0}\" has {1} items ready for deployment", site, itemsToDeploy.size());
+
+                                // The items and the missing dependencies processing them adds are locked at once,
+                                // normalized as the object state service locks them, the states are transitioned
+                                // under these locks
+                                MandatoryDependenciesCache dependenciesCache = new MandatoryDependenciesCache();
+                                Set<String> lockPaths = new HashSet<String>();
+                                for (PublishRequest item : itemsToDeploy) {
+                                    lockPaths.add(FilenameUtils.normalize(item.getPath(), true));
+                                }
+                                if (isMandatoryDependenciesCheckEnabled()) {
+                                    for (String path : publishingManager.getMandatoryDependencyPaths(site, itemsToDeploy, dependenciesCache)) {
+                                        lockPaths.add(FilenameUtils.normalize(path, true));
+                                    }
+                                }
+                                List<String> lockKeys = new ArrayList<String>(lockPaths.size());
+                                for (String path : lockPaths) {
+                                    lockKeys.add(site + ":" + path);
+                                }
+                                generalLockService.lockAll(lockKeys);
+
+                                String author = itemsToDeploy.get(0).getUser();
+                                StringBuilder sbComment = new StringBuilder();
+                                List<DeploymentItemTO> completeDeploymentItemList = new ArrayList<DeploymentItemTO>();
+                                Set<String> processedPaths = new HashSet<String>();
+                                Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
+                                Map<String, TransitionEvent> unlockedTransitions = new LinkedHashMap<String, TransitionEvent>();
+                                String messagePath = StringUtils.EMPTY;
+                                long lastStatusUpdate = 0;
+                                try {
+                                    try {
+                                        logger.debug("Mark items as processing for site \"{0}\"", site);
+                                        publishingManager.markItemsProcessing(site, environment, itemsToDeploy);
                                         for (PublishRequest item : itemsToDeploy) {
-                                            String lockKey = item.getSite() + ":" + item.getPath();
-                                            generalLockService.lock(lockKey);
-                                        }
-
-                                        String author = itemsToDeploy.get(0).getUser();
-                                        StringBuilder sbComment = new StringBuilder();
-                                        List<DeploymentItemTO> completeDeploymentItemList = new ArrayList<DeploymentItemTO>();
-                                        Set<String> processedPaths = new HashSet<String>();
-                                        SimpleDateFormat sdf = new SimpleDateFormat(StudioConstants.DATE_PATTERN_WORKFLOW_WITH_TZ);
-                                        String messagePath = StringUtils.EMPTY;
-                                        try {
-                                            try {
-                                                logger.debug("Mark items as processing for site \"{0}\"", site);
-                                                for (PublishRequest item : itemsToDeploy) {
-                                                    processPublishingRequest(site, environment, item, completeDeploymentItemList, processedPaths);
-                                                }
-                                                deploy(site, environment, completeDeploymentItemList, author, sbComment.toString());
-                                                publishingManager.markItemsCompleted(site, environment, itemsToDeploy);
-
-                                                siteService.updatePublishingStatusMessage(site, statusMessage);
-                                                logger.debug("Mark deployment completed for processed items for site \"{0}\"", site);
-                                                logger.info("Finished publishing environment " + environment + " for site " + site);
-                                            } catch (DeploymentException err) {
-                                                logger.error("Error while executing deployment to environment store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
-                                                publishingManager.markItemsReady(site, environment, itemsToDeploy);
-                                                siteService.enablePublishing(site, false);
-                                                statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
-                                                statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-                                                siteService.updatePublishingStatusMessage(site, statusMessage);
-                                                throw err;
-                                            } catch (Exception err){
-                                                logger.error("Unexpected error while executing deployment to environment " +
-                                                        "store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
-                                                publishingManager.markItemsReady(site, environment, itemsToDeploy);
-                                                siteService.enablePublishing(site, false);
-                                                statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
-                                                statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-                                                siteService.updatePublishingStatusMessage(site, statusMessage);
-                                                throw err;
+                                            messagePath = item.getPath();
+                                            if (System.currentTimeMillis() - lastStatusUpdate >= getStatusUpdateInterval()) {
+                                                updatePublishingStatusMessage(site, JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_BUSY, messagePath);
+                                                lastStatusUpdate = System.currentTimeMillis();
                                             }
-                                        } finally {
-                                            for (PublishRequest item : itemsToDeploy) {
-                                                String itemSite = item.getSite();
-                                                String itemPath = item.getPath();
-                                                String lockKey = itemSite + ":" + itemPath;
-
-                                                try {
-                                                    generalLockService.unlock(lockKey);
-                                                } catch (Exception eUnlockError) {
-                                                    logger.error("Unable to unlock item after deploy site:{0} path:{1} error:{2}", itemSite, itemPath, "" + eUnlockError);
-                                                }
+                                            processPublishingRequest(site, item, completeDeploymentItemList, processedPaths, transitions, dependenciesCache);
+                                        }
+                                        logger.debug("Mandatory dependencies resolved for site \"{0}\", {1} cached, {2} resolved", site, dependenciesCache.getHits(), dependenciesCache.getMisses());
+                                        Map<String, TransitionEvent> lockedTransitions = new LinkedHashMap<String, TransitionEvent>();
+                                        for (Map.Entry<String, TransitionEvent> transition : transitions.entrySet()) {
+                                            if (lockPaths.contains(transition.getKey())) {
+                                                lockedTransitions.put(transition.getKey(), transition.getValue());
+                                            } else {
+                                                unlockedTransitions.put(transition.getKey(), transition.getValue());
                                             }
                                         }
+                                        objectStateService.transitionBulkLocked(site, lockedTransitions);
+                                        deploy(site, environment, completeDeploymentItemList, author, sbComment.toString());
+                                        publishingManager.markItemsCompleted(site, environment, itemsToDeploy);
+
+                                        updatePublishingStatusMessage(site, JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_IDLE, messagePath);
+                                        logger.debug("Mark deployment completed for processed items for site \"{0}\"", site);
+                                        logger.info("Finished publishing environment " + environment + " for site " + site);
+                                    } catch (DeploymentException err) {
+                                        logger.error("Error while executing deployment to environment store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
+                                        publishingManager.markItemsReady(site, environment, itemsToDeploy);
+                                        siteService.enablePublishing(site, false);
+                                        updatePublishingStatusMessage(site, JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR, messagePath);
+                                        throw err;
+                                    } catch (Exception err){
+                                        logger.error("Unexpected error while executing deployment to environment " +
+                                                "store for site \"{0}\", number of items \"{1}\"", err, site, itemsToDeploy.size());
+                                        publishingManager.markItemsReady(site, environment, itemsToDeploy);
+                                        siteService.enablePublishing(site, false);
+                                        updatePublishingStatusMessage(site, JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR, messagePath);
+                                        throw err;
                                     }
+                                } finally {
+                                    generalLockService.unlockAll(lockKeys);
                                 }
-                            } catch (Exception err) {
-                                logger.error("Error while executing deployment to environment store for site: " + site, err);
-                                notificationService.notifyDeploymentError(site, err);
-                                logger.info("Continue executing deployment for other sites.");
+                                // Dependencies that went missing after the locks were taken, taking their locks now
+                                // would break the lock order
+                                objectStateService.transitionBulk(site, unlockedTransitions);
                             }
-                        } else {
-                            logger.info("Publishing is blocked for site " + site);
                         }
-                    } else {
-                        logger.info("Publishing is disabled for site " + site);
+                    } catch (Exception err) {
+                        logger.error("Error while executing deployment to environment store for site: " + site, err);
+                        notificationService.notifyDeploymentError(site, err);
+                        logger.info("Continue executing deployment for other sites.");
                     }
+                } else {
+                    logger.info("Publishing is blocked for site " + site);
                 }
+            } else {
+                logger.info("Publishing is disabled for site " + site);
             }
         } catch (Exception err) {
-            logger.error("Error while executing deployment to environment store", err);
-            notificationService.notifyDeploymentError("UNKNOWN", err);
+            logger.error("Error while executing deployment to environment store for site: " + site, err);
+            notificationService.notifyDeploymentError(site, err);
+        } finally {
+            activeSiteWorkers.decrementAndGet();
         }
     }
 
-    private void processPublishingRequest(String site, String environment, PublishRequest item, List<DeploymentItemTO> completeDeploymentItemList, Set<String> processedPaths) throws SiteNotFoundException, DeploymentException {
-        List<DeploymentItemTO> missingDependencies = new ArrayList<DeploymentItemTO>();
+    /**
+     * Process a publish request and its missing mandatory dependencies. The request is already marked as processing
+     * and its path locked, with the rest of the publish batch.
+     */
+    private void processPublishingRequest(String site, PublishRequest item, List<DeploymentItemTO> completeDeploymentItemList, Set<String> processedPaths, Map<String, TransitionEvent> transitions, MandatoryDependenciesCache dependenciesCache) throws DeploymentException {
+        List<DeploymentItemTO> deploymentItemList = new ArrayList<DeploymentItemTO>();
         Set<String> missingDependenciesPaths = new HashSet<String>();
-        SimpleDateFormat sdf = new SimpleDateFormat(StudioConstants.DATE_PATTERN_WORKFLOW_WITH_TZ);
-        String messagePath = item.getPath();
-        String statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_BUSY);
-        statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-        siteService.updatePublishingStatusMessage(site, statusMessage);
-        publishingManager.markItemsProcessing(site, environment, Arrays.asList(item));
-        String lockKey2 = item.getSite() + ":" + item.getPath();
-        try {
-            generalLockService.lock(lockKey2);
-
-            List<DeploymentItemTO> deploymentItemList = new ArrayList<DeploymentItemTO>();
-
 
-            logger.debug("Processing [{0}] content item for site \"{1}\"", item
-                    .getPath(), site);
-            DeploymentItemTO deploymentItem = publishingManager.processItem(item);
-            deploymentItemList.add(deploymentItem);
-            logger.debug("Processing COMPLETE [{0}] content item for site \"{1}\"",
-                    item.getPath(), site);
-
-            if (isMandatoryDependenciesCheckEnabled()) {
-                logger.debug("Processing Mandatory Deps [{0}] content item for site "
-                        + "\"{1}\"", item.getPath(), site);
-                missingDependencies.addAll(publishingManager
-                        .processMandatoryDependencies(item, processedPaths, missingDependenciesPaths));
-                logger.debug("Processing Mandatory Dependencies COMPLETE [{0}]"
-                        + " content item for site \"{1}\"", item.getPath(), site);
-            }
-            deploymentItemList.addAll(missingDependencies);
-            completeDeploymentItemList.addAll(deploymentItemList);
-            statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_IDLE);
-            statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-        } catch (DeploymentException err) {
-            logger.error("Error while executing deployment to environment store for site \"{0}\",", err, site);
-            publishingManager.markItemsReady(site, environment, Arrays.asList(item));
-            siteService.enablePublishing(site, false);
-            statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
-            statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-            siteService.updatePublishingStatusMessage(site, statusMessage);
-            throw err;
-        } catch (Exception err){
-            logger.error("Unexpected error while executing deployment to environment " +
-                    "store for site \"{0}\", ", err, site);
-            publishingManager.markItemsReady(site, environment, Arrays.asList(item));
-            siteService.enablePublishing(site, false);
-            statusMessage = studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_MESSAGE_STOPPED_ERROR);
-            statusMessage = statusMessage.replace("{item_path}", messagePath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
-            siteService.updatePublishingStatusMessage(site, statusMessage);
-            throw err;
-        } finally {
-            generalLockService.unlock(lockKey2);
+        logger.debug("Processing [{0}] content item for site \"{1}\"", item
+                .getPath(), site);
+        DeploymentItemTO deploymentItem = publishingManager.processItem(item, transitions);
+        deploymentItemList.add(deploymentItem);
+        // states are transitioned once all items are processed, processed paths are not new dependencies
+        processedPaths.add(item.getPath());
+        logger.debug("Processing COMPLETE [{0}] content item for site \"{1}\"",
+                item.getPath(), site);
+
+        if (isMandatoryDependenciesCheckEnabled()) {
+            logger.debug("Processing Mandatory Deps [{0}] content item for site "
+                    + "\"{1}\"", item.getPath(), site);
+            deploymentItemList.addAll(publishingManager
+                    .processMandatoryDependencies(item, processedPaths, missingDependenciesPaths, transitions, dependenciesCache));
+            processedPaths.addAll(missingDependenciesPaths);
+            logger.debug("Processing Mandatory Dependencies COMPLETE [{0}]"
+                    + " content item for site \"{1}\"", item.getPath(), site);
         }
+        completeDeploymentItemList.addAll(deploymentItemList);
+    }
+
+    private void updatePublishingStatusMessage(String site, String messageKey, String itemPath) throws SiteNotFoundException {
+        SimpleDateFormat sdf = new SimpleDateFormat(StudioConstants.DATE_PATTERN_WORKFLOW_WITH_TZ);
+        String statusMessage = studioConfiguration.getProperty(messageKey);
+        statusMessage = statusMessage.replace("{item_path}", itemPath).replace("{datetime}", ZonedDateTime.now(ZoneOffset.UTC).format(DateTimeFormatter.ofPattern(sdf.toPattern())));
+        siteService.updatePublishingStatusMessage(site, statusMessage);
     }
 
     private void deploy(String site, String environment, List<DeploymentItemTO> items, String author, String comment) throws DeploymentException {
         logger.debug("Deploying " + items.size() + " item(s)");
         contentRepository.publish(site, items, environment, author, comment);
+        ZonedDateTime publishDate = ZonedDateTime.now(ZoneOffset.UTC);
+        try {
+            publishedItemIndex.recordPublished(site, environment, items, publishDate);
+        } catch (RuntimeException e) {
+            // the items are published, their rows are deleted so they are looked up in the repository again
+            logger.error("Error while recording published items for site " + site + " on environment " + environment, e);
+        }
+        try {
+            deploymentHistoryStore.record(site, environment, items, author, publishDate);
+        } catch (RuntimeException e) {
+            // the history up to the publishing is deleted so it is read from the repository
+            logger.error("Error while recording deployment history for site " + site + " on environment " + environment, e);
+        }
     }
 
     private Set<String> getAllPublishingEnvironments(String site) {
@@ -279,6 +329,10 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
         return toReturn;
     }
 
+    public long getStatusUpdateInterval() {
+        return Long.parseLong(studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_STATUS_UPDATE_INTERVAL));
+    }
+
     public int getProcessingChunkSize() {
         int toReturn = Integer.parseInt(studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_PROCESSING_CHUNK_SIZE));
         return toReturn;
@@ -296,6 +350,18 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
     public GeneralLockService getGeneralLockService() { return generalLockService; }
     public void setGeneralLockService(GeneralLockService generalLockService) { this.generalLockService = generalLockService; }
 
+    public ObjectStateService getObjectStateService() { return objectStateService; }
+    public void setObjectStateService(ObjectStateService objectStateService) { this.objectStateService = objectStateService; }
+
+    public PublishingScheduler getPublishingScheduler() { return publishingScheduler; }
+    public void setPublishingScheduler(PublishingScheduler publishingScheduler) { this.publishingScheduler = publishingScheduler; }
+
+    public PublishedItemIndex getPublishedItemIndex() { return publishedItemIndex; }
+    public void setPublishedItemIndex(PublishedItemIndex publishedItemIndex) { this.publishedItemIndex = publishedItemIndex; }
+
+    public DeploymentHistoryStore getDeploymentHistoryStore() { return deploymentHistoryStore; }
+    public void setDeploymentHistoryStore(DeploymentHistoryStore deploymentHistoryStore) { this.deploymentHistoryStore = deploymentHistoryStore; }
+
 
     public void setNotificationService(final NotificationService notificationService) {
         this.notificationService = notificationService;
@@ -312,6 +378,10 @@ public class DeployContentToEnvironmentStore extends RepositoryJob {
     protected SiteService siteService;
     protected NotificationService notificationService;
     protected GeneralLockService generalLockService;
+    protected ObjectStateService objectStateService;
+    protected PublishingScheduler publishingScheduler;
+    protected PublishedItemIndex publishedItemIndex;
+    protected DeploymentHistoryStore deploymentHistoryStore;
     protected EventService eventService;
     protected StudioConfiguration studioConfiguration;
 }
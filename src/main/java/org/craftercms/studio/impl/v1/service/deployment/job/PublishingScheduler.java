@@ -0,0 +1,182 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment.job;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS;
+
+/**
+ * Runs the publishing of sites on a bounded pool of workers. A site has at most one publishing task queued or
+ * running, so the publish requests of each site and environment are processed in order, and sites take turns on the
+ * workers in the order they were scheduled, a busy site goes back to the end of the queue once its task finishes.
+ */
+public class PublishingScheduler implements MetricsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublishingScheduler.class);
+
+    private static final class SiteStats {
+        private long publishes;
+        private long failures;
+        private long totalDuration;
+        private long lastDuration;
+        private long maxDuration;
+        private long lastWait;
+    }
+
+    protected final Set<String> scheduledSites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    protected final Set<String> runningSites = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    protected final Map<String, SiteStats> stats = new ConcurrentHashMap<String, SiteStats>();
+    protected final AtomicLong skipped = new AtomicLong();
+
+    protected ThreadPoolExecutor executor;
+    protected StudioConfiguration studioConfiguration;
+
+    public void init() {
+        int workers = getWorkers();
+        executor = new ThreadPoolExecutor(workers, workers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "studio-publishing-worker-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+        logger.info("Publishing scheduler started with " + workers + " workers");
+    }
+
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Queue the publishing of a site
+     *
+     * @param site site id
+     * @param task publishing of the site
+     * @return false if the site already has a publishing task queued or running
+     */
+    public boolean schedule(final String site, final Runnable task) {
+        if (!scheduledSites.add(site)) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        final long queuedAt = System.currentTimeMillis();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    long startedAt = System.currentTimeMillis();
+                    boolean failed = false;
+                    runningSites.add(site);
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        failed = true;
+                        logger.error("Unexpected error while publishing site " + site, e);
+                    } finally {
+                        runningSites.remove(site);
+                        scheduledSites.remove(site);
+                        record(site, startedAt - queuedAt, System.currentTimeMillis() - startedAt, failed);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            scheduledSites.remove(site);
+            logger.error("Publishing of site " + site + " could not be scheduled", e);
+            return false;
+        }
+        return true;
+    }
+
+    protected void record(String site, long wait, long duration, boolean failed) {
+        SiteStats siteStats = stats.get(site);
+        if (siteStats == null) {
+            stats.putIfAbsent(site, new SiteStats());
+            siteStats = stats.get(site);
+        }
+        synchronized (siteStats) {
+            siteStats.publishes++;
+            if (failed) {
+                siteStats.failures++;
+            }
+            siteStats.totalDuration += duration;
+            siteStats.lastDuration = duration;
+            siteStats.maxDuration = Math.max(siteStats.maxDuration, duration);
+            siteStats.lastWait = wait;
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        metrics.put("workers", executor.getMaximumPoolSize());
+        metrics.put("activeWorkers", executor.getActiveCount());
+        metrics.put("queueDepth", executor.getQueue().size());
+        metrics.put("completedTasks", executor.getCompletedTaskCount());
+        metrics.put("skippedAlreadyScheduled", skipped.get());
+        Map<String, Object> sites = new TreeMap<String, Object>();
+        for (Map.Entry<String, SiteStats> entry : stats.entrySet()) {
+            SiteStats siteStats = entry.getValue();
+            Map<String, Object> siteMetrics = new LinkedHashMap<String, Object>();
+            synchronized (siteStats) {
+                siteMetrics.put("publishes", siteStats.publishes);
+                siteMetrics.put("failures", siteStats.failures);
+                siteMetrics.put("lastDurationMs", siteStats.lastDuration);
+                siteMetrics.put("avgDurationMs", siteStats.publishes > 0 ?
+                        siteStats.totalDuration / siteStats.publishes : 0);
+                siteMetrics.put("maxDurationMs", siteStats.maxDuration);
+                siteMetrics.put("lastQueueWaitMs", siteStats.lastWait);
+            }
+            siteMetrics.put("state", runningSites.contains(entry.getKey()) ? "running" :
+                    scheduledSites.contains(entry.getKey()) ? "queued" : "idle");
+            sites.put(entry.getKey(), siteMetrics);
+        }
+        metrics.put("sites", sites);
+        return metrics;
+    }
+
+    public int getWorkers() {
+        return Integer.parseInt(studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS));
+    }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+}
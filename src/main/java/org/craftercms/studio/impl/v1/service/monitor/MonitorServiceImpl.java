@@ -21,10 +21,13 @@ package org.craftercms.studio.impl.v1.service.monitor;
 import org.craftercms.commons.monitoring.MemoryMonitor;
 import org.craftercms.commons.monitoring.StatusMonitor;
 import org.craftercms.commons.monitoring.VersionMonitor;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
 import org.craftercms.studio.api.v1.service.monitor.MonitorService;
 
 import java.io.IOException;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.jar.Manifest;
 
 public class MonitorServiceImpl implements MonitorService {
@@ -43,4 +46,20 @@ public class MonitorServiceImpl implements MonitorService {
     public List<MemoryMonitor> getMemory() {
         return MemoryMonitor.getMemoryStats();
     }
+
+    @Override
+    public Map<String, Map<String, Object>> getMetrics() {
+        Map<String, Map<String, Object>> toReturn = new LinkedHashMap<String, Map<String, Object>>();
+        if (metricsSources != null) {
+            for (Map.Entry<String, MetricsSource> entry : metricsSources.entrySet()) {
+                toReturn.put(entry.getKey(), entry.getValue().getMetrics());
+            }
+        }
+        return toReturn;
+    }
+
+    public Map<String, MetricsSource> getMetricsSources() { return metricsSources; }
+    public void setMetricsSources(Map<String, MetricsSource> metricsSources) { this.metricsSources = metricsSources; }
+
+    protected Map<String, MetricsSource> metricsSources;
 }
@@ -35,7 +35,12 @@ import org.craftercms.studio.api.v1.service.objectstate.State;
 import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
 import org.craftercms.studio.api.v1.to.ContentItemTO;
 import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.mybatis.spring.SqlSessionTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.io.File;
 import java.util.*;
@@ -55,6 +60,8 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
     protected GeneralLockService generalLockService;
     protected ContentService contentService;
     protected StudioConfiguration studioConfiguration;
+    protected SqlSessionTemplate batchSqlSession;
+    protected PlatformTransactionManager transactionManager;
 
     @Override
     public void register() {
@@ -166,20 +173,10 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
             State nextState = null;
             if (currentState == null) {
                 logger.debug("Preforming transition event " + event.name() + " on object " + lockId + " without current state");
-                switch (event) {
-                    case SAVE:
-                        nextState = State.NEW_UNPUBLISHED_UNLOCKED;
-                        break;
-                    case SAVE_FOR_PREVIEW:
-                        nextState = State.NEW_UNPUBLISHED_LOCKED;
-                        break;
-                    default:
-                        nextState = State.NEW_UNPUBLISHED_UNLOCKED;
-                }
+                nextState = getNextState(null, event);
             } else {
                 logger.debug("Preforming transition event " + event + " on object " + lockId + " with " + currentState.getState() + " state");
-                State currentStateValue = State.valueOf(currentState.getState());
-                nextState = transitionTable[currentStateValue.ordinal()][event.ordinal()];
+                nextState = getNextState(State.valueOf(currentState.getState()), event);
             }
             if (currentState == null) {
                 ItemState newEntry = new ItemState();
@@ -203,6 +200,19 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
         logger.debug("Transition finished for " + event.name() + " on object " + lockId);
     }
 
+    @Override
+    public State getNextState(State currentState, TransitionEvent event) {
+        if (currentState == null) {
+            switch (event) {
+                case SAVE_FOR_PREVIEW:
+                    return State.NEW_UNPUBLISHED_LOCKED;
+                default:
+                    return State.NEW_UNPUBLISHED_UNLOCKED;
+            }
+        }
+        return transitionTable[currentState.ordinal()][event.ordinal()];
+    }
+
     @Override
     @ValidateParams
     public void deployCommitId(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "commitId") String commitId) {
@@ -340,6 +350,44 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
         return itemStateMapper.isFolderLive(params) > 0;
     }
 
+    @Override
+    @ValidateParams
+    public List<ItemState> getObjectStateForPaths(@ValidateStringParam(name = "site") String site, List<String> paths) {
+        List<ItemState> toReturn = new ArrayList<ItemState>();
+        if (paths != null && !paths.isEmpty()) {
+            List<String> cleanPaths = new ArrayList<String>(paths.size());
+            for (String path : paths) {
+                cleanPaths.add(FilenameUtils.normalize(path, true));
+            }
+            for (int i = 0; i < cleanPaths.size(); i = i + getBulkOperationBatchSize()) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("site", site);
+                params.put("paths", cleanPaths.subList(i, Math.min(i + getBulkOperationBatchSize(), cleanPaths.size())));
+                toReturn.addAll(itemStateMapper.getObjectStateForSiteAndPaths(params));
+            }
+        }
+        return toReturn;
+    }
+
+    @Override
+    @ValidateParams
+    public List<String> getLiveFolders(@ValidateStringParam(name = "site") String site, List<String> folderPaths) {
+        List<String> toReturn = new ArrayList<String>();
+        if (folderPaths != null && !folderPaths.isEmpty()) {
+            List<String> cleanPaths = new ArrayList<String>(folderPaths.size());
+            for (String folderPath : folderPaths) {
+                cleanPaths.add(FilenameUtils.normalize(folderPath, true));
+            }
+            for (int i = 0; i < cleanPaths.size(); i = i + getBulkOperationBatchSize()) {
+                Map<String, Object> params = new HashMap<String, Object>();
+                params.put("site", site);
+                params.put("folderPaths", cleanPaths.subList(i, Math.min(i + getBulkOperationBatchSize(), cleanPaths.size())));
+                toReturn.addAll(itemStateMapper.getLiveFolders(params));
+            }
+        }
+        return toReturn;
+    }
+
     @Override
     @ValidateParams
     public boolean isScheduled(@ValidateStringParam(name = "site") String site, @ValidateSecurePathParam(name = "path") String path) {
@@ -414,41 +462,174 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
     @ValidateParams
     public void transitionBulk(@ValidateStringParam(name = "site") String site, List<String> paths, TransitionEvent event, State defaultTargetState) {
         if (paths != null && !paths.isEmpty()) {
-            Map<String, Object> params = new HashMap<>();
+            Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
+            for (String path : paths) {
+                transitions.put(FilenameUtils.normalize(path, true), event);
+            }
+            transitionBulk(site, transitions, defaultTargetState, true);
+        }
+    }
+
+    @Override
+    @ValidateParams
+    public void transitionBulk(@ValidateStringParam(name = "site") String site, Map<String, TransitionEvent> transitions) {
+        if (transitions != null && !transitions.isEmpty()) {
+            transitionBulk(site, normalize(transitions), null, true);
+        }
+    }
+
+    @Override
+    @ValidateParams
+    public void transitionBulkLocked(@ValidateStringParam(name = "site") String site, Map<String, TransitionEvent> transitions) {
+        if (transitions != null && !transitions.isEmpty()) {
+            transitionBulk(site, normalize(transitions), null, false);
+        }
+    }
+
+    private Map<String, TransitionEvent> normalize(Map<String, TransitionEvent> transitions) {
+        Map<String, TransitionEvent> normalizedTransitions = new LinkedHashMap<String, TransitionEvent>();
+        for (Map.Entry<String, TransitionEvent> transition : transitions.entrySet()) {
+            normalizedTransitions.put(FilenameUtils.normalize(transition.getKey(), true), transition.getValue());
+        }
+        return normalizedTransitions;
+    }
+
+    /**
+     * Apply the transitions in batches of the bulk operations batch size
+     *
+     * @param defaultTargetState state of items without a state, if null the state the event gives to new items
+     * @param lock true to lock the items of each batch, false if the caller holds the locks
+     */
+    protected void transitionBulk(String site, Map<String, TransitionEvent> transitions, State defaultTargetState,
+                                  boolean lock) {
+        List<String> paths = new ArrayList<String>(transitions.keySet());
+        int batchSize = getBulkOperationBatchSize();
+        for (int i = 0; i < paths.size(); i = i + batchSize) {
+            try {
+                transitionBulkPartial(site, paths.subList(i, Math.min(i + batchSize, paths.size())), transitions,
+                        defaultTargetState, lock);
+            } catch (Exception e) {
+                logger.error("Bulk transition failed for a batch of " + Math.min(batchSize, paths.size() - i)
+                        + " objects of site " + site, e);
+            }
+        }
+    }
+
+    private void transitionBulkPartial(final String site, List<String> paths, Map<String, TransitionEvent> transitions,
+                                       State defaultTargetState, boolean lock) {
+        List<String> lockIds = new ArrayList<String>(lock ? paths.size() : 0);
+        if (lock) {
+            for (String path : paths) {
+                lockIds.add(site + ":" + path);
+            }
+        }
+        generalLockService.lockAll(lockIds);
+        try {
+            Map<String, Object> params = new HashMap<String, Object>();
             params.put("site", site);
             params.put("paths", paths);
-            List<ItemState> itemStates = itemStateMapper.getObjectStateForSiteAndPaths(params);
-            Map<State, List<String>> bulkSubsets = new HashMap<>();
-            for (ItemState state : itemStates) {
-                if (!bulkSubsets.containsKey(state.getState())) {
-                    bulkSubsets.put(State.valueOf(state.getState()), new ArrayList<String>());
+            Map<String, ItemState> currentStates = new HashMap<String, ItemState>();
+            for (ItemState currentState : itemStateMapper.getObjectStateForSiteAndPaths(params)) {
+                currentStates.put(currentState.getPath(), currentState);
+            }
+
+            final List<ItemState> newEntries = new ArrayList<ItemState>();
+            final Map<State, List<String>> pathsByNextState = new EnumMap<State, List<String>>(State.class);
+            for (String path : paths) {
+                TransitionEvent event = transitions.get(path);
+                ItemState currentState = currentStates.get(path);
+                try {
+                    if (currentState == null) {
+                        State nextState = defaultTargetState != null ? defaultTargetState : getNextState(null, event);
+                        ItemState newEntry = new ItemState();
+                        newEntry.setObjectId(UUID.randomUUID().toString());
+                        newEntry.setSite(site);
+                        newEntry.setPath(path);
+                        newEntry.setSystemProcessing(0);
+                        newEntry.setState(nextState.name());
+                        newEntries.add(newEntry);
+                    } else {
+                        State state = State.valueOf(currentState.getState());
+                        State nextState = getNextState(state, event);
+                        if (nextState == State.NOOP) {
+                            logger.warn("Transition not defined for event " + event.name() + " and current state " + state.name() + " [object id: " + currentState.getObjectId() + "]");
+                        } else if (nextState != state) {
+                            List<String> nextStatePaths = pathsByNextState.get(nextState);
+                            if (nextStatePaths == null) {
+                                nextStatePaths = new ArrayList<String>();
+                                pathsByNextState.put(nextState, nextStatePaths);
+                            }
+                            nextStatePaths.add(path);
+                        }
+                    }
+                } catch (Exception e) {
+                    logger.error("Transition not defined for event " + event + " on object " + site + ":" + path, e);
                 }
-                bulkSubsets.get(State.valueOf(state.getState())).add(state.getObjectId());
             }
-            State nextState = null;
-            for (Map.Entry<State, List<String>> entry : bulkSubsets.entrySet()) {
-                if (entry.getKey() == null) {
-                    params = new HashMap<>();
+
+            if (!newEntries.isEmpty() || !pathsByNextState.isEmpty()) {
+                try {
+                    writeTransitions(site, newEntries, pathsByNextState);
+                } catch (RuntimeException e) {
+                    logger.error("Bulk transition failed for site " + site + ", applying transitions one by one", e);
+                    writeTransitionsOneByOne(site, newEntries, pathsByNextState);
+                }
+            }
+            logger.debug("Bulk transition finished for " + paths.size() + " objects of site " + site + ": "
+                    + newEntries.size() + " inserted, " + pathsByNextState.size() + " state updates");
+        } finally {
+            generalLockService.unlockAll(lockIds);
+        }
+    }
+
+    private void writeTransitions(final String site, final List<ItemState> newEntries,
+                                  final Map<State, List<String>> pathsByNextState) {
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                ItemStateMapper batchItemStateMapper = batchSqlSession.getMapper(ItemStateMapper.class);
+                for (ItemState newEntry : newEntries) {
+                    batchItemStateMapper.insertEntry(newEntry);
+                }
+                for (Map.Entry<State, List<String>> entry : pathsByNextState.entrySet()) {
+                    Map<String, Object> params = new HashMap<String, Object>();
                     params.put("site", site);
-                    params.put("paths", paths);
-                    params.put("state", defaultTargetState.name());
+                    params.put("paths", entry.getValue());
+                    params.put("state", entry.getKey().name());
+                    batchItemStateMapper.setObjectStateForSiteAndPaths(params);
+                }
+                batchSqlSession.flushStatements();
+            }
+        });
+    }
+
+    /**
+     * Write the transitions of a failed batch one item at a time, so that one bad item doesn't stop the others
+     */
+    private void writeTransitionsOneByOne(String site, List<ItemState> newEntries,
+                                          Map<State, List<String>> pathsByNextState) {
+        for (ItemState newEntry : newEntries) {
+            try {
+                itemStateMapper.insertEntry(newEntry);
+            } catch (Exception e) {
+                logger.error("Transition failed for object " + site + ":" + newEntry.getPath(), e);
+            }
+        }
+        for (Map.Entry<State, List<String>> entry : pathsByNextState.entrySet()) {
+            for (String path : entry.getValue()) {
+                try {
+                    Map<String, Object> params = new HashMap<String, Object>();
+                    params.put("site", site);
+                    params.put("paths", Collections.singletonList(path));
+                    params.put("state", entry.getKey().name());
                     itemStateMapper.setObjectStateForSiteAndPaths(params);
-                } else {
-                    nextState = transitionTable[entry.getKey().ordinal()][event.ordinal()];
-                    if (nextState != entry.getKey() && nextState != State.NOOP) {
-                        params = new HashMap<>();
-                        params.put("site", site);
-                        params.put("paths", paths);
-                        params.put("state", nextState.name());
-                        itemStateMapper.setObjectStateForSiteAndPaths(params);
-                    } else if (nextState == State.NOOP) {
-                        logger.warn("Transition not defined for event " + event.name() + " and current state " + entry.getKey().name() + " [setting object state for multiple objects]");
-                    }
+                } catch (Exception e) {
+                    logger.error("Transition failed for object " + site + ":" + path, e);
                 }
             }
         }
     }
-    
+
     /**
      * get the object for a given set of states
      */
@@ -571,4 +752,10 @@ public class ObjectStateServiceImpl extends AbstractRegistrableService implement
 
     public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+
+    public SqlSessionTemplate getBatchSqlSession() { return batchSqlSession; }
+    public void setBatchSqlSession(SqlSessionTemplate batchSqlSession) { this.batchSqlSession = batchSqlSession; }
+
+    public PlatformTransactionManager getTransactionManager() { return transactionManager; }
+    public void setTransactionManager(PlatformTransactionManager transactionManager) { this.transactionManager = transactionManager; }
 }
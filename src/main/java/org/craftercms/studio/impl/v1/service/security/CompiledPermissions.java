@@ -0,0 +1,210 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.security;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.craftercms.studio.api.v1.constant.StudioConstants;
+import org.craftercms.studio.api.v1.constant.StudioXmlConstants;
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.to.PermissionsConfigTO;
+import org.dom4j.Node;
+
+/**
+ * Immutable rule table built from a role mappings and a permissions configuration (of a site or global). Regexes are
+ * compiled once, equal permission sets share one instance and the permissions of recently evaluated roles and paths
+ * are cached.
+ */
+public class CompiledPermissions {
+
+    private static final Logger logger = LoggerFactory.getLogger(CompiledPermissions.class);
+
+    private static final String ANY = "*";
+
+    private static final Set<String> READ = Collections.singleton(StudioConstants.PERMISSION_VALUE_READ);
+
+    private static final class Rule {
+        private final Pattern regex;
+        private final Set<String> permissions;
+
+        Rule(Pattern regex, Set<String> permissions) {
+            this.regex = regex;
+            this.permissions = permissions;
+        }
+    }
+
+    protected final String version;
+    protected final Map<String, List<String>> roles;
+    protected final Map<String, List<Rule>> rules;
+    protected final Map<Set<String>, Set<String>> internedSets = new HashMap<Set<String>, Set<String>>();
+    protected final Map<String, Set<String>> decisions;
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param version version of the configuration files the table is built from
+     * @param rolesConfig role mappings, null if there are none
+     * @param permissionsConfig permissions, null if there are none
+     * @param permissionsKey key of the rules in the permissions configuration, site id or the global key
+     * @param decisionCacheSize maximum number of cached decisions
+     */
+    @SuppressWarnings("unchecked")
+    public CompiledPermissions(String version, PermissionsConfigTO rolesConfig, PermissionsConfigTO permissionsConfig,
+                               String permissionsKey, final int decisionCacheSize) {
+        this.version = version;
+
+        Map<String, List<String>> roles = new HashMap<String, List<String>>();
+        if (rolesConfig != null && rolesConfig.getRoles() != null) {
+            for (Map.Entry<String, List<String>> entry : rolesConfig.getRoles().entrySet()) {
+                roles.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<String>(entry.getValue())));
+            }
+        }
+        this.roles = Collections.unmodifiableMap(roles);
+
+        Map<String, List<Node>> ruleNodesByRole = null;
+        if (permissionsConfig != null && permissionsConfig.getPermissions() != null) {
+            ruleNodesByRole = permissionsConfig.getPermissions().get(permissionsKey);
+            if (ruleNodesByRole == null || ruleNodesByRole.isEmpty()) {
+                ruleNodesByRole = permissionsConfig.getPermissions().get(ANY);
+            }
+        }
+        if (ruleNodesByRole != null && !ruleNodesByRole.isEmpty()) {
+            Map<String, List<Rule>> rules = new HashMap<String, List<Rule>>();
+            for (Map.Entry<String, List<Node>> entry : ruleNodesByRole.entrySet()) {
+                List<Rule> roleRules = new ArrayList<Rule>();
+                if (entry.getValue() != null) {
+                    for (Node ruleNode : entry.getValue()) {
+                        String regex = ruleNode.valueOf(StudioXmlConstants.DOCUMENT_ATTR_REGEX);
+                        Set<String> permissions = new HashSet<String>();
+                        List<Node> permissionNodes =
+                                ruleNode.selectNodes(StudioXmlConstants.DOCUMENT_ELM_ALLOWED_PERMISSIONS);
+                        for (Node permissionNode : permissionNodes) {
+                            permissions.add(permissionNode.getText().toLowerCase());
+                        }
+                        try {
+                            roleRules.add(new Rule(Pattern.compile(regex), intern(permissions)));
+                        } catch (PatternSyntaxException e) {
+                            logger.error("Invalid permission rule regex " + regex + " for role " + entry.getKey()
+                                    + " in " + permissionsKey + ", ignoring it", e);
+                        }
+                    }
+                }
+                rules.put(entry.getKey(), Collections.unmodifiableList(roleRules));
+            }
+            this.rules = Collections.unmodifiableMap(rules);
+        } else {
+            this.rules = null;
+        }
+
+        this.decisions = new LinkedHashMap<String, Set<String>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Set<String>> eldest) {
+                return size() > decisionCacheSize;
+            }
+        };
+    }
+
+    public String getVersion() { return version; }
+
+    /**
+     * @return roles by user or group name, unmodifiable
+     */
+    public Map<String, List<String>> getRoles() { return roles; }
+
+    /**
+     * Get the permissions that a set of roles has on a path
+     *
+     * @param path path of the item
+     * @param roles roles
+     * @return permissions, unmodifiable
+     */
+    public Set<String> getPermissions(String path, Set<String> roles) {
+        if (roles == null || roles.isEmpty()) {
+            // If user or group did not match the roles-mapping file
+            return READ;
+        }
+        String key = StringUtils.join(new TreeSet<String>(roles), ',') + '\n' + path;
+        Set<String> permissions;
+        synchronized (decisions) {
+            permissions = decisions.get(key);
+        }
+        if (permissions != null) {
+            hits.incrementAndGet();
+            return permissions;
+        }
+        misses.incrementAndGet();
+        permissions = evaluate(path, roles);
+        synchronized (decisions) {
+            decisions.put(key, permissions);
+        }
+        return permissions;
+    }
+
+    public long getHits() { return hits.get(); }
+    public long getMisses() { return misses.get(); }
+
+    protected Set<String> evaluate(String path, Set<String> roles) {
+        if (rules == null) {
+            // If no default site is set
+            return READ;
+        }
+        Set<String> permissions = new HashSet<String>();
+        for (String role : roles) {
+            List<Rule> roleRules = rules.get(role);
+            if (roleRules == null || roleRules.isEmpty()) {
+                roleRules = rules.get(ANY);
+            }
+            if (roleRules != null && !roleRules.isEmpty()) {
+                for (Rule rule : roleRules) {
+                    if (rule.regex.matcher(path).matches()) {
+                        permissions.addAll(rule.permissions);
+                    }
+                }
+            } else {
+                // If no default role is set
+                permissions.add(StudioConstants.PERMISSION_VALUE_READ);
+            }
+        }
+        return intern(permissions);
+    }
+
+    protected Set<String> intern(Set<String> permissions) {
+        synchronized (internedSets) {
+            Set<String> interned = internedSets.get(permissions);
+            if (interned == null) {
+                interned = Collections.unmodifiableSet(permissions);
+                internedSets.put(permissions, interned);
+            }
+            return interned;
+        }
+    }
+}
@@ -37,6 +37,7 @@ public class MappedSecurityProvider implements SecurityProvider {
 
     private Map<String, SecurityProvider> providerMap;
     protected StudioConfiguration studioConfiguration;
+    protected UserGroupsCache userGroupsCache;
 
     public Map<String, SecurityProvider> getProviderMap() {
         return providerMap;
@@ -49,6 +50,9 @@ public class MappedSecurityProvider implements SecurityProvider {
     public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 
+    public UserGroupsCache getUserGroupsCache() { return userGroupsCache; }
+    public void setUserGroupsCache(UserGroupsCache userGroupsCache) { this.userGroupsCache = userGroupsCache; }
+
     public String getProviderType() {
         return studioConfiguration.getProperty(SECURITY_TYPE);
     }
@@ -76,8 +80,19 @@ public class MappedSecurityProvider implements SecurityProvider {
     }
 
     public Set<String> getUserGroups(String user) {
-    	SecurityProvider provider = lookupProvider(getProviderType());
-        return provider.getUserGroups(user);
+        String providerType = getProviderType();
+        if (userGroupsCache == null) {
+            return lookupProvider(providerType).getUserGroups(user);
+        }
+        Set<String> groups = userGroupsCache.get(providerType, user);
+        if (groups == null) {
+            long version = userGroupsCache.getVersion();
+            groups = lookupProvider(providerType).getUserGroups(user);
+            if (groups != null) {
+                userGroupsCache.put(providerType, user, groups, version);
+            }
+        }
+        return groups;
     };
 
     public String getCurrentUser() {
@@ -92,7 +107,12 @@ public class MappedSecurityProvider implements SecurityProvider {
 
     public String authenticate(String username, String password) throws BadCredentialsException, AuthenticationSystemException {
         SecurityProvider provider = lookupProvider(getProviderType());
-        return provider.authenticate(username, password);
+        try {
+            return provider.authenticate(username, password);
+        } finally {
+            // External providers may update the groups of the user on login
+            invalidateUserGroups(username);
+        }
     }
 
     public boolean validateTicket(String ticket){
@@ -139,7 +159,11 @@ public class MappedSecurityProvider implements SecurityProvider {
     @Override
     public boolean addUserToGroup(String siteId, String groupName, String user) throws UserNotFoundException, UserAlreadyExistsException, GroupNotFoundException {
         SecurityProvider provider = lookupProvider(getProviderType());
-        return provider.addUserToGroup(siteId, groupName, user);
+        try {
+            return provider.addUserToGroup(siteId, groupName, user);
+        } finally {
+            invalidateUserGroups(user);
+        }
     }
 
     @Override
@@ -169,7 +193,11 @@ public class MappedSecurityProvider implements SecurityProvider {
     @Override
     public boolean deleteUser(String username) throws UserNotFoundException {
         SecurityProvider provider = lookupProvider(getProviderType());
-        return provider.deleteUser(username);
+        try {
+            return provider.deleteUser(username);
+        } finally {
+            invalidateUserGroups(username);
+        }
     }
 
     @Override
@@ -265,13 +293,23 @@ public class MappedSecurityProvider implements SecurityProvider {
     @Override
     public boolean deleteGroup(String siteId, String groupName) throws GroupNotFoundException {
         SecurityProvider provider = lookupProvider(getProviderType());
-        return provider.deleteGroup(siteId, groupName);
+        try {
+            return provider.deleteGroup(siteId, groupName);
+        } finally {
+            if (userGroupsCache != null) {
+                userGroupsCache.invalidateAll();
+            }
+        }
     }
 
     @Override
     public boolean removeUserFromGroup(String siteId, String groupName, String user) throws UserNotFoundException, GroupNotFoundException {
         SecurityProvider provider = lookupProvider(getProviderType());
-        return provider.removeUserFromGroup(siteId, groupName, user);
+        try {
+            return provider.removeUserFromGroup(siteId, groupName, user);
+        } finally {
+            invalidateUserGroups(user);
+        }
     }
 
     @Override
@@ -291,4 +329,10 @@ public class MappedSecurityProvider implements SecurityProvider {
         SecurityProvider provider = lookupProvider(getProviderType());
         return provider.isSystemUser(username);
     }
+
+    protected void invalidateUserGroups(String user) {
+        if (userGroupsCache != null) {
+            userGroupsCache.invalidate(user);
+        }
+    }
 }
@@ -28,6 +28,7 @@ import java.security.NoSuchAlgorithmException;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 import freemarker.template.Template;
@@ -44,10 +45,12 @@ import org.craftercms.studio.api.v1.exception.SiteNotFoundException;
 import org.craftercms.studio.api.v1.exception.security.*;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
+import org.craftercms.studio.api.v1.repository.ContentRepository;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.activity.ActivityService;
 import org.craftercms.studio.api.v1.service.content.ContentService;
 import org.craftercms.studio.api.v1.service.content.ContentTypeService;
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
 import org.craftercms.studio.api.v1.service.security.SecurityProvider;
 import org.craftercms.studio.api.v1.service.security.SecurityService;
 import org.craftercms.studio.api.v1.service.security.UserDetailsManager;
@@ -81,14 +84,19 @@ import static org.craftercms.studio.api.v1.util.StudioConfiguration.*;
 /**
  * @author Dejan Brkic
  */
-public class SecurityServiceImpl implements SecurityService {
+public class SecurityServiceImpl implements SecurityService, MetricsSource {
 
     private static final Logger logger = LoggerFactory.getLogger(SecurityServiceImpl.class);
 
+    protected static final String GLOBAL_PERMISSIONS_KEY = "###GLOBAL###";
+
+    protected final ConcurrentHashMap<String, CompiledPermissions> compiledPermissions = new ConcurrentHashMap<String, CompiledPermissions>();
+
     protected SecurityProvider securityProvider;
     protected ContentTypeService contentTypeService;
     protected ActivityService activityService;
     protected ContentService contentService;
+    protected ContentRepository contentRepository;
     protected GeneralLockService generalLockService;
     protected StudioConfiguration studioConfiguration;
     protected JavaMailSender emailService;
@@ -142,13 +150,12 @@ public class SecurityServiceImpl implements SecurityService {
     public Set<String> getUserPermissions(@ValidateStringParam(name = "site") final String site, @ValidateSecurePathParam(name = "path") String path, @ValidateStringParam(name = "user") String user, List<String> groups) {
         Set<String> permissions = new HashSet<String>();
         if (StringUtils.isNotEmpty(site)) {
-            PermissionsConfigTO rolesConfig = loadConfiguration(site, getRoleMappingsFileName());
-            PermissionsConfigTO permissionsConfig = loadConfiguration(site, getPermissionsFileName());
+            CompiledPermissions sitePermissions = getSitePermissions(site);
             Set<String> roles = new HashSet<String>();
             addUserRoles(roles, site, user);
-            addGroupRoles(roles, site, groups, rolesConfig);
+            addGroupRoles(roles, site, groups, sitePermissions.getRoles());
             // resolve the permission
-            permissions = populateUserPermissions(site, path, roles, permissionsConfig);
+            permissions.addAll(sitePermissions.getPermissions(path, roles));
             // check if the user is allowed to edit the content
 
             if (path.indexOf("/site") == 0) { // If it's content a file
@@ -167,19 +174,17 @@ public class SecurityServiceImpl implements SecurityService {
             }
         }
 
-        PermissionsConfigTO globalRolesConfig = loadGlobalRolesConfiguration();
-        PermissionsConfigTO globalPermissionsConfig = loadGlobalPermissionsConfiguration();
+        CompiledPermissions globalPermissions = getGlobalPermissions();
         Set<String> roles = new HashSet<String>();
-        addGlobalUserRoles(user, roles, globalRolesConfig);
-        addGlobalGroupRoles(roles, groups, globalRolesConfig);
-        permissions.addAll(populateUserGlobalPermissions(path, roles, globalPermissionsConfig));
+        addGlobalUserRoles(user, roles, globalPermissions.getRoles());
+        addGlobalGroupRoles(roles, groups, globalPermissions.getRoles());
+        permissions.addAll(globalPermissions.getPermissions(path, roles));
         return permissions;
     }
 
-    protected void addGlobalUserRoles(String user, Set<String> roles, PermissionsConfigTO rolesConfig) {
+    protected void addGlobalUserRoles(String user, Set<String> roles, Map<String, List<String>> rolesMap) {
         Set<String> groups = securityProvider.getUserGroups(user);
-        if (rolesConfig != null && groups != null) {
-            Map<String, List<String>> rolesMap = rolesConfig.getRoles();
+        if (groups != null) {
             for (String group : groups) {
                 String groupName = group.replaceFirst("GROUP_", "");
                 List<String> userRoles = rolesMap.get(groupName);
@@ -190,9 +195,8 @@ public class SecurityServiceImpl implements SecurityService {
         }
     }
 
-    protected void addGlobalGroupRoles(Set<String> roles, List<String> groups, PermissionsConfigTO rolesConfig) {
+    protected void addGlobalGroupRoles(Set<String> roles, List<String> groups, Map<String, List<String>> rolesMap) {
         if (groups != null) {
-            Map<String, List<String>> rolesMap = rolesConfig.getRoles();
             for (String group : groups) {
                 List<String> groupRoles = rolesMap.get(group);
                 if (groupRoles != null) {
@@ -203,53 +207,90 @@ public class SecurityServiceImpl implements SecurityService {
         }
     }
 
-    @SuppressWarnings("unchecked")
-    protected Set<String> populateUserGlobalPermissions(String path, Set<String> roles,
-                                                  PermissionsConfigTO permissionsConfig) {
-        Set<String> permissions = new HashSet<String>();
-        if (roles != null && !roles.isEmpty()) {
-            for (String role : roles) {
-                Map<String, Map<String, List<Node>>> permissionsMap = permissionsConfig.getPermissions();
-                Map<String, List<Node>> siteRoles = permissionsMap.get("###GLOBAL###");
-                if (siteRoles == null || siteRoles.isEmpty()) {
-                    siteRoles = permissionsMap.get("*");
-                }
-                if (siteRoles != null && !siteRoles.isEmpty()) {
-                    List<Node> ruleNodes = siteRoles.get(role);
-                    if (ruleNodes == null || ruleNodes.isEmpty()) {
-                        ruleNodes = siteRoles.get("*");
-                    }
-                    if (ruleNodes != null && !ruleNodes.isEmpty()) {
-                        for (Node ruleNode : ruleNodes) {
-                            String regex = ruleNode.valueOf(StudioXmlConstants.DOCUMENT_ATTR_REGEX);
-                            if (path.matches(regex)) {
-                                logger.debug("Global permissions found by matching " + regex + " for " + role);
-
-                                List<Node> permissionNodes = ruleNode.selectNodes(StudioXmlConstants.DOCUMENT_ELM_ALLOWED_PERMISSIONS);
-                                for (Node permissionNode : permissionNodes) {
-                                    String permission = permissionNode.getText().toLowerCase();
-                                    logger.debug("adding global permissions " + permission + " to " + path + " for " + role);
-                                    permissions.add(permission);
-                                }
-                            }
-                        }
-                    } else {
-                        logger.debug("No default role is set. adding default permission: " + StudioConstants.PERMISSION_VALUE_READ);
-                        // If no default role is set
-                        permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                    }
-                } else {
-                    logger.debug("No default site is set. adding default permission: " + StudioConstants.PERMISSION_VALUE_READ);
-                    // If no default site is set
-                    permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                }
+    /**
+     * Get the compiled role mappings and permissions of a site, loading them if the configuration files changed
+     *
+     * @param site site id
+     * @return compiled permissions
+     */
+    protected CompiledPermissions getSitePermissions(String site) {
+        CompiledPermissions compiled = compiledPermissions.get(site);
+        if (compiled != null && compiled.getVersion().equals(getSitePermissionsVersion(site))) {
+            return compiled;
+        }
+        return loadSitePermissions(site, false);
+    }
+
+    protected CompiledPermissions loadSitePermissions(String site, boolean force) {
+        String lockKey = getPermissionsKey(site, getPermissionsFileName());
+        generalLockService.lock(lockKey);
+        try {
+            // Read the version before the files, a change in between only causes one more load
+            String version = getSitePermissionsVersion(site);
+            CompiledPermissions compiled = compiledPermissions.get(site);
+            if (force || compiled == null || !compiled.getVersion().equals(version)) {
+                compiled = new CompiledPermissions(version, loadConfiguration(site, getRoleMappingsFileName()),
+                        loadConfiguration(site, getPermissionsFileName()), site, getPermissionsDecisionCacheSize());
+                compiledPermissions.put(site, compiled);
             }
-        } else {
-            logger.debug("No user or group matching found. adding default permission: " + StudioConstants.PERMISSION_VALUE_READ);
-            // If user or group did not match the roles-mapping file
-            permissions.add(StudioConstants.PERMISSION_VALUE_READ);
+            return compiled;
+        } finally {
+            generalLockService.unlock(lockKey);
         }
-        return permissions;
+    }
+
+    protected String getSitePermissionsVersion(String site) {
+        String siteConfigPath = getConfigPath().replaceFirst(StudioConstants.PATTERN_SITE, site);
+        return contentRepository.getContentObjectId(site, siteConfigPath + FILE_SEPARATOR + getRoleMappingsFileName())
+                + ":" + contentRepository.getContentObjectId(site, siteConfigPath + FILE_SEPARATOR + getPermissionsFileName());
+    }
+
+    /**
+     * Get the compiled global role mappings and permissions, loading them if the configuration files changed
+     *
+     * @return compiled permissions
+     */
+    protected CompiledPermissions getGlobalPermissions() {
+        CompiledPermissions compiled = compiledPermissions.get(GLOBAL_PERMISSIONS_KEY);
+        if (compiled != null && compiled.getVersion().equals(getGlobalPermissionsVersion())) {
+            return compiled;
+        }
+        return loadGlobalPermissions(false);
+    }
+
+    protected CompiledPermissions loadGlobalPermissions(boolean force) {
+        String lockKey = getPermissionsKey(GLOBAL_PERMISSIONS_KEY, getGlobalPermissionsFileName());
+        generalLockService.lock(lockKey);
+        try {
+            String version = getGlobalPermissionsVersion();
+            CompiledPermissions compiled = compiledPermissions.get(GLOBAL_PERMISSIONS_KEY);
+            if (force || compiled == null || !compiled.getVersion().equals(version)) {
+                compiled = new CompiledPermissions(version, loadGlobalRolesConfiguration(),
+                        loadGlobalPermissionsConfiguration(), GLOBAL_PERMISSIONS_KEY, getPermissionsDecisionCacheSize());
+                compiledPermissions.put(GLOBAL_PERMISSIONS_KEY, compiled);
+            }
+            return compiled;
+        } finally {
+            generalLockService.unlock(lockKey);
+        }
+    }
+
+    protected String getGlobalPermissionsVersion() {
+        return contentRepository.getContentObjectId(StringUtils.EMPTY, getGlobalConfigPath() + FILE_SEPARATOR + getGlobalRoleMappingsFileName())
+                + ":" + contentRepository.getContentObjectId(StringUtils.EMPTY, getGlobalConfigPath() + FILE_SEPARATOR + getGlobalPermissionsFileName());
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        for (Map.Entry<String, CompiledPermissions> entry : compiledPermissions.entrySet()) {
+            Map<String, Object> siteMetrics = new LinkedHashMap<String, Object>();
+            siteMetrics.put("version", entry.getValue().getVersion());
+            siteMetrics.put("decisionHits", entry.getValue().getHits());
+            siteMetrics.put("decisionMisses", entry.getValue().getMisses());
+            metrics.put(entry.getKey(), siteMetrics);
+        }
+        return metrics;
     }
 
     /* Derives a key based off the site and filename */
@@ -280,16 +321,13 @@ public class SecurityServiceImpl implements SecurityService {
         if (groups != null && groups.size() > 0) {
             logger.debug("Groups for " + user + " in " + site + ": " + groups);
 
-            PermissionsConfigTO rolesConfig = loadConfiguration(site, getRoleMappingsFileName());
+            Map<String, List<String>> rolesMap = getSitePermissions(site).getRoles();
             Set<String> userRoles = new HashSet<String>();
-            if (rolesConfig != null) {
-                Map<String, List<String>> rolesMap = rolesConfig.getRoles();
-                for (String group : groups) {
-                    String groupName = group.replaceFirst("GROUP_", "");
-                    List<String> roles = rolesMap.get(groupName);
-                    if (roles != null) {
-                        userRoles.addAll(roles);
-                    }
+            for (String group : groups) {
+                String groupName = group.replaceFirst("GROUP_", "");
+                List<String> roles = rolesMap.get(groupName);
+                if (roles != null) {
+                    userRoles.addAll(roles);
                 }
             }
             return userRoles;
@@ -304,11 +342,10 @@ public class SecurityServiceImpl implements SecurityService {
      *
      * @param site
      * @param groups
-     * @param rolesConfig
+     * @param rolesMap
      */
-    protected void addGroupRoles(Set<String> roles, String site, List<String> groups, PermissionsConfigTO rolesConfig) {
+    protected void addGroupRoles(Set<String> roles, String site, List<String> groups, Map<String, List<String>> rolesMap) {
         if (groups != null) {
-            Map<String, List<String>> rolesMap = rolesConfig.getRoles();
             for (String group : groups) {
                 List<String> groupRoles = rolesMap.get(group);
                 if (groupRoles != null) {
@@ -319,63 +356,6 @@ public class SecurityServiceImpl implements SecurityService {
         }
     }
 
-    /**
-     * populate user permissions
-     *
-     * @param site
-     * @param path
-     * @param roles
-     * @param permissionsConfig
-     */
-    @SuppressWarnings("unchecked")
-    protected Set<String> populateUserPermissions(String site, String path, Set<String> roles,
-                                                  PermissionsConfigTO permissionsConfig) {
-        Set<String> permissions = new HashSet<String>();
-        if (roles != null && !roles.isEmpty()) {
-            for (String role : roles) {
-                Map<String, Map<String, List<Node>>> permissionsMap = permissionsConfig.getPermissions();
-                Map<String, List<Node>> siteRoles = permissionsMap.get(site);
-                if (siteRoles == null || siteRoles.isEmpty()) {
-                    siteRoles = permissionsMap.get("*");
-                }
-                if (siteRoles != null && !siteRoles.isEmpty()) {
-                    List<Node> ruleNodes = siteRoles.get(role);
-                    if (ruleNodes == null || ruleNodes.isEmpty()) {
-                        ruleNodes = siteRoles.get("*");
-                    }
-                    if (ruleNodes != null && !ruleNodes.isEmpty()) {
-                        for (Node ruleNode : ruleNodes) {
-                            String regex = ruleNode.valueOf(StudioXmlConstants.DOCUMENT_ATTR_REGEX);
-                            if (path.matches(regex)) {
-                                logger.debug("Permissions found by matching " + regex + " for " + role + " in " + site);
-
-                                List<Node> permissionNodes = ruleNode.selectNodes(StudioXmlConstants.DOCUMENT_ELM_ALLOWED_PERMISSIONS);
-                                for (Node permissionNode : permissionNodes) {
-                                    String permission = permissionNode.getText().toLowerCase();
-                                    logger.debug("adding permissions " + permission + " to " + path + " for " + role + " in " + site);
-                                    permissions.add(permission);
-                                }
-                            }
-                        }
-                    } else {
-                        logger.debug("No default role is set. adding default permission: " + StudioConstants.PERMISSION_VALUE_READ);
-                        // If no default role is set
-                        permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                    }
-                } else {
-                    logger.debug("No default site is set. adding default permission: " + StudioConstants.PERMISSION_VALUE_READ);
-                    // If no default site is set
-                    permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-                }
-            }
-        } else {
-            logger.debug("No user or group matching found. adding default permission: " + StudioConstants.PERMISSION_VALUE_READ);
-            // If user or group did not match the roles-mapping file
-            permissions.add(StudioConstants.PERMISSION_VALUE_READ);
-        }
-        return permissions;
-    }
-
     protected PermissionsConfigTO loadConfiguration(String site, String filename) {
         String siteConfigPath = getConfigPath().replaceFirst(StudioConstants.PATTERN_SITE, site);
         String siteConfigFullPath = siteConfigPath + FILE_SEPARATOR + filename;
@@ -490,9 +470,9 @@ public class SecurityServiceImpl implements SecurityService {
             Element root = document.getRootElement();
 
             // permissions file
-            loadPermissions("###GLOBAL###", root, config);
+            loadPermissions(GLOBAL_PERMISSIONS_KEY, root, config);
 
-            String globalPermissionsKey = "###GLOBAL###:" + getGlobalPermissionsFileName();
+            String globalPermissionsKey = GLOBAL_PERMISSIONS_KEY + ":" + getGlobalPermissionsFileName();
             config.setKey(globalPermissionsKey);
             config.setLastUpdated(ZonedDateTime.now(ZoneOffset.UTC));
 
@@ -519,7 +499,7 @@ public class SecurityServiceImpl implements SecurityService {
             // roles file
             loadRoles(root, config);
 
-            String globalRolesKey = "###GLOBAL###:" + getGlobalRoleMappingsFileName();
+            String globalRolesKey = GLOBAL_PERMISSIONS_KEY + ":" + getGlobalRoleMappingsFileName();
             config.setKey(globalRolesKey);
             config.setLastUpdated(ZonedDateTime.now(ZoneOffset.UTC));
 
@@ -533,14 +513,19 @@ public class SecurityServiceImpl implements SecurityService {
     @Override
     @ValidateParams
     public void reloadConfiguration(@ValidateStringParam(name = "site") String site) {
-        PermissionsConfigTO permissionsConfigTO = loadConfiguration(site, getPermissionsFileName());
-        PermissionsConfigTO rolesConfigTO = loadConfiguration(site, getRoleMappingsFileName());
+        loadSitePermissions(site, true);
     }
 
     @Override
     public void reloadGlobalConfiguration() {
-        PermissionsConfigTO permissionsConfigTO = loadGlobalPermissionsConfiguration();
-        PermissionsConfigTO rolesConfigTO = loadGlobalRolesConfiguration();
+        loadGlobalPermissions(true);
+    }
+
+    @Override
+    @ValidateParams
+    public void evictConfiguration(@ValidateStringParam(name = "site") String site) {
+        // The decision cache of a site belongs to its compiled permissions
+        compiledPermissions.remove(site);
     }
 
     @Override
@@ -1039,6 +1024,10 @@ public class SecurityServiceImpl implements SecurityService {
         return studioConfiguration.getProperty(MAIL_FROM_DEFAULT);
     }
 
+    public int getPermissionsDecisionCacheSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(SECURITY_PERMISSIONS_DECISION_CACHE_SIZE));
+    }
+
     public String getSystemSite() {
         return studioConfiguration.getProperty(CONFIGURATION_GLOBAL_SYSTEM_SITE);
     }
@@ -1052,6 +1041,9 @@ public class SecurityServiceImpl implements SecurityService {
     public ContentService getContentService() { return contentService; }
     public void setContentService(ContentService contentService) { this.contentService = contentService; }
 
+    public ContentRepository getContentRepository() { return contentRepository; }
+    public void setContentRepository(ContentRepository contentRepository) { this.contentRepository = contentRepository; }
+
     public GeneralLockService getGeneralLockService() { return generalLockService; }
     public void setGeneralLockService(GeneralLockService generalLockService) { this.generalLockService = generalLockService; }
 
@@ -0,0 +1,186 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.security;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.craftercms.studio.api.v1.service.monitor.MetricsSource;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.SECURITY_USER_GROUPS_CACHE_MAX_USERS;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.SECURITY_USER_GROUPS_CACHE_TTL;
+
+/**
+ * Groups of recently seen users, as returned by the security provider. Entries expire after a time to live, so
+ * changes made outside of Studio (LDAP) are picked up, and are invalidated by the group membership changes made
+ * through Studio. Groups loaded while an invalidation ran are not cached, they may have been read before it.
+ */
+public class UserGroupsCache implements MetricsSource {
+
+    private static final class Entry {
+        private final Set<String> groups;
+        private final long expiresAt;
+
+        Entry(Set<String> groups, long expiresAt) {
+            this.groups = groups;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    protected final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserGroupsCache.Entry> eldest) {
+            if (size() > getMaxUsers()) {
+                evictions.incrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    };
+    /**
+     * Types of the providers whose groups were cached, guarded by the entries
+     */
+    protected final Set<String> providerTypes = new HashSet<String>();
+    protected final AtomicLong hits = new AtomicLong();
+    protected final AtomicLong misses = new AtomicLong();
+    protected final AtomicLong evictions = new AtomicLong();
+    protected final AtomicLong invalidations = new AtomicLong();
+    protected final AtomicLong staleLoads = new AtomicLong();
+
+    /**
+     * Incremented by every invalidation, guarded by the entries
+     */
+    protected long version = 0;
+
+    protected StudioConfiguration studioConfiguration;
+
+    /**
+     * Get a copy of the cached groups of a user
+     *
+     * @param providerType type of the security provider
+     * @param user username
+     * @return groups or null if they are not cached or expired
+     */
+    public Set<String> get(String providerType, String user) {
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(getKey(providerType, user));
+        }
+        if (entry == null || entry.expiresAt < System.currentTimeMillis()) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new HashSet<String>(entry.groups);
+    }
+
+    /**
+     * Get the version of the cache, to read before loading the groups of a user from the security provider
+     *
+     * @return version
+     */
+    public long getVersion() {
+        synchronized (entries) {
+            return version;
+        }
+    }
+
+    /**
+     * Cache the groups of a user, unless the cache was invalidated since they were loaded
+     *
+     * @param providerType type of the security provider
+     * @param user username
+     * @param groups groups of the user
+     * @param loadVersion version of the cache read before loading the groups
+     */
+    public void put(String providerType, String user, Set<String> groups, long loadVersion) {
+        Entry entry = new Entry(Collections.unmodifiableSet(new HashSet<String>(groups)),
+                System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(getTtl()));
+        synchronized (entries) {
+            if (loadVersion != version) {
+                staleLoads.incrementAndGet();
+                return;
+            }
+            providerTypes.add(providerType);
+            entries.put(getKey(providerType, user), entry);
+        }
+    }
+
+    /**
+     * Forget the groups of a user, with any provider
+     *
+     * @param user username
+     */
+    public void invalidate(String user) {
+        synchronized (entries) {
+            version++;
+            for (String providerType : providerTypes) {
+                if (entries.remove(getKey(providerType, user)) != null) {
+                    invalidations.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Forget the groups of all users
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            version++;
+            invalidations.addAndGet(entries.size());
+            entries.clear();
+        }
+    }
+
+    @Override
+    public Map<String, Object> getMetrics() {
+        Map<String, Object> metrics = new LinkedHashMap<String, Object>();
+        synchronized (entries) {
+            metrics.put("users", entries.size());
+        }
+        metrics.put("hits", hits.get());
+        metrics.put("misses", misses.get());
+        metrics.put("evictions", evictions.get());
+        metrics.put("invalidations", invalidations.get());
+        metrics.put("staleLoads", staleLoads.get());
+        return metrics;
+    }
+
+    protected String getKey(String providerType, String user) {
+        return providerType + ":" + user;
+    }
+
+    public long getTtl() {
+        return Long.parseLong(studioConfiguration.getProperty(SECURITY_USER_GROUPS_CACHE_TTL));
+    }
+
+    public int getMaxUsers() {
+        return Integer.parseInt(studioConfiguration.getProperty(SECURITY_USER_GROUPS_CACHE_MAX_USERS));
+    }
+
+    public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
+    public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
+}
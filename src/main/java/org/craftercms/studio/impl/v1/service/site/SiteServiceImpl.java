@@ -37,6 +37,7 @@ import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.craftercms.commons.validation.annotations.param.*;
 import org.craftercms.studio.api.v1.constant.DmConstants;
+import org.craftercms.studio.api.v1.constant.RepoOperation;
 import org.craftercms.studio.api.v1.constant.StudioConstants;
 import org.craftercms.studio.api.v1.dal.*;
 import org.craftercms.studio.api.v1.deployment.PreviewDeployer;
@@ -53,6 +54,7 @@ import org.craftercms.studio.api.v1.exception.security.UserNotFoundException;
 import org.craftercms.studio.api.v1.log.Logger;
 import org.craftercms.studio.api.v1.log.LoggerFactory;
 import org.craftercms.studio.api.v1.repository.ContentRepository;
+import org.craftercms.studio.api.v1.repository.RepoOperationIterator;
 import org.craftercms.studio.api.v1.repository.RepositoryItem;
 import org.craftercms.studio.api.v1.service.GeneralLockService;
 import org.craftercms.studio.api.v1.service.activity.ActivityService;
@@ -79,7 +81,8 @@ import org.craftercms.studio.api.v1.util.StudioConfiguration;
 import org.craftercms.studio.api.v2.service.notification.NotificationService;
 import org.craftercms.studio.impl.v1.repository.job.RebuildRepositoryMetadata;
 import org.craftercms.studio.impl.v1.repository.job.SyncDatabaseWithRepository;
-import org.craftercms.studio.impl.v1.util.ContentUtils;
+import org.craftercms.studio.impl.v1.service.content.ContentItemCache;
+import org.craftercms.studio.impl.v1.service.security.UserGroupsCache;
 import org.dom4j.Document;
 import org.dom4j.DocumentException;
 import org.dom4j.DocumentHelper;
@@ -113,6 +116,8 @@ public class SiteServiceImpl implements SiteService {
             activityType = ActivityService.ActivityType.CREATED;
         }
         String commitId = contentRepository.writeContent(site, path, content);
+        // Cached items hold values derived from the configuration
+        contentItemCache.invalidateSite(site);
 
         PreviewEventContext context = new PreviewEventContext();
         context.setSite(site);
@@ -151,6 +156,7 @@ public class SiteServiceImpl implements SiteService {
 	public boolean writeConfiguration(@ValidateSecurePathParam(name = "path") String path, InputStream content) throws ServiceException {
 	    // Write global configuration
         String commitId = contentRepository.writeContent("", path, content);
+        contentItemCache.invalidateAll();
         boolean toReturn = StringUtils.isEmpty(commitId);
         return toReturn;
 	}
@@ -606,6 +612,8 @@ public class SiteServiceImpl implements SiteService {
 		try {
 		    logger.debug("Deleting repo");
 		    contentRepository.deleteSite(siteId);
+		    contentItemCache.invalidateSite(siteId);
+		    securityService.evictConfiguration(siteId);
 		} catch(Exception e) {
 			success = false;
 			logger.error("Failed to delete the repository for site:" + siteId, e);
@@ -615,6 +623,8 @@ public class SiteServiceImpl implements SiteService {
 		    // delete database records
 		    logger.debug("Deleting database records");
 			siteFeedMapper.deleteSite(siteId);
+			// Deleting the site deleted its groups and their members
+			userGroupsCache.invalidateAll();
 			activityService.deleteActivitiesForSite(siteId);
 			dmDependencyService.deleteDependenciesForSite(siteId);
 	        deploymentService.deleteDeploymentDataForSite(siteId);
@@ -725,11 +735,13 @@ public class SiteServiceImpl implements SiteService {
 		notificationService.reloadConfiguration(site);
         securityService.reloadConfiguration(site);
         contentTypeService.reloadConfiguration(site);
+        contentItemCache.invalidateSite(site);
     }
 
     @Override
     public void reloadGlobalConfiguration() {
         securityService.reloadGlobalConfiguration();
+        contentItemCache.invalidateAll();
     }
 
     @Override
@@ -779,6 +791,12 @@ public class SiteServiceImpl implements SiteService {
     @Override
     @ValidateParams
     public boolean syncDatabaseWithRepo(@ValidateStringParam(name = "site") String site, @ValidateStringParam(name = "fromCommitId") String fromCommitId) {
+        // Changes made outside of Studio may include configuration, cached items can't be trusted anymore
+        contentItemCache.invalidateSite(site);
+        if (isSyncDatabaseBatchEnabled()) {
+            return syncDatabaseWithRepoInBatches(site, fromCommitId);
+        }
+
 		boolean toReturn = true;
         List<RepoOperationTO> repoOperations = contentRepository.getOperations(site, fromCommitId, contentRepository
 		    .getRepoLastCommitId(site));
@@ -820,138 +838,7 @@ public class SiteServiceImpl implements SiteService {
             }
 
 	        if (diverged) {
-                Map<String, String> activityInfo = new HashMap<String, String>();
-                String contentClass;
-                Map<String, Object> properties;
-                switch (repoOperation.getOperation()) {
-                    case CREATE:
-                    case COPY:
-                        ItemState state = objectStateService.getObjectState(site, repoOperation.getPath(), false);
-
-                        if (state == null) {
-                            objectStateService.insertNewEntry(site, repoOperation.getPath());
-                        } else {
-                            objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
-                        }
-
-                        if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
-                            objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
-                        }
-                        properties = new HashMap<String, Object>();
-                        properties.put(ItemMetadata.PROP_SITE, site);
-                        properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
-                        properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
-                        properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                        objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                        toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
-                        if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
-                                ActivityService.ActivityType.CREATED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
-                        break;
-
-                    case UPDATE:
-                        objectStateService.getObjectState(site, repoOperation.getPath());
-                        objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
-                        if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
-                            objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
-                        }
-                        properties = new HashMap<String, Object>();
-                        properties.put(ItemMetadata.PROP_SITE, site);
-                        properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
-                        properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
-                        properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                        objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                        toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
-                        if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
-                                ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
-                        break;
-
-                    case DELETE:
-                        objectStateService.deleteObjectStateForPath(site, repoOperation.getPath());
-                        objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
-                        dmDependencyService.deleteDependenciesForSiteAndPath(site, repoOperation.getPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
-                        if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
-                                ActivityService.ActivityType.DELETED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
-                        break;
-
-                    case MOVE:
-                        ItemState stateRename = objectStateService.getObjectState(site, repoOperation.getPath(), false);
-                        if (stateRename == null) {
-                            objectStateService.getObjectState(site, repoOperation.getPath());
-                            objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
-                        } else {
-                            objectStateService.updateObjectPath(site, repoOperation.getPath(), repoOperation.getMoveToPath());
-                            objectStateService.transition(site, repoOperation.getMoveToPath(), TransitionEvent.SAVE);
-                        }
-
-                        if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
-                            if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
-                                objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getMoveToPath());
-                            } else {
-                                if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
-                                    // set renamed and old path
-                                    properties = new HashMap<String, Object>();
-                                    properties.put(ItemMetadata.PROP_SITE, site);
-                                    properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
-                                    properties.put(ItemMetadata.PROP_RENAMED, 1);
-                                    properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
-                                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                                    properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
-                                    objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                                }
-                            }
-                        } else {
-                            if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
-                                // preform move: update path, set renamed, set old url
-                                objectMetadataManager.updateObjectPath(site, repoOperation.getPath(), repoOperation.getMoveToPath());
-                                properties = new HashMap<String, Object>();
-                                properties.put(ItemMetadata.PROP_SITE, site);
-                                properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
-                                properties.put(ItemMetadata.PROP_RENAMED, 1);
-                                properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
-                                properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                                objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                            } else {
-                                // if not already renamed set renamed and old url
-                                if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
-                                    // set renamed and old path
-                                    properties = new HashMap<String, Object>();
-                                    properties.put(ItemMetadata.PROP_SITE, site);
-                                    properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
-                                    properties.put(ItemMetadata.PROP_RENAMED, 1);
-                                    properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
-                                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
-                                    objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
-                                }
-                                objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
-                            }
-                        }
-
-                        toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getMoveToPath());
-                        contentClass = contentService.getContentTypeClass(site, repoOperation.getMoveToPath());
-                        if (repoOperation.getMoveToPath().endsWith(DmConstants.XML_PATTERN)) {
-                            activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
-                        }
-                        activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getMoveToPath(),
-                                ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
-                        break;
-
-                    default:
-                        logger.error("Error: Unknown repo operation for site " + site + " operation: " + repoOperation.getOperation());
-                        toReturn = false;
-                        break;
-                }
+                toReturn = processRepoOperation(site, repoOperation) && toReturn;
             }
 	    }
         if (current != null) {
@@ -959,6 +846,10 @@ public class SiteServiceImpl implements SiteService {
             updateLastVerifiedGitlogCommitId(site, current.getCommitId());
         }
 
+        return finishSyncDatabaseWithRepo(site, fromCommitId, toReturn);
+    }
+
+    protected boolean finishSyncDatabaseWithRepo(String site, String fromCommitId, boolean toReturn) {
 	    // At this point we have attempted to process all operations, some may have failed
 	    // We will update the lastCommitId of the database ignoring errors if any
 	    logger.debug("Done syncing operations with a result of: " + toReturn);
@@ -987,6 +878,329 @@ public class SiteServiceImpl implements SiteService {
 	    return toReturn;
     }
 
+    /**
+     * Sync the database in batches. Operations are collapsed per path, the last operation of a path across commits
+     * wins, and the database changes are applied in chunks of configurable size, each chunk in a single transaction.
+     * Moves depend on the state of two paths, they flush the chunk and are applied on their own.
+     */
+    protected boolean syncDatabaseWithRepoInBatches(String site, String fromCommitId) {
+        boolean toReturn = true;
+        int batchSize = getSyncDatabaseBatchSize();
+        Map<String, RepoOperationTO> pending = new LinkedHashMap<String, RepoOperationTO>();
+        List<String> completedCommits = new ArrayList<String>();
+        SyncDatabaseBatchWriter.Batch batch = new SyncDatabaseBatchWriter.Batch(site);
+        String currentCommitId = null;
+        boolean diverged = false;
+        int processed = 0;
+
+        try (RepoOperationIterator repoOperations = contentRepository.iterateOperations(site, fromCommitId,
+                contentRepository.getRepoLastCommitId(site))) {
+            if (!repoOperations.hasNext()) {
+                logger.debug("Database is up to date with repository for site: " + site);
+                contentRepository.markGitLogVerifiedProcessed(site, fromCommitId);
+                return toReturn;
+            }
+
+            logger.info("Syncing database with repository in batches for site: " + site + " fromCommitId = " +
+                    (StringUtils.isEmpty(fromCommitId) ? "Empty repo" : fromCommitId));
+
+            while (repoOperations.hasNext()) {
+                RepoOperationTO repoOperation = repoOperations.next();
+                if (!repoOperation.getCommitId().equals(currentCommitId)) {
+                    if (currentCommitId != null) {
+                        completedCommits.add(currentCommitId);
+                    }
+                    currentCommitId = repoOperation.getCommitId();
+                    GitLog gitLog = contentRepository.getGitLog(site, currentCommitId);
+                    if (gitLog != null) {
+                        diverged = diverged || gitLog.getProcessed() < 1;
+                    } else {
+                        batch.insertGitLog(currentCommitId);
+                        diverged = true;
+                    }
+                }
+                if (!diverged) {
+                    continue;
+                }
+
+                if (repoOperation.getOperation() == RepoOperation.MOVE) {
+                    processed += pending.size();
+                    toReturn = flushSyncDatabaseBatch(site, pending, batch, completedCommits) && toReturn;
+                    batch = new SyncDatabaseBatchWriter.Batch(site);
+                    toReturn = processRepoOperation(site, repoOperation) && toReturn;
+                    processed++;
+                } else {
+                    // Remove first so the path moves to the position of its last operation
+                    pending.remove(repoOperation.getPath());
+                    pending.put(repoOperation.getPath(), repoOperation);
+                    if (pending.size() >= batchSize) {
+                        processed += pending.size();
+                        toReturn = flushSyncDatabaseBatch(site, pending, batch, completedCommits) && toReturn;
+                        batch = new SyncDatabaseBatchWriter.Batch(site);
+                        logger.info("Synced " + processed + " items for site: " + site + " up to commit ID: " +
+                                currentCommitId);
+                    }
+                }
+            }
+
+            completedCommits.add(currentCommitId);
+            processed += pending.size();
+            toReturn = flushSyncDatabaseBatch(site, pending, batch, completedCommits) && toReturn;
+            updateLastVerifiedGitlogCommitId(site, currentCommitId);
+            logger.info("Synced " + processed + " items for site: " + site + " up to commit ID: " + currentCommitId);
+        }
+
+        return finishSyncDatabaseWithRepo(site, fromCommitId, toReturn);
+    }
+
+    /**
+     * Apply the pending operations and mark the completed commits as processed in one transaction, then extract the
+     * dependencies of the items that were created or updated
+     */
+    protected boolean flushSyncDatabaseBatch(String site, Map<String, RepoOperationTO> pending,
+                                             SyncDatabaseBatchWriter.Batch batch, List<String> completedCommits) {
+        boolean toReturn = true;
+        List<String> paths = new ArrayList<String>(pending.keySet());
+        Map<String, ItemState> states = new HashMap<String, ItemState>();
+        for (ItemState state : objectStateService.getObjectStateForPaths(site, paths)) {
+            states.put(state.getPath(), state);
+        }
+        Set<String> pathsWithMetadata = new HashSet<String>();
+        for (ItemMetadata metadata : objectMetadataManager.getPropertiesForPaths(site, paths)) {
+            pathsWithMetadata.add(metadata.getPath());
+        }
+
+        List<String> savedPaths = new ArrayList<String>();
+        for (RepoOperationTO repoOperation : pending.values()) {
+            String path = repoOperation.getPath();
+            Map<String, String> activityInfo = new HashMap<String, String>();
+            if (path.endsWith(DmConstants.XML_PATTERN)) {
+                activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentService.getContentTypeClass(site, path));
+            }
+            ActivityService.ActivityType activityType;
+            switch (repoOperation.getOperation()) {
+                case CREATE:
+                case COPY:
+                case UPDATE:
+                    ItemState state = states.get(path);
+                    if (state == null) {
+                        state = new ItemState();
+                        state.setObjectId(UUID.randomUUID().toString());
+                        state.setSite(site);
+                        state.setPath(path);
+                        state.setSystemProcessing(0);
+                        state.setState(objectStateService.getNextState(null, TransitionEvent.SAVE).name());
+                        batch.insertState(state);
+                    } else {
+                        State nextState = objectStateService.getNextState(State.valueOf(state.getState()),
+                                TransitionEvent.SAVE);
+                        if (nextState != State.NOOP && !nextState.name().equals(state.getState())) {
+                            state.setState(nextState.name());
+                            batch.updateState(state);
+                        }
+                    }
+
+                    if (!pathsWithMetadata.contains(path)) {
+                        batch.insertMetadata(path);
+                    }
+                    Map<String, Object> properties = new HashMap<String, Object>();
+                    properties.put(ItemMetadata.PROP_SITE, site);
+                    properties.put(ItemMetadata.PROP_PATH, path);
+                    properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                    properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                    batch.updateMetadata(properties);
+
+                    savedPaths.add(path);
+                    activityType = repoOperation.getOperation() == RepoOperation.UPDATE ?
+                            ActivityService.ActivityType.UPDATED : ActivityService.ActivityType.CREATED;
+                    break;
+
+                case DELETE:
+                    batch.delete(path);
+                    activityType = ActivityService.ActivityType.DELETED;
+                    break;
+
+                default:
+                    logger.error("Error: Unknown repo operation for site " + site + " operation: " +
+                            repoOperation.getOperation());
+                    toReturn = false;
+                    continue;
+            }
+
+            AuditFeed activity = activityService.createActivity(site, repoOperation.getAuthor(), path, activityType,
+                    ActivityService.ActivitySource.REPOSITORY, activityInfo);
+            if (activity != null) {
+                batch.postActivity(activity);
+            }
+        }
+        for (String commitId : completedCommits) {
+            batch.markGitLogProcessed(commitId);
+        }
+
+        try {
+            syncDatabaseBatchWriter.write(batch);
+        } catch (Exception e) {
+            logger.error("Error syncing a batch of " + pending.size() + " operations to the database for site: " +
+                    site, e);
+            toReturn = false;
+        }
+        pending.clear();
+        completedCommits.clear();
+
+        // Dependencies are extracted once the items are in the database
+        return extractDependenciesForItems(site, savedPaths) && toReturn;
+    }
+
+    /**
+     * Apply a repository operation to the database
+     */
+    protected boolean processRepoOperation(String site, RepoOperationTO repoOperation) {
+        boolean toReturn = true;
+        Map<String, String> activityInfo = new HashMap<String, String>();
+        String contentClass;
+        Map<String, Object> properties;
+        switch (repoOperation.getOperation()) {
+            case CREATE:
+            case COPY:
+                ItemState state = objectStateService.getObjectState(site, repoOperation.getPath(), false);
+
+                if (state == null) {
+                    objectStateService.insertNewEntry(site, repoOperation.getPath());
+                } else {
+                    objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
+                }
+
+                if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
+                    objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
+                }
+                properties = new HashMap<String, Object>();
+                properties.put(ItemMetadata.PROP_SITE, site);
+                properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
+                properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getPath());
+                contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
+                if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
+                    activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                }
+                activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
+                        ActivityService.ActivityType.CREATED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
+                break;
+
+            case UPDATE:
+                objectStateService.getObjectState(site, repoOperation.getPath());
+                objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
+                if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
+                    objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getPath());
+                }
+                properties = new HashMap<String, Object>();
+                properties.put(ItemMetadata.PROP_SITE, site);
+                properties.put(ItemMetadata.PROP_PATH, repoOperation.getPath());
+                properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getPath());
+                contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
+                if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
+                    activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                }
+                activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
+                        ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
+                break;
+
+            case DELETE:
+                objectStateService.deleteObjectStateForPath(site, repoOperation.getPath());
+                objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
+                dmDependencyService.deleteDependenciesForSiteAndPath(site, repoOperation.getPath());
+                contentClass = contentService.getContentTypeClass(site, repoOperation.getPath());
+                if (repoOperation.getPath().endsWith(DmConstants.XML_PATTERN)) {
+                    activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                }
+                activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getPath(),
+                        ActivityService.ActivityType.DELETED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
+                break;
+
+            case MOVE:
+                ItemState stateRename = objectStateService.getObjectState(site, repoOperation.getPath(), false);
+                if (stateRename == null) {
+                    objectStateService.getObjectState(site, repoOperation.getPath());
+                    objectStateService.transition(site, repoOperation.getPath(), TransitionEvent.SAVE);
+                } else {
+                    objectStateService.updateObjectPath(site, repoOperation.getPath(), repoOperation.getMoveToPath());
+                    objectStateService.transition(site, repoOperation.getMoveToPath(), TransitionEvent.SAVE);
+                }
+
+                if (!objectMetadataManager.metadataExist(site, repoOperation.getPath())) {
+                    if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
+                        objectMetadataManager.insertNewObjectMetadata(site, repoOperation.getMoveToPath());
+                    } else {
+                        if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
+                            // set renamed and old path
+                            properties = new HashMap<String, Object>();
+                            properties.put(ItemMetadata.PROP_SITE, site);
+                            properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
+                            properties.put(ItemMetadata.PROP_RENAMED, 1);
+                            properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
+                            properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                            properties.put(ItemMetadata.PROP_MODIFIED, repoOperation.getDateTime());
+                            objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                        }
+                    }
+                } else {
+                    if (!objectMetadataManager.metadataExist(site, repoOperation.getMoveToPath())) {
+                        // preform move: update path, set renamed, set old url
+                        objectMetadataManager.updateObjectPath(site, repoOperation.getPath(), repoOperation.getMoveToPath());
+                        properties = new HashMap<String, Object>();
+                        properties.put(ItemMetadata.PROP_SITE, site);
+                        properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
+                        properties.put(ItemMetadata.PROP_RENAMED, 1);
+                        properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
+                        properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                        objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                    } else {
+                        // if not already renamed set renamed and old url
+                        if (!objectMetadataManager.isRenamed(site, repoOperation.getMoveToPath())) {
+                            // set renamed and old path
+                            properties = new HashMap<String, Object>();
+                            properties.put(ItemMetadata.PROP_SITE, site);
+                            properties.put(ItemMetadata.PROP_PATH, repoOperation.getMoveToPath());
+                            properties.put(ItemMetadata.PROP_RENAMED, 1);
+                            properties.put(ItemMetadata.PROP_OLD_URL, repoOperation.getPath());
+                            properties.put(ItemMetadata.PROP_COMMIT_ID, repoOperation.getCommitId());
+                            objectMetadataManager.setObjectMetadata(site, repoOperation.getMoveToPath(), properties);
+                        }
+                        objectMetadataManager.deleteObjectMetadata(site, repoOperation.getPath());
+                    }
+                }
+
+                toReturn = toReturn && extractDependenciesForItem(site, repoOperation.getMoveToPath());
+                contentClass = contentService.getContentTypeClass(site, repoOperation.getMoveToPath());
+                if (repoOperation.getMoveToPath().endsWith(DmConstants.XML_PATTERN)) {
+                    activityInfo.put(DmConstants.KEY_CONTENT_TYPE, contentClass);
+                }
+                activityService.postActivity(site, repoOperation.getAuthor(), repoOperation.getMoveToPath(),
+                        ActivityService.ActivityType.UPDATED, ActivityService.ActivitySource.REPOSITORY, activityInfo);
+                break;
+
+            default:
+                logger.error("Error: Unknown repo operation for site " + site + " operation: " + repoOperation.getOperation());
+                toReturn = false;
+                break;
+        }
+        return toReturn;
+    }
+
+    /**
+     * Extract dependencies of multiple items, the items are resolved in parallel
+     */
+    protected boolean extractDependenciesForItems(String site, List<String> paths) {
+        if (paths.isEmpty()) {
+            return true;
+        }
+        return dmDependencyService.extractDependenciesForItems(site, paths);
+    }
+
     protected boolean extractDependenciesForItem(String site, String path) {
 		boolean toReturn = true;
 
@@ -1007,8 +1221,7 @@ public class SiteServiceImpl implements SiteService {
 		    } else {
 			    boolean isCss = path.endsWith(DmConstants.CSS_PATTERN);
 			    boolean isJs = path.endsWith(DmConstants.JS_PATTERN);
-			    boolean isTemplate = ContentUtils.matchesPatterns(path, servicesConfig.getRenderingTemplatePatterns
-				    (site));
+			    boolean isTemplate = servicesConfig.classifyPath(site, path).isRenderingTemplate();
 			    if (isCss || isJs || isTemplate) {
 				    StringBuffer sb = new StringBuffer(IOUtils.toString(content));
 				    if (isCss) {
@@ -1170,6 +1383,14 @@ public class SiteServiceImpl implements SiteService {
 	    return studioConfiguration.getProperty(CONFIGURATION_SITE_DEFAULT_ADMIN_GROUP);
     }
 
+    public boolean isSyncDatabaseBatchEnabled() {
+        return Boolean.parseBoolean(studioConfiguration.getProperty(REPO_SYNC_DB_BATCH_ENABLED));
+    }
+
+    public int getSyncDatabaseBatchSize() {
+        return Integer.parseInt(studioConfiguration.getProperty(REPO_SYNC_DB_BATCH_SIZE));
+    }
+
     /** getter site service dal */
 	public SiteServiceDAL getSiteService() { return _siteServiceDAL; }
 	/** setter site service dal */
@@ -1230,6 +1451,15 @@ public class SiteServiceImpl implements SiteService {
     public SyncDatabaseWithRepository getSyncDatabaseWithRepository() { return syncDatabaseWithRepository; }
     public void setSyncDatabaseWithRepository(SyncDatabaseWithRepository syncDatabaseWithRepository) { this.syncDatabaseWithRepository = syncDatabaseWithRepository; }
 
+    public ContentItemCache getContentItemCache() { return contentItemCache; }
+    public void setContentItemCache(ContentItemCache contentItemCache) { this.contentItemCache = contentItemCache; }
+
+    public UserGroupsCache getUserGroupsCache() { return userGroupsCache; }
+    public void setUserGroupsCache(UserGroupsCache userGroupsCache) { this.userGroupsCache = userGroupsCache; }
+
+    public SyncDatabaseBatchWriter getSyncDatabaseBatchWriter() { return syncDatabaseBatchWriter; }
+    public void setSyncDatabaseBatchWriter(SyncDatabaseBatchWriter syncDatabaseBatchWriter) { this.syncDatabaseBatchWriter = syncDatabaseBatchWriter; }
+
     public StudioConfiguration getStudioConfiguration() { return studioConfiguration; }
     public void setStudioConfiguration(StudioConfiguration studioConfiguration) { this.studioConfiguration = studioConfiguration; }
 
@@ -1266,6 +1496,9 @@ public class SiteServiceImpl implements SiteService {
     protected GeneralLockService generalLockService;
     protected RebuildRepositoryMetadata rebuildRepositoryMetadata;
     protected SyncDatabaseWithRepository syncDatabaseWithRepository;
+    protected ContentItemCache contentItemCache;
+    protected SyncDatabaseBatchWriter syncDatabaseBatchWriter;
+    protected UserGroupsCache userGroupsCache;
     protected EventService eventService;
 
     protected StudioConfiguration studioConfiguration;
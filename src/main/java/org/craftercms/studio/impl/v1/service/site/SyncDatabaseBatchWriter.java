@@ -0,0 +1,166 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.site;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.craftercms.studio.api.v1.dal.AuditFeed;
+import org.craftercms.studio.api.v1.dal.AuditFeedMapper;
+import org.craftercms.studio.api.v1.dal.DependencyMapper;
+import org.craftercms.studio.api.v1.dal.GitLogMapper;
+import org.craftercms.studio.api.v1.dal.ItemMetadataMapper;
+import org.craftercms.studio.api.v1.dal.ItemState;
+import org.craftercms.studio.api.v1.dal.ItemStateMapper;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Applies the database changes of a chunk of repository operations in a single transaction, using a MyBatis batch
+ * executor so every kind of statement is sent to the database as one JDBC batch.
+ */
+public class SyncDatabaseBatchWriter {
+
+    /**
+     * Database changes of a chunk of repository operations, applied in the order of the lists
+     */
+    public static class Batch {
+
+        private final String site;
+        private final List<String> insertedGitLogs = new ArrayList<String>();
+        private final List<ItemState> insertedStates = new ArrayList<ItemState>();
+        private final List<ItemState> updatedStates = new ArrayList<ItemState>();
+        private final List<String> insertedMetadata = new ArrayList<String>();
+        private final List<Map<String, Object>> updatedMetadata = new ArrayList<Map<String, Object>>();
+        private final List<String> deletedPaths = new ArrayList<String>();
+        private final List<AuditFeed> activities = new ArrayList<AuditFeed>();
+        private final List<String> processedGitLogs = new ArrayList<String>();
+
+        public Batch(String site) {
+            this.site = site;
+        }
+
+        public void insertGitLog(String commitId) { insertedGitLogs.add(commitId); }
+        public void insertState(ItemState state) { insertedStates.add(state); }
+        public void updateState(ItemState state) { updatedStates.add(state); }
+        public void insertMetadata(String path) { insertedMetadata.add(path); }
+        public void updateMetadata(Map<String, Object> properties) { updatedMetadata.add(properties); }
+        public void delete(String path) { deletedPaths.add(path); }
+        public void postActivity(AuditFeed activity) { activities.add(activity); }
+        public void markGitLogProcessed(String commitId) { processedGitLogs.add(commitId); }
+
+        public String getSite() { return site; }
+
+        public boolean isEmpty() {
+            return insertedGitLogs.isEmpty() && insertedStates.isEmpty() && updatedStates.isEmpty()
+                    && insertedMetadata.isEmpty() && updatedMetadata.isEmpty() && deletedPaths.isEmpty()
+                    && activities.isEmpty() && processedGitLogs.isEmpty();
+        }
+    }
+
+    protected SqlSessionTemplate batchSqlSession;
+    protected PlatformTransactionManager transactionManager;
+
+    /**
+     * Apply all changes of the batch, either all of them are committed or none
+     *
+     * @param batch batch of changes
+     */
+    public void write(final Batch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        new TransactionTemplate(transactionManager).execute(new TransactionCallbackWithoutResult() {
+            @Override
+            protected void doInTransactionWithoutResult(TransactionStatus status) {
+                doWrite(batch);
+                batchSqlSession.flushStatements();
+            }
+        });
+    }
+
+    protected void doWrite(Batch batch) {
+        GitLogMapper gitLogMapper = batchSqlSession.getMapper(GitLogMapper.class);
+        ItemStateMapper itemStateMapper = batchSqlSession.getMapper(ItemStateMapper.class);
+        ItemMetadataMapper itemMetadataMapper = batchSqlSession.getMapper(ItemMetadataMapper.class);
+        DependencyMapper dependencyMapper = batchSqlSession.getMapper(DependencyMapper.class);
+        AuditFeedMapper auditFeedMapper = batchSqlSession.getMapper(AuditFeedMapper.class);
+
+        for (String commitId : batch.insertedGitLogs) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("siteId", batch.site);
+            params.put("commitId", commitId);
+            params.put("processed", 0);
+            gitLogMapper.insertGitLog(params);
+        }
+        // One loop per statement, the batch executor only groups consecutive executions of the same statement
+        List<Map<String, String>> deletedParams = new ArrayList<Map<String, String>>(batch.deletedPaths.size());
+        for (String path : batch.deletedPaths) {
+            Map<String, String> params = new HashMap<String, String>();
+            params.put("site", batch.site);
+            params.put("path", path);
+            deletedParams.add(params);
+        }
+        for (Map<String, String> params : deletedParams) {
+            itemStateMapper.deleteObjectStateForSiteAndPath(params);
+        }
+        for (Map<String, String> params : deletedParams) {
+            itemMetadataMapper.deleteEntry(params);
+        }
+        for (Map<String, String> params : deletedParams) {
+            dependencyMapper.deleteDependenciesForSiteAndPath(params);
+        }
+        for (ItemState state : batch.insertedStates) {
+            itemStateMapper.insertEntry(state);
+        }
+        for (ItemState state : batch.updatedStates) {
+            itemStateMapper.setObjectState(state);
+        }
+        for (String path : batch.insertedMetadata) {
+            Map<String, String> params = new HashMap<String, String>();
+            params.put("site", batch.site);
+            params.put("path", path);
+            itemMetadataMapper.insertEntry(params);
+        }
+        for (Map<String, Object> properties : batch.updatedMetadata) {
+            itemMetadataMapper.setProperties(properties);
+        }
+        for (AuditFeed activity : batch.activities) {
+            auditFeedMapper.insertActivityFeed(activity);
+        }
+        for (String commitId : batch.processedGitLogs) {
+            Map<String, Object> params = new HashMap<String, Object>();
+            params.put("siteId", batch.site);
+            params.put("commitId", commitId);
+            params.put("processed", 1);
+            gitLogMapper.markGitLogProcessed(params);
+        }
+    }
+
+    public SqlSessionTemplate getBatchSqlSession() { return batchSqlSession; }
+    public void setBatchSqlSession(SqlSessionTemplate batchSqlSession) { this.batchSqlSession = batchSqlSession; }
+
+    public PlatformTransactionManager getTransactionManager() { return transactionManager; }
+    public void setTransactionManager(PlatformTransactionManager transactionManager) { this.transactionManager = transactionManager; }
+}
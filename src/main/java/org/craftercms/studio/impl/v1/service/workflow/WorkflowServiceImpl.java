@@ -26,6 +26,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -35,6 +36,7 @@ import net.sf.json.JSONArray;
 import net.sf.json.JSONException;
 import net.sf.json.JSONObject;
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.craftercms.commons.validation.annotations.param.ValidateParams;
 import org.craftercms.commons.validation.annotations.param.ValidateSecurePathParam;
@@ -212,17 +214,18 @@ public class WorkflowServiceImpl implements WorkflowService {
         List<DmError> errors = new ArrayList<DmError>();
         String site = requestContext.getSite();
         String submittedBy = requestContext.getUser();
+        Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
         for (DmDependencyTO submittedItem : submittedItems) {
             try {
                 DependencyRules rule = new DependencyRules(site);
                 rule.setContentService(contentService);
                 rule.setObjectStateService(objectStateService);
-                submitThisAndReferredComponents(submittedItem, site, scheduledDate, sendEmail, submitForDeletion, submittedBy, rule, submissionComment);
+                submitThisAndReferredComponents(submittedItem, site, scheduledDate, sendEmail, submitForDeletion, submittedBy, rule, submissionComment, transitions);
                 List<DmDependencyTO> children = submittedItem.getChildren();
                 if (children != null && !submitForDeletion) {
                     for (DmDependencyTO child : children) {
                         if (!child.isReference()) {
-                            submitThisAndReferredComponents(child, site, scheduledDate, sendEmail, submitForDeletion, submittedBy, rule, submissionComment);
+                            submitThisAndReferredComponents(child, site, scheduledDate, sendEmail, submitForDeletion, submittedBy, rule, submissionComment, transitions);
                         }
                     }
                 }
@@ -230,6 +233,7 @@ public class WorkflowServiceImpl implements WorkflowService {
                 errors.add(new DmError(site, submittedItem.getUri(), e));
             }
         }
+        objectStateService.transitionBulk(site, transitions);
         notificationService.notifyApprovesContentSubmission(site,null,getDeploymentPaths(submittedItems),submittedBy,scheduledDate,
                 submitForDeletion,submissionComment,Locale.ENGLISH);
         return errors;
@@ -245,10 +249,11 @@ public class WorkflowServiceImpl implements WorkflowService {
 
     protected void submitThisAndReferredComponents(DmDependencyTO submittedItem, String site, ZonedDateTime scheduledDate,
                                                    boolean sendEmail, boolean submitForDeletion, String submittedBy,
-                                                   DependencyRules rule, String submissionComment) throws
+                                                   DependencyRules rule, String submissionComment,
+                                                   Map<String, TransitionEvent> transitions) throws
                                                    ServiceException {
         doSubmit(site, submittedItem, scheduledDate, sendEmail, submitForDeletion, submittedBy, true,
-            submissionComment);
+            submissionComment, transitions);
         Set<DmDependencyTO> stringSet;
 
         if (submitForDeletion) {
@@ -258,6 +263,10 @@ public class WorkflowServiceImpl implements WorkflowService {
         }
 
         for (DmDependencyTO s : stringSet) {
+            if (transitions.containsKey(FilenameUtils.normalize(s.getUri(), true))) {
+                // Already submitted by this request, its state is only updated once all items are submitted
+                continue;
+            }
             ContentItemTO contentItem = contentService.getContentItem(site, s.getUri());
             boolean lsendEmail = true;
             boolean lnotifyAdmin = true;
@@ -265,11 +274,15 @@ public class WorkflowServiceImpl implements WorkflowService {
                 .isAsset()));
             lnotifyAdmin = (!contentItem.isDocument() && !contentItem.isComponent() && !contentItem.isAsset());
             // notify admin will always be true, unless for dependent document/banner/other-files
-            doSubmit(site, s, scheduledDate, lsendEmail, submitForDeletion, submittedBy, lnotifyAdmin, submissionComment);
+            doSubmit(site, s, scheduledDate, lsendEmail, submitForDeletion, submittedBy, lnotifyAdmin, submissionComment,
+                transitions);
         }
     }
 
-    protected void doSubmit(final String site, final DmDependencyTO dependencyTO, final ZonedDateTime scheduledDate, final boolean sendEmail, final boolean submitForDeletion, final String user, final boolean notifyAdmin, final String submissionComment) {
+    /**
+     * Submit an item, its state transition is added to the given transitions to be applied in bulk
+     */
+    protected void doSubmit(final String site, final DmDependencyTO dependencyTO, final ZonedDateTime scheduledDate, final boolean sendEmail, final boolean submitForDeletion, final String user, final boolean notifyAdmin, final String submissionComment, final Map<String, TransitionEvent> transitions) {
         //first remove from workflow
         removeFromWorkflow(site, dependencyTO.getUri(), true);
         ContentItemTO item = contentService.getContentItem(site, dependencyTO.getUri());
@@ -289,10 +302,11 @@ public class WorkflowServiceImpl implements WorkflowService {
             objectMetadataManager.insertNewObjectMetadata(site, dependencyTO.getUri());
         }
         objectMetadataManager.setObjectMetadata(site, dependencyTO.getUri(), properties);
+        String path = FilenameUtils.normalize(item.getUri(), true);
         if (scheduledDate != null) {
-            objectStateService.transition(site, item, TransitionEvent.SUBMIT_WITH_WORKFLOW_SCHEDULED);
+            transitions.put(path, TransitionEvent.SUBMIT_WITH_WORKFLOW_SCHEDULED);
         } else {
-            objectStateService.transition(site, item, TransitionEvent.SUBMIT_WITH_WORKFLOW_UNSCHEDULED);
+            transitions.put(path, TransitionEvent.SUBMIT_WITH_WORKFLOW_UNSCHEDULED);
         }
     }
 
@@ -2133,18 +2147,20 @@ public class WorkflowServiceImpl implements WorkflowService {
             // add its children and dependencies that must go with the top level
             // item to the submitted aspect
             // and only submit the top level items to workflow
+            Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
             for (DmDependencyTO dmDependencyTO : submittedItems) {
                 DependencyRules rule = new DependencyRules(site);
                 rule.setContentService(contentService);
                 rule.setObjectStateService(objectStateService);
-                rejectThisAndReferences(site, dmDependencyTO, rule, approver, reason);
+                rejectThisAndReferences(site, dmDependencyTO, rule, approver, reason, transitions);
                 List<DmDependencyTO> children = dmDependencyTO.getChildren();
                 if (children != null) {
                     for (DmDependencyTO child : children) {
-                        rejectThisAndReferences(site, child, rule, approver, reason);
+                        rejectThisAndReferences(site, child, rule, approver, reason, transitions);
                     }
                 }
             }
+            objectStateService.transitionBulk(site, transitions);
             if(!submittedItems.isEmpty()) {
                 // for some reason ,  submittedItems.get(0).getSubmittedBy() returns empty and
                 // metadata for the same value is also empty , using last modify to blame the rejection.
@@ -2162,10 +2178,14 @@ public class WorkflowServiceImpl implements WorkflowService {
         // TODO: send the reason to the user
     }
 
-    protected void rejectThisAndReferences(String site, DmDependencyTO dmDependencyTO, DependencyRules rule, String approver, String reason) {
-        _reject(site, dmDependencyTO, approver, true, reason);
+    protected void rejectThisAndReferences(String site, DmDependencyTO dmDependencyTO, DependencyRules rule, String approver, String reason, Map<String, TransitionEvent> transitions) {
+        _reject(site, dmDependencyTO, approver, true, reason, transitions);
         Set<DmDependencyTO> dependencyTOSet = rule.applyRejectRule(dmDependencyTO);
         for (DmDependencyTO dependencyTO : dependencyTOSet) {
+            if (transitions.containsKey(FilenameUtils.normalize(dependencyTO.getUri(), true))) {
+                // Already rejected by this request, its state is only updated once all items are rejected
+                continue;
+            }
             boolean lsendEmail = true;
             try {
                 ContentItemTO contentItem = contentService.getContentItem(site, dependencyTO.getUri());
@@ -2174,11 +2194,14 @@ public class WorkflowServiceImpl implements WorkflowService {
                 logger.error("during rejection, content retrieve failed");
                 lsendEmail = false;
             }
-            _reject(site, dependencyTO, approver, lsendEmail, reason);
+            _reject(site, dependencyTO, approver, lsendEmail, reason, transitions);
         }
     }
 
-    protected void _reject(String site, DmDependencyTO dmDependencyTO, String approver, boolean sendEmail, String reason) {
+    /**
+     * Reject an item, its state transition is added to the given transitions to be applied in bulk
+     */
+    protected void _reject(String site, DmDependencyTO dmDependencyTO, String approver, boolean sendEmail, String reason, Map<String, TransitionEvent> transitions) {
         boolean contentExists = contentService.contentExists(site, dmDependencyTO.getUri());
         if (contentExists) {
             if (!objectMetadataManager.metadataExist(site, dmDependencyTO.getUri())) {
@@ -2192,7 +2215,7 @@ public class WorkflowServiceImpl implements WorkflowService {
             newProps.put(ItemMetadata.PROP_LAUNCH_DATE, null);
             objectMetadataManager.setObjectMetadata(site, dmDependencyTO.getUri(), newProps);
             ContentItemTO item = contentService.getContentItem(site, dmDependencyTO.getUri());
-            objectStateService.transition(site, item, TransitionEvent.REJECT);
+            transitions.put(FilenameUtils.normalize(item.getUri(), true), TransitionEvent.REJECT);
         }
     }
 
@@ -31,6 +31,8 @@ import java.io.*;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 import static org.craftercms.studio.api.v1.constant.StudioConstants.FILE_SEPARATOR;
 
@@ -39,6 +41,10 @@ public class ContentUtils {
 
 	private static final Logger logger = LoggerFactory.getLogger(ContentUtils.class);
 
+	private static final int MAX_COMPILED_PATTERNS = 1000;
+
+	private static final ConcurrentHashMap<String, Pattern> compiledPatterns = new ConcurrentHashMap<String, Pattern>();
+
     /**
      * release resource
      *
@@ -125,7 +131,7 @@ public class ContentUtils {
 	public static boolean matchesPatterns(String uri, List<String> patterns) {
 		if (patterns != null) {
 			for (String pattern : patterns) {
-				if (uri.matches(pattern)) {
+				if (getCompiledPattern(pattern).matcher(uri).matches()) {
 					return true;
 				}
 			}
@@ -133,6 +139,19 @@ public class ContentUtils {
 		return false;
 	}
 
+	private static Pattern getCompiledPattern(String pattern) {
+		Pattern compiled = compiledPatterns.get(pattern);
+		if (compiled == null) {
+			compiled = Pattern.compile(pattern);
+			if (compiledPatterns.size() >= MAX_COMPILED_PATTERNS) {
+				// Patterns come from configuration, only a runaway caller gets here
+				compiledPatterns.clear();
+			}
+			compiledPatterns.put(pattern, compiled);
+		}
+		return compiled;
+	}
+
 	public static String getMd5ForFile(InputStream input) {
 		String result = null;
 		MessageDigest md = null;
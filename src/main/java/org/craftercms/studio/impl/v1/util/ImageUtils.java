@@ -0,0 +1,72 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.util;
+
+import java.awt.Dimension;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+
+import org.craftercms.studio.api.v1.log.Logger;
+import org.craftercms.studio.api.v1.log.LoggerFactory;
+
+public class ImageUtils {
+
+    private static final Logger logger = LoggerFactory.getLogger(ImageUtils.class);
+
+    /**
+     * Get the dimension of an image from its header, without decoding it. Formats are the ones with an ImageIO reader
+     * (PNG, JPEG, GIF and BMP, others if a reader plugin is installed). Only the bytes needed for the header are read
+     * and the stream is not closed.
+     *
+     * Dimensions are not cached by object id. The only caller checks uploads, which have no object id until they are
+     * written, and hashing an upload to get one would read every byte the header probe skips. Repository reads never
+     * ask for dimensions. Reading a header takes microseconds, a cache would not pay for itself on either path.
+     *
+     * @param in image
+     * @return dimension of the image, null if it is not in a readable format
+     * @throws IOException if the image can't be read
+     */
+    public static Dimension getDimension(InputStream in) throws IOException {
+        ImageInputStream imageIn = new MemoryCacheImageInputStream(in);
+        try {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+            while (readers.hasNext()) {
+                ImageReader reader = readers.next();
+                try {
+                    imageIn.seek(0);
+                    reader.setInput(imageIn, true, true);
+                    return new Dimension(reader.getWidth(0), reader.getHeight(0));
+                } catch (IOException e) {
+                    logger.debug("Image reader {0} failed to read the image header: {1}", reader.getFormatName(), e.getMessage());
+                } finally {
+                    reader.dispose();
+                }
+            }
+            return null;
+        } finally {
+            // closes only the cache, not the underlying stream
+            imageIn.close();
+        }
+    }
+}
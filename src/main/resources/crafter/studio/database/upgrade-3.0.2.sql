@@ -4,4 +4,35 @@ ALTER TABLE `gitlog` DROP COLUMN `commit_date` ;
 
 ALTER TABLE `site` ADD COLUMN `last_verified_gitlog_commit_id` VARCHAR(50) NULL ;
 
-UPDATE _meta SET version = '3.0.2.1' ;
\ No newline at end of file
+CREATE TABLE IF NOT EXISTS `published_item` (
+  `id`           BIGINT(20)    NOT NULL AUTO_INCREMENT,
+  `site`         VARCHAR(50)   NOT NULL,
+  `environment`  VARCHAR(20)   NOT NULL,
+  `path`         VARCHAR(2000) NOT NULL,
+  `commit_id`    VARCHAR(50)   NULL,
+  `publish_date` DATETIME      NULL,
+  PRIMARY KEY (`id`),
+  UNIQUE `uq_pi_site_path_environment` (`site`, `path`(900), `environment`)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  ROW_FORMAT = DYNAMIC ;
+
+CREATE TABLE IF NOT EXISTS `deployment_history` (
+  `id`                 BIGINT(20)    NOT NULL AUTO_INCREMENT,
+  `site`               VARCHAR(50)   NOT NULL,
+  `environment`        VARCHAR(20)   NOT NULL,
+  `path`               VARCHAR(2000) NOT NULL,
+  `commit_id`          VARCHAR(50)   NULL,
+  `username`           VARCHAR(255)  NULL,
+  `deployment_date`    DATETIME      NOT NULL,
+  `content_type_class` VARCHAR(25)   NULL,
+  PRIMARY KEY (`id`),
+  INDEX `deployment_history_site_date_idx` (`site` ASC, `deployment_date` DESC),
+  INDEX `deployment_history_site_path_idx` (`site` ASC, `path`(900) ASC)
+)
+  ENGINE = InnoDB
+  DEFAULT CHARSET = utf8
+  ROW_FORMAT = DYNAMIC ;
+
+UPDATE _meta SET version = '3.0.2.3' ;
\ No newline at end of file
@@ -50,4 +50,9 @@ class MonitorServices {
         def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
         return monitorServiceImpl.getMemory();
     }
+
+    static getMetrics(context) {
+        def monitorServiceImpl = ServiceFactory.getMonitorServices(context);
+        return monitorServiceImpl.getMetrics();
+    }
 }
@@ -45,4 +45,9 @@ class SpringMonitorServices {
         def springBackedService = this.context.applicationContext.get("studioMonitorService")
         return springBackedService.getMemory()
     }
+
+    def getMetrics() {
+        def springBackedService = this.context.applicationContext.get("studioMonitorService")
+        return springBackedService.getMetrics()
+    }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.content.pipeline;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class SpooledContentTest {
+
+    private static final int THRESHOLD = 1024;
+
+    private File directory;
+
+    @BeforeMethod
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("spooled-content-test").toFile();
+    }
+
+    @AfterMethod
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private static byte[] content(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] read(InputStream in, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        IOUtils.readFully(in, bytes);
+        return bytes;
+    }
+
+    private static byte[] range(byte[] content, int from, int length) {
+        byte[] bytes = new byte[length];
+        System.arraycopy(content, from, bytes, 0, length);
+        return bytes;
+    }
+
+    @Test
+    public void testBelowThresholdStaysInMemory() throws IOException {
+        byte[] content = content(THRESHOLD - 1);
+
+        try (SpooledContent spooledContent = SpooledContent.spool(new ByteArrayInputStream(content), THRESHOLD,
+                directory)) {
+            assertFalse(spooledContent.isSpooled());
+            assertEquals(spooledContent.getSize(), content.length);
+            assertEquals(directory.list().length, 0);
+            try (InputStream in = spooledContent.openStream()) {
+                assertEquals(IOUtils.toByteArray(in), content);
+            }
+            // Every stream starts at the beginning of the content
+            try (InputStream in = spooledContent.openStream()) {
+                assertEquals(IOUtils.toByteArray(in), content);
+            }
+        }
+    }
+
+    @Test
+    public void testEmptyContent() throws IOException {
+        try (SpooledContent spooledContent = SpooledContent.spool(new ByteArrayInputStream(new byte[0]), THRESHOLD,
+                directory)) {
+            assertFalse(spooledContent.isSpooled());
+            assertEquals(spooledContent.getSize(), 0);
+            try (InputStream in = spooledContent.openStream()) {
+                assertEquals(in.read(), -1);
+            }
+        }
+    }
+
+    @Test
+    public void testAboveThresholdIsSpooledToFile() throws IOException {
+        byte[] content = content(100 * THRESHOLD + 7);
+
+        SpooledContent spooledContent = SpooledContent.spool(new ByteArrayInputStream(content), THRESHOLD, directory);
+        try {
+            assertTrue(spooledContent.isSpooled());
+            assertEquals(spooledContent.getSize(), content.length);
+            File[] files = directory.listFiles();
+            assertEquals(files.length, 1);
+            assertEquals(files[0].length(), content.length);
+            try (InputStream in = spooledContent.openStream()) {
+                assertEquals(IOUtils.toByteArray(in), content);
+            }
+        } finally {
+            spooledContent.close();
+        }
+
+        assertEquals(directory.list().length, 0);
+    }
+
+    @Test
+    public void testMarkAndResetInMemory() throws IOException {
+        byte[] content = content(THRESHOLD / 2);
+
+        try (SpooledContent spooledContent = SpooledContent.spool(new ByteArrayInputStream(content), THRESHOLD,
+                directory)) {
+            try (InputStream in = spooledContent.openStream()) {
+                assertTrue(in.markSupported());
+                assertEquals(read(in, 10), range(content, 0, 10));
+                in.mark(Integer.MAX_VALUE);
+                assertEquals(read(in, 100), range(content, 10, 100));
+                in.reset();
+                assertEquals(IOUtils.toByteArray(in), range(content, 10, content.length - 10));
+            }
+        }
+    }
+
+    @Test
+    public void testMarkAndResetOnFile() throws IOException {
+        byte[] content = content(30000);
+
+        try (SpooledContent spooledContent = SpooledContent.spool(new ByteArrayInputStream(content), THRESHOLD,
+                directory)) {
+            try (InputStream in = spooledContent.openStream()) {
+                assertTrue(in.markSupported());
+                assertEquals(in.available(), content.length);
+
+                in.mark(0);
+                // Past the end of the first buffer of the stream
+                assertEquals(read(in, 20000), range(content, 0, 20000));
+                assertEquals(in.available(), content.length - 20000);
+                in.reset();
+                assertEquals(in.available(), content.length);
+                assertEquals(read(in, 100), range(content, 0, 100));
+
+                assertEquals(in.skip(9900), 9900);
+                in.mark(0);
+                assertEquals(in.read(), content[10000] & 0xff);
+                in.reset();
+                assertEquals(IOUtils.toByteArray(in), range(content, 10000, content.length - 10000));
+                assertEquals(in.skip(10), 0);
+                assertEquals(in.read(), -1);
+            }
+        }
+    }
+
+    @Test
+    public void testSpoolingFailureDeletesTemporaryFile() {
+        final byte[] content = content(10 * THRESHOLD);
+        InputStream failing = new InputStream() {
+            private int position = 0;
+
+            @Override
+            public int read() throws IOException {
+                if (position == 5 * THRESHOLD) {
+                    throw new IOException("Connection reset");
+                }
+                return content[position++] & 0xff;
+            }
+        };
+
+        try {
+            SpooledContent.spool(failing, THRESHOLD, directory);
+            fail("Spooling should fail when the content can't be read");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        assertEquals(directory.list().length, 0);
+    }
+}
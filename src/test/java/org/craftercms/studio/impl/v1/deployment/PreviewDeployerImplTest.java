@@ -0,0 +1,150 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.deployment;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.http.StatusLine;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+import org.craftercms.studio.api.v1.ebus.PreviewEventContext;
+import org.craftercms.studio.api.v1.service.event.EventService;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PREVIEW_DEFAULT_PREVIEW_DEPLOYER_URL;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PREVIEW_SYNC_COALESCE_WINDOW;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PREVIEW_SYNC_THREADS;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+
+public class PreviewDeployerImplTest {
+
+    private CloseableHttpClient httpClient;
+    private StudioConfiguration studioConfiguration;
+    private PreviewDeployerImpl previewDeployer;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        CloseableHttpResponse response = mock(CloseableHttpResponse.class);
+        StatusLine statusLine = mock(StatusLine.class);
+        when(statusLine.getStatusCode()).thenReturn(200);
+        when(response.getStatusLine()).thenReturn(statusLine);
+        httpClient = mock(CloseableHttpClient.class);
+        when(httpClient.execute(any(HttpUriRequest.class))).thenReturn(response);
+        studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(PREVIEW_DEFAULT_PREVIEW_DEPLOYER_URL))
+                .thenReturn("http://localhost:9191/api/1/target/deploy/preview/{siteName}");
+        when(studioConfiguration.getProperty(PREVIEW_SYNC_COALESCE_WINDOW)).thenReturn("200");
+        when(studioConfiguration.getProperty(PREVIEW_SYNC_THREADS)).thenReturn("1");
+        previewDeployer = new PreviewDeployerImpl();
+        previewDeployer.httpClient = httpClient;
+        previewDeployer.setStudioConfiguration(studioConfiguration);
+        previewDeployer.setEventService(mock(EventService.class));
+        previewDeployer.setBeanName("previewDeployer");
+        previewDeployer.subscribeToPreviewSyncEvents();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        previewDeployer.shutdown();
+    }
+
+    private static PreviewEventContext sync(String site, boolean waitTillDeploymentIsDone) {
+        PreviewEventContext context = new PreviewEventContext(waitTillDeploymentIsDone);
+        context.setSite(site);
+        return context;
+    }
+
+    private List<HttpUriRequest> sentRequests(int count) throws Exception {
+        ArgumentCaptor<HttpUriRequest> requests = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient, timeout(10000).times(count)).execute(requests.capture());
+        return requests.getAllValues();
+    }
+
+    @Test(timeOut = 30000)
+    public void testRequestsOfASiteAreCoalesced() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            previewDeployer.onPreviewSync(sync("mysite", false));
+        }
+        previewDeployer.onPreviewSync(sync("othersite", false));
+
+        Set<String> urls = new HashSet<String>();
+        for (HttpUriRequest request : sentRequests(2)) {
+            urls.add(request.getURI().toString());
+        }
+        Thread.sleep(400);
+
+        // One request per site, nothing else was sent once the window elapsed
+        verify(httpClient, times(2)).execute(any(HttpUriRequest.class));
+        assertEquals(urls.size(), 2);
+        assertEquals(previewDeployer.getMetrics().get("requests"), 6L);
+        assertEquals(previewDeployer.getMetrics().get("sent"), 2L);
+        assertEquals(previewDeployer.getMetrics().get("pendingSites"), 0);
+    }
+
+    @Test(timeOut = 30000)
+    public void testRequestAfterTheSyncWasSentIsNotLost() throws Exception {
+        previewDeployer.onPreviewSync(sync("mysite", false));
+        sentRequests(1);
+
+        previewDeployer.onPreviewSync(sync("mysite", false));
+
+        sentRequests(2);
+    }
+
+    @Test(timeOut = 30000)
+    public void testWaitTillDeploymentIsDoneIsSentOnTheCallerThread() throws Exception {
+        previewDeployer.onPreviewSync(sync("mysite", false));
+        previewDeployer.onPreviewSync(sync("mysite", true));
+
+        // Sent before returning, with the body asking the deployer to wait
+        ArgumentCaptor<HttpUriRequest> requests = ArgumentCaptor.forClass(HttpUriRequest.class);
+        verify(httpClient).execute(requests.capture());
+        HttpPost request = (HttpPost) requests.getValue();
+        assertEquals(EntityUtils.toString(request.getEntity()), "{\"wait_till_done\":true}");
+        // It covers the pending sync of the site, that is not sent anymore
+        Thread.sleep(400);
+        verify(httpClient).execute(any(HttpUriRequest.class));
+        assertEquals(previewDeployer.getMetrics().get("pendingSites"), 0);
+    }
+
+    @Test(timeOut = 30000)
+    public void testWithoutCoalesceWindowRequestsAreSentRightAway() throws Exception {
+        when(studioConfiguration.getProperty(PREVIEW_SYNC_COALESCE_WINDOW)).thenReturn("0");
+
+        previewDeployer.onPreviewSync(sync("mysite", false));
+        previewDeployer.onPreviewSync(sync("mysite", false));
+
+        verify(httpClient, times(2)).execute(any(HttpUriRequest.class));
+    }
+}
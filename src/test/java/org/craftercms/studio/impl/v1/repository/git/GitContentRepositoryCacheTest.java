@@ -0,0 +1,150 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class GitContentRepositoryCacheTest {
+
+    private File directory;
+    private Git git;
+    private GitContentRepositoryCache cache;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("git-cache").toFile();
+        git = Git.init().setDirectory(directory).call();
+        cache = new GitContentRepositoryCache(100, 1024, 4096);
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        git.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private RevCommit commit(String path, String content) throws Exception {
+        File file = new File(directory, path);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        git.add().addFilepattern(path).call();
+        return git.commit().setMessage("Write " + path).call();
+    }
+
+    private String read(String gitPath) throws Exception {
+        GitContentRepositoryCache.TreeEntry entry = cache.lookup(git.getRepository(), gitPath);
+        try (InputStream content = cache.openBlob(git.getRepository(), entry.getObjectId())) {
+            return IOUtils.toString(content, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testEmptyRepositoryHasNoRoot() throws Exception {
+        assertNull(cache.getRoot(git.getRepository()));
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+        commit("site/website/index.xml", "<page>index</page>");
+        commit("site/website/about/index.xml", "<page>about</page>");
+
+        GitContentRepositoryCache.TreeEntry website = cache.lookup(git.getRepository(), "site/website");
+        List<String> names = new ArrayList<String>();
+        for (GitContentRepositoryCache.TreeEntry child : cache.getChildren(git.getRepository(), website)) {
+            names.add(child.getName());
+        }
+
+        assertTrue(website.isFolder());
+        assertEquals(names, Arrays.asList("about", "index.xml"));
+        assertEquals(read("site/website/about/index.xml"), "<page>about</page>");
+        assertNull(cache.lookup(git.getRepository(), "site/website/missing.xml"));
+        assertNull(cache.lookup(git.getRepository(), "site/website/index.xml/child.xml"));
+    }
+
+    @Test
+    public void testCommitOutsideOfStudioIsSeen() throws Exception {
+        commit("site/website/index.xml", "<page>v1</page>");
+        assertEquals(read("site/website/index.xml"), "<page>v1</page>");
+
+        // Nobody tells the cache about the new commit, the moved HEAD is enough
+        commit("site/website/index.xml", "<page>v2</page>");
+
+        assertEquals(read("site/website/index.xml"), "<page>v2</page>");
+    }
+
+    @Test
+    public void testHeadUpdated() throws Exception {
+        commit("site/website/index.xml", "<page>v1</page>");
+        commit("site/components/header.xml", "<component>header</component>");
+        GitContentRepositoryCache.TreeEntry oldRoot = cache.getRoot(git.getRepository());
+        GitContentRepositoryCache.TreeEntry components = cache.lookup(git.getRepository(), "site/components");
+
+        RevCommit commit = commit("site/website/index.xml", "<page>v2</page>");
+        cache.headUpdated(git.getRepository(), commit.getName());
+
+        GitContentRepositoryCache.TreeEntry root = cache.getRoot(git.getRepository());
+        assertNotNull(root);
+        assertNotEquals(root.getObjectId(), oldRoot.getObjectId());
+        assertEquals(root.getObjectId(), commit.getTree().getId());
+        assertEquals(read("site/website/index.xml"), "<page>v2</page>");
+        // The unchanged subtree has the same id in both commits
+        assertEquals(cache.lookup(git.getRepository(), "site/components").getObjectId(),
+                components.getObjectId());
+    }
+
+    @Test
+    public void testBlobsOverTheMaximumSizeAreStreamed() throws Exception {
+        char[] large = new char[2048];
+        Arrays.fill(large, 'a');
+        commit("static-assets/large.txt", new String(large));
+        commit("static-assets/small.txt", "small");
+
+        assertEquals(read("static-assets/large.txt").length(), 2048);
+        assertEquals(read("static-assets/small.txt"), "small");
+        assertEquals(read("static-assets/small.txt"), "small");
+    }
+
+    @Test
+    public void testTreeListingsAreShared() throws Exception {
+        commit("site/website/index.xml", "<page>index</page>");
+        GitContentRepositoryCache.TreeEntry website = cache.lookup(git.getRepository(), "site/website");
+
+        assertSame(cache.getChildren(git.getRepository(), website), cache.getChildren(git.getRepository(), website));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import org.eclipse.jgit.lib.PersonIdent;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNull;
+
+public class GitContentRepositoryGroupCommitTest {
+
+    private static final PersonIdent AUTHOR = new PersonIdent("Jane Doe", "jane@example.com");
+
+    private GitContentRepositoryGroupCommit groupCommit;
+    private ExecutorService executor;
+    private List<List<String>> groups;
+    private AtomicInteger commits;
+
+    @BeforeMethod
+    public void setUp() {
+        groupCommit = new GitContentRepositoryGroupCommit();
+        executor = Executors.newCachedThreadPool();
+        groups = Collections.synchronizedList(new ArrayList<List<String>>());
+        commits = new AtomicInteger();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Committer that adds every file of the group except the given ones
+     */
+    private Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer(String... failingPaths) {
+        final List<String> failing = Arrays.asList(failingPaths);
+        return writes -> {
+            List<String> paths = new ArrayList<String>();
+            for (GitContentRepositoryGroupCommit.GroupedWrite write : writes) {
+                paths.add(write.getPath());
+                if (!failing.contains(write.getPath())) {
+                    write.setAdded();
+                }
+            }
+            groups.add(paths);
+            return "commit-" + commits.incrementAndGet();
+        };
+    }
+
+    private Future<String> write(final String site, final String path, final long window, final int maxItems,
+                                 final Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer) {
+        return executor.submit(new Callable<String>() {
+            @Override
+            public String call() {
+                return groupCommit.commit(site, path, AUTHOR, window, maxItems, committer);
+            }
+        });
+    }
+
+    @Test(timeOut = 30000)
+    public void testWritesOfAWindowShareACommit() throws Exception {
+        Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer = committer();
+        Future<String> leader = write("mysite", "/site/website/a.xml", 60000, 3, committer);
+        Future<String> follower1 = write("mysite", "/site/website/b.xml", 60000, 3, committer);
+        Future<String> follower2 = write("mysite", "/site/website/c.xml", 60000, 3, committer);
+
+        // The third write fills the group up, the leader does not wait for the whole window
+        assertEquals(leader.get(), "commit-1");
+        assertEquals(follower1.get(), "commit-1");
+        assertEquals(follower2.get(), "commit-1");
+        assertEquals(groups.size(), 1);
+        assertEquals(groups.get(0).size(), 3);
+    }
+
+    @Test(timeOut = 30000)
+    public void testGroupIsCommittedWhenTheWindowElapses() throws Exception {
+        String commitId = groupCommit.commit("mysite", "/site/website/a.xml", AUTHOR, 50, 10, committer());
+
+        assertEquals(commitId, "commit-1");
+        assertEquals(groups, Arrays.asList(Arrays.asList("/site/website/a.xml")));
+    }
+
+    @Test(timeOut = 30000)
+    public void testSitesAreGroupedApart() throws Exception {
+        Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer = committer();
+        Future<String> first = write("mysite", "/site/website/a.xml", 200, 10, committer);
+        Future<String> second = write("othersite", "/site/website/a.xml", 200, 10, committer);
+
+        assertNotEquals(first.get(), second.get());
+        assertEquals(groups.size(), 2);
+    }
+
+    @Test(timeOut = 30000)
+    public void testFailedCommitFailsEveryWrite() throws Exception {
+        Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer = writes -> {
+            throw new IllegalStateException("Unable to commit");
+        };
+        Future<String> leader = write("mysite", "/site/website/a.xml", 60000, 2, committer);
+        Future<String> follower = write("mysite", "/site/website/b.xml", 60000, 2, committer);
+
+        assertNull(leader.get());
+        assertNull(follower.get());
+    }
+
+    @Test(timeOut = 30000)
+    public void testWriteLeftOutOfTheGroupFails() throws Exception {
+        Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer =
+                committer("/site/website/b.xml");
+        Future<String> leader = write("mysite", "/site/website/a.xml", 60000, 2, committer);
+        Future<String> follower = write("mysite", "/site/website/b.xml", 60000, 2, committer);
+
+        assertEquals(leader.get(), "commit-1");
+        // The file of the write could not be added, it is not part of the shared commit
+        assertNull(follower.get());
+    }
+
+    @Test(timeOut = 30000)
+    public void testRepeatedPathStartsANewGroup() throws Exception {
+        Function<List<GitContentRepositoryGroupCommit.GroupedWrite>, String> committer = committer();
+        Future<String> first = write("mysite", "/site/website/a.xml", 500, 10, committer);
+        Future<String> second = write("mysite", "/site/website/a.xml", 500, 10, committer);
+
+        // Each version of the file gets its own commit
+        assertNotEquals(first.get(), second.get());
+        assertEquals(groups, Arrays.asList(Arrays.asList("/site/website/a.xml"),
+                Arrays.asList("/site/website/a.xml")));
+    }
+
+    @Test(timeOut = 30000)
+    public void testReservedPathWaitsForThePreviousWrite() throws Exception {
+        groupCommit.reservePath("mysite", "/site/website/a.xml");
+        Future<String> first = write("mysite", "/site/website/a.xml", 60000, 10, committer());
+
+        // The group of the first write is committed right away instead of waiting out the window
+        groupCommit.reservePath("mysite", "/site/website/a.xml");
+
+        assertEquals(groups, Arrays.asList(Arrays.asList("/site/website/a.xml")));
+        assertEquals(first.get(), "commit-1");
+        groupCommit.releasePath("mysite", "/site/website/a.xml");
+    }
+
+    @Test
+    public void testBuildMessage() {
+        GitContentRepositoryGroupCommit.GroupedWrite a =
+                new GitContentRepositoryGroupCommit.GroupedWrite("/site/website/a.xml", AUTHOR);
+        GitContentRepositoryGroupCommit.GroupedWrite b =
+                new GitContentRepositoryGroupCommit.GroupedWrite("/site/website/b.xml", AUTHOR);
+
+        assertEquals(GitContentRepositoryGroupCommit.buildMessage(Arrays.asList(a)),
+                "Wrote content /site/website/a.xml");
+        assertEquals(GitContentRepositoryGroupCommit.buildMessage(Arrays.asList(a, b)),
+                "Wrote content of 2 items\n\n"
+                        + "Content-Author: Jane Doe <jane@example.com> /site/website/a.xml\n"
+                        + "Content-Author: Jane Doe <jane@example.com> /site/website/b.xml\n");
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.repository.git;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.craftercms.studio.api.v1.constant.GitRepositories;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.REPO_PUBLISHED_COMMIT_MESSAGE;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class GitContentRepositoryPublishTest {
+
+    private static final String SITE = "mysite";
+    private static final String ENVIRONMENT = "live";
+    private static final String PATH = "site/website/index.xml";
+
+    @Mock
+    private GitContentRepositoryHelper helper;
+    @Mock
+    private StudioConfiguration studioConfiguration;
+    @InjectMocks
+    private GitContentRepository repository;
+
+    private File directory;
+    private Git sandbox;
+    private Git published;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        directory = Files.createTempDirectory("git-publish").toFile();
+        sandbox = Git.init().setDirectory(new File(directory, "sandbox")).call();
+        commit(PATH, "<page>v1</page>");
+        published = Git.cloneRepository().setURI(sandbox.getRepository().getDirectory().toURI().toString())
+                .setDirectory(new File(directory, "published")).call();
+
+        MockitoAnnotations.initMocks(this);
+        when(helper.getRepository(SITE, GitRepositories.PUBLISHED)).thenReturn(published.getRepository());
+        when(helper.getGitPath(anyString())).thenAnswer(invocation ->
+                ((String) invocation.getArguments()[0]).substring(1));
+        when(helper.getAuthorIdent(anyString())).thenReturn(new PersonIdent("Jane Doe", "jane@example.com"));
+        when(studioConfiguration.getProperty(REPO_PUBLISHED_COMMIT_MESSAGE)).thenReturn("{message} {commit_id}");
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        sandbox.close();
+        published.close();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private RevCommit commit(String path, String content) throws Exception {
+        File file = new File(sandbox.getRepository().getWorkTree(), path);
+        FileUtils.writeStringToFile(file, content, StandardCharsets.UTF_8);
+        sandbox.add().addFilepattern(path).call();
+        return sandbox.commit().setMessage("Write " + path).call();
+    }
+
+    private void publish(RevCommit commit) throws Exception {
+        DeploymentItemTO item = new DeploymentItemTO();
+        item.setSite(SITE);
+        item.setPath("/" + PATH);
+        item.setCommitId(commit.getName());
+        repository.publish(SITE, Arrays.asList(item), ENVIRONMENT, "admin", "Publish");
+    }
+
+    @Test
+    public void testNewEnvironmentBranchTracksMaster() throws Exception {
+        publish(sandbox.log().call().iterator().next());
+
+        StoredConfig config = published.getRepository().getConfig();
+        assertEquals(config.getString(ConfigConstants.CONFIG_BRANCH_SECTION, ENVIRONMENT,
+                ConfigConstants.CONFIG_KEY_REMOTE), ".");
+        assertEquals(config.getString(ConfigConstants.CONFIG_BRANCH_SECTION, ENVIRONMENT,
+                ConfigConstants.CONFIG_KEY_MERGE), Constants.R_HEADS + Constants.MASTER);
+        assertEquals(published.getRepository().getFullBranch(), Constants.R_HEADS + ENVIRONMENT);
+    }
+
+    @Test
+    public void testHeadIsLeftOnTheEnvironmentBranch() throws Exception {
+        publish(sandbox.log().call().iterator().next());
+        publish(commit(PATH, "<page>v2</page>"));
+
+        assertEquals(published.getRepository().getFullBranch(), Constants.R_HEADS + ENVIRONMENT);
+        assertEquals(FileUtils.readFileToString(new File(published.getRepository().getWorkTree(), PATH),
+                StandardCharsets.UTF_8), "<page>v2</page>");
+        assertTrue(published.status().call().isClean());
+    }
+}
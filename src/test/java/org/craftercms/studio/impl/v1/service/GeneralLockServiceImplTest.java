@@ -0,0 +1,159 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.fail;
+
+public class GeneralLockServiceImplTest {
+
+    private static Object locksInUse(GeneralLockServiceImpl lockService) {
+        return lockService.getMetrics().get("locksInUse");
+    }
+
+    @Test
+    public void testReentrantLockIsReleased() {
+        GeneralLockServiceImpl lockService = new GeneralLockServiceImpl();
+
+        lockService.lock("/site/website/index.xml");
+        lockService.lock("/site/website/index.xml");
+        assertEquals(locksInUse(lockService), 1);
+
+        lockService.unlock("/site/website/index.xml");
+        assertEquals(locksInUse(lockService), 1);
+
+        lockService.unlock("/site/website/index.xml");
+        assertEquals(locksInUse(lockService), 0);
+        assertEquals(lockService.getMetrics().get("acquisitions"), 2L);
+    }
+
+    @Test
+    public void testFailedTryLockIsReleased() throws Exception {
+        final GeneralLockServiceImpl lockService = new GeneralLockServiceImpl();
+        lockService.lock("/site/website/index.xml");
+
+        final AtomicBoolean acquired = new AtomicBoolean(true);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acquired.set(lockService.tryLock("/site/website/index.xml"));
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertFalse(acquired.get());
+        assertEquals(locksInUse(lockService), 1);
+
+        lockService.unlock("/site/website/index.xml");
+        assertEquals(locksInUse(lockService), 0);
+    }
+
+    @Test
+    public void testUnlockWithoutLockIsIgnored() {
+        GeneralLockServiceImpl lockService = new GeneralLockServiceImpl();
+
+        lockService.unlock("/site/website/index.xml");
+
+        assertEquals(locksInUse(lockService), 0);
+    }
+
+    @Test(timeOut = 30000)
+    public void testLockAllInOppositeOrdersDoesNotDeadlock() throws Exception {
+        final GeneralLockServiceImpl lockService = new GeneralLockServiceImpl();
+        final int iterations = 2000;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger completed = new AtomicInteger();
+        final List<String> forward = Arrays.asList("/a", "/b", "/c");
+        final List<String> backward = Arrays.asList("/c", "/b", "/a");
+
+        Thread[] threads = new Thread[2];
+        for (int i = 0; i < threads.length; i++) {
+            final List<String> ids = i == 0 ? forward : backward;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < iterations; j++) {
+                        lockService.lockAll(ids);
+                        lockService.unlockAll(ids);
+                    }
+                    completed.incrementAndGet();
+                }
+            });
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TimeUnit.SECONDS.toMillis(20));
+        }
+
+        assertEquals(completed.get(), threads.length);
+        assertEquals(locksInUse(lockService), 0);
+    }
+
+    @Test
+    public void testLockAllRollsBackOnFailure() {
+        GeneralLockServiceImpl lockService = new GeneralLockServiceImpl() {
+            @Override
+            public void lock(String objectId) {
+                if ("/c".equals(objectId)) {
+                    throw new IllegalStateException("Unable to lock " + objectId);
+                }
+                super.lock(objectId);
+            }
+        };
+
+        try {
+            lockService.lockAll(Arrays.asList("/c", "/b", "/a"));
+            fail("lockAll should fail when an id can't be locked");
+        } catch (IllegalStateException e) {
+            // Expected, the ids locked before the failure are released
+        }
+
+        assertEquals(locksInUse(lockService), 0);
+    }
+
+    @Test
+    public void testUnlockAll() {
+        GeneralLockServiceImpl lockService = new GeneralLockServiceImpl();
+        List<String> ids = Arrays.asList("/a", "/b", "/c");
+
+        lockService.lockAll(ids);
+        assertEquals(locksInUse(lockService), 3);
+
+        lockService.unlockAll(ids);
+        assertEquals(locksInUse(lockService), 0);
+    }
+}
@@ -0,0 +1,320 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.activity;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.craftercms.studio.api.v1.dal.AuditFeed;
+import org.craftercms.studio.api.v1.dal.AuditFeedMapper;
+import org.craftercms.studio.api.v1.service.activity.ActivityService;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_BATCH_SIZE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_FALLBACK_FILE;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_FLUSH_INTERVAL;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.ACTIVITY_WRITER_QUEUE_CAPACITY;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
+
+public class AuditFeedWriterTest {
+
+    private File fallbackFile;
+    private List<AuditFeedWriter> writers;
+    private List<AuditFeed> rows;
+    private AuditFeedMapper auditFeedMapper;
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        fallbackFile = File.createTempFile("audit-fallback", ".json");
+        Files.delete(fallbackFile.toPath());
+        writers = new ArrayList<AuditFeedWriter>();
+        rows = Collections.synchronizedList(new ArrayList<AuditFeed>());
+        auditFeedMapper = mock(AuditFeedMapper.class);
+        doAnswer(recordRows()).when(auditFeedMapper).insertActivityFeeds(anyMap());
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class)))
+                .thenReturn(new SimpleTransactionStatus());
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        for (AuditFeedWriter writer : writers) {
+            if (writer.running) {
+                writer.destroy();
+            }
+        }
+        Files.deleteIfExists(fallbackFile.toPath());
+    }
+
+    private AuditFeedWriter createWriter(String queueCapacity, String flushInterval) {
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(ACTIVITY_WRITER_QUEUE_CAPACITY)).thenReturn(queueCapacity);
+        when(studioConfiguration.getProperty(ACTIVITY_WRITER_BATCH_SIZE)).thenReturn("10");
+        when(studioConfiguration.getProperty(ACTIVITY_WRITER_FLUSH_INTERVAL)).thenReturn(flushInterval);
+        when(studioConfiguration.getProperty(ACTIVITY_WRITER_FALLBACK_FILE))
+                .thenReturn(fallbackFile.getAbsolutePath());
+        AuditFeedWriter writer = new AuditFeedWriter();
+        writer.auditFeedMapper = auditFeedMapper;
+        writer.setTransactionManager(transactionManager);
+        writer.setStudioConfiguration(studioConfiguration);
+        writers.add(writer);
+        return writer;
+    }
+
+    /**
+     * Insert the activities in the in-memory rows
+     */
+    private Answer<Void> recordRows() {
+        return new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) {
+                rows.addAll((List<AuditFeed>) ((Map) invocation.getArguments()[0]).get("feeds"));
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Fail every insert, as a database that is down
+     */
+    private void failInserts() {
+        doThrow(new IllegalStateException("Database is down")).when(auditFeedMapper).insertActivityFeeds(anyMap());
+    }
+
+    private static AuditFeed activity(String contentId) {
+        AuditFeed activity = new AuditFeed();
+        activity.setType("UPDATED");
+        activity.setSummary("{\"contentType\":\"/page/entry\",\"user\":\"admin\"}");
+        activity.setSummaryFormat("json");
+        activity.setUserId("admin");
+        activity.setCreationDate(ZonedDateTime.of(2017, 1, 1, 10, 30, 0, 0, ZoneOffset.UTC));
+        activity.setModifiedDate(ZonedDateTime.of(2017, 1, 2, 10, 30, 0, 0, ZoneOffset.UTC));
+        activity.setSiteNetwork("mysite");
+        activity.setContentId(contentId);
+        activity.setContentType("/page/entry");
+        activity.setSource("API");
+        return activity;
+    }
+
+    private static List<String> contentIds(List<AuditFeed> activities) {
+        List<String> contentIds = new ArrayList<String>();
+        synchronized (activities) {
+            for (AuditFeed activity : activities) {
+                contentIds.add(activity.getContentId());
+            }
+        }
+        return contentIds;
+    }
+
+    @Test(timeOut = 30000)
+    public void testFullQueueIsWrittenByTheCaller() throws Exception {
+        final CountDownLatch writerBlocked = new CountDownLatch(1);
+        final CountDownLatch writerReleased = new CountDownLatch(1);
+        doAnswer(new Answer<Void>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public Void answer(InvocationOnMock invocation) throws Exception {
+                if (Thread.currentThread().getName().equals("studio-audit-writer")) {
+                    writerBlocked.countDown();
+                    writerReleased.await();
+                }
+                rows.addAll((List<AuditFeed>) ((Map) invocation.getArguments()[0]).get("feeds"));
+                return null;
+            }
+        }).when(auditFeedMapper).insertActivityFeeds(anyMap());
+        AuditFeedWriter writer = createWriter("2", "10");
+        writer.init();
+
+        writer.post(activity("/site/website/0.xml"));
+        assertTrue(writerBlocked.await(10, TimeUnit.SECONDS));
+        // The writer thread is stuck on the first activity, the queue fills up
+        for (int i = 1; i < 10; i++) {
+            writer.post(activity("/site/website/" + i + ".xml"));
+        }
+
+        assertEquals(writer.getMetrics().get("callerWrites"), 7L);
+        assertEquals(writer.getMetrics().get("queueDepth"), 2);
+
+        writerReleased.countDown();
+        writer.flush();
+
+        List<String> contentIds = contentIds(rows);
+        assertEquals(contentIds.size(), 10);
+        Set<String> unique = new HashSet<String>(contentIds);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(unique.contains("/site/website/" + i + ".xml"));
+        }
+        assertEquals(unique.size(), 10);
+    }
+
+    @Test(timeOut = 30000)
+    public void testFlushWritesQueuedActivities() {
+        AuditFeedWriter writer = createWriter("100", "60000");
+        writer.init();
+
+        for (int i = 0; i < 5; i++) {
+            writer.post(activity("/site/website/" + i + ".xml"));
+        }
+        writer.flush();
+
+        assertEquals(rows.size(), 5);
+        assertEquals(writer.getMetrics().get("callerWrites"), 0L);
+    }
+
+    @Test(timeOut = 30000)
+    public void testFlushDoesNotWaitForTheFlushInterval() throws Exception {
+        AuditFeedWriter writer = createWriter("100", "60000");
+        writer.init();
+
+        long start = System.currentTimeMillis();
+        // Each rename flushes the activity posted for the previous item of a move
+        for (int i = 0; i < 5; i++) {
+            writer.post(activity("/site/website/" + i + ".xml"));
+            // Let the writer thread take the activity and start collecting its batch
+            Thread.sleep(20);
+            writer.flush();
+            assertEquals(rows.size(), i + 1);
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 10000);
+    }
+
+    @Test(timeOut = 30000)
+    public void testDestroyWritesQueuedActivities() {
+        AuditFeedWriter writer = createWriter("100", "60000");
+        writer.init();
+
+        for (int i = 0; i < 5; i++) {
+            writer.post(activity("/site/website/" + i + ".xml"));
+        }
+        writer.destroy();
+        writer.post(activity("/site/website/after.xml"));
+
+        assertEquals(rows.size(), 6);
+        assertEquals(writer.getMetrics().get("callerWrites"), 1L);
+    }
+
+    @Test(timeOut = 30000)
+    public void testFallbackFileRoundTrip() {
+        failInserts();
+        AuditFeedWriter failingWriter = createWriter("100", "10");
+        failingWriter.init();
+        failingWriter.post(activity("/site/website/a.xml"));
+        failingWriter.post(activity("/site/website/b.xml"));
+        failingWriter.flush();
+        failingWriter.destroy();
+
+        assertTrue(fallbackFile.exists());
+        assertEquals(failingWriter.getMetrics().get("savedToFallbackFile"), 2L);
+
+        doAnswer(recordRows()).when(auditFeedMapper).insertActivityFeeds(anyMap());
+        AuditFeedWriter writer = createWriter("100", "10");
+        writer.init();
+
+        assertFalse(fallbackFile.exists());
+        verify(transactionManager).commit(any(TransactionStatus.class));
+        assertEquals(contentIds(rows), Arrays.asList("/site/website/a.xml", "/site/website/b.xml"));
+        AuditFeed expected = activity("/site/website/a.xml");
+        AuditFeed replayed = rows.get(0);
+        assertEquals(replayed.getType(), expected.getType());
+        assertEquals(replayed.getSummary(), expected.getSummary());
+        assertEquals(replayed.getSummaryFormat(), expected.getSummaryFormat());
+        assertEquals(replayed.getUserId(), expected.getUserId());
+        assertEquals(replayed.getCreationDate(), expected.getCreationDate());
+        assertEquals(replayed.getModifiedDate(), expected.getModifiedDate());
+        assertEquals(replayed.getSiteNetwork(), expected.getSiteNetwork());
+        assertEquals(replayed.getContentType(), expected.getContentType());
+        assertEquals(replayed.getSource(), expected.getSource());
+    }
+
+    @Test(timeOut = 30000)
+    public void testFailedReplayKeepsTheFallbackFile() {
+        failInserts();
+        AuditFeedWriter failingWriter = createWriter("100", "10");
+        failingWriter.init();
+        failingWriter.post(activity("/site/website/a.xml"));
+        failingWriter.flush();
+        failingWriter.destroy();
+
+        AuditFeedWriter writer = createWriter("100", "10");
+        writer.init();
+
+        assertTrue(fallbackFile.exists());
+        verify(transactionManager).rollback(any(TransactionStatus.class));
+        verify(transactionManager, never()).commit(any(TransactionStatus.class));
+    }
+
+    @Test(timeOut = 30000)
+    public void testPostedActivityIsReadBackImmediately() {
+        AuditFeedWriter writer = createWriter("100", "60000");
+        writer.init();
+        when(auditFeedMapper.getDeletedActivity(anyMap())).thenAnswer(new Answer<AuditFeed>() {
+            @Override
+            public AuditFeed answer(InvocationOnMock invocation) {
+                // The deleted activity is found only once it was written
+                return rows.isEmpty() ? null : rows.get(rows.size() - 1);
+            }
+        });
+        ActivityServiceImpl activityService = new ActivityServiceImpl();
+        activityService.auditFeedMapper = auditFeedMapper;
+        activityService.setAuditFeedWriter(writer);
+
+        activityService.postActivity("mysite", "admin", "/site/website/a.xml", ActivityService.ActivityType.DELETED,
+                ActivityService.ActivitySource.UI, null);
+        AuditFeed deleted = activityService.getDeletedActivity("mysite", "/site/website/a.xml");
+
+        // Read well within the flush interval, the read wrote the queued activity
+        assertNotNull(deleted);
+        assertEquals(deleted.getUserId(), "admin");
+        assertEquals(writer.getMetrics().get("queueDepth"), 0);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.configuration;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.craftercms.studio.api.v1.to.PathClassificationTO;
+import org.craftercms.studio.api.v1.to.RepositoryConfigTO;
+import org.craftercms.studio.api.v1.to.SiteConfigTO;
+import org.craftercms.studio.impl.v1.util.ContentUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Classifying a path with a {@link PathClassifier} against matching it with {@link ContentUtils#matchesPatterns} once
+ * per pattern group, as the services config used to. Not part of the test suite, run it with the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathClassifierBenchmark {
+
+    private static final int PATHS = 1024;
+
+    private RepositoryConfigTO repo;
+    private String levelDescriptorSuffix;
+    private PathClassifier cachingClassifier;
+    private PathClassifier classifier;
+    private String[] paths;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        repo = new RepositoryConfigTO();
+        repo.setPagePatterns(Arrays.asList("/site/website/([^<]+)\\.xml"));
+        repo.setComponentPatterns(Arrays.asList("/site/components/([^<]+)\\.xml", "/site/componentsxxx/([^<]+)\\.xml",
+                "/site/website/([^<]+)/components/([^<]+)\\.xml"));
+        repo.setAssetPatterns(Arrays.asList("/static-assets/([^<]+)", "/site/website/([^<]+)/assets/([^<]+)"));
+        repo.setDocumentPatterns(Arrays.asList("/static-assets/documents/([^<]+)\\.pdf",
+                "/static-assets/documents/([^<]+)\\.docx?"));
+        repo.setRenderingTemplatePatterns(Arrays.asList("/templates/([^<]+)\\.ftl"));
+        repo.setScriptsPatterns(Arrays.asList("/scripts/([^<]+)\\.groovy"));
+        repo.setDisplayPatterns(Arrays.asList("/site/website/([^<]+)\\.xml"));
+        repo.setLevelDescriptorName("crafter-level-descriptor.level.xml");
+        levelDescriptorSuffix = "/" + repo.getLevelDescriptorName();
+        SiteConfigTO config = new SiteConfigTO();
+        config.setRepositoryConfig(repo);
+
+        cachingClassifier = new PathClassifier(config, PATHS);
+        classifier = new PathClassifier(config, 0);
+
+        String[] templates = {
+                "/site/website/section-%d/index.xml",
+                "/site/components/headers/header-%d.xml",
+                "/static-assets/images/photo-%d.jpg",
+                "/static-assets/documents/manual-%d.pdf",
+                "/templates/web/page-%d.ftl",
+                "/scripts/rest/service-%d.get.groovy",
+                "/site/website/section-%d/crafter-level-descriptor.level.xml",
+                "/config/studio/content-types/type-%d/form-definition.xml"
+        };
+        paths = new String[PATHS];
+        for (int i = 0; i < PATHS; i++) {
+            paths[i] = String.format(templates[i % templates.length], i);
+        }
+    }
+
+    private String nextPath() {
+        next = (next + 1) % PATHS;
+        return paths[next];
+    }
+
+    @Benchmark
+    public void matchesPatterns(Blackhole blackhole) {
+        String path = nextPath();
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getPagePatterns()));
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getComponentPatterns()));
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getAssetPatterns()));
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getDocumentPatterns()));
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getRenderingTemplatePatterns()));
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getScriptsPatterns()));
+        blackhole.consume(path.endsWith(levelDescriptorSuffix));
+        blackhole.consume(ContentUtils.matchesPatterns(path, repo.getDisplayPatterns()));
+    }
+
+    @Benchmark
+    public PathClassificationTO classify() {
+        return classifier.classify(nextPath());
+    }
+
+    @Benchmark
+    public PathClassificationTO classifyCached() {
+        return cachingClassifier.classify(nextPath());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(PathClassifierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.configuration;
+
+import java.util.Arrays;
+
+import org.craftercms.studio.api.v1.to.PathClassificationTO;
+import org.craftercms.studio.api.v1.to.RepositoryConfigTO;
+import org.craftercms.studio.api.v1.to.SiteConfigTO;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class PathClassifierTest {
+
+    private static SiteConfigTO createConfig() {
+        RepositoryConfigTO repo = new RepositoryConfigTO();
+        repo.setPagePatterns(Arrays.asList("/site/website/.*\\.xml"));
+        repo.setComponentPatterns(Arrays.asList("/site/components/.*\\.xml", "[invalid"));
+        repo.setAssetPatterns(Arrays.asList("/static-assets/.*"));
+        repo.setDocumentPatterns(Arrays.asList("/static-assets/documents/.*\\.pdf"));
+        repo.setRenderingTemplatePatterns(Arrays.asList("/templates/.*\\.ftl"));
+        repo.setScriptsPatterns(Arrays.asList("/scripts/.*\\.groovy"));
+        repo.setDisplayPatterns(Arrays.asList("/site/website/.*\\.xml"));
+        repo.setLevelDescriptorName("crafter-level-descriptor.level.xml");
+        SiteConfigTO config = new SiteConfigTO();
+        config.setRepositoryConfig(repo);
+        return config;
+    }
+
+    @Test
+    public void testClassify() {
+        PathClassifier classifier = new PathClassifier(createConfig(), 10);
+
+        PathClassificationTO page = classifier.classify("/site/website/index.xml");
+        assertTrue(page.isPage());
+        assertTrue(page.isDisplayInWidget());
+        assertFalse(page.isComponent());
+        assertFalse(page.isAsset());
+
+        assertTrue(classifier.classify("/site/components/header.xml").isComponent());
+        assertTrue(classifier.classify("/templates/web/page.ftl").isRenderingTemplate());
+        assertTrue(classifier.classify("/scripts/rest/hello.get.groovy").isScript());
+        assertTrue(classifier.classify("/site/website/crafter-level-descriptor.level.xml").isLevelDescriptor());
+
+        PathClassificationTO document = classifier.classify("/static-assets/documents/manual.pdf");
+        assertTrue(document.isAsset());
+        assertTrue(document.isDocument());
+
+        PathClassificationTO other = classifier.classify("/config/studio/site-config.xml");
+        assertFalse(other.isPage());
+        assertFalse(other.isAsset());
+        assertFalse(other.isLevelDescriptor());
+    }
+
+    @Test
+    public void testClassifyWithoutConfiguration() {
+        PathClassifier classifier = new PathClassifier(null, 10);
+
+        PathClassificationTO classification = classifier.classify("/site/website/index.xml");
+        assertFalse(classification.isPage());
+        assertFalse(classification.isLevelDescriptor());
+    }
+
+    @Test
+    public void testCacheHitsAndMisses() {
+        PathClassifier classifier = new PathClassifier(createConfig(), 10);
+
+        PathClassificationTO first = classifier.classify("/site/website/index.xml");
+        PathClassificationTO second = classifier.classify("/site/website/index.xml");
+
+        assertSame(second, first);
+        assertEquals(classifier.getMisses(), 1);
+        assertEquals(classifier.getHits(), 1);
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() {
+        PathClassifier classifier = new PathClassifier(createConfig(), 2);
+
+        PathClassificationTO a = classifier.classify("/site/website/a.xml");
+        PathClassificationTO b = classifier.classify("/site/website/b.xml");
+        // Touch a so b becomes the eldest entry
+        classifier.classify("/site/website/a.xml");
+        classifier.classify("/site/website/c.xml");
+
+        assertSame(classifier.classify("/site/website/a.xml"), a);
+        assertNotSame(classifier.classify("/site/website/b.xml"), b);
+        assertEquals(classifier.getHits(), 2);
+        assertEquals(classifier.getMisses(), 4);
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.content;
+
+import java.util.ArrayList;
+
+import org.craftercms.studio.api.v1.to.ContentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.CONTENT_ITEM_CACHE_MAX_ITEMS_PER_SITE;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class ContentItemCacheTest {
+
+    private static final String SITE = "mysite";
+
+    private ContentItemCache cache;
+
+    @BeforeMethod
+    public void setUp() {
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(CONTENT_ITEM_CACHE_MAX_ITEMS_PER_SITE)).thenReturn("2");
+        cache = new ContentItemCache();
+        cache.setStudioConfiguration(studioConfiguration);
+    }
+
+    private static ContentItemTO item(String path, String name) {
+        ContentItemTO item = new ContentItemTO();
+        item.uri = path;
+        item.internalName = name;
+        item.renderingTemplates = new ArrayList<>();
+        return item;
+    }
+
+    @Test
+    public void testChangedObjectIdIsAMiss() {
+        cache.put(SITE, "/site/website/index.xml", "1111", item("/site/website/index.xml", "Home"));
+
+        assertEquals(cache.get(SITE, "/site/website/index.xml", "1111").internalName, "Home");
+        // The content was written, its blob has a new id
+        assertNull(cache.get(SITE, "/site/website/index.xml", "2222"));
+        assertNull(cache.get("othersite", "/site/website/index.xml", "1111"));
+        assertEquals(cache.getMetrics().get("hits"), 1L);
+        assertEquals(cache.getMetrics().get("misses"), 2L);
+    }
+
+    @Test
+    public void testGetReturnsCopy() {
+        cache.put(SITE, "/site/website/index.xml", "1111", item("/site/website/index.xml", "Home"));
+
+        ContentItemTO item = cache.get(SITE, "/site/website/index.xml", "1111");
+        item.internalName = "Changed";
+        item.renderingTemplates.add(null);
+
+        ContentItemTO cached = cache.get(SITE, "/site/website/index.xml", "1111");
+        assertEquals(cached.internalName, "Home");
+        assertEquals(cached.renderingTemplates.size(), 0);
+    }
+
+    @Test
+    public void testInvalidateFolder() {
+        cache.put(SITE, "/site/website/about/index.xml", "1111", item("/site/website/about/index.xml", "About"));
+        cache.put(SITE, "/site/website/about-us.xml", "2222", item("/site/website/about-us.xml", "About us"));
+
+        cache.invalidate(SITE, "/site/website/about");
+
+        assertNull(cache.get(SITE, "/site/website/about/index.xml", "1111"));
+        assertNotNull(cache.get(SITE, "/site/website/about-us.xml", "2222"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedItemIsEvicted() {
+        cache.put(SITE, "/site/website/a.xml", "1111", item("/site/website/a.xml", "A"));
+        cache.put(SITE, "/site/website/b.xml", "2222", item("/site/website/b.xml", "B"));
+        cache.get(SITE, "/site/website/a.xml", "1111");
+        cache.put(SITE, "/site/website/c.xml", "3333", item("/site/website/c.xml", "C"));
+
+        assertNotNull(cache.get(SITE, "/site/website/a.xml", "1111"));
+        assertNull(cache.get(SITE, "/site/website/b.xml", "2222"));
+        assertEquals(cache.getMetrics().get("evictions"), 1L);
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.dependency;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.craftercms.studio.api.v1.dal.DependencyMapper;
+import org.craftercms.studio.api.v1.service.configuration.ServicesConfig;
+import org.craftercms.studio.api.v1.service.content.ContentService;
+import org.craftercms.studio.api.v1.service.dependency.DependencyResolver;
+import org.craftercms.studio.api.v1.to.PathClassificationTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.springframework.scheduling.concurrent.ConcurrentTaskExecutor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.DEPENDENCIES_IGNORE_DEPENDENCIES_RULES;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertTrue;
+
+public class DmDependencyServiceImplTest {
+
+    private static final String SITE = "mysite";
+    private static final String PAGE = "/site/website/index.xml";
+    private static final String COMPONENT = "/site/components/header.xml";
+    private static final String IMAGE = "/static-assets/images/logo.png";
+    private static final String TEMPLATE = "/templates/web/page.ftl";
+
+    private DmDependencyServiceImpl dependencyService;
+    private DependencyResolver dependencyResolver;
+
+    @BeforeMethod
+    public void setUp() {
+        ServicesConfig servicesConfig = mock(ServicesConfig.class);
+        when(servicesConfig.classifyPath(eq(SITE), anyString())).thenReturn(PathClassificationTO.NONE);
+        when(servicesConfig.classifyPath(SITE, TEMPLATE)).thenReturn(
+                new PathClassificationTO(false, false, false, false, true, false, false, false));
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(DEPENDENCIES_IGNORE_DEPENDENCIES_RULES)).thenReturn("");
+
+        dependencyResolver = mock(DependencyResolver.class);
+        when(dependencyResolver.resolve(eq(SITE), anyString())).thenReturn(Collections.<String, Set<String>>emptyMap());
+        Map<String, Set<String>> pageDependencies = new HashMap<String, Set<String>>();
+        pageDependencies.put("component", new HashSet<String>(Arrays.asList(COMPONENT)));
+        pageDependencies.put("asset", new HashSet<String>(Arrays.asList(IMAGE)));
+        pageDependencies.put("template", new HashSet<String>(Arrays.asList(TEMPLATE)));
+        when(dependencyResolver.resolve(SITE, PAGE)).thenReturn(pageDependencies);
+
+        dependencyService = new DmDependencyServiceImpl();
+        dependencyService.setServicesConfig(servicesConfig);
+        dependencyService.setStudioConfiguration(studioConfiguration);
+        dependencyService.setContentService(mock(ContentService.class));
+        dependencyService.setDependencyResolver(dependencyResolver);
+        dependencyService.setDependencyResolverPool(new ConcurrentTaskExecutor(Runnable::run));
+        dependencyService.dependencyMapper = mock(DependencyMapper.class);
+    }
+
+    @Test
+    public void testDiscoveredDependenciesAreResolved() {
+        assertTrue(dependencyService.extractDependenciesForItems(SITE, Arrays.asList(PAGE)));
+
+        verify(dependencyResolver).resolve(SITE, PAGE);
+        verify(dependencyResolver).resolve(SITE, COMPONENT);
+        verify(dependencyResolver).resolve(SITE, TEMPLATE);
+    }
+
+    @Test
+    public void testAssetsAreNotResolved() {
+        assertTrue(dependencyService.extractDependenciesForItems(SITE, Arrays.asList(PAGE, IMAGE)));
+
+        verify(dependencyResolver, never()).resolve(SITE, IMAGE);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.craftercms.studio.api.v1.dal.DeploymentHistoryMapper;
+import org.craftercms.studio.api.v1.dal.DeploymentSyncHistory;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.api.v1.util.filter.DmFilterWrapper;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.startsWith;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.fail;
+
+public class DeploymentHistoryStoreTest {
+
+    private static final String SITE = "mysite";
+    private static final String FROM_REPOSITORY = "/site/website/from-repository.xml";
+
+    private DeploymentHistoryMapper deploymentHistoryMapper;
+    private DeploymentHistoryProvider repositoryHistory;
+    private DmFilterWrapper pages;
+    private DeploymentHistoryStore store;
+
+    @BeforeMethod
+    public void setUp() {
+        deploymentHistoryMapper = mock(DeploymentHistoryMapper.class);
+        repositoryHistory = mock(DeploymentHistoryProvider.class);
+        when(repositoryHistory.getDeploymentHistory(anyString(), any(ZonedDateTime.class), any(ZonedDateTime.class),
+                any(DmFilterWrapper.class), anyString(), anyInt())).thenReturn(entries(FROM_REPOSITORY));
+        pages = mock(DmFilterWrapper.class);
+        when(pages.accept(eq(SITE), startsWith("/site/website/"), eq("page"))).thenReturn(true);
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE)).thenReturn("2");
+        store = new DeploymentHistoryStore();
+        store.deploymentHistoryMapper = deploymentHistoryMapper;
+        store.setRepositoryHistoryProvider(repositoryHistory);
+        store.setStudioConfiguration(studioConfiguration);
+    }
+
+    private static ZonedDateTime day(int day) {
+        return ZonedDateTime.of(2017, 1, day, 0, 0, 0, 0, ZoneOffset.UTC);
+    }
+
+    private static List<DeploymentSyncHistory> entries(String... paths) {
+        List<DeploymentSyncHistory> entries = new ArrayList<DeploymentSyncHistory>();
+        for (String path : paths) {
+            DeploymentSyncHistory entry = new DeploymentSyncHistory();
+            entry.setSite(SITE);
+            entry.setPath(path);
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private static List<String> paths(List<DeploymentSyncHistory> history) {
+        List<String> paths = new ArrayList<String>();
+        for (DeploymentSyncHistory entry : history) {
+            paths.add(entry.getPath());
+        }
+        return paths;
+    }
+
+    private List<Object> requestedOffsets() {
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(deploymentHistoryMapper, atLeastOnce()).getDeploymentHistory(params.capture());
+        List<Object> offsets = new ArrayList<Object>();
+        for (Map page : params.getAllValues()) {
+            offsets.add(page.get("offset"));
+        }
+        return offsets;
+    }
+
+    @Test
+    public void testPagingWithFilter() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap()))
+                .thenReturn(entries("/site/website/g.xml", "/site/components/f.xml"))
+                .thenReturn(entries("/site/components/e.xml", "/site/website/d.xml"));
+
+        List<DeploymentSyncHistory> history = store.getDeploymentHistory(SITE, day(2), day(31), pages, "page", 2);
+
+        assertEquals(paths(history), Arrays.asList("/site/website/g.xml", "/site/website/d.xml"));
+        // Filtered out entries are skipped by reading the next pages, until enough entries are accepted
+        assertEquals(requestedOffsets(), Arrays.<Object>asList(0, 2));
+        verify(deploymentHistoryMapper, never()).getFirstDeploymentDate(anyMap());
+    }
+
+    @Test
+    public void testPagingStopsAtTheLastPage() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap()))
+                .thenReturn(entries("/site/website/c.xml", "/site/components/b.xml"))
+                .thenReturn(entries("/site/website/a.xml"));
+        when(deploymentHistoryMapper.getFirstDeploymentDate(anyMap())).thenReturn(day(2));
+
+        List<DeploymentSyncHistory> history = store.getDeploymentHistory(SITE, day(2), day(31), pages, "page", 2);
+
+        assertEquals(paths(history), Arrays.asList("/site/website/c.xml", "/site/website/a.xml"));
+        assertEquals(requestedOffsets(), Arrays.<Object>asList(0, 2));
+    }
+
+    @Test
+    public void testOlderHistoryIsReadFromTheRepository() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap()))
+                .thenReturn(entries("/site/website/b.xml", "/site/website/a.xml"));
+        when(deploymentHistoryMapper.getFirstDeploymentDate(anyMap())).thenReturn(day(10));
+
+        List<DeploymentSyncHistory> history = store.getDeploymentHistory(SITE, day(1), day(31), pages, "page", 5);
+
+        assertEquals(paths(history), Arrays.asList("/site/website/b.xml", "/site/website/a.xml", FROM_REPOSITORY));
+        // The first recorded deployment is not read again from the repository
+        verify(repositoryHistory).getDeploymentHistory(SITE, day(1), day(10).minusNanos(1), pages, "page", 3);
+    }
+
+    @Test
+    public void testFirstRecordedDeploymentAtToDateIsNotReadFromTheRepository() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap())).thenReturn(entries("/site/website/a.xml"));
+        when(deploymentHistoryMapper.getFirstDeploymentDate(anyMap())).thenReturn(day(10));
+
+        List<DeploymentSyncHistory> history = store.getDeploymentHistory(SITE, day(1), day(10), pages, "page", 5);
+
+        assertEquals(paths(history), Arrays.asList("/site/website/a.xml", FROM_REPOSITORY));
+        verify(repositoryHistory).getDeploymentHistory(SITE, day(1), day(10).minusNanos(1), pages, "page", 4);
+    }
+
+    @Test
+    public void testRepositoryIsNotReadFromTheFirstRecordedDeployment() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap())).thenReturn(entries("/site/website/a.xml"));
+        when(deploymentHistoryMapper.getFirstDeploymentDate(anyMap())).thenReturn(day(10));
+
+        store.getDeploymentHistory(SITE, day(10), day(31), pages, "page", 5);
+
+        verify(repositoryHistory, never()).getDeploymentHistory(anyString(), any(ZonedDateTime.class),
+                any(ZonedDateTime.class), any(DmFilterWrapper.class), anyString(), anyInt());
+    }
+
+    @Test
+    public void testRepositoryRangeEndsAtToDate() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap()))
+                .thenReturn(Collections.<DeploymentSyncHistory>emptyList());
+        when(deploymentHistoryMapper.getFirstDeploymentDate(anyMap())).thenReturn(day(20));
+
+        store.getDeploymentHistory(SITE, day(1), day(10), pages, "page", 5);
+
+        verify(repositoryHistory).getDeploymentHistory(SITE, day(1), day(10), pages, "page", 5);
+    }
+
+    @Test
+    public void testWithoutRecordedHistoryEverythingIsReadFromTheRepository() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap()))
+                .thenReturn(Collections.<DeploymentSyncHistory>emptyList());
+
+        List<DeploymentSyncHistory> history = store.getDeploymentHistory(SITE, day(1), day(31), pages, "page", 5);
+
+        assertEquals(paths(history), Arrays.asList(FROM_REPOSITORY));
+        verify(repositoryHistory).getDeploymentHistory(SITE, day(1), day(31), pages, "page", 5);
+    }
+
+    @Test
+    public void testRepositoryIsNotReadWhenTheRangeIsRecorded() {
+        when(deploymentHistoryMapper.getDeploymentHistory(anyMap())).thenReturn(entries("/site/website/b.xml"));
+        when(deploymentHistoryMapper.getFirstDeploymentDate(anyMap())).thenReturn(day(1));
+
+        List<DeploymentSyncHistory> history = store.getDeploymentHistory(SITE, day(5), day(31), pages, "page", 5);
+
+        assertEquals(paths(history), Arrays.asList("/site/website/b.xml"));
+        verify(repositoryHistory, never()).getDeploymentHistory(anyString(), any(ZonedDateTime.class),
+                any(ZonedDateTime.class), any(DmFilterWrapper.class), anyString(), anyInt());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordInBatches() {
+        List<DeploymentItemTO> items = new ArrayList<DeploymentItemTO>();
+        for (String path : Arrays.asList("/site/website/a.xml", "/site/website/b.xml", "/site/website/c.xml")) {
+            DeploymentItemTO item = new DeploymentItemTO();
+            item.setSite(SITE);
+            item.setPath(path);
+            items.add(item);
+        }
+
+        store.record(SITE, "live", items, "admin", day(1));
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(deploymentHistoryMapper, times(2)).insertDeploymentHistory(params.capture());
+        assertEquals(params.getAllValues().get(0).get("items"), items.subList(0, 2));
+        assertEquals(params.getAllValues().get(1).get("items"), items.subList(2, 3));
+        assertEquals(params.getAllValues().get(1).get("deploymentDate"), day(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedRecordLeavesTheHistoryUpToThePublishingToTheRepository() {
+        DeploymentItemTO item = new DeploymentItemTO();
+        item.setSite(SITE);
+        item.setPath("/site/website/a.xml");
+        doThrow(new IllegalStateException("Unable to insert")).when(deploymentHistoryMapper)
+                .insertDeploymentHistory(anyMap());
+
+        try {
+            store.record(SITE, "live", Arrays.asList(item), "admin", day(10));
+            fail("The failure must reach the caller");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(deploymentHistoryMapper).deleteDeploymentHistoryUntil(params.capture());
+        assertEquals(params.getValue().get("site"), SITE);
+        assertEquals(params.getValue().get("toDate"), day(10));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testDeleteDeploymentHistoryForSite() {
+        store.deleteDeploymentHistoryForSite(SITE);
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(deploymentHistoryMapper).deleteDeploymentHistoryForSite(params.capture());
+        assertEquals(params.getValue().get("site"), SITE);
+    }
+}
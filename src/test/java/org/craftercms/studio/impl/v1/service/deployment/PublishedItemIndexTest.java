@@ -0,0 +1,211 @@
+/*
+ * Crafter Studio
+ *
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ *
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.craftercms.studio.api.v1.dal.PublishedItem;
+import org.craftercms.studio.api.v1.dal.PublishedItemMapper;
+import org.craftercms.studio.api.v1.service.deployment.DeploymentHistoryProvider;
+import org.craftercms.studio.api.v1.to.DeploymentItemTO;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.mockito.ArgumentCaptor;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.fail;
+
+public class PublishedItemIndexTest {
+
+    private static final String SITE = "mysite";
+
+    private static final ZonedDateTime JANUARY = ZonedDateTime.of(2017, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+    private static final ZonedDateTime MARCH = ZonedDateTime.of(2017, 3, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private PublishedItemMapper publishedItemMapper;
+    private DeploymentHistoryProvider repositoryHistory;
+    private PublishedItemIndex index;
+
+    @BeforeMethod
+    public void setUp() {
+        publishedItemMapper = mock(PublishedItemMapper.class);
+        repositoryHistory = mock(DeploymentHistoryProvider.class);
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(PUBLISHING_MANAGER_BULK_OPERATIONS_BATCH_SIZE)).thenReturn("2");
+        index = new PublishedItemIndex();
+        index.publishedItemMapper = publishedItemMapper;
+        index.setRepositoryHistoryProvider(repositoryHistory);
+        index.setStudioConfiguration(studioConfiguration);
+    }
+
+    private static DeploymentItemTO item(String path, String commitId) {
+        DeploymentItemTO item = new DeploymentItemTO();
+        item.setSite(SITE);
+        item.setPath(path);
+        item.setCommitId(commitId);
+        return item;
+    }
+
+    private static PublishedItem row(String environment, String path, ZonedDateTime publishDate) {
+        PublishedItem row = new PublishedItem();
+        row.setEnvironment(environment);
+        row.setPath(path);
+        row.setPublishDate(publishDate);
+        return row;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<PublishedItem> items(Map params) {
+        return (List<PublishedItem>) params.get("items");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRecordPublishedWritesBatchesOfUniquePaths() {
+        index.recordPublished(SITE, "live", Arrays.asList(item("/site/website/a.xml", "c1"),
+                item("/site/website/b.xml", "c1"), item("/site/website/a.xml", "c2")), JANUARY);
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(publishedItemMapper).upsertPublishedItems(params.capture());
+        assertEquals(params.getValue().get("environment"), "live");
+        List<PublishedItem> recorded = items(params.getValue());
+        assertEquals(recorded.size(), 2);
+        assertEquals(recorded.get(0).getCommitId(), "c2");
+        assertEquals(recorded.get(1).getPublishDate(), JANUARY);
+        assertEquals(index.getMetrics().get("recordedPublishes"), 2L);
+    }
+
+    @Test
+    public void testIndexedDatesAreNotLookedUpInTheRepository() {
+        when(publishedItemMapper.getPublishedItemsForPaths(anyMap())).thenReturn(Arrays.asList(
+                row("staging", "/site/website/a.xml", JANUARY), row("live", "/site/website/a.xml", MARCH)));
+
+        Map<String, ZonedDateTime> dates = index.getLastDeploymentDates(SITE, Arrays.asList("/site/website/a.xml",
+                "/site/website/a.xml"));
+
+        assertEquals(dates.get("/site/website/a.xml"), MARCH);
+        verifyZeroInteractions(repositoryHistory);
+        verify(publishedItemMapper, never()).insertPublishedItemsIfAbsent(anyMap());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMissingDatesAreBackfilledFromTheRepository() {
+        when(publishedItemMapper.getPublishedItemsForPaths(anyMap())).thenReturn(
+                Collections.singletonList(row("", "/site/website/never.xml", null)),
+                new ArrayList<PublishedItem>());
+        when(repositoryHistory.getLastDeploymentDate(SITE, "/site/website/old.xml")).thenReturn(MARCH);
+
+        Map<String, ZonedDateTime> dates = index.getLastDeploymentDates(SITE, Arrays.asList("/site/website/never.xml",
+                "/site/website/known.xml", "/site/website/old.xml"));
+
+        assertEquals(dates.get("/site/website/old.xml"), MARCH);
+        assertFalse(dates.containsKey("/site/website/never.xml"));
+        // A backfilled row without a date means the path was never published
+        verify(repositoryHistory, never()).getLastDeploymentDate(SITE, "/site/website/never.xml");
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(publishedItemMapper, times(2)).insertPublishedItemsIfAbsent(params.capture());
+        assertEquals(params.getAllValues().get(0).get("environment"), "");
+        assertEquals(items(params.getAllValues().get(0)).get(0).getPath(), "/site/website/known.xml");
+        assertNull(items(params.getAllValues().get(0)).get(0).getPublishDate());
+        assertEquals(items(params.getAllValues().get(1)).get(0).getPublishDate(), MARCH);
+        assertEquals(index.getMetrics().get("backfilledFromRepository"), 2L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLastPublishedCommitIdIsBackfilledForTheEnvironment() {
+        PublishedItem indexed = row("live", "/site/website/a.xml", JANUARY);
+        indexed.setCommitId("c1");
+        when(publishedItemMapper.getPublishedItem(anyMap())).thenReturn(null, indexed);
+        when(repositoryHistory.getLastPublishedCommitId(SITE, "live", "/site/website/a.xml")).thenReturn("c1");
+
+        assertEquals(index.getLastPublishedCommitId(SITE, "live", "/site/website/a.xml"), "c1");
+        assertEquals(index.getLastPublishedCommitId(SITE, "live", "/site/website/a.xml"), "c1");
+
+        verify(repositoryHistory, times(1)).getLastPublishedCommitId(SITE, "live", "/site/website/a.xml");
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(publishedItemMapper).insertPublishedItemsIfAbsent(params.capture());
+        assertEquals(params.getValue().get("environment"), "live");
+        assertEquals(items(params.getValue()).get(0).getCommitId(), "c1");
+    }
+
+    @Test
+    public void testFailedBackfillIsNotFatal() {
+        when(repositoryHistory.getLastDeploymentDate(SITE, "/site/website/a.xml")).thenReturn(MARCH);
+        doThrow(new IllegalStateException("Database is down"))
+                .when(publishedItemMapper).insertPublishedItemsIfAbsent(anyMap());
+
+        assertEquals(index.getLastDeploymentDate(SITE, "/site/website/a.xml"), MARCH);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testFailedRecordDeletesTheRowsOfTheItems() {
+        // The second batch fails, after the first one is written
+        doNothing().doThrow(new IllegalStateException("Database is down"))
+                .when(publishedItemMapper).upsertPublishedItems(anyMap());
+
+        try {
+            index.recordPublished(SITE, "live", Arrays.asList(item("/site/website/a.xml", "c2"),
+                    item("/site/website/b.xml", "c2"), item("/site/website/c.xml", "c2")), MARCH);
+            fail("Recording should fail when the database does");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(publishedItemMapper, times(2)).deletePublishedItems(params.capture());
+        List<String> deleted = new ArrayList<String>();
+        for (Map deleteParams : params.getAllValues()) {
+            deleted.addAll((List<String>) deleteParams.get("paths"));
+        }
+        assertEquals(deleted, Arrays.asList("/site/website/a.xml", "/site/website/b.xml", "/site/website/c.xml"));
+    }
+
+    @Test
+    public void testDeletePublishedItemsForSite() {
+        index.deletePublishedItemsForSite(SITE);
+
+        ArgumentCaptor<Map> params = ArgumentCaptor.forClass(Map.class);
+        verify(publishedItemMapper).deletePublishedItemsForSite(params.capture());
+        assertEquals(params.getValue().get("site"), SITE);
+    }
+}
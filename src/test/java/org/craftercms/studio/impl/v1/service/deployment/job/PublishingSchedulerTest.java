@@ -0,0 +1,134 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.deployment.job;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class PublishingSchedulerTest {
+
+    private PublishingScheduler scheduler;
+
+    @BeforeMethod
+    public void setUp() {
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(JOB_DEPLOY_CONTENT_TO_ENVIRONMENT_WORKERS)).thenReturn("2");
+        scheduler = new PublishingScheduler();
+        scheduler.setStudioConfiguration(studioConfiguration);
+        scheduler.init();
+    }
+
+    @AfterMethod
+    public void tearDown() {
+        scheduler.destroy();
+    }
+
+    /**
+     * Publishing task that blocks until released
+     */
+    private static Runnable blockingTask(final CountDownLatch started, final CountDownLatch released,
+                                         final AtomicInteger runs) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+                started.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    @Test(timeOut = 30000)
+    public void testOneTaskPerSite() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(scheduler.schedule("mysite", blockingTask(started, released, runs)));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        // The site is still publishing, the next run of the job skips it
+        assertFalse(scheduler.schedule("mysite", blockingTask(started, released, runs)));
+        assertEquals(scheduler.getMetrics().get("skippedAlreadyScheduled"), 1L);
+
+        released.countDown();
+        while (scheduler.scheduledSites.contains("mysite")) {
+            Thread.sleep(10);
+        }
+
+        CountDownLatch startedAgain = new CountDownLatch(1);
+        assertTrue(scheduler.schedule("mysite", blockingTask(startedAgain, released, runs)));
+        assertTrue(startedAgain.await(10, TimeUnit.SECONDS));
+        assertEquals(runs.get(), 2);
+    }
+
+    @Test(timeOut = 30000)
+    public void testSitesArePublishedInParallel() throws Exception {
+        CountDownLatch started = new CountDownLatch(2);
+        CountDownLatch released = new CountDownLatch(1);
+        AtomicInteger runs = new AtomicInteger();
+
+        assertTrue(scheduler.schedule("mysite", blockingTask(started, released, runs)));
+        assertTrue(scheduler.schedule("othersite", blockingTask(started, released, runs)));
+
+        // Both sites run at the same time on the two workers
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        released.countDown();
+    }
+
+    @Test(timeOut = 30000)
+    @SuppressWarnings("unchecked")
+    public void testFailedTaskFreesTheSite() throws Exception {
+        final CountDownLatch failed = new CountDownLatch(1);
+        assertTrue(scheduler.schedule("mysite", new Runnable() {
+            @Override
+            public void run() {
+                failed.countDown();
+                throw new IllegalStateException("Unable to publish");
+            }
+        }));
+        assertTrue(failed.await(10, TimeUnit.SECONDS));
+        while (scheduler.executor.getCompletedTaskCount() < 1) {
+            Thread.sleep(10);
+        }
+
+        Map<String, Object> sites = (Map<String, Object>) scheduler.getMetrics().get("sites");
+        Map<String, Object> site = (Map<String, Object>) sites.get("mysite");
+        assertEquals(site.get("publishes"), 1L);
+        assertEquals(site.get("failures"), 1L);
+        assertEquals(site.get("state"), "idle");
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.objectstate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.ibatis.executor.BatchResult;
+import org.craftercms.studio.api.v1.dal.ItemState;
+import org.craftercms.studio.api.v1.dal.ItemStateMapper;
+import org.craftercms.studio.api.v1.service.ServicesManager;
+import org.craftercms.studio.api.v1.service.objectstate.State;
+import org.craftercms.studio.api.v1.service.objectstate.TransitionEvent;
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.craftercms.studio.impl.v1.service.GeneralLockServiceImpl;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.mybatis.spring.SqlSessionTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+public class ObjectStateServiceImplTest {
+
+    private static final String SITE = "mysite";
+
+    /**
+     * Item states of the site keyed by path, read and written by the mapper
+     */
+    private Map<String, ItemState> states;
+    /**
+     * Paths whose writes fail
+     */
+    private Set<String> failingPaths;
+    /**
+     * Paths whose reads fail
+     */
+    private Set<String> failingLookups;
+    private GeneralLockServiceImpl generalLockService;
+    private PlatformTransactionManager transactionManager;
+    private ObjectStateServiceImpl objectStateService;
+
+    @BeforeMethod
+    public void setUp() {
+        states = new LinkedHashMap<String, ItemState>();
+        failingPaths = new HashSet<String>();
+        failingLookups = new HashSet<String>();
+        ItemStateMapper itemStateMapper = mockItemStateMapper();
+        SqlSessionTemplate batchSqlSession = mock(SqlSessionTemplate.class);
+        when(batchSqlSession.getMapper(ItemStateMapper.class)).thenReturn(itemStateMapper);
+        when(batchSqlSession.flushStatements()).thenReturn(new ArrayList<BatchResult>());
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any(TransactionDefinition.class)))
+                .thenReturn(new SimpleTransactionStatus());
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(OBJECT_STATE_BULK_OPERATIONS_BATCH_SIZE)).thenReturn("2");
+        generalLockService = new GeneralLockServiceImpl();
+        objectStateService = new ObjectStateServiceImpl();
+        objectStateService.itemStateMapper = itemStateMapper;
+        objectStateService.setBatchSqlSession(batchSqlSession);
+        objectStateService.setTransactionManager(transactionManager);
+        objectStateService.setGeneralLockService(generalLockService);
+        objectStateService.setStudioConfiguration(studioConfiguration);
+        objectStateService.setServicesManager(new ServicesManager());
+        objectStateService.register();
+    }
+
+    /**
+     * Mapper that reads and writes the states of the test. The batch statements are run right away.
+     */
+    @SuppressWarnings("unchecked")
+    private ItemStateMapper mockItemStateMapper() {
+        ItemStateMapper itemStateMapper = mock(ItemStateMapper.class);
+        when(itemStateMapper.getObjectStateForSiteAndPaths(anyMap())).thenAnswer(new Answer<List<ItemState>>() {
+            @Override
+            public List<ItemState> answer(InvocationOnMock invocation) {
+                List<ItemState> result = new ArrayList<ItemState>();
+                for (String path : (List<String>) ((Map) invocation.getArguments()[0]).get("paths")) {
+                    if (failingLookups.contains(path)) {
+                        throw new IllegalStateException("Unable to read " + path);
+                    }
+                    if (states.containsKey(path)) {
+                        result.add(states.get(path));
+                    }
+                }
+                return result;
+            }
+        });
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                ItemState itemState = (ItemState) invocation.getArguments()[0];
+                if (failingPaths.contains(itemState.getPath())) {
+                    throw new IllegalStateException("Unable to insert " + itemState.getPath());
+                }
+                states.put(itemState.getPath(), itemState);
+                return null;
+            }
+        }).when(itemStateMapper).insertEntry(any(ItemState.class));
+        doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) {
+                Map params = (Map) invocation.getArguments()[0];
+                List<String> paths = (List<String>) params.get("paths");
+                for (String path : paths) {
+                    if (failingPaths.contains(path)) {
+                        throw new IllegalStateException("Unable to update " + path);
+                    }
+                }
+                for (String path : paths) {
+                    states.get(path).setState((String) params.get("state"));
+                }
+                return null;
+            }
+        }).when(itemStateMapper).setObjectStateForSiteAndPaths(anyMap());
+        return itemStateMapper;
+    }
+
+    private void addState(String path, State state) {
+        ItemState itemState = new ItemState();
+        itemState.setObjectId(path);
+        itemState.setSite(SITE);
+        itemState.setPath(path);
+        itemState.setState(state.name());
+        states.put(path, itemState);
+    }
+
+    private String getState(String path) {
+        ItemState itemState = states.get(path);
+        return itemState != null ? itemState.getState() : null;
+    }
+
+    @Test
+    public void testTransitionBulk() {
+        addState("/site/website/a.xml", State.EXISTING_EDITED_UNLOCKED);
+        addState("/site/website/b.xml", State.NEW_UNPUBLISHED_UNLOCKED);
+
+        objectStateService.transitionBulk(SITE, Arrays.asList("/site/website/a.xml", "/site/website/b.xml",
+                "/site/website/c.xml"), TransitionEvent.SUBMIT_WITHOUT_WORKFLOW_UNSCHEDULED, null);
+
+        assertEquals(getState("/site/website/a.xml"),
+                State.EXISTING_SUBMITTED_NO_WF_UNSCHEDULED.name());
+        assertEquals(getState("/site/website/b.xml"),
+                State.NEW_SUBMITTED_NO_WF_UNSCHEDULED.name());
+        assertEquals(getState("/site/website/c.xml"), State.NEW_UNPUBLISHED_UNLOCKED.name());
+        assertEquals(generalLockService.getMetrics().get("locksInUse"), 0);
+    }
+
+    @Test
+    public void testTransitionBulkNormalizesPaths() {
+        addState("/site/website/a.xml", State.EXISTING_EDITED_UNLOCKED);
+
+        Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
+        transitions.put("/site/website/folder/../a.xml", TransitionEvent.SUBMIT_WITHOUT_WORKFLOW_UNSCHEDULED);
+        transitions.put("/site/website//b.xml", TransitionEvent.SAVE);
+        objectStateService.transitionBulk(SITE, transitions);
+
+        assertEquals(getState("/site/website/a.xml"),
+                State.EXISTING_SUBMITTED_NO_WF_UNSCHEDULED.name());
+        assertEquals(getState("/site/website/b.xml"), State.NEW_UNPUBLISHED_UNLOCKED.name());
+        assertEquals(states.size(), 2);
+    }
+
+    @Test
+    public void testTransitionBulkLockedDoesNotLockAgain() {
+        addState("/site/website/a.xml", State.EXISTING_EDITED_UNLOCKED);
+        List<String> lockIds = Arrays.asList(SITE + ":/site/website/a.xml", SITE + ":/site/website/b.xml");
+        generalLockService.lockAll(lockIds);
+        Object acquisitions = generalLockService.getMetrics().get("acquisitions");
+
+        Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
+        transitions.put("/site/website/a.xml", TransitionEvent.SUBMIT_WITHOUT_WORKFLOW_UNSCHEDULED);
+        transitions.put("/site/website/folder/../b.xml", TransitionEvent.SAVE);
+        objectStateService.transitionBulkLocked(SITE, transitions);
+
+        assertEquals(generalLockService.getMetrics().get("acquisitions"), acquisitions);
+        assertEquals(getState("/site/website/a.xml"),
+                State.EXISTING_SUBMITTED_NO_WF_UNSCHEDULED.name());
+        assertEquals(getState("/site/website/b.xml"), State.NEW_UNPUBLISHED_UNLOCKED.name());
+        generalLockService.unlockAll(lockIds);
+        assertEquals(generalLockService.getMetrics().get("locksInUse"), 0);
+    }
+
+    @Test
+    public void testTransitionOfOnePathDoesNotFailTheOthers() {
+        addState("/site/website/a.xml", State.EXISTING_EDITED_UNLOCKED);
+        addState("/site/website/b.xml", State.EXISTING_EDITED_UNLOCKED);
+
+        Map<String, TransitionEvent> transitions = new LinkedHashMap<String, TransitionEvent>();
+        // No event, so the next state of a can't be computed
+        transitions.put("/site/website/a.xml", null);
+        transitions.put("/site/website/b.xml", TransitionEvent.SUBMIT_WITHOUT_WORKFLOW_UNSCHEDULED);
+        objectStateService.transitionBulk(SITE, transitions);
+
+        assertEquals(getState("/site/website/a.xml"), State.EXISTING_EDITED_UNLOCKED.name());
+        assertEquals(getState("/site/website/b.xml"),
+                State.EXISTING_SUBMITTED_NO_WF_UNSCHEDULED.name());
+    }
+
+    @Test
+    public void testFailedBatchWriteFallsBackToOneByOne() {
+        addState("/site/website/a.xml", State.EXISTING_EDITED_UNLOCKED);
+        addState("/site/website/b.xml", State.EXISTING_EDITED_UNLOCKED);
+        failingPaths.add("/site/website/a.xml");
+        failingPaths.add("/site/website/c.xml");
+
+        objectStateService.transitionBulk(SITE, Arrays.asList("/site/website/a.xml", "/site/website/b.xml",
+                "/site/website/c.xml", "/site/website/d.xml"), TransitionEvent.SUBMIT_WITHOUT_WORKFLOW_UNSCHEDULED,
+                null);
+
+        assertEquals(getState("/site/website/a.xml"), State.EXISTING_EDITED_UNLOCKED.name());
+        assertEquals(getState("/site/website/b.xml"),
+                State.EXISTING_SUBMITTED_NO_WF_UNSCHEDULED.name());
+        assertNull(getState("/site/website/c.xml"));
+        assertEquals(getState("/site/website/d.xml"), State.NEW_UNPUBLISHED_UNLOCKED.name());
+        verify(transactionManager, times(2)).rollback(any(TransactionStatus.class));
+        assertEquals(generalLockService.getMetrics().get("locksInUse"), 0);
+    }
+
+    @Test
+    public void testFailedBatchDoesNotFailTheOthers() {
+        failingLookups.add("/site/website/a.xml");
+
+        objectStateService.transitionBulk(SITE, Arrays.asList("/site/website/a.xml", "/site/website/b.xml",
+                "/site/website/c.xml"), TransitionEvent.SAVE, State.NEW_UNPUBLISHED_UNLOCKED);
+
+        assertNull(getState("/site/website/a.xml"));
+        assertNull(getState("/site/website/b.xml"));
+        assertEquals(getState("/site/website/c.xml"), State.NEW_UNPUBLISHED_UNLOCKED.name());
+        assertEquals(generalLockService.getMetrics().get("locksInUse"), 0);
+    }
+}
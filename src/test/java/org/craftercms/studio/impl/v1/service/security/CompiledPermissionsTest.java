@@ -0,0 +1,162 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.security;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.craftercms.studio.api.v1.to.PermissionsConfigTO;
+import org.dom4j.Document;
+import org.dom4j.DocumentHelper;
+import org.dom4j.Node;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+public class CompiledPermissionsTest {
+
+    private static final String SITE = "mysite";
+
+    @SuppressWarnings("unchecked")
+    private static List<Node> rules(String xml) throws Exception {
+        Document document = DocumentHelper.parseText(xml);
+        return document.selectNodes("/rules/rule");
+    }
+
+    private static CompiledPermissions createPermissions(int decisionCacheSize) throws Exception {
+        Map<String, List<Node>> rulesByRole = new HashMap<String, List<Node>>();
+        rulesByRole.put("admin", rules("<rules>"
+                + "<rule regex=\".*\"><allowed-permissions>"
+                + "<permission>Read</permission><permission>Write</permission><permission>Delete</permission>"
+                + "</allowed-permissions></rule>"
+                + "</rules>"));
+        rulesByRole.put("author", rules("<rules>"
+                + "<rule regex=\"/site/.*\"><allowed-permissions>"
+                + "<permission>read</permission><permission>write</permission>"
+                + "</allowed-permissions></rule>"
+                + "<rule regex=\"/static-assets/.*\"><allowed-permissions>"
+                + "<permission>read</permission>"
+                + "</allowed-permissions></rule>"
+                + "</rules>"));
+        rulesByRole.put("*", rules("<rules>"
+                + "<rule regex=\"/site/.*\"><allowed-permissions>"
+                + "<permission>read</permission>"
+                + "</allowed-permissions></rule>"
+                + "<rule regex=\"[invalid\"><allowed-permissions>"
+                + "<permission>write</permission>"
+                + "</allowed-permissions></rule>"
+                + "</rules>"));
+        Map<String, Map<String, List<Node>>> permissions = new HashMap<String, Map<String, List<Node>>>();
+        permissions.put(SITE, rulesByRole);
+        PermissionsConfigTO permissionsConfig = new PermissionsConfigTO();
+        permissionsConfig.setPermissions(permissions);
+
+        Map<String, List<String>> roles = new HashMap<String, List<String>>();
+        roles.put("jane", Arrays.asList("author"));
+        PermissionsConfigTO rolesConfig = new PermissionsConfigTO();
+        rolesConfig.setRoles(roles);
+
+        return new CompiledPermissions("1", rolesConfig, permissionsConfig, SITE, decisionCacheSize);
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+    @Test
+    public void testGetPermissions() throws Exception {
+        CompiledPermissions permissions = createPermissions(10);
+
+        assertEquals(permissions.getPermissions("/site/website/index.xml", set("admin")),
+                set("read", "write", "delete"));
+        assertEquals(permissions.getPermissions("/site/website/index.xml", set("author")), set("read", "write"));
+        assertEquals(permissions.getPermissions("/static-assets/logo.png", set("author")), set("read"));
+        assertEquals(permissions.getPermissions("/templates/web/page.ftl", set("author")),
+                Collections.<String>emptySet());
+        // Roles without rules of their own fall back to the default rules
+        assertEquals(permissions.getPermissions("/site/website/index.xml", set("reviewer")), set("read"));
+        assertEquals(permissions.getRoles().get("jane"), Arrays.asList("author"));
+    }
+
+    @Test
+    public void testReadOnlyWithoutRoles() throws Exception {
+        CompiledPermissions permissions = createPermissions(10);
+
+        assertEquals(permissions.getPermissions("/site/website/index.xml", null), set("read"));
+        assertEquals(permissions.getPermissions("/site/website/index.xml", Collections.<String>emptySet()),
+                set("read"));
+        assertEquals(permissions.getMisses(), 0);
+    }
+
+    @Test
+    public void testReadOnlyWithoutRules() {
+        CompiledPermissions permissions = new CompiledPermissions("1", null, null, SITE, 10);
+
+        assertEquals(permissions.getPermissions("/site/website/index.xml", set("author")), set("read"));
+        assertTrue(permissions.getRoles().isEmpty());
+    }
+
+    @Test
+    public void testDecisionCache() throws Exception {
+        CompiledPermissions permissions = createPermissions(10);
+
+        Set<String> first = permissions.getPermissions("/site/website/index.xml", set("author", "admin"));
+        Set<String> second = permissions.getPermissions("/site/website/index.xml", set("admin", "author"));
+
+        assertSame(second, first);
+        assertEquals(permissions.getMisses(), 1);
+        assertEquals(permissions.getHits(), 1);
+    }
+
+    @Test
+    public void testDecisionCacheEviction() throws Exception {
+        CompiledPermissions permissions = createPermissions(1);
+
+        permissions.getPermissions("/site/website/a.xml", set("author"));
+        permissions.getPermissions("/site/website/b.xml", set("author"));
+        permissions.getPermissions("/site/website/a.xml", set("author"));
+
+        assertEquals(permissions.getMisses(), 3);
+        assertEquals(permissions.getHits(), 0);
+    }
+
+    @Test
+    public void testEqualPermissionSetsAreShared() throws Exception {
+        CompiledPermissions permissions = createPermissions(10);
+
+        Set<String> page = permissions.getPermissions("/site/website/index.xml", set("author"));
+        Set<String> component = permissions.getPermissions("/site/components/header.xml", set("author"));
+
+        assertSame(component, page);
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void testPermissionsAreUnmodifiable() throws Exception {
+        CompiledPermissions permissions = createPermissions(10);
+
+        permissions.getPermissions("/site/website/index.xml", set("author")).add("delete");
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.service.security;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.craftercms.studio.api.v1.util.StudioConfiguration;
+import org.testng.annotations.Test;
+
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.SECURITY_USER_GROUPS_CACHE_MAX_USERS;
+import static org.craftercms.studio.api.v1.util.StudioConfiguration.SECURITY_USER_GROUPS_CACHE_TTL;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+
+public class UserGroupsCacheTest {
+
+    private static final String PROVIDER = "db";
+
+    private static UserGroupsCache createCache(String ttl, String maxUsers) {
+        StudioConfiguration studioConfiguration = mock(StudioConfiguration.class);
+        when(studioConfiguration.getProperty(SECURITY_USER_GROUPS_CACHE_TTL)).thenReturn(ttl);
+        when(studioConfiguration.getProperty(SECURITY_USER_GROUPS_CACHE_MAX_USERS)).thenReturn(maxUsers);
+        UserGroupsCache cache = new UserGroupsCache();
+        cache.setStudioConfiguration(studioConfiguration);
+        return cache;
+    }
+
+    private static Set<String> set(String... values) {
+        return new HashSet<String>(Arrays.asList(values));
+    }
+
+    @Test
+    public void testGetReturnsCopy() {
+        UserGroupsCache cache = createCache("60", "10");
+        cache.put(PROVIDER, "jane", set("authors"), cache.getVersion());
+
+        Set<String> groups = cache.get(PROVIDER, "jane");
+        groups.add("admins");
+
+        assertEquals(cache.get(PROVIDER, "jane"), set("authors"));
+        assertNull(cache.get("ldap", "jane"));
+        assertEquals(cache.getMetrics().get("hits"), 2L);
+        assertEquals(cache.getMetrics().get("misses"), 1L);
+    }
+
+    @Test
+    public void testEntriesExpire() throws Exception {
+        UserGroupsCache cache = createCache("0", "10");
+        cache.put(PROVIDER, "jane", set("authors"), cache.getVersion());
+
+        Thread.sleep(10);
+
+        assertNull(cache.get(PROVIDER, "jane"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUserIsEvicted() {
+        UserGroupsCache cache = createCache("60", "2");
+        cache.put(PROVIDER, "jane", set("authors"), cache.getVersion());
+        cache.put(PROVIDER, "john", set("authors"), cache.getVersion());
+        // A lookup counts as a use, john is now the least recently used
+        cache.get(PROVIDER, "jane");
+        cache.put(PROVIDER, "joe", set("reviewers"), cache.getVersion());
+
+        assertNotNull(cache.get(PROVIDER, "jane"));
+        assertNull(cache.get(PROVIDER, "john"));
+        assertNotNull(cache.get(PROVIDER, "joe"));
+        assertEquals(cache.getMetrics().get("users"), 2);
+        assertEquals(cache.getMetrics().get("evictions"), 1L);
+    }
+
+    @Test
+    public void testInvalidate() {
+        UserGroupsCache cache = createCache("60", "10");
+        cache.put(PROVIDER, "jane", set("authors"), cache.getVersion());
+        cache.put("ldap", "jane", set("authors"), cache.getVersion());
+        cache.put(PROVIDER, "john", set("authors"), cache.getVersion());
+        cache.put(PROVIDER, "mary:jane", set("authors"), cache.getVersion());
+
+        cache.invalidate("jane");
+
+        assertNull(cache.get(PROVIDER, "jane"));
+        assertNull(cache.get("ldap", "jane"));
+        assertNotNull(cache.get(PROVIDER, "john"));
+        assertNotNull(cache.get(PROVIDER, "mary:jane"));
+        assertEquals(cache.getMetrics().get("invalidations"), 2L);
+
+        cache.invalidateAll();
+
+        assertNull(cache.get(PROVIDER, "john"));
+        assertEquals(cache.getMetrics().get("users"), 0);
+        assertEquals(cache.getMetrics().get("invalidations"), 4L);
+    }
+
+    @Test
+    public void testGroupsLoadedBeforeAnInvalidationAreNotCached() {
+        UserGroupsCache cache = createCache("60", "10");
+        long version = cache.getVersion();
+        // The membership changes while the groups are loaded
+        cache.invalidate("jane");
+        cache.put(PROVIDER, "jane", set("authors"), version);
+
+        assertNull(cache.get(PROVIDER, "jane"));
+        assertEquals(cache.getMetrics().get("staleLoads"), 1L);
+
+        cache.put(PROVIDER, "jane", set("reviewers"), cache.getVersion());
+
+        assertEquals(cache.get(PROVIDER, "jane"), set("reviewers"));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.util;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import javax.imageio.ImageIO;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Reading the dimension of an image from its header with {@link ImageUtils#getDimension} against decoding the whole
+ * image with {@link ImageIO#read}. Both read from a marked stream that is reset afterwards, as the image size check of
+ * the content pipeline does. Not part of the test suite, run it with the main method.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageDimensionBenchmark {
+
+    @Param({"png", "jpg"})
+    private String format;
+
+    private byte[] image;
+
+    @Setup
+    public void setUp() throws IOException {
+        BufferedImage bufferedImage = new BufferedImage(1920, 1080, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < bufferedImage.getWidth(); x++) {
+            for (int y = 0; y < bufferedImage.getHeight(); y++) {
+                bufferedImage.setRGB(x, y, (x * 7) << 16 | (y * 11) << 8 | (x + y));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(bufferedImage, format, out);
+        image = out.toByteArray();
+    }
+
+    private InputStream open() {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(image));
+        in.mark(Integer.MAX_VALUE);
+        return in;
+    }
+
+    @Benchmark
+    public Dimension headerProbe() throws IOException {
+        InputStream in = open();
+        Dimension dimension = ImageUtils.getDimension(in);
+        in.reset();
+        return dimension;
+    }
+
+    @Benchmark
+    public Dimension imageIORead() throws IOException {
+        InputStream in = open();
+        BufferedImage bufferedImage = ImageIO.read(in);
+        in.reset();
+        return new Dimension(bufferedImage.getWidth(), bufferedImage.getHeight());
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder().include(ImageDimensionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
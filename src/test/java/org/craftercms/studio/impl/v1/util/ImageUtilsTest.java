@@ -0,0 +1,122 @@
+/*
+ * Crafter Studio Web-content authoring solution
+ * Copyright (C) 2007-2017 Crafter Software Corporation.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.craftercms.studio.impl.v1.util;
+
+import java.awt.Dimension;
+import java.awt.image.BufferedImage;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.IOUtils;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ImageUtilsTest {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    private static byte[] createImage(String format) throws IOException {
+        return createImage(format, WIDTH, HEIGHT);
+    }
+
+    private static byte[] createImage(String format, int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            for (int y = 0; y < height; y++) {
+                image.setRGB(x, y, (x * 7) << 16 | (y * 11) << 8 | (x + y));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, format, out), "No ImageIO writer for " + format);
+        return out.toByteArray();
+    }
+
+    private static void assertDimensionAndReset(String format) throws IOException {
+        byte[] image = createImage(format);
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(image));
+        in.mark(Integer.MAX_VALUE);
+
+        Dimension dimension = ImageUtils.getDimension(in);
+        in.reset();
+
+        assertEquals(dimension, new Dimension(WIDTH, HEIGHT));
+        // The whole image can be read again after the reset
+        assertEquals(IOUtils.toByteArray(in), image);
+    }
+
+    @Test
+    public void testPng() throws IOException {
+        assertDimensionAndReset("png");
+    }
+
+    @Test
+    public void testJpeg() throws IOException {
+        assertDimensionAndReset("jpg");
+    }
+
+    @Test
+    public void testGif() throws IOException {
+        assertDimensionAndReset("gif");
+    }
+
+    @Test
+    public void testBmp() throws IOException {
+        assertDimensionAndReset("bmp");
+    }
+
+    @Test
+    public void testOnlyTheHeaderIsRead() throws IOException {
+        byte[] image = createImage("bmp", 400, 300);
+        ByteArrayInputStream in = new ByteArrayInputStream(image);
+
+        assertEquals(ImageUtils.getDimension(in), new Dimension(400, 300));
+        // Most of the pixels of the image are left in the stream
+        assertTrue(in.available() > image.length / 2);
+    }
+
+    @Test
+    public void testNotAnImage() throws IOException {
+        byte[] text = "<page><title>Not an image</title></page>".getBytes(StandardCharsets.UTF_8);
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(text));
+        in.mark(Integer.MAX_VALUE);
+
+        assertNull(ImageUtils.getDimension(in));
+        in.reset();
+
+        assertEquals(IOUtils.toByteArray(in), text);
+    }
+
+    @Test
+    public void testTruncatedImage() throws IOException {
+        byte[] image = createImage("png");
+        byte[] truncated = new byte[10];
+        System.arraycopy(image, 0, truncated, 0, truncated.length);
+
+        assertNull(ImageUtils.getDimension(new ByteArrayInputStream(truncated)));
+    }
+}